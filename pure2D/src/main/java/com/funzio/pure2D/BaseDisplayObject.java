@@ -35,15 +35,19 @@ import android.util.Log;
 import com.funzio.pure2D.animators.Animator;
 import com.funzio.pure2D.animators.Manipulator;
 import com.funzio.pure2D.containers.Container;
+import com.funzio.pure2D.containers.DisplayGroup;
 import com.funzio.pure2D.exceptions.Pure2DException;
 import com.funzio.pure2D.gl.GLColor;
 import com.funzio.pure2D.gl.gl10.BlendFunc;
 import com.funzio.pure2D.gl.gl10.BlendModes;
 import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.QuadBatch;
+import com.funzio.pure2D.gl.gl10.RenderSnapshot;
 import com.funzio.pure2D.particles.nova.vo.AnimatorVO;
 import com.funzio.pure2D.ui.UIConstraint;
 import com.funzio.pure2D.ui.UIManager;
 import com.funzio.pure2D.utils.Pure2DUtils;
+import com.funzio.pure2D.utils.UpdateScheduler;
 
 import org.xmlpull.v1.XmlPullParser;
 
@@ -134,6 +138,7 @@ public abstract class BaseDisplayObject implements DisplayObject {
     // rect and bounds
     protected int mInvalidateFlags = 0;
     protected Matrix mMatrix;
+    protected Matrix mLocalMatrix; // cached for when only the parent changes
     protected boolean mAutoUpdateBounds = false;
     // global bounds
     protected RectF mBounds = new RectF(-mOrigin.x, -mOrigin.y, -mOrigin.x + mSize.x - 1, -mOrigin.y + mSize.y - 1);
@@ -161,6 +166,20 @@ public abstract class BaseDisplayObject implements DisplayObject {
 
     @Override
     public boolean draw(final GLState glState) {
+        // batching mode
+        final QuadBatch batch = glState.getQuadBatch();
+        if (batch != null) {
+            if (drawBatch(glState, batch)) {
+                // validate visual only
+                mInvalidateFlags &= ~VISUAL;
+
+                return true;
+            }
+
+            // draw the pending quads before drawing directly
+            batch.flush();
+        }
+
         drawStart(glState);
 
         // blend mode
@@ -180,9 +199,43 @@ public abstract class BaseDisplayObject implements DisplayObject {
         return true;
     }
 
+    /**
+     * Add this object to the batch instead of drawing it directly. Objects that can't be batched return false and get drawn normally.
+     * 
+     * @param glState
+     * @param batch
+     * @return true if batched
+     * @see QuadBatch
+     */
+    protected boolean drawBatch(final GLState glState, final QuadBatch batch) {
+        return false;
+    }
+
+    /**
+     * Record this object into a snapshot on the simulation thread. Objects that can't be batched are recorded as they are, to be drawn directly on the GL thread.
+     * 
+     * @hide For internal use
+     * @param glState
+     * @param snapshot
+     * @see BaseScene#setSimulationThreaded(boolean)
+     */
+    public void record(final GLState glState, final RenderSnapshot snapshot) {
+        if (drawBatch(glState, snapshot)) {
+            // validate visual only
+            mInvalidateFlags &= ~VISUAL;
+        } else {
+            snapshot.addObject(this, getParentMatrix());
+        }
+    }
+
     protected void drawStart(final GLState glState) {
         final GL10 gl = glState.mGL;
 
+        // mask and perspective are not applied to the pending quads
+        if (mMask != null || mPerspectiveEnabled) {
+            glState.flushQuadBatch();
+        }
+
         // keep the model matrix
         gl.glPushMatrix();
 
@@ -263,6 +316,10 @@ public abstract class BaseDisplayObject implements DisplayObject {
         // for debugging
         final int debugFlags = Pure2D.DEBUG_FLAGS | mDebugFlags;
         // local rect
+        if (debugFlags != 0 || mMask != null || mPerspectiveProjecting) {
+            glState.flushQuadBatch();
+        }
+
         if ((debugFlags & Pure2D.DEBUG_FLAG_WIREFRAME) != 0 && mSize.x > 0 && mSize.y > 0) {
             drawWireframe(glState);
         }
@@ -348,6 +405,11 @@ public abstract class BaseDisplayObject implements DisplayObject {
         if ((mAutoUpdateBounds || Pure2D.AUTO_UPDATE_BOUNDS) && (mInvalidateFlags & BOUNDS) != 0) {
             // re-cal the matrix
             updateBounds();
+
+            // keep the parent's spatial index in sync
+            if (mParent instanceof DisplayGroup) {
+                ((DisplayGroup) mParent).onChildBoundsUpdated(this);
+            }
         }
 
         // now update children
@@ -386,6 +448,15 @@ public abstract class BaseDisplayObject implements DisplayObject {
         }
     }
 
+    /**
+     * Invalidate without notifying the parent. Used by the parent while updating its children.
+     * 
+     * @hide
+     */
+    public void invalidateFromParent(final int flags) {
+        mInvalidateFlags |= flags;
+    }
+
     /**
      * @hide
      */
@@ -919,11 +990,11 @@ public abstract class BaseDisplayObject implements DisplayObject {
             // use the adapter
             if (Pure2D.ADAPTER.getSurface() != null) {
                 Pure2D.ADAPTER.getSurface().queueEvent(r);
-            } else {
+            } else if (!UpdateScheduler.defer(r)) {
                 // run directly
                 r.run();
             }
-        } else {
+        } else if (!UpdateScheduler.defer(r)) {
             // run directly
             r.run();
         }
@@ -1013,6 +1084,22 @@ public abstract class BaseDisplayObject implements DisplayObject {
         }
         final Matrix parentMatrix = getParentMatrix();
 
+        // only the parent's bounds changed, reuse the local matrix
+        if (mLocalMatrix != null && parentMatrix != null && (mInvalidateFlags & BOUNDS) == PARENT_BOUNDS) {
+            mMatrix.set(mLocalMatrix);
+
+            mBounds.left = 0;
+            mBounds.top = 0;
+            mBounds.right = mSize.x - 1;
+            mBounds.bottom = mSize.y - 1;
+
+            onPreConcatParentMatrix();
+            mMatrix.postConcat(parentMatrix);
+            mMatrix.mapRect(mBounds);
+
+            return mBounds;
+        }
+
         if (mHasTransformValues) {
             mMatrix.setTranslate(-mOrigin.x - mPivot.x, -mOrigin.y - mPivot.y);
             mMatrix.postConcat(mTransformMatrix);
@@ -1053,6 +1140,7 @@ public abstract class BaseDisplayObject implements DisplayObject {
                 changed = true;
 
                 if (parentMatrix == null) {
+                    cacheLocalMatrix();
                     onPreConcatParentMatrix();
                     // easy case: only translation needs to be applied. No need to use matrix!
                     mBounds.left = mPosition.x - mOrigin.x;
@@ -1076,6 +1164,7 @@ public abstract class BaseDisplayObject implements DisplayObject {
         mBounds.right = mSize.x - 1;
         mBounds.bottom = mSize.y - 1;
 
+        cacheLocalMatrix();
         onPreConcatParentMatrix();
         // find the bounds
         if (changed || parentMatrix != null) {
@@ -1096,6 +1185,14 @@ public abstract class BaseDisplayObject implements DisplayObject {
         // TODO override
     }
 
+    private void cacheLocalMatrix() {
+        if (mLocalMatrix == null) {
+            mLocalMatrix = new Matrix(mMatrix);
+        } else {
+            mLocalMatrix.set(mMatrix);
+        }
+    }
+
     final public Matrix getMatrix() {
         return mMatrix;
     }
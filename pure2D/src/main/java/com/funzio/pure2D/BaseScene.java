@@ -32,17 +32,22 @@ import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.opengl.GLException;
-import android.os.SystemClock;
 import android.util.Log;
 import android.view.MotionEvent;
 
 import com.funzio.pure2D.containers.Container;
+import com.funzio.pure2D.containers.DisplayGroup;
 import com.funzio.pure2D.exceptions.Pure2DException;
 import com.funzio.pure2D.gl.GLColor;
 import com.funzio.pure2D.gl.gl10.BlendFunc;
 import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.QuadBatch;
+import com.funzio.pure2D.gl.gl10.RenderCommandBuffer;
+import com.funzio.pure2D.gl.gl10.RenderSnapshot;
+import com.funzio.pure2D.gl.gl10.StreamVBO;
 import com.funzio.pure2D.gl.gl10.textures.TextureManager;
 import com.funzio.pure2D.ui.UITextureManager;
+import com.funzio.pure2D.utils.FrameHistogram;
 
 import java.nio.IntBuffer;
 import java.util.ArrayList;
@@ -74,26 +79,34 @@ public class BaseScene implements Scene {
     private PointF mSize = new PointF();
     private RectF mBounds = new RectF();
 
-    private long mStartTime = 0;
     private boolean mPaused = false;
     private boolean mAutoClear = true;
     private int mInvalidated = 0;
     private boolean mRenderContinueously = false;
 
     // frame rate
-    private int mFrameCount = 0;
-    private float mFrameCountDuration = 0;
-    private volatile int mCurrentFps = 0; // thread independent
-    private int mTargetFps = 0; // 0 = unlimited
-    private int mTargetDuration = 1000 / (mTargetFps > 0 ? mTargetFps : DEFAULT_FPS);
-    private int mTargetDurationJitter = (int) (mTargetDuration * 0.15f);
-    private int mDownTime = 0;
+    private final FrameScheduler mFrameScheduler = new FrameScheduler();
+    private volatile int mNumObjectsUpdated = 0;
+    private volatile int mNumObjectsSkipped = 0;
+    private FrameProfiler mProfiler;
 
     // extra
     private GLColor mColor = new GLColor(0f, 0f, 0f, 1f);
     private BlendFunc mDefaultBlendFunc = BlendFunc.getInterpolate();
     private Listener mListener;
 
+    // batching
+    private boolean mBatchingEnabled = false;
+    private QuadBatch mQuadBatch;
+    private int mBatchSortingMode = RenderCommandBuffer.SORTING_NONE;
+    private boolean mStreamVBOEnabled = false;
+
+    // threading
+    private boolean mSimulationThreaded = false;
+    private volatile SimulationThread mSimulationThread;
+    private volatile long mSimulationTime = 0; // ns
+    private volatile long mRenderTime = 0; // ns
+
     // axis system
     private int mAxisSystem = AXIS_BOTTOM_LEFT;
 
@@ -115,6 +128,27 @@ public class BaseScene implements Scene {
     }
 
     final public boolean queueEvent(final Runnable r) {
+        final SimulationThread simulationThread = mSimulationThread;
+        if (simulationThread != null) {
+            // the scene graph belongs to the simulation thread
+            simulationThread.queueEvent(r);
+        } else if (mStage != null) {
+            mStage.queueEvent(r);
+        } else {
+            r.run();
+        }
+
+        // always success now
+        return true;
+    }
+
+    /**
+     * Queue an event on the GL thread, for GL work such as loading textures. Same as {@link #queueEvent(Runnable)} unless the simulation is threaded.
+     * 
+     * @param r
+     * @see #setSimulationThreaded(boolean)
+     */
+    final public boolean queueGLEvent(final Runnable r) {
         if (mStage != null) {
             mStage.queueEvent(r);
         } else {
@@ -202,7 +236,66 @@ public class BaseScene implements Scene {
     }
 
     final public int getCurrentFps() {
-        return mCurrentFps;
+        return mFrameScheduler.getCurrentFps();
+    }
+
+    /**
+     * @return the frame scheduler, to set the fixed step, the smoothing and the spiral-of-death caps. The simulation thread copies its settings when started.
+     * @see #setSimulationThreaded(boolean)
+     */
+    final public FrameScheduler getFrameScheduler() {
+        return mFrameScheduler;
+    }
+
+    /**
+     * Enable/disable the frame profiler. When enabled, the camera, children, textures, draw and submit phases are timed and the GL counters are collected for the last
+     * {@link FrameProfiler#DEFAULT_NUM_FRAMES} frames. With the threaded simulation, the camera and children phases run on the other thread and are not timed, see
+     * {@link #getSimulationTime()} instead.
+     * 
+     * @param enabled
+     * @see com.funzio.pure2D.shapes.ProfilerOverlay
+     */
+    public void setProfilingEnabled(final boolean enabled) {
+        if (enabled) {
+            if (mProfiler == null) {
+                mProfiler = new FrameProfiler();
+            }
+        } else {
+            mProfiler = null;
+        }
+    }
+
+    public boolean isProfilingEnabled() {
+        return mProfiler != null;
+    }
+
+    /**
+     * @return the frame profiler, null if profiling is disabled
+     */
+    final public FrameProfiler getProfiler() {
+        return mProfiler;
+    }
+
+    /**
+     * @return the histogram of the last frame times, for p50/p95/p99
+     */
+    final public FrameHistogram getFrameHistogram() {
+        return mFrameScheduler.getHistogram();
+    }
+
+    /**
+     * @return number of objects updated in the last frame, including grand children
+     */
+    final public int getNumObjectsUpdated() {
+        return mNumObjectsUpdated;
+    }
+
+    /**
+     * @return number of objects skipped in the last frame because of static subtrees
+     * @see DisplayGroup#setStatic(boolean)
+     */
+    final public int getNumObjectsSkipped() {
+        return mNumObjectsSkipped;
     }
 
     /**
@@ -210,7 +303,7 @@ public class BaseScene implements Scene {
      */
     @Deprecated
     final public int getTargetFps() {
-        return mTargetFps;
+        return mFrameScheduler.getTargetFps();
     }
 
     /**
@@ -218,10 +311,15 @@ public class BaseScene implements Scene {
      */
     @Deprecated
     public void setTargetFps(final int fps) {
-        mTargetFps = fps;
+        mFrameScheduler.setTargetFps(fps);
+    }
 
-        mTargetDuration = 1000 / (mTargetFps > 0 ? mTargetFps : DEFAULT_FPS);
-        mTargetDurationJitter = (int) (mTargetDuration * 0.15f);
+    /**
+     * @return the target duration of a frame in ms
+     */
+    final public int getTargetDuration() {
+        final long duration = mFrameScheduler.getTargetDuration();
+        return duration > 0 ? (int) (duration / 1000000) : DEFAULT_MSPF;
     }
 
     public void setListener(final Listener listener) {
@@ -237,6 +335,10 @@ public class BaseScene implements Scene {
     }
 
     public void setTextureManager(final TextureManager textureManager) {
+        // stop the old one's workers
+        if (mTextureManager != null && mTextureManager != textureManager) {
+            mTextureManager.dispose();
+        }
         mTextureManager = textureManager;
     }
 
@@ -318,16 +420,17 @@ public class BaseScene implements Scene {
             // assign to GLState
             mGLState.setTextureManager(mTextureManager);
 
-            mStartTime = SystemClock.elapsedRealtime();
-            mDownTime = 0;
-            mFrameCount = 0;
-            mCurrentFps = 0;
-            mFrameCountDuration = 0;
+            mFrameScheduler.reset();
             firstTime = true;
+
+            // threading was requested before the GL was ready
+            if (mSimulationThreaded) {
+                startSimulationThread();
+            }
         } else {
             // reload with new gl
             mGLState.reset(gl);
-            final long idleTime = SystemClock.elapsedRealtime() - mStartTime;
+            final long idleTime = mFrameScheduler.getIdleTime();
             mTextureManager.update((int) idleTime);
             // reload all textures
             mTextureManager.reload(mGLState, mStage.getResources());
@@ -389,81 +492,73 @@ public class BaseScene implements Scene {
         }
         DisplayObject child;
 
+        // profiling
+        final FrameProfiler profiler = mProfiler;
+        if (profiler != null) {
+            profiler.beginFrame();
+        }
+        mGLState.resetStats();
+
+        // dynamic arrays, created on the GL thread
+        if (mStreamVBOEnabled) {
+            if (mGLState.getStreamVBO() == null) {
+                mGLState.setStreamVBO(new StreamVBO());
+            }
+            mGLState.getStreamVBO().beginFrame();
+        } else if (mGLState.getStreamVBO() != null) {
+            mGLState.setStreamVBO(null);
+        }
+
         // pause check
         if (!mPaused) {
-            // delta time
-            final long now = SystemClock.elapsedRealtime();
-            // final float delta = ((now - mStartTime) / 1000000f);
-            final long delta = now - mStartTime;
+            // wait for the deadline and measure the delta time
+            final FrameScheduler scheduler = mFrameScheduler;
+            scheduler.tick();
+            final int delta = scheduler.getDeltaTime();
 
-            if (delta == 0) {
+            if (scheduler.getNumSteps() == 0) {
                 // NOTE: delta can be 0 (when nothing draws) on some devices such as S2, S3...
                 // We need to force invalidate!
                 invalidate();
-            } else {
-                mStartTime = now;
-
-                int sleepTime = 0;
-                // compensate the framerate around the target fps
-                if (mTargetFps > 0) {
-                    float targetDelta = (mTargetDuration - delta);
-                    if (targetDelta > 0) { // too fast?
-                        if (mDownTime > targetDelta) {
-                            mDownTime -= targetDelta;
-                        } else {
-                            sleepTime = (int) targetDelta - mDownTime;
-                            mDownTime = 0;
-                            if (sleepTime > mTargetDurationJitter) {
-                                try {
-                                    Thread.sleep(sleepTime);
-                                } catch (Exception e) {
-                                    // TODO: nothing
-                                }
-                            } else {
-                                sleepTime = 0;
-                            }
-                        }
-                    } else if (targetDelta < 0) { // too slow?
-                        mDownTime -= targetDelta;
-                    }
-                }
-
-                // calculate frame rate
-                mFrameCountDuration += delta + sleepTime;
-                if (mFrameCountDuration <= 1000) {
-                    mFrameCount++;
-                } else {
-                    mCurrentFps = mFrameCount;
-                    mFrameCount = 0;
-                    mFrameCountDuration = 0;
-                }
-
-                // camera update
-                if (mCamera != null) {
-                    // update the camera
-                    mCamera.update((int) delta);
-                }
+            }
 
-                // update children
-                for (int i = 0; i < mNumChildren; i++) {
-                    child = mChildren.get(i);
-                    if (child.isAlive()) {
-                        // heart beat
-                        child.update((int) delta);
-                    }
-                }
+            // the simulation thread does this otherwise
+            if (mSimulationThread == null) {
+                final long simulationStart = System.nanoTime();
+                simulate(scheduler);
+                mSimulationTime = System.nanoTime() - simulationStart;
             }
 
             // update texture manager
-            mTextureManager.update((int) delta);
+            if (profiler != null) {
+                profiler.begin(FrameProfiler.PHASE_TEXTURES);
+                mTextureManager.update(delta);
+                profiler.end(FrameProfiler.PHASE_TEXTURES);
+            } else {
+                mTextureManager.update(delta);
+            }
+        }
+
+        // threaded simulation, draw the new snapshot
+        final SimulationThread simulationThread = mSimulationThread;
+        if (simulationThread != null && simulationThread.acquireSnapshot()) {
+            invalidate();
         }
 
         // draw children if needed
         if (mInvalidated > 0 || mRenderContinueously) {
+            final long renderStart = System.nanoTime();
+
             // camera
             if (mCamera != null) {
                 // validate the camera
-                mCamera.apply(mGLState);
+                if (simulationThread != null) {
+                    synchronized (simulationThread.getLock()) {
+                        mCamera.apply(mGLState);
+                    }
+                } else {
+                    mCamera.apply(mGLState);
+                }
             }
 
             if (mAutoClear) {
@@ -471,7 +566,34 @@ public class BaseScene implements Scene {
                 gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
             }
 
-            if (mUIEnabled) {
+            if (profiler != null) {
+                profiler.begin(FrameProfiler.PHASE_DRAW);
+            }
+
+            // batching
+            if (mBatchingEnabled && simulationThread == null) {
+                if (mQuadBatch == null) {
+                    mQuadBatch = new QuadBatch(mGLState);
+                    mQuadBatch.setSortingMode(mBatchSortingMode);
+                } else {
+                    mQuadBatch.resetStats();
+                }
+                mGLState.setQuadBatch(mQuadBatch);
+            }
+
+            if (simulationThread != null) {
+                // the children have been recorded by the simulation thread
+                final RenderSnapshot snapshot = simulationThread.getSnapshot();
+                if (profiler != null) {
+                    // nothing to traverse, it's all submission
+                    profiler.end(FrameProfiler.PHASE_DRAW);
+                    profiler.begin(FrameProfiler.PHASE_SUBMIT);
+                }
+                if (snapshot != null) {
+                    snapshot.resetStats();
+                    snapshot.draw(simulationThread.getLock());
+                }
+            } else if (mUIEnabled) {
                 // lock the array
                 synchronized (mUILock) {
                     if (mVisibleTouchables == null) {
@@ -495,6 +617,8 @@ public class BaseScene implements Scene {
                                 }
                                 mVisibleTouchables.add(j, (Touchable) child);
                             }
+                        } else {
+                            mGLState.addCulled(1);
                         }
                     }
                 }
@@ -504,10 +628,22 @@ public class BaseScene implements Scene {
                     if (child.shouldDraw(getCameraRect())) {
                         // draw frame
                         child.draw(mGLState);
+                    } else {
+                        mGLState.addCulled(1);
                     }
                 }
             }
 
+            if (profiler != null && simulationThread == null) {
+                profiler.end(FrameProfiler.PHASE_DRAW);
+                profiler.begin(FrameProfiler.PHASE_SUBMIT);
+            }
+
+            // draw the pending quads
+            if (mBatchingEnabled && simulationThread == null) {
+                mGLState.setQuadBatch(null);
+            }
+
             // camera
             if (mCamera != null) {
                 // validate the camera
@@ -519,6 +655,146 @@ public class BaseScene implements Scene {
 
             // validate scene
             mInvalidated--;
+
+            if (profiler != null) {
+                profiler.end(FrameProfiler.PHASE_SUBMIT);
+            }
+
+            mRenderTime = System.nanoTime() - renderStart;
+        }
+
+        if (profiler != null) {
+            profiler.setCounter(FrameProfiler.COUNTER_UPDATED, mNumObjectsUpdated);
+            profiler.endFrame(mGLState);
+        }
+    }
+
+    /**
+     * Run the steps of a frame, then interpolate with the leftover fraction if the steps are fixed
+     * 
+     * @param scheduler
+     */
+    void simulate(final FrameScheduler scheduler) {
+        final int numSteps = scheduler.getNumSteps();
+        final int stepTime = scheduler.getStepTime();
+        if (stepTime > 0) {
+            for (int i = 0; i < numSteps; i++) {
+                simulate(stepTime);
+            }
+            interpolate(scheduler.getAlpha());
+        } else if (numSteps > 0) {
+            simulate(scheduler.getDeltaTime());
+        }
+    }
+
+    /**
+     * Called after the fixed steps of a frame, to render between the last step and the next one. Does nothing by default.
+     * 
+     * @param alpha the fraction of a step since the last one, from 0 to 1
+     * @see FrameScheduler#setStepTime(int)
+     */
+    protected void interpolate(final float alpha) {
+        // nothing by default
+    }
+
+    /**
+     * Update the camera and the children. This runs on the GL thread, or on the simulation thread when it's enabled.
+     * 
+     * @param deltaTime
+     * @see #setSimulationThreaded(boolean)
+     */
+    protected void simulate(final int deltaTime) {
+        // profile on the GL thread only
+        final FrameProfiler profiler = mSimulationThread == null ? mProfiler : null;
+
+        // camera update
+        if (mCamera != null) {
+            // update the camera
+            if (profiler != null) {
+                profiler.begin(FrameProfiler.PHASE_CAMERA);
+                mCamera.update(deltaTime);
+                profiler.end(FrameProfiler.PHASE_CAMERA);
+            } else {
+                mCamera.update(deltaTime);
+            }
+        }
+
+        // update children
+        if (profiler != null) {
+            profiler.begin(FrameProfiler.PHASE_CHILDREN);
+        }
+        DisplayObject child;
+        int numUpdated = 0, numSkipped = 0;
+        for (int i = 0; i < mNumChildren; i++) {
+            child = mChildren.get(i);
+            if (child.isAlive()) {
+                // heart beat
+                child.update(deltaTime);
+
+                // stats
+                numUpdated++;
+                if (child instanceof DisplayGroup) {
+                    numUpdated += ((DisplayGroup) child).getNumUpdatedDescendants();
+                    numSkipped += ((DisplayGroup) child).getNumSkippedDescendants();
+                }
+            }
+        }
+        mNumObjectsUpdated = numUpdated;
+        mNumObjectsSkipped = numSkipped;
+
+        if (profiler != null) {
+            profiler.end(FrameProfiler.PHASE_CHILDREN);
+        }
+    }
+
+    /**
+     * Record the children into a snapshot, on the simulation thread
+     * 
+     * @param snapshot
+     */
+    protected void record(final RenderSnapshot snapshot) {
+        DisplayObject child;
+        if (mUIEnabled) {
+            // lock the array
+            synchronized (mUILock) {
+                if (mVisibleTouchables == null) {
+                    mVisibleTouchables = new ArrayList<Touchable>();
+                } else {
+                    mVisibleTouchables.clear();
+                }
+
+                for (int i = 0; i < mNumChildren; i++) {
+                    child = mChildren.get(i);
+                    if (child.shouldDraw(getCameraRect())) {
+                        recordChild(child, snapshot);
+
+                        // stack the visible child
+                        if (child instanceof Touchable && ((Touchable) child).isTouchable()) {
+                            float childZ = child.getZ();
+                            int j = mVisibleTouchables.size();
+                            while (j > 0 && ((DisplayObject) mVisibleTouchables.get(j - 1)).getZ() > childZ) {
+                                j--;
+                            }
+                            mVisibleTouchables.add(j, (Touchable) child);
+                        }
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < mNumChildren; i++) {
+                child = mChildren.get(i);
+                if (child.shouldDraw(getCameraRect())) {
+                    recordChild(child, snapshot);
+                }
+            }
+        }
+    }
+
+    private void recordChild(final DisplayObject child, final RenderSnapshot snapshot) {
+        if (child instanceof BaseDisplayObject) {
+            ((BaseDisplayObject) child).record(mGLState, snapshot);
+        } else {
+            snapshot.addObject(child, null);
         }
     }
 
@@ -536,7 +812,7 @@ public class BaseScene implements Scene {
         }
 
         mPaused = false;
-        mStartTime = SystemClock.elapsedRealtime();
+        mFrameScheduler.reset();
     }
 
     public boolean isPaused() {
@@ -563,6 +839,124 @@ public class BaseScene implements Scene {
         mInvalidated = numBuffers;
     }
 
+    public boolean isSimulationThreaded() {
+        return mSimulationThreaded;
+    }
+
+    /**
+     * Enable/disable the threaded simulation. When enabled, the children are updated on a {@link SimulationThread} and recorded into {@link RenderSnapshot}s, and the GL thread
+     * only draws the latest snapshot. {@link #queueEvent(Runnable)} then runs on the simulation thread, so GL work should use {@link #queueGLEvent(Runnable)} instead.
+     * <p>
+     * Like batching, this requires the bounds to be updated. Objects that can't be recorded are drawn directly on the GL thread, holding the simulation lock.
+     * </p>
+     * 
+     * @param threaded
+     * @see {@link Pure2D#setAutoUpdateBounds(boolean)}, {@link #getSimulationTime()}, {@link #getRenderTime()}
+     */
+    public void setSimulationThreaded(final boolean threaded) {
+        if (mSimulationThreaded == threaded) {
+            return;
+        }
+        mSimulationThreaded = threaded;
+
+        if (threaded) {
+            // otherwise wait for the GL
+            if (mGLState != null) {
+                startSimulationThread();
+            }
+        } else if (mSimulationThread != null) {
+            final SimulationThread simulationThread = mSimulationThread;
+            // back to the GL thread
+            mSimulationThread = null;
+            simulationThread.quit();
+        }
+
+        invalidate();
+    }
+
+    private void startSimulationThread() {
+        mSimulationThread = new SimulationThread(this, mGLState);
+        mSimulationThread.start();
+    }
+
+    /**
+     * @return the time spent to update the children of the last frame, in ns. This includes the recording when the simulation is threaded.
+     */
+    public long getSimulationTime() {
+        final SimulationThread simulationThread = mSimulationThread;
+        return simulationThread != null ? simulationThread.getSimulationTime() : mSimulationTime;
+    }
+
+    /**
+     * @return the time spent to draw the last frame on the GL thread, in ns
+     */
+    public long getRenderTime() {
+        return mRenderTime;
+    }
+
+    public boolean isBatchingEnabled() {
+        return mBatchingEnabled;
+    }
+
+    /**
+     * Enable/disable batching. When enabled, consecutive Sprites/Clips sharing the same Texture and Blending function are transformed on CPU and drawn together. This requires the bounds
+     * to be updated, otherwise objects are drawn normally.
+     * 
+     * @param batchingEnabled
+     * @see {@link Pure2D#setAutoUpdateBounds(boolean)}, {@link BaseDisplayObject#setAutoUpdateBounds(boolean)}
+     */
+    public void setBatchingEnabled(final boolean batchingEnabled) {
+        mBatchingEnabled = batchingEnabled;
+
+        invalidate();
+    }
+
+    public boolean isStreamVBOEnabled() {
+        return mStreamVBOEnabled;
+    }
+
+    /**
+     * Enable/disable streaming the dynamic vertex, color and texture coordinate arrays through a StreamVBO instead of client-side arrays. Requires GLES11.
+     * 
+     * @param streamVBOEnabled
+     * @see StreamVBO
+     */
+    public void setStreamVBOEnabled(final boolean streamVBOEnabled) {
+        mStreamVBOEnabled = streamVBOEnabled;
+
+        invalidate();
+    }
+
+    public int getBatchSortingMode() {
+        return mBatchSortingMode;
+    }
+
+    /**
+     * Set how the batched quads can be reordered to reduce the Texture and Blending switches. The stats are available via {@link QuadBatch#getCommandBuffer()}.
+     * 
+     * @param sortingMode
+     * @see RenderCommandBuffer#SORTING_NONE, RenderCommandBuffer#SORTING_COMMUTATIVE, RenderCommandBuffer#SORTING_ALL
+     */
+    public void setBatchSortingMode(final int sortingMode) {
+        mBatchSortingMode = sortingMode;
+
+        if (mQuadBatch != null) {
+            queueEvent(new Runnable() {
+                @Override
+                public void run() {
+                    mQuadBatch.setSortingMode(mBatchSortingMode);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the batch used for drawing, null if batching has never been enabled
+     */
+    public QuadBatch getQuadBatch() {
+        return mQuadBatch;
+    }
+
     public boolean isRenderContinueously() {
         return mRenderContinueously;
     }
@@ -1066,12 +1460,16 @@ public class BaseScene implements Scene {
      * Dispose everything
      */
     public void dispose() {
+        // stop the simulation first
+        setSimulationThreaded(false);
+
         if (mChildren != null) {
             removeAllChildren();
             // mChildren = null;
 
             if (mTextureManager != null) {
                 mTextureManager.removeAllTextures();
+                mTextureManager.dispose();
                 // mTextureManager = null;
             }
 
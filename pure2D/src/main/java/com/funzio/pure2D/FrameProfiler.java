@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D;
+
+import com.funzio.pure2D.gl.DirectBufferPool;
+import com.funzio.pure2D.gl.gl10.GLState;
+
+/**
+ * @author long
+ * @category FrameProfiler keeps the phase timings and the GL counters of the last N frames in a ring buffer. Nothing is allocated per frame, so it can stay on in production builds
+ *           to detect regressions.
+ *           <p>
+ *           The frames are written on the GL thread. Readers on other threads may see the frame being written, so they should look at the previous ones, see
+ *           {@link #getTime(int, int)}.
+ *           </p>
+ * @see BaseScene#setProfilingEnabled(boolean)
+ */
+public class FrameProfiler {
+    public static final int DEFAULT_NUM_FRAMES = 120;
+
+    // phases
+    public static final int PHASE_CAMERA = 0;
+    public static final int PHASE_CHILDREN = 1;
+    public static final int PHASE_TEXTURES = 2;
+    public static final int PHASE_DRAW = 3;
+    public static final int PHASE_SUBMIT = 4;
+    public static final int NUM_PHASES = 5;
+    public static final String[] PHASE_NAMES = {
+            "camera", "children", "textures", "draw", "submit"
+    };
+
+    // counters
+    public static final int COUNTER_DRAW_CALLS = 0;
+    public static final int COUNTER_VERTICES = 1;
+    public static final int COUNTER_TEXTURE_BINDS = 2;
+    public static final int COUNTER_BLEND_CHANGES = 3;
+    public static final int COUNTER_COLOR_CHANGES = 4;
+    public static final int COUNTER_CULLED = 5;
+    public static final int COUNTER_UPDATED = 6;
+    public static final int COUNTER_BYTES_COPIED = 7;
+    public static final int NUM_COUNTERS = 8;
+    public static final String[] COUNTER_NAMES = {
+            "draw calls", "vertices", "texture binds", "blend changes", "color changes", "culled", "updated", "bytes copied"
+    };
+
+    private final int mNumFrames;
+    private final long[] mTimes; // ns, [frame][phase]
+    private final int[] mCounters; // [frame][counter]
+    private final long[] mStarts = new long[NUM_PHASES];
+    private int mFrame = -1; // the frame being written
+    private long mNumRecordedFrames = 0;
+
+    public FrameProfiler() {
+        this(DEFAULT_NUM_FRAMES);
+    }
+
+    /**
+     * @param numFrames the number of last frames to keep
+     */
+    public FrameProfiler(final int numFrames) {
+        mNumFrames = numFrames;
+        mTimes = new long[numFrames * NUM_PHASES];
+        mCounters = new int[numFrames * NUM_COUNTERS];
+    }
+
+    /**
+     * Start a new frame, overwriting the oldest one
+     */
+    public void beginFrame() {
+        mFrame = (mFrame + 1) % mNumFrames;
+
+        final int timeOffset = mFrame * NUM_PHASES;
+        for (int i = 0; i < NUM_PHASES; i++) {
+            mTimes[timeOffset + i] = 0;
+        }
+        final int counterOffset = mFrame * NUM_COUNTERS;
+        for (int i = 0; i < NUM_COUNTERS; i++) {
+            mCounters[counterOffset + i] = 0;
+        }
+    }
+
+    /**
+     * Take the counters of the frame from a GLState
+     * 
+     * @param glState
+     */
+    public void endFrame(final GLState glState) {
+        if (mFrame < 0) {
+            return;
+        }
+
+        final int offset = mFrame * NUM_COUNTERS;
+        mCounters[offset + COUNTER_DRAW_CALLS] = glState.getNumDrawCalls();
+        mCounters[offset + COUNTER_VERTICES] = glState.getNumVerticesDrawn();
+        mCounters[offset + COUNTER_TEXTURE_BINDS] = glState.getNumTextureBinds();
+        mCounters[offset + COUNTER_BLEND_CHANGES] = glState.getNumBlendChanges();
+        mCounters[offset + COUNTER_COLOR_CHANGES] = glState.getNumColorChanges();
+        mCounters[offset + COUNTER_CULLED] = glState.getNumCulled();
+        mCounters[offset + COUNTER_BYTES_COPIED] = glState.getNumBytesCopied();
+        mNumRecordedFrames++;
+    }
+
+    /**
+     * Start timing a phase
+     * 
+     * @param phase
+     */
+    public void begin(final int phase) {
+        mStarts[phase] = System.nanoTime();
+    }
+
+    /**
+     * Stop timing a phase. A phase can run several times per frame, the times add up.
+     * 
+     * @param phase
+     */
+    public void end(final int phase) {
+        if (mFrame >= 0) {
+            mTimes[mFrame * NUM_PHASES + phase] += System.nanoTime() - mStarts[phase];
+        }
+    }
+
+    public void setCounter(final int counter, final int value) {
+        if (mFrame >= 0) {
+            mCounters[mFrame * NUM_COUNTERS + counter] = value;
+        }
+    }
+
+    private int getFrameIndex(final int framesAgo) {
+        return ((mFrame - framesAgo) % mNumFrames + mNumFrames) % mNumFrames;
+    }
+
+    /**
+     * @param phase
+     * @param framesAgo 0 for the current frame, 1 for the last complete one...
+     * @return the time of a phase in ns
+     */
+    public long getTime(final int phase, final int framesAgo) {
+        return mTimes[getFrameIndex(framesAgo) * NUM_PHASES + phase];
+    }
+
+    /**
+     * @param counter
+     * @param framesAgo 0 for the current frame, 1 for the last complete one...
+     * @return the value of a counter
+     */
+    public int getCounter(final int counter, final int framesAgo) {
+        return mCounters[getFrameIndex(framesAgo) * NUM_COUNTERS + counter];
+    }
+
+    /**
+     * @param framesAgo 0 for the current frame, 1 for the last complete one...
+     * @return the total time of all the phases in ns
+     */
+    public long getTotalTime(final int framesAgo) {
+        final int offset = getFrameIndex(framesAgo) * NUM_PHASES;
+        long total = 0;
+        for (int i = 0; i < NUM_PHASES; i++) {
+            total += mTimes[offset + i];
+        }
+
+        return total;
+    }
+
+    /**
+     * @param phase
+     * @return the average time of a phase over the complete frames in ns
+     */
+    public long getAverageTime(final int phase) {
+        final int numFrames = getNumCompleteFrames();
+        long total = 0;
+        for (int i = 1; i <= numFrames; i++) {
+            total += getTime(phase, i);
+        }
+
+        return numFrames > 0 ? total / numFrames : 0;
+    }
+
+    /**
+     * @param phase
+     * @return the longest time of a phase over the complete frames in ns
+     */
+    public long getMaxTime(final int phase) {
+        final int numFrames = getNumCompleteFrames();
+        long max = 0;
+        for (int i = 1; i <= numFrames; i++) {
+            max = Math.max(max, getTime(phase, i));
+        }
+
+        return max;
+    }
+
+    /**
+     * @param counter
+     * @return the average value of a counter over the complete frames
+     */
+    public float getAverageCounter(final int counter) {
+        final int numFrames = getNumCompleteFrames();
+        long total = 0;
+        for (int i = 1; i <= numFrames; i++) {
+            total += getCounter(counter, i);
+        }
+
+        return numFrames > 0 ? (float) total / numFrames : 0;
+    }
+
+    /**
+     * @return the number of complete frames in the buffer
+     */
+    public int getNumCompleteFrames() {
+        return (int) Math.min(mNumRecordedFrames, mNumFrames - 1);
+    }
+
+    /**
+     * @return the size of the ring buffer
+     */
+    public int getNumFrames() {
+        return mNumFrames;
+    }
+
+    /**
+     * @return the number of frames recorded so far
+     */
+    public long getNumRecordedFrames() {
+        return mNumRecordedFrames;
+    }
+
+    /**
+     * @return the averages of the complete frames, for logging
+     */
+    public String getReport() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Last ").append(getNumCompleteFrames()).append(" frames:");
+        for (int i = 0; i < NUM_PHASES; i++) {
+            sb.append(String.format("\n%s: %.2f ms, max %.2f ms", PHASE_NAMES[i], getAverageTime(i) / 1000000f, getMaxTime(i) / 1000000f));
+        }
+        for (int i = 0; i < NUM_COUNTERS; i++) {
+            sb.append(String.format("\n%s: %.1f", COUNTER_NAMES[i], getAverageCounter(i)));
+        }
+        sb.append(String.format("\nnative buffers: %d KB in use, %d KB pooled, %d KB allocated", DirectBufferPool.getNumBytesInUse() / 1024, DirectBufferPool.getNumBytesPooled() / 1024,
+                DirectBufferPool.getNumBytesAllocated() / 1024));
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D;
+
+import com.funzio.pure2D.utils.FrameHistogram;
+
+/**
+ * @author long
+ * @category FrameScheduler paces the frames against nanosecond deadlines and turns the elapsed time into update steps.
+ *           <p>
+ *           By default, each frame is one variable step of the elapsed time. The sub-millisecond remainder is carried over to the next frame, so the integer delta times don't
+ *           drift from the clock. With a fixed step, the elapsed time is accumulated and consumed in steps of that size, the leftover fraction is given by {@link #getAlpha()}
+ *           for interpolating the render, like {@link com.funzio.pure2D.physics.box2D.Box2DWorld} does.
+ *           </p>
+ *           <p>
+ *           The elapsed time can be smoothed to hide the jitter of the clock and vsync, the smoothing is paid back over the next frames so it doesn't drift either. Long frames
+ *           (debugger, GC, loading) are capped by {@link #setMaxFrameTime(int)} and {@link #setMaxSteps(int)} to avoid the spiral of death.
+ *           </p>
+ */
+public class FrameScheduler {
+    public static final int DEFAULT_MAX_FRAME_TIME = 1000; // ms
+    public static final int DEFAULT_MAX_STEPS = 5;
+    public static final int DEFAULT_SPIN_TIME = 500000; // ns
+    private static final long NS_PER_MS = 1000000L;
+
+    // pacing
+    private int mTargetFps = 0; // 0 = unlimited
+    private long mTargetDuration = 0; // ns
+    private long mNextDeadline = 0; // ns
+    private int mSpinTime = DEFAULT_SPIN_TIME;
+
+    // stepping
+    private int mStepTime = 0; // ms, 0 = variable
+    private int mMaxSteps = DEFAULT_MAX_STEPS;
+    private long mMaxFrameTime = DEFAULT_MAX_FRAME_TIME * NS_PER_MS;
+    private float mSmoothing = 0; // 0 = off
+    private long mLastTime = 0; // ns
+    private long mSmoothedTime = 0; // ns
+    private long mDebt = 0; // ns, smoothed but not yet paid back
+    private long mRemainder = 0; // ns, not yet stepped
+
+    // current frame
+    private long mFrameTime = 0; // ns, measured
+    private int mDeltaTime = 0; // ms
+    private int mNumSteps = 0;
+    private float mAlpha = 0;
+    private long mNumDroppedSteps = 0;
+
+    // stats
+    private final FrameHistogram mHistogram;
+    private int mFrameCount = 0;
+    private long mFrameCountDuration = 0;
+    private volatile int mCurrentFps = 0;
+
+    public FrameScheduler() {
+        this(new FrameHistogram());
+    }
+
+    public FrameScheduler(final FrameHistogram histogram) {
+        mHistogram = histogram;
+        reset();
+    }
+
+    /**
+     * Restart the clock, after a pause for example. The time in between is not stepped.
+     */
+    public void reset() {
+        mLastTime = System.nanoTime();
+        mNextDeadline = mLastTime + mTargetDuration;
+        mSmoothedTime = mTargetDuration > 0 ? mTargetDuration : Scene.DEFAULT_MSPF * NS_PER_MS;
+        mDebt = 0;
+        mRemainder = 0;
+        mFrameCount = 0;
+        mFrameCountDuration = 0;
+        mCurrentFps = 0;
+    }
+
+    /**
+     * Copy the pacing and stepping settings of another scheduler
+     * 
+     * @param scheduler
+     */
+    public void copy(final FrameScheduler scheduler) {
+        setTargetFps(scheduler.mTargetFps);
+        mSpinTime = scheduler.mSpinTime;
+        mStepTime = scheduler.mStepTime;
+        mMaxSteps = scheduler.mMaxSteps;
+        mMaxFrameTime = scheduler.mMaxFrameTime;
+        mSmoothing = scheduler.mSmoothing;
+    }
+
+    /**
+     * Wait for the deadline of the next frame, then step it
+     * 
+     * @see #waitForDeadline()
+     * @see #step()
+     */
+    public void tick() {
+        waitForDeadline();
+        step();
+    }
+
+    /**
+     * Block until the deadline of the next frame, if there is a target fps. Sleeps most of the time then yields for the last {@link #setSpinTime(int)} ns, because sleep() is
+     * only accurate to a few ms on most devices.
+     */
+    public void waitForDeadline() {
+        if (mTargetDuration <= 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        final long deadline = mNextDeadline;
+        final long sleepTime = deadline - now - mSpinTime;
+        if (sleepTime > 0) {
+            try {
+                Thread.sleep(sleepTime / NS_PER_MS, (int) (sleepTime % NS_PER_MS));
+            } catch (InterruptedException e) {
+                // nothing
+            }
+        }
+        while ((now = System.nanoTime()) < deadline) {
+            Thread.yield();
+        }
+
+        // next deadline, from the last one to not drift
+        mNextDeadline += mTargetDuration;
+        if (now - mNextDeadline > mTargetDuration) {
+            // too far behind, don't try to catch up
+            mNextDeadline = now + mTargetDuration;
+        }
+    }
+
+    /**
+     * Measure the elapsed time since the last frame and turn it into steps
+     */
+    public void step() {
+        final long now = System.nanoTime();
+        final long frameTime = now - mLastTime;
+        mLastTime = now;
+        mFrameTime = frameTime;
+
+        // stats
+        mHistogram.add(frameTime);
+        mFrameCountDuration += frameTime;
+        mFrameCount++;
+        if (mFrameCountDuration >= 1000 * NS_PER_MS) {
+            mCurrentFps = mFrameCount;
+            mFrameCount = 0;
+            mFrameCountDuration = 0;
+        }
+
+        // spiral of death
+        long elapsed = frameTime > mMaxFrameTime ? mMaxFrameTime : frameTime;
+
+        // smoothing, then pay back what the smoothing took or added
+        if (mSmoothing > 0) {
+            mSmoothedTime += (long) ((elapsed - mSmoothedTime) * (1 - mSmoothing));
+            mDebt += elapsed - mSmoothedTime;
+            final long payback = mDebt / 8;
+            mDebt -= payback;
+            elapsed = mSmoothedTime + payback;
+        }
+
+        mRemainder += elapsed;
+        if (mStepTime > 0) {
+            // fixed steps
+            final long stepTime = mStepTime * NS_PER_MS;
+            int steps = (int) (mRemainder / stepTime);
+            mRemainder -= steps * stepTime;
+            if (steps > mMaxSteps) {
+                mNumDroppedSteps += steps - mMaxSteps;
+                steps = mMaxSteps;
+            }
+            mNumSteps = steps;
+            mDeltaTime = steps * mStepTime;
+            mAlpha = (float) mRemainder / stepTime;
+        } else {
+            // one variable step, keeping the sub-ms remainder
+            mDeltaTime = (int) (mRemainder / NS_PER_MS);
+            mRemainder -= mDeltaTime * NS_PER_MS;
+            mNumSteps = mDeltaTime > 0 ? 1 : 0;
+            mAlpha = 1;
+        }
+    }
+
+    /**
+     * @return the target fps, 0 for unlimited
+     */
+    public int getTargetFps() {
+        return mTargetFps;
+    }
+
+    /**
+     * @param fps the fps to pace to, 0 for unlimited
+     */
+    public void setTargetFps(final int fps) {
+        mTargetFps = fps;
+        mTargetDuration = fps > 0 ? 1000 * NS_PER_MS / fps : 0;
+        mNextDeadline = System.nanoTime() + mTargetDuration;
+    }
+
+    /**
+     * @return the target duration of a frame in ns, 0 for unlimited
+     */
+    public long getTargetDuration() {
+        return mTargetDuration;
+    }
+
+    public int getSpinTime() {
+        return mSpinTime;
+    }
+
+    /**
+     * @param ns the time to yield instead of sleeping before a deadline
+     */
+    public void setSpinTime(final int ns) {
+        mSpinTime = ns;
+    }
+
+    /**
+     * @return the fixed step in ms, 0 for variable
+     */
+    public int getStepTime() {
+        return mStepTime;
+    }
+
+    /**
+     * @param ms the fixed step in ms, 0 for one variable step per frame
+     */
+    public void setStepTime(final int ms) {
+        mStepTime = ms;
+        mRemainder = 0;
+    }
+
+    public int getMaxSteps() {
+        return mMaxSteps;
+    }
+
+    /**
+     * @param maxSteps the max number of fixed steps per frame, the rest is dropped
+     */
+    public void setMaxSteps(final int maxSteps) {
+        mMaxSteps = maxSteps;
+    }
+
+    /**
+     * @return the max elapsed time per frame in ms
+     */
+    public int getMaxFrameTime() {
+        return (int) (mMaxFrameTime / NS_PER_MS);
+    }
+
+    /**
+     * @param ms the max elapsed time per frame, anything longer is dropped
+     */
+    public void setMaxFrameTime(final int ms) {
+        mMaxFrameTime = ms * NS_PER_MS;
+    }
+
+    public float getSmoothing() {
+        return mSmoothing;
+    }
+
+    /**
+     * @param smoothing from 0 (off) to less than 1, the weight of the previous frames
+     */
+    public void setSmoothing(final float smoothing) {
+        mSmoothing = Math.max(0, Math.min(smoothing, 0.99f));
+        mDebt = 0;
+    }
+
+    /**
+     * @return the measured time of the last frame in ns
+     */
+    public long getFrameTime() {
+        return mFrameTime;
+    }
+
+    /**
+     * @return the total time to update for the last frame in ms, that is the number of steps times the step time with a fixed step
+     */
+    public int getDeltaTime() {
+        return mDeltaTime;
+    }
+
+    /**
+     * @return the number of steps for the last frame
+     */
+    public int getNumSteps() {
+        return mNumSteps;
+    }
+
+    /**
+     * @return the fraction of a fixed step left over, from 0 to 1, for interpolating the render. 1 with variable steps.
+     */
+    public float getAlpha() {
+        return mAlpha;
+    }
+
+    /**
+     * @return the number of fixed steps dropped to avoid the spiral of death
+     */
+    public long getNumDroppedSteps() {
+        return mNumDroppedSteps;
+    }
+
+    /**
+     * @return the time since the last frame in ms
+     */
+    public long getIdleTime() {
+        return (System.nanoTime() - mLastTime) / NS_PER_MS;
+    }
+
+    public int getCurrentFps() {
+        return mCurrentFps;
+    }
+
+    public FrameHistogram getHistogram() {
+        return mHistogram;
+    }
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+/**
+ * 
+ */
+package com.funzio.pure2D;
+
+import java.util.ArrayList;
+
+import android.util.Log;
+
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.RenderSnapshot;
+
+/**
+ * SimulationThread updates a Scene off the GL thread. Each step runs the queued events, updates the children and records them into a {@link RenderSnapshot}. The snapshots are
+ * triple-buffered: the GL thread always draws the latest finished one while the next one is being recorded, so neither thread waits for the other.
+ * <p>
+ * The scene graph belongs to this thread while it's running. Mutations should go through {@link Scene#queueEvent(Runnable)}, same as before. The objects that can't be recorded
+ * are drawn directly on the GL thread while holding {@link #getLock()}.
+ * </p>
+ * 
+ * @author long
+ * @see BaseScene#setSimulationThreaded(boolean)
+ */
+public class SimulationThread extends Thread {
+    private static final String TAG = SimulationThread.class.getSimpleName();
+
+    private final BaseScene mScene;
+    private final Object mLock = new Object();
+
+    // events
+    private ArrayList<Runnable> mEvents = new ArrayList<Runnable>();
+    private ArrayList<Runnable> mRunningEvents = new ArrayList<Runnable>();
+
+    // snapshots
+    private final Object mSwapLock = new Object();
+    private RenderSnapshot mWritingSnapshot;
+    private RenderSnapshot mReadySnapshot;
+    private RenderSnapshot mReadingSnapshot;
+    private boolean mHasNewSnapshot = false;
+
+    private volatile boolean mRunning = true;
+    private long mFrame = 0;
+    private volatile long mSimulationTime = 0;
+    private final FrameScheduler mScheduler = new FrameScheduler();
+
+    public SimulationThread(final BaseScene scene, final GLState glState) {
+        super(TAG);
+
+        mScene = scene;
+
+        // same stepping as the scene, but always paced
+        mScheduler.copy(scene.getFrameScheduler());
+        if (mScheduler.getTargetFps() <= 0) {
+            mScheduler.setTargetFps(Scene.DEFAULT_FPS);
+        }
+        mWritingSnapshot = new RenderSnapshot(glState);
+        mReadySnapshot = new RenderSnapshot(glState);
+        mReadingSnapshot = new RenderSnapshot(glState);
+    }
+
+    @Override
+    public void run() {
+        final FrameScheduler scheduler = mScheduler;
+        scheduler.reset();
+
+        while (mRunning) {
+            // wait for the next frame
+            scheduler.tick();
+            final long startTime = System.nanoTime();
+
+            // mutations first
+            runEvents();
+
+            synchronized (mLock) {
+                if (!mScene.isPaused()) {
+                    mScene.simulate(scheduler);
+                }
+
+                mWritingSnapshot.reset();
+                mScene.record(mWritingSnapshot);
+            }
+
+            mSimulationTime = System.nanoTime() - startTime;
+            mWritingSnapshot.finish(++mFrame, mSimulationTime);
+            publish();
+        }
+
+        // hand the remaining events back to the scene
+        synchronized (mEvents) {
+            final int size = mEvents.size();
+            for (int i = 0; i < size; i++) {
+                mScene.queueEvent(mEvents.get(i));
+            }
+            mEvents.clear();
+        }
+
+        Log.v(TAG, "Quit after " + mFrame + " frames");
+    }
+
+    private void runEvents() {
+        synchronized (mEvents) {
+            if (mEvents.isEmpty()) {
+                return;
+            }
+
+            // swap the lists
+            final ArrayList<Runnable> events = mRunningEvents;
+            mRunningEvents = mEvents;
+            mEvents = events;
+        }
+
+        final int size = mRunningEvents.size();
+        synchronized (mLock) {
+            for (int i = 0; i < size; i++) {
+                mRunningEvents.get(i).run();
+            }
+        }
+        mRunningEvents.clear();
+    }
+
+    private void publish() {
+        synchronized (mSwapLock) {
+            final RenderSnapshot snapshot = mReadySnapshot;
+            mReadySnapshot = mWritingSnapshot;
+            mWritingSnapshot = snapshot;
+            mHasNewSnapshot = true;
+        }
+    }
+
+    /**
+     * Take the latest snapshot for drawing, on the GL thread
+     * 
+     * @return true if there is a new snapshot since the last call
+     * @see #getSnapshot()
+     */
+    public boolean acquireSnapshot() {
+        synchronized (mSwapLock) {
+            if (!mHasNewSnapshot) {
+                return false;
+            }
+
+            final RenderSnapshot snapshot = mReadingSnapshot;
+            mReadingSnapshot = mReadySnapshot;
+            mReadySnapshot = snapshot;
+            mHasNewSnapshot = false;
+
+            return true;
+        }
+    }
+
+    /**
+     * @return the snapshot being drawn, null if nothing has been recorded yet
+     */
+    public RenderSnapshot getSnapshot() {
+        return mReadingSnapshot.getFrame() > 0 ? mReadingSnapshot : null;
+    }
+
+    /**
+     * Queue an event to run on this thread before the next step
+     * 
+     * @param r
+     */
+    public void queueEvent(final Runnable r) {
+        synchronized (mEvents) {
+            mEvents.add(r);
+        }
+    }
+
+    /**
+     * Stop the thread and wait for it, unless called from this thread. The events left are queued back to the scene.
+     */
+    public void quit() {
+        mRunning = false;
+        interrupt();
+
+        if (Thread.currentThread() != this) {
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Log.w(TAG, "quit()", e);
+            }
+        }
+    }
+
+    /**
+     * @return the lock held while the scene is being updated and recorded
+     */
+    public Object getLock() {
+        return mLock;
+    }
+
+    /**
+     * @return the time spent on the last step, in ns
+     */
+    public long getSimulationTime() {
+        return mSimulationTime;
+    }
+
+    public long getFrame() {
+        return mFrame;
+    }
+}
@@ -25,6 +25,7 @@
 package com.funzio.pure2D.animators;
 
 import com.funzio.pure2D.Manipulatable;
+import com.funzio.pure2D.utils.UpdateScheduler;
 
 /**
  * @author long
@@ -48,6 +49,7 @@ public class BaseAnimator implements Animator {
     protected boolean mRunning = false;
     protected boolean mLifeEnded = false;
     private boolean mStartDelayPassed = false;
+    private Runnable mEndCallback;
 
     @Override
     public void reset(final Object... params) {
@@ -168,8 +170,28 @@ public class BaseAnimator implements Animator {
         mRunning = false;
 
         if (mListener != null) {
-            mListener.onAnimationEnd(this);
+            if (UpdateScheduler.isDeferring()) {
+                // updating in parallel, call back after that
+                UpdateScheduler.defer(getEndCallback());
+            } else {
+                mListener.onAnimationEnd(this);
+            }
+        }
+    }
+
+    private Runnable getEndCallback() {
+        if (mEndCallback == null) {
+            mEndCallback = new Runnable() {
+                @Override
+                public void run() {
+                    if (mListener != null) {
+                        mListener.onAnimationEnd(BaseAnimator.this);
+                    }
+                }
+            };
         }
+
+        return mEndCallback;
     }
 
     public boolean isRunning() {
@@ -27,6 +27,7 @@ package com.funzio.pure2D.animators;
 import java.util.ArrayList;
 
 import com.funzio.pure2D.Manipulatable;
+import com.funzio.pure2D.utils.UpdateScheduler;
 
 /**
  * @author long
@@ -43,6 +44,7 @@ public class Timeline implements Manipulator {
 
     protected int mLifespan = 0; // <=0 ~ unlimited
     protected Listener mListener;
+    private Runnable mCompleteCallback;
 
     public Timeline(final int lifespan, final Listener listener) {
         mLifespan = lifespan;
@@ -73,10 +75,8 @@ public class Timeline implements Manipulator {
 
             // has duration? check it
             if (mLifespan > 0 && mElapsedTime >= mLifespan) {
-                if (mListener != null) {
-                    // callback
-                    mListener.onTimelineComplete(this);
-                }
+                // callback
+                dispatchComplete();
             }
 
             return true;
@@ -200,10 +200,30 @@ public class Timeline implements Manipulator {
     protected void onActionEnd(final Action action) {
         if (++mNumEndedActions == mNumActions && mLifespan <= 0) {
             // complete!
-            if (mListener != null) {
-                // callback
-                mListener.onTimelineComplete(this);
+            dispatchComplete();
+        }
+    }
+
+    private void dispatchComplete() {
+        if (mListener == null) {
+            return;
+        }
+
+        if (UpdateScheduler.isDeferring()) {
+            // updating in parallel, call back after that
+            if (mCompleteCallback == null) {
+                mCompleteCallback = new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mListener != null) {
+                            mListener.onTimelineComplete(Timeline.this);
+                        }
+                    }
+                };
             }
+            UpdateScheduler.defer(mCompleteCallback);
+        } else {
+            mListener.onTimelineComplete(this);
         }
     }
 
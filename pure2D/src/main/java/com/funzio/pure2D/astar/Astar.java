@@ -29,19 +29,28 @@ import java.util.PriorityQueue;
 import android.graphics.Point;
 import android.util.Log;
 
-import com.funzio.pure2D.utils.ObjectPool;
+import com.funzio.pure2D.utils.Pool;
+import com.funzio.pure2D.utils.StackPool;
 
 /**
  * @author long.ngo
  */
-public class Astar {
+public class Astar implements PathFinder {
 
     public static boolean LOG_ENABLED = true;
     private static final String TAG = Astar.class.getSimpleName();
 
+    private static final Pool.Factory<AstarNode> NODE_FACTORY = new Pool.Factory<AstarNode>() {
+        public AstarNode create() {
+            return new AstarNode(0, 0);
+        }
+    };
+
     protected AstarAdapter mAdapter;
-    protected ObjectPool<AstarNode> mNodePool;
+    protected StackPool<AstarNode> mNodePool;
     protected boolean mClosedNodeRevision;
+    // per instance, on top of LOG_ENABLED
+    protected boolean mLogEnabled = true;
 
     public Astar(final AstarAdapter adapter) {
         this(adapter, 0, false);
@@ -49,7 +58,7 @@ public class Astar {
 
     public Astar(final AstarAdapter adapter, final int nodePoolSize, final boolean closedNodeRevision) {
         mAdapter = adapter;
-        mNodePool = new ObjectPool<AstarNode>(nodePoolSize);
+        mNodePool = new StackPool<AstarNode>(nodePoolSize);
         mClosedNodeRevision = closedNodeRevision;
     }
 
@@ -57,6 +66,23 @@ public class Astar {
         mNodePool.setMaxSize(nodePoolSize);
     }
 
+    /**
+     * Fill the node pool ahead of time to avoid allocations on the first searches
+     * 
+     * @param numNodes
+     * @return number of nodes added
+     */
+    public int prewarmNodePool(final int numNodes) {
+        return mNodePool.prewarm(numNodes, NODE_FACTORY);
+    }
+
+    /**
+     * @return the node pool for stats
+     */
+    public StackPool<AstarNode> getNodePool() {
+        return mNodePool;
+    }
+
     /**
      * Find a path between 2 nodes
      * 
@@ -81,7 +107,7 @@ public class Astar {
      * @return
      */
     public List<AstarNode> findPath(final AstarNode start, final AstarNode end, final int maxCost, final boolean compressPath, final List<AstarNode> closedNodes, final List<AstarNode> openNodes) {
-        if (LOG_ENABLED) {
+        if (LOG_ENABLED && mLogEnabled) {
             Log.v(TAG, "findPath(): " + start + ", " + end);
         }
 
@@ -180,7 +206,7 @@ public class Astar {
     }
 
     public AstarNodeSet findPosibleNodes(final AstarNode start, final AstarNode end, final int maxCost, final List<AstarNode> closedNodes, final List<AstarNode> openNodes) {
-        if (LOG_ENABLED) {
+        if (LOG_ENABLED && mLogEnabled) {
             Log.v(TAG, "findRegion(): " + start + ", " + end);
         }
 
@@ -303,7 +329,7 @@ public class Astar {
             } while (node != null);
         }
 
-        if (LOG_ENABLED) {
+        if (LOG_ENABLED && mLogEnabled) {
             Log.v(TAG, "extractPath(): " + fromNode + " -> " + path.size() + " nodes");
         }
 
@@ -365,7 +391,7 @@ public class Astar {
             }
         }
 
-        if (LOG_ENABLED) {
+        if (LOG_ENABLED && mLogEnabled) {
             Log.v(TAG, "recycleNodes(): " + i + " / " + size + ", available: " + mNodePool.size());
         }
 
@@ -387,7 +413,7 @@ public class Astar {
             }
         }
 
-        if (LOG_ENABLED) {
+        if (LOG_ENABLED && mLogEnabled) {
             Log.v(TAG, "recycleNodes(): " + i + " / " + size + ", available: " + mNodePool.size());
         }
 
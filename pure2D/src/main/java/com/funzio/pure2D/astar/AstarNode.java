@@ -69,11 +69,21 @@ public class AstarNode extends Point implements Reusable {
     @Override
     public void reset(final Object... params) {
         if (params.length >= 2) {
-            x = (Integer) params[0];
-            y = (Integer) params[1];
+            reset((Integer) params[0], (Integer) params[1]);
         } else {
-            x = y = 0;
+            reset(0, 0);
         }
+    }
+
+    /**
+     * Same as {@link #reset(Object...)} without the boxing
+     * 
+     * @param x
+     * @param y
+     */
+    public void reset(final int x, final int y) {
+        this.x = x;
+        this.y = y;
 
         h = 0;
         g = 1;
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.astar;
+
+import java.util.Arrays;
+
+/**
+ * @author long
+ * @category An indexed binary min-heap of cell indices with int priorities, supporting decrease-key. Allocation-free once sized.
+ */
+final class CellHeap {
+    private static final int NONE = -1;
+
+    private int[] mKeys;
+    private int[] mHeap;
+    private int[] mIndices;
+    private int mSize;
+
+    public CellHeap(final int numCells) {
+        setNumCells(numCells);
+    }
+
+    public void setNumCells(final int numCells) {
+        mKeys = new int[numCells];
+        mHeap = new int[numCells];
+        mIndices = new int[numCells];
+        Arrays.fill(mIndices, NONE);
+        mSize = 0;
+    }
+
+    public void clear() {
+        // only the cells in the heap need resetting
+        for (int i = 0; i < mSize; i++) {
+            mIndices[mHeap[i]] = NONE;
+        }
+        mSize = 0;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @param cell
+     * @return true if the cell is in the heap
+     */
+    public boolean contains(final int cell) {
+        return mIndices[cell] != NONE;
+    }
+
+    public int getKey(final int cell) {
+        return mKeys[cell];
+    }
+
+    public void push(final int cell, final int key) {
+        mKeys[cell] = key;
+        mHeap[mSize] = cell;
+        mIndices[cell] = mSize;
+        siftUp(mSize++);
+    }
+
+    /**
+     * Push or lower the key of a cell
+     */
+    public void pushOrDecrease(final int cell, final int key) {
+        if (mIndices[cell] == NONE) {
+            push(cell, key);
+        } else if (key < mKeys[cell]) {
+            mKeys[cell] = key;
+            siftUp(mIndices[cell]);
+        }
+    }
+
+    public void decrease(final int cell, final int key) {
+        mKeys[cell] = key;
+        siftUp(mIndices[cell]);
+    }
+
+    public int poll() {
+        final int cell = mHeap[0];
+        mIndices[cell] = NONE;
+        if (--mSize > 0) {
+            mHeap[0] = mHeap[mSize];
+            mIndices[mHeap[0]] = 0;
+            siftDown(0);
+        }
+
+        return cell;
+    }
+
+    private void siftUp(int index) {
+        final int cell = mHeap[index];
+        final int key = mKeys[cell];
+        while (index > 0) {
+            final int parentIndex = (index - 1) >> 1;
+            final int parent = mHeap[parentIndex];
+            if (mKeys[parent] <= key) {
+                break;
+            }
+
+            mHeap[index] = parent;
+            mIndices[parent] = index;
+            index = parentIndex;
+        }
+
+        mHeap[index] = cell;
+        mIndices[cell] = index;
+    }
+
+    private void siftDown(int index) {
+        final int cell = mHeap[index];
+        final int key = mKeys[cell];
+        final int half = mSize >> 1;
+        while (index < half) {
+            int childIndex = (index << 1) + 1;
+            int child = mHeap[childIndex];
+            final int rightIndex = childIndex + 1;
+            if (rightIndex < mSize && mKeys[mHeap[rightIndex]] < mKeys[child]) {
+                childIndex = rightIndex;
+                child = mHeap[childIndex];
+            }
+            if (key <= mKeys[child]) {
+                break;
+            }
+
+            mHeap[index] = child;
+            mIndices[child] = index;
+            index = childIndex;
+        }
+
+        mHeap[index] = cell;
+        mIndices[cell] = index;
+    }
+}
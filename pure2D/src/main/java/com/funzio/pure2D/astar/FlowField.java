@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.astar;
+
+import java.util.Arrays;
+
+import android.graphics.Point;
+
+import com.funzio.pure2D.grid.AbstractGrid;
+import com.funzio.pure2D.grid.HexGrid;
+import com.funzio.pure2D.grid.RectGrid;
+
+/**
+ * @author long
+ * @category A flow field for many agents going to the same goals. A Dijkstra pass from all the goals builds the integration field (the cost to the nearest goal) and points each cell to its
+ *           best neighbor, so any agent can read its next step in O(1) instead of running its own search. Works on {@link RectGrid} and {@link HexGrid} via {@link RectGridAstarAdapter} and
+ *           {@link HexGridAstarAdapter}, costs are expected to be symmetric.
+ *           <p>
+ *           Walkability changes are repaired incrementally by {@link #update()}: a blocked cell invalidates only the cells flowing through it, a freed cell only spreads the shorter costs.
+ *           When constructed with an {@link AbstractGrid}, changes made via {@link AbstractGrid#setDataAt(int, int, Object)} are queued and picked up by the next {@link #update()}, which can run on another thread, otherwise call
+ *           {@link #invalidateCell(int, int)}.
+ *           </p>
+ */
+public class FlowField implements AbstractGrid.Listener {
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int NONE = -1;
+
+    protected final GridAstarAdapter mAdapter;
+    protected AbstractGrid<?> mGrid;
+
+    private int mWidth;
+    private int mHeight;
+
+    // the integration field and the flow
+    private int[] mDistances;
+    private int[] mNext;
+    private CellHeap mHeap;
+
+    private int[] mGoals = new int[4];
+    private int mNumGoals = 0;
+
+    // pending changes
+    private int[] mChangedCells = new int[16];
+    private int mNumChanged = 0;
+    private boolean mDirty = true;
+
+    // grid changes, queued by the grid's thread and applied by the searching thread
+    private final Object mPendingLock = new Object();
+    private int[] mPendingCells = new int[16]; // x, y pairs
+    private int mNumPendingCells = 0;
+
+    // scratch
+    private final int[] mNeighbors;
+    private final int[] mCosts;
+    private int[] mQueue;
+    private boolean[] mMarks;
+
+    public FlowField(final GridAstarAdapter adapter, final AbstractGrid<?> grid) {
+        this(adapter, grid.getSize().x, grid.getSize().y);
+
+        mGrid = grid;
+        mGrid.addListener(this);
+    }
+
+    public FlowField(final GridAstarAdapter adapter, final int width, final int height) {
+        mAdapter = adapter;
+        mNeighbors = new int[adapter.getMaxNeighbors() * 2];
+        mCosts = new int[adapter.getMaxNeighbors()];
+
+        setSize(width, height);
+    }
+
+    public void setSize(final int width, final int height) {
+        mWidth = width;
+        mHeight = height;
+
+        final int numCells = width * height;
+        mDistances = new int[numCells];
+        mNext = new int[numCells];
+        mHeap = new CellHeap(numCells);
+        mQueue = new int[numCells];
+        mMarks = new boolean[numCells];
+        Arrays.fill(mDistances, UNREACHABLE);
+        Arrays.fill(mNext, NONE);
+
+        mNumChanged = 0;
+        mDirty = true;
+    }
+
+    /**
+     * Replace the goals with a single one
+     * 
+     * @param cellX
+     * @param cellY
+     */
+    public void setGoal(final int cellX, final int cellY) {
+        clearGoals();
+        addGoal(cellX, cellY);
+    }
+
+    public void addGoal(final int cellX, final int cellY) {
+        if (cellX < 0 || cellX >= mWidth || cellY < 0 || cellY >= mHeight) {
+            return;
+        }
+
+        if (mNumGoals == mGoals.length) {
+            mGoals = Arrays.copyOf(mGoals, mNumGoals * 2);
+        }
+        mGoals[mNumGoals++] = cellY * mWidth + cellX;
+        mDirty = true;
+    }
+
+    public void clearGoals() {
+        mNumGoals = 0;
+        mDirty = true;
+    }
+
+    public int getNumGoals() {
+        return mNumGoals;
+    }
+
+    /**
+     * Mark a cell as changed, to be repaired on the next {@link #update()}. This is called automatically for changes made on the grid.
+     * 
+     * @param cellX
+     * @param cellY
+     */
+    public void invalidateCell(final int cellX, final int cellY) {
+        if (cellX < 0 || cellX >= mWidth || cellY < 0 || cellY >= mHeight) {
+            return;
+        }
+
+        if (mNumChanged == mChangedCells.length) {
+            mChangedCells = Arrays.copyOf(mChangedCells, mNumChanged * 2);
+        }
+        mChangedCells[mNumChanged++] = cellY * mWidth + cellX;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.grid.AbstractGrid.Listener#onCellChanged(com.funzio.pure2D.grid.AbstractGrid, int, int)
+     */
+    @Override
+    public void onCellChanged(final AbstractGrid<?> grid, final int cellX, final int cellY) {
+        synchronized (mPendingLock) {
+            if (mNumPendingCells + 2 > mPendingCells.length) {
+                mPendingCells = Arrays.copyOf(mPendingCells, mPendingCells.length * 2);
+            }
+            mPendingCells[mNumPendingCells++] = cellX;
+            mPendingCells[mNumPendingCells++] = cellY;
+        }
+    }
+
+    private void applyPendingCells() {
+        synchronized (mPendingLock) {
+            for (int i = 0; i < mNumPendingCells; i += 2) {
+                invalidateCell(mPendingCells[i], mPendingCells[i + 1]);
+            }
+            mNumPendingCells = 0;
+        }
+    }
+
+    /**
+     * Bring the field up to date: a full pass after the goals or size changed, otherwise an incremental repair of the changed cells
+     * 
+     * @return true if anything was recomputed
+     */
+    public boolean update() {
+        applyPendingCells();
+
+        if (mGrid != null) {
+            final Point size = mGrid.getSize();
+            if (size != null && (size.x != mWidth || size.y != mHeight)) {
+                setSize(size.x, size.y);
+            }
+        }
+
+        if (mDirty) {
+            compute();
+            return true;
+        } else if (mNumChanged > 0) {
+            repair();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Full recompute from the goals
+     */
+    public void compute() {
+        Arrays.fill(mDistances, UNREACHABLE);
+        Arrays.fill(mNext, NONE);
+
+        mHeap.clear();
+        for (int i = 0; i < mNumGoals; i++) {
+            final int goal = mGoals[i];
+            if (mAdapter.isWalkable(goal % mWidth, goal / mWidth)) {
+                mDistances[goal] = 0;
+                mHeap.pushOrDecrease(goal, 0);
+            }
+        }
+        propagate();
+
+        mNumChanged = 0;
+        mDirty = false;
+    }
+
+    /**
+     * Repair around the changed cells. Only the cells next to a change can have their moves changed, such as diagonals around a corner, and on both stock grids they are within the 3x3 block
+     * around it.
+     */
+    private void repair() {
+        int numRaised = 0;
+
+        // blocked cells and broken moves first: invalidate everything flowing through them
+        for (int i = 0; i < mNumChanged; i++) {
+            final int cell = mChangedCells[i];
+            final int cellX = cell % mWidth;
+            final int cellY = cell / mWidth;
+            if (!mAdapter.isWalkable(cellX, cellY) && !mMarks[cell]) {
+                numRaised = raise(cell, numRaised);
+            }
+
+            for (int y = Math.max(0, cellY - 1); y <= Math.min(mHeight - 1, cellY + 1); y++) {
+                for (int x = Math.max(0, cellX - 1); x <= Math.min(mWidth - 1, cellX + 1); x++) {
+                    final int other = y * mWidth + x;
+                    if (!mMarks[other] && mNext[other] != NONE && !isNeighbor(x, y, mNext[other])) {
+                        numRaised = raise(other, numRaised);
+                    }
+                }
+            }
+        }
+
+        // then reseed the raised cells and the blocks around the changes from their valid neighbors
+        mHeap.clear();
+        for (int i = 0; i < numRaised; i++) {
+            final int cell = mQueue[i];
+            mMarks[cell] = false;
+            seed(cell);
+        }
+        for (int i = 0; i < mNumChanged; i++) {
+            final int cell = mChangedCells[i];
+            final int cellX = cell % mWidth;
+            final int cellY = cell / mWidth;
+            for (int y = Math.max(0, cellY - 1); y <= Math.min(mHeight - 1, cellY + 1); y++) {
+                for (int x = Math.max(0, cellX - 1); x <= Math.min(mWidth - 1, cellX + 1); x++) {
+                    seed(y * mWidth + x);
+                }
+            }
+        }
+        propagate();
+
+        mNumChanged = 0;
+    }
+
+    /**
+     * Invalidate a cell and all the cells flowing through it, collected into {@link #mQueue} from index start
+     * 
+     * @return the new number of cells in the queue
+     */
+    private int raise(final int root, final int start) {
+        int head = start, tail = start;
+        mQueue[tail++] = root;
+        mMarks[root] = true;
+        while (head < tail) {
+            final int cell = mQueue[head++];
+            mDistances[cell] = UNREACHABLE;
+            mNext[cell] = NONE;
+
+            // the neighbors pointing to this cell
+            final int numNeighbors = mAdapter.getNeighbors(cell % mWidth, cell / mWidth, mNeighbors, mCosts);
+            for (int i = 0; i < numNeighbors; i++) {
+                final int neighbor = mNeighbors[i * 2 + 1] * mWidth + mNeighbors[i * 2];
+                if (!mMarks[neighbor] && mNext[neighbor] == cell) {
+                    mMarks[neighbor] = true;
+                    mQueue[tail++] = neighbor;
+                }
+            }
+        }
+
+        return tail;
+    }
+
+    /**
+     * Pick the best value for a cell from its neighbors and queue it
+     */
+    private void seed(final int cell) {
+        final int cellX = cell % mWidth;
+        final int cellY = cell / mWidth;
+        if (!mAdapter.isWalkable(cellX, cellY)) {
+            mDistances[cell] = UNREACHABLE;
+            mNext[cell] = NONE;
+            return;
+        }
+
+        if (isGoal(cell)) {
+            mDistances[cell] = 0;
+            mNext[cell] = NONE;
+            mHeap.pushOrDecrease(cell, 0);
+            return;
+        }
+
+        final int numNeighbors = mAdapter.getNeighbors(cellX, cellY, mNeighbors, mCosts);
+        for (int i = 0; i < numNeighbors; i++) {
+            final int neighbor = mNeighbors[i * 2 + 1] * mWidth + mNeighbors[i * 2];
+            if (mDistances[neighbor] != UNREACHABLE && mDistances[neighbor] + mCosts[i] < mDistances[cell]) {
+                mDistances[cell] = mDistances[neighbor] + mCosts[i];
+                mNext[cell] = neighbor;
+            }
+        }
+
+        if (mDistances[cell] != UNREACHABLE) {
+            mHeap.pushOrDecrease(cell, mDistances[cell]);
+        }
+    }
+
+    /**
+     * Dijkstra from the queued cells, only lowering the distances
+     */
+    private void propagate() {
+        while (!mHeap.isEmpty()) {
+            final int cell = mHeap.poll();
+            final int distance = mDistances[cell];
+            final int numNeighbors = mAdapter.getNeighbors(cell % mWidth, cell / mWidth, mNeighbors, mCosts);
+            for (int i = 0; i < numNeighbors; i++) {
+                final int neighbor = mNeighbors[i * 2 + 1] * mWidth + mNeighbors[i * 2];
+                final int newDistance = distance + mCosts[i];
+                if (newDistance < mDistances[neighbor]) {
+                    mDistances[neighbor] = newDistance;
+                    mNext[neighbor] = cell;
+                    mHeap.pushOrDecrease(neighbor, newDistance);
+                }
+            }
+        }
+    }
+
+    private boolean isNeighbor(final int cellX, final int cellY, final int neighbor) {
+        final int numNeighbors = mAdapter.getNeighbors(cellX, cellY, mNeighbors, mCosts);
+        for (int i = 0; i < numNeighbors; i++) {
+            if (mNeighbors[i * 2 + 1] * mWidth + mNeighbors[i * 2] == neighbor) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isGoal(final int cell) {
+        for (int i = 0; i < mNumGoals; i++) {
+            if (mGoals[i] == cell) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param cellX
+     * @param cellY
+     * @return the cost to the nearest goal, or {@link #UNREACHABLE}
+     */
+    public int getDistance(final int cellX, final int cellY) {
+        if (cellX < 0 || cellX >= mWidth || cellY < 0 || cellY >= mHeight) {
+            return UNREACHABLE;
+        }
+
+        return mDistances[cellY * mWidth + cellX];
+    }
+
+    /**
+     * @param cellX
+     * @param cellY
+     * @return the index (y * width + x) of the next cell towards the nearest goal, or -1 for goals and unreachable cells
+     */
+    public int getNextCell(final int cellX, final int cellY) {
+        if (cellX < 0 || cellX >= mWidth || cellY < 0 || cellY >= mHeight) {
+            return NONE;
+        }
+
+        return mNext[cellY * mWidth + cellX];
+    }
+
+    /**
+     * Get the next cell towards the nearest goal
+     * 
+     * @param cellX
+     * @param cellY
+     * @param next the next cell
+     * @return false for goals and unreachable cells
+     */
+    public boolean getNext(final int cellX, final int cellY, final Point next) {
+        final int cell = getNextCell(cellX, cellY);
+        if (cell == NONE) {
+            return false;
+        }
+
+        next.x = cell % mWidth;
+        next.y = cell / mWidth;
+        return true;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public void dispose() {
+        if (mGrid != null) {
+            mGrid.removeListener(this);
+            mGrid = null;
+        }
+    }
+}
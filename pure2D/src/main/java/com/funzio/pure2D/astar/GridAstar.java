@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author long
+ * @category A grid-specialized A*. Instead of node objects and sets, the search state lives in flat int arrays indexed by cell (y * width + x), with an indexed binary heap supporting
+ *           decrease-key for the open list. A generation counter marks which cells belong to the current search, so nothing needs clearing in between. Once the arrays are sized, a query
+ *           via {@link #findPath(int, int, int, int, int)} allocates nothing.
+ */
+public class GridAstar implements SlicedPathFinder {
+    private static final int NONE = -1;
+
+    protected GridAstarAdapter mAdapter;
+    protected int mWidth;
+    protected int mHeight;
+
+    // per cell, valid only when mGenerations[cell] == mGeneration
+    private int[] mGenerations;
+    protected int[] mG;
+    protected int[] mParents;
+    private int mGeneration = 0;
+
+    // the open list, by F. Visited cells not in it are closed.
+    private CellHeap mOpenHeap;
+
+    // neighbor buffers
+    protected int[] mNeighbors;
+    protected int[] mCosts;
+
+    // result, x,y pairs from start to end
+    protected int[] mPath = new int[64];
+    protected int mPathLength;
+    protected int mPathCost;
+    protected int mNumExpanded;
+
+    // the current search, see beginPath()
+    private boolean mSearching = false;
+    private int mEndX;
+    private int mEndY;
+    private int mMaxCost;
+    private AstarNode mSearchStart;
+    private boolean mCompressPath;
+
+    public GridAstar(final GridAstarAdapter adapter, final int width, final int height) {
+        mAdapter = adapter;
+        mNeighbors = new int[adapter.getMaxNeighbors() * 2];
+        mCosts = new int[adapter.getMaxNeighbors()];
+
+        setSize(width, height);
+    }
+
+    public void setSize(final int width, final int height) {
+        mWidth = width;
+        mHeight = height;
+
+        final int numCells = width * height;
+        mGenerations = new int[numCells];
+        mG = new int[numCells];
+        mParents = new int[numCells];
+        mOpenHeap = new CellHeap(numCells);
+        mGeneration = 0;
+    }
+
+    public GridAstarAdapter getAdapter() {
+        return mAdapter;
+    }
+
+    /**
+     * Find a path between 2 cells
+     * 
+     * @param startX
+     * @param startY
+     * @param endX
+     * @param endY
+     * @param maxCost the max path cost in the adapter's units, 0 for unlimited
+     * @return the number of cells in the path including start and end, 0 if there is no path. The cells can be read via {@link #getPathX(int)} and {@link #getPathY(int)}
+     */
+    public int findPath(final int startX, final int startY, final int endX, final int endY, final int maxCost) {
+        if (beginPath(startX, startY, endX, endY, maxCost)) {
+            stepPath(Integer.MAX_VALUE);
+        }
+
+        return mPathLength;
+    }
+
+    /**
+     * Start a search between 2 cells, to be continued by {@link #stepPath(int)}
+     * 
+     * @param startX
+     * @param startY
+     * @param endX
+     * @param endY
+     * @param maxCost the max path cost in the adapter's units, 0 for unlimited
+     * @return false if a cell is out of the grid
+     */
+    public boolean beginPath(final int startX, final int startY, final int endX, final int endY, final int maxCost) {
+        mPathLength = 0;
+        mPathCost = 0;
+        mNumExpanded = 0;
+        mSearching = false;
+        if (startX < 0 || startX >= mWidth || startY < 0 || startY >= mHeight || endX < 0 || endX >= mWidth || endY < 0 || endY >= mHeight) {
+            return false;
+        }
+
+        nextGeneration();
+        mOpenHeap.clear();
+
+        mEndX = endX;
+        mEndY = endY;
+        mMaxCost = maxCost;
+        open(startY * mWidth + startX, NONE, 0, mAdapter.getHeuristic(startX, startY, endX, endY));
+        mSearching = true;
+
+        return true;
+    }
+
+    /**
+     * Continue the search started by {@link #beginPath(int, int, int, int, int)}
+     * 
+     * @param maxIterations the max number of cells to expand in this call
+     * @return true if the search is done. {@link #getPathLength()} is 0 if there is no path.
+     * @see com.funzio.pure2D.astar.SlicedPathFinder#stepPath(int)
+     */
+    public boolean stepPath(final int maxIterations) {
+        final int endX = mEndX;
+        final int endY = mEndY;
+        final int maxCost = mMaxCost;
+        final int endCell = endY * mWidth + endX;
+
+        int iterations = 0;
+        while (mSearching && !mOpenHeap.isEmpty()) {
+            if (iterations++ >= maxIterations) {
+                // to be continued
+                return false;
+            }
+
+            final int cell = mOpenHeap.poll();
+            if (cell == endCell) {
+                mSearching = false;
+                mPathCost = mG[cell];
+                buildPath(cell);
+                return true;
+            }
+
+            mNumExpanded++;
+            final int cellX = cell % mWidth;
+            final int cellY = cell / mWidth;
+            final int numNeighbors = getSuccessors(cellX, cellY, mParents[cell], endX, endY);
+            for (int i = 0; i < numNeighbors; i++) {
+                final int x = mNeighbors[i * 2];
+                final int y = mNeighbors[i * 2 + 1];
+                final int g = mG[cell] + mCosts[i];
+
+                // check the cost
+                if (maxCost > 0 && g > maxCost) {
+                    continue;
+                }
+
+                final int neighbor = y * mWidth + x;
+                if (mGenerations[neighbor] != mGeneration) {
+                    // new cell
+                    open(neighbor, cell, g, g + mAdapter.getHeuristic(x, y, endX, endY));
+                } else if (g < mG[neighbor] && mOpenHeap.contains(neighbor)) {
+                    // shorter way to an open cell, decrease key
+                    mOpenHeap.decrease(neighbor, mOpenHeap.getKey(neighbor) - (mG[neighbor] - g));
+                    mG[neighbor] = g;
+                    mParents[neighbor] = cell;
+                }
+            }
+        }
+
+        // no path
+        mSearching = false;
+        return true;
+    }
+
+    /**
+     * Fetch the successors of a cell into {@link #mNeighbors} and {@link #mCosts}. Subclasses can prune or jump here.
+     * 
+     * @param cellX
+     * @param cellY
+     * @param parentCell the cell index of the parent, or -1 for the start
+     * @param endX
+     * @param endY
+     * @return number of successors
+     */
+    protected int getSuccessors(final int cellX, final int cellY, final int parentCell, final int endX, final int endY) {
+        return mAdapter.getNeighbors(cellX, cellY, mNeighbors, mCosts);
+    }
+
+    /**
+     * Walk the parents back from the end cell into {@link #mPath}
+     * 
+     * @param endCell
+     * @return number of cells
+     */
+    protected int buildPath(final int endCell) {
+        int count = 0;
+        for (int cell = endCell; cell != NONE; cell = mParents[cell]) {
+            count++;
+        }
+        ensurePathCapacity(count);
+
+        int i = count;
+        for (int cell = endCell; cell != NONE; cell = mParents[cell]) {
+            i--;
+            mPath[i * 2] = cell % mWidth;
+            mPath[i * 2 + 1] = cell / mWidth;
+        }
+
+        mPathLength = count;
+        return count;
+    }
+
+    protected void ensurePathCapacity(final int numCells) {
+        if (mPath.length < numCells * 2) {
+            mPath = new int[Math.max(numCells * 2, mPath.length * 2)];
+        }
+    }
+
+    /**
+     * Same contract as {@link Astar#findPath(AstarNode, AstarNode, int, boolean)} for existing call sites. This one allocates the result.
+     * 
+     * @param start
+     * @param end
+     * @param maxCost
+     * @param compressPath
+     * @return the path, or null if not found
+     */
+    public List<AstarNode> findPath(final AstarNode start, final AstarNode end, final int maxCost, final boolean compressPath) {
+        final int length = findPath(start.x, start.y, end.x, end.y, maxCost);
+        return length == 0 ? null : createPath(start, length, compressPath);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.astar.SlicedPathFinder#beginPath(com.funzio.pure2D.astar.AstarNode, com.funzio.pure2D.astar.AstarNode, int, boolean)
+     */
+    public boolean beginPath(final AstarNode start, final AstarNode end, final int maxCost, final boolean compressPath) {
+        mSearchStart = start;
+        mCompressPath = compressPath;
+
+        return beginPath(start.x, start.y, end.x, end.y, maxCost);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.astar.SlicedPathFinder#getPath()
+     */
+    public List<AstarNode> getPath() {
+        return mPathLength == 0 || mSearchStart == null ? null : createPath(mSearchStart, mPathLength, mCompressPath);
+    }
+
+    private List<AstarNode> createPath(final AstarNode start, final int length, final boolean compressPath) {
+        final ArrayList<AstarNode> path = new ArrayList<AstarNode>(compressPath ? 8 : length);
+        start.parent = null;
+        path.add(start);
+
+        AstarNode lastNode = start;
+        int lastVectorX = 0, lastVectorY = 0;
+        for (int i = 1; i < length; i++) {
+            final int x = mPath[i * 2];
+            final int y = mPath[i * 2 + 1];
+            final int vectorX = x - mPath[i * 2 - 2];
+            final int vectorY = y - mPath[i * 2 - 1];
+            if (compressPath && i > 1 && vectorX == lastVectorX && vectorY == lastVectorY) {
+                // same line, move the last node
+                final AstarNode parent = lastNode.parent;
+                lastNode.reset(x, y);
+                lastNode.parent = parent;
+            } else {
+                final AstarNode node = new AstarNode(x, y);
+                node.parent = lastNode;
+                path.add(node);
+                lastNode = node;
+            }
+
+            lastVectorX = vectorX;
+            lastVectorY = vectorY;
+        }
+        lastNode.g = mPathCost;
+
+        return path;
+    }
+
+    /**
+     * Nodes are not pooled here, the search itself doesn't use any
+     * 
+     * @see com.funzio.pure2D.astar.PathFinder#createNode(int, int)
+     */
+    public AstarNode createNode(final int x, final int y) {
+        return new AstarNode(x, y);
+    }
+
+    public int getPathLength() {
+        return mPathLength;
+    }
+
+    public int getPathX(final int index) {
+        return mPath[index * 2];
+    }
+
+    public int getPathY(final int index) {
+        return mPath[index * 2 + 1];
+    }
+
+    /**
+     * @return the total cost of the last path found
+     */
+    public int getPathCost() {
+        return mPathCost;
+    }
+
+    /**
+     * @return number of cells expanded by the last search, for stats
+     */
+    public int getNumExpanded() {
+        return mNumExpanded;
+    }
+
+    private void nextGeneration() {
+        if (++mGeneration == Integer.MAX_VALUE) {
+            // wrapped, start over
+            Arrays.fill(mGenerations, 0);
+            mGeneration = 1;
+        }
+    }
+
+    private void open(final int cell, final int parent, final int g, final int f) {
+        mGenerations[cell] = mGeneration;
+        mG[cell] = g;
+        mParents[cell] = parent;
+        mOpenHeap.push(cell, f);
+    }
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.astar;
+
+/**
+ * @author long
+ * @category The cell-based counterpart of {@link AstarAdapter} for {@link GridAstar}. Cells are passed as plain coordinates so that no node objects are needed.
+ */
+public interface GridAstarAdapter {
+    public int getMaxNeighbors();
+
+    public boolean isWalkable(final int cellX, final int cellY);
+
+    /**
+     * Fetch the walkable neighbors of a cell
+     * 
+     * @param cellX
+     * @param cellY
+     * @param neighbors to be filled with x,y pairs
+     * @param costs to be filled with the step costs
+     * @return number of neighbors found
+     */
+    public int getNeighbors(final int cellX, final int cellY, final int[] neighbors, final int[] costs);
+
+    public int getHeuristic(final int cellX1, final int cellY1, final int cellX2, final int cellY2);
+}
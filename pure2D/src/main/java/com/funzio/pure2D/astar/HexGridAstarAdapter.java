@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.astar;
+
+import com.funzio.pure2D.grid.HexGrid;
+import com.funzio.pure2D.grid.VerticalHexGrid;
+
+/**
+ * @author long
+ * @category A {@link GridAstarAdapter} for {@link VerticalHexGrid}, 1 cost per step. Empty cells are walkable by default, override {@link #isWalkable(int, int)} otherwise.
+ */
+public class HexGridAstarAdapter implements GridAstarAdapter {
+    protected final VerticalHexGrid<?> mGrid;
+
+    public HexGridAstarAdapter(final VerticalHexGrid<?> grid) {
+        mGrid = grid;
+    }
+
+    public VerticalHexGrid<?> getGrid() {
+        return mGrid;
+    }
+
+    public boolean isWalkable(final int cellX, final int cellY) {
+        return cellX >= 0 && cellY >= 0 && cellX < mGrid.getSize().x && cellY < mGrid.getSize().y && mGrid.getDataAt(cellX, cellY) == null;
+    }
+
+    public int getMaxNeighbors() {
+        return HexGrid.CELL_MAX_NEIGHBORS;
+    }
+
+    public int getNeighbors(final int cellX, final int cellY, final int[] neighbors, final int[] costs) {
+        final int[][] offsets = mGrid.getNeighborOffets();
+        final int start = (cellX % 2) * HexGrid.CELL_MAX_NEIGHBORS;
+        int count = 0;
+        for (int i = 0; i < HexGrid.CELL_MAX_NEIGHBORS; i++) {
+            final int x = cellX + offsets[start + i][0];
+            final int y = cellY + offsets[start + i][1];
+            if (isWalkable(x, y)) {
+                neighbors[count * 2] = x;
+                neighbors[count * 2 + 1] = y;
+                costs[count] = 1;
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    public int getHeuristic(final int cellX1, final int cellY1, final int cellX2, final int cellY2) {
+        return mGrid.getCellsDistance(cellX1, cellY1, cellX2, cellY2);
+    }
+}
@@ -0,0 +1,836 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import android.graphics.Point;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.funzio.pure2D.grid.AbstractGrid;
+
+/**
+ * @author long
+ * @category Hierarchical path-finding (HPA*). The grid is split into square clusters; the cells where neighbor clusters connect become the nodes of an abstract graph, with the intra-cluster
+ *           paths precomputed. A query only searches the abstract graph and then stitches the cached cell paths together, which is much cheaper than a full A* on large grids, at the cost of
+ *           slightly sub-optimal paths. The given {@link AstarAdapter} is used as-is for both the precomputation and the final cells, so it should create its nodes via this instance's
+ *           {@link #createNode(int, int)}. Costs are expected to be symmetric.
+ *           <p>
+ *           When constructed with an {@link AbstractGrid}, changes made via {@link AbstractGrid#setDataAt(int, int, Object)} mark the affected cluster dirty, and it gets rebuilt lazily on
+ *           the next query. Those changes are queued and applied by the searching thread, so the searches can run on another thread than the grid. Otherwise call {@link #invalidateCell(int, int)} manually. Recently found paths are kept in a {@link PathCache}.
+ *           </p>
+ */
+public class HierarchicalAstar extends Astar implements AbstractGrid.Listener {
+    private static final String TAG = HierarchicalAstar.class.getSimpleName();
+
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+    // entrances at least this wide get 2 transition points instead of 1
+    private static final int ENTRANCE_SPLIT = 6;
+
+    protected final AstarAdapter mGridAdapter;
+    protected AbstractGrid<?> mGrid;
+
+    private int mWidth;
+    private int mHeight;
+    private final int mClusterSize;
+    private int mNumClustersX;
+    private int mNumClusters;
+
+    // abstract graph
+    private final SparseArray<GraphNode> mGraphNodes = new SparseArray<GraphNode>();
+    private final ArrayList<ArrayList<GraphNode>> mClusterNodes = new ArrayList<ArrayList<GraphNode>>();
+    // cluster pair -> entrance nodes, as (a, b) pairs
+    private final HashMap<Long, ArrayList<GraphNode>> mEntrances = new HashMap<Long, ArrayList<GraphNode>>();
+    private int mMaxDegree = 1;
+
+    // dirty states
+    private boolean[] mDirtyClusters;
+    private boolean[] mTouchedClusters;
+    private boolean mDirty = true;
+
+    private final ClusterAdapter mClusterAdapter = new ClusterAdapter();
+    private final GraphAdapter mGraphAdapter = new GraphAdapter();
+    private final AstarNodeSet mEmptySet = new AstarNodeSet();
+    private final AstarNode[] mNeighbors;
+    private final int[] mNeighborCells;
+    private int[] mPathBuffer = new int[64];
+    private int mPathLength;
+
+    private PathCache mPathCache;
+
+    // grid changes, queued by the grid's thread and applied by the searching thread
+    private final Object mPendingLock = new Object();
+    private int[] mPendingCells = new int[16]; // x, y pairs
+    private int mNumPendingCells = 0;
+
+    public HierarchicalAstar(final AstarAdapter adapter, final AbstractGrid<?> grid, final int clusterSize) {
+        this(adapter, grid.getSize().x, grid.getSize().y, clusterSize);
+
+        mGrid = grid;
+        mGrid.addListener(this);
+    }
+
+    public HierarchicalAstar(final AstarAdapter adapter, final int width, final int height, final int clusterSize) {
+        super(adapter);
+
+        mGridAdapter = adapter;
+        mClusterSize = Math.max(2, clusterSize);
+        mNeighbors = new AstarNode[adapter.getNodeMaxNeighbors()];
+        mNeighborCells = new int[mNeighbors.length * 3];
+        mPathCache = new PathCache(PathCache.DEFAULT_CAPACITY, mClusterSize);
+
+        setSize(width, height);
+    }
+
+    /**
+     * Reset the whole abstract graph for a new size. It gets built on the next query, or {@link #rebuild()}.
+     * 
+     * @param width
+     * @param height
+     */
+    public void setSize(final int width, final int height) {
+        mWidth = width;
+        mHeight = height;
+        mNumClustersX = (width + mClusterSize - 1) / mClusterSize;
+        mNumClusters = mNumClustersX * ((height + mClusterSize - 1) / mClusterSize);
+
+        mGraphNodes.clear();
+        mEntrances.clear();
+        mClusterNodes.clear();
+        for (int i = 0; i < mNumClusters; i++) {
+            mClusterNodes.add(new ArrayList<GraphNode>());
+        }
+        mMaxDegree = 1;
+
+        mDirtyClusters = new boolean[mNumClusters];
+        mTouchedClusters = new boolean[mNumClusters];
+        Arrays.fill(mDirtyClusters, true);
+        mDirty = true;
+
+        if (mPathCache != null) {
+            mPathCache.clear();
+        }
+    }
+
+    /**
+     * Set the max number of cached paths, 0 to disable the cache
+     * 
+     * @param capacity
+     */
+    public void setPathCacheSize(final int capacity) {
+        mPathCache = capacity > 0 ? new PathCache(capacity, mClusterSize) : null;
+    }
+
+    public PathCache getPathCache() {
+        return mPathCache;
+    }
+
+    public int getClusterSize() {
+        return mClusterSize;
+    }
+
+    public int getNumGraphNodes() {
+        return mGraphNodes.size();
+    }
+
+    /**
+     * Mark the cluster of a cell dirty and drop the cached paths around it. This is called automatically for changes made on the grid.
+     * 
+     * @param cellX
+     * @param cellY
+     */
+    public void invalidateCell(final int cellX, final int cellY) {
+        if (cellX < 0 || cellX >= mWidth || cellY < 0 || cellY >= mHeight) {
+            return;
+        }
+
+        mDirtyClusters[getCluster(cellX, cellY)] = true;
+        mDirty = true;
+
+        if (mPathCache != null) {
+            mPathCache.invalidateCell(cellX, cellY);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.grid.AbstractGrid.Listener#onCellChanged(com.funzio.pure2D.grid.AbstractGrid, int, int)
+     */
+    @Override
+    public void onCellChanged(final AbstractGrid<?> grid, final int cellX, final int cellY) {
+        synchronized (mPendingLock) {
+            if (mNumPendingCells + 2 > mPendingCells.length) {
+                mPendingCells = Arrays.copyOf(mPendingCells, mPendingCells.length * 2);
+            }
+            mPendingCells[mNumPendingCells++] = cellX;
+            mPendingCells[mNumPendingCells++] = cellY;
+        }
+    }
+
+    private void applyPendingCells() {
+        synchronized (mPendingLock) {
+            for (int i = 0; i < mNumPendingCells; i += 2) {
+                invalidateCell(mPendingCells[i], mPendingCells[i + 1]);
+            }
+            mNumPendingCells = 0;
+        }
+    }
+
+    /**
+     * Rebuild the dirty clusters now instead of on the next query, such as right after loading a level
+     */
+    public void rebuild() {
+        final boolean logEnabled = mLogEnabled;
+        mLogEnabled = false;
+        validate();
+        mLogEnabled = logEnabled;
+    }
+
+    /**
+     * Find a path via the abstract graph. The start node is reused as the first node of the path.
+     * 
+     * @see com.funzio.pure2D.astar.Astar#findPath(com.funzio.pure2D.astar.AstarNode, com.funzio.pure2D.astar.AstarNode, int, boolean)
+     */
+    @Override
+    public List<AstarNode> findPath(final AstarNode start, final AstarNode end, final int maxCost, final boolean compressPath) {
+        final boolean logEnabled = mLogEnabled;
+        // the internal searches are too chatty
+        mLogEnabled = false;
+
+        validate();
+
+        boolean cached = false;
+        int[] cells = mPathCache != null ? mPathCache.get(start.x, start.y, end.x, end.y) : null;
+        if (cells != null) {
+            cached = true;
+        } else {
+            cells = search(start.x, start.y, end.x, end.y, maxCost);
+            if (cells != null && mPathCache != null) {
+                mPathCache.put(cells);
+            }
+        }
+
+        mLogEnabled = logEnabled;
+        if (LOG_ENABLED && mLogEnabled) {
+            Log.v(TAG, "findPath(): " + start + ", " + end + " -> " + (cells == null ? "none" : (cells.length / 2) + " cells") + (cached ? ", cached" : ""));
+        }
+
+        return cells == null ? null : createPath(start, cells, compressPath);
+    }
+
+    public void dispose() {
+        if (mGrid != null) {
+            mGrid.removeListener(this);
+            mGrid = null;
+        }
+
+        mGraphNodes.clear();
+        mEntrances.clear();
+        mClusterNodes.clear();
+        if (mPathCache != null) {
+            mPathCache.clear();
+        }
+    }
+
+    private int getCluster(final int cellX, final int cellY) {
+        return (cellY / mClusterSize) * mNumClustersX + (cellX / mClusterSize);
+    }
+
+    private static long getPairKey(final int cluster1, final int cluster2) {
+        return ((long) Math.min(cluster1, cluster2) << 32) | Math.max(cluster1, cluster2);
+    }
+
+    /**
+     * Rebuild the dirty clusters: their entrances first, then the intra-cluster edges of every cluster touching them
+     */
+    private void validate() {
+        applyPendingCells();
+
+        if (mGrid != null) {
+            final Point size = mGrid.getSize();
+            if (size != null && (size.x != mWidth || size.y != mHeight)) {
+                setSize(size.x, size.y);
+            }
+        }
+
+        if (!mDirty) {
+            return;
+        }
+        mDirty = false;
+
+        Arrays.fill(mTouchedClusters, false);
+
+        // remove the old entrances of the dirty clusters
+        final Iterator<Long> iterator = mEntrances.keySet().iterator();
+        while (iterator.hasNext()) {
+            final long key = iterator.next();
+            final int cluster1 = (int) (key >>> 32);
+            final int cluster2 = (int) key;
+            if (mDirtyClusters[cluster1] || mDirtyClusters[cluster2]) {
+                removeEntrances(mEntrances.get(key));
+                mTouchedClusters[cluster1] = mTouchedClusters[cluster2] = true;
+                iterator.remove();
+            }
+        }
+
+        // find the new entrances
+        for (int i = 0; i < mNumClusters; i++) {
+            if (mDirtyClusters[i]) {
+                mTouchedClusters[i] = true;
+                findEntrances(i);
+            }
+        }
+
+        // reconnect
+        for (int i = 0; i < mNumClusters; i++) {
+            if (mTouchedClusters[i]) {
+                connectCluster(i);
+            }
+        }
+
+        Arrays.fill(mDirtyClusters, false);
+
+        mMaxDegree = 1;
+        for (int i = 0; i < mGraphNodes.size(); i++) {
+            mMaxDegree = Math.max(mMaxDegree, mGraphNodes.valueAt(i).edges.size());
+        }
+    }
+
+    /**
+     * Scan the border cells of a cluster for transitions into the neighbor clusters and group them into entrances
+     * 
+     * @param cluster
+     */
+    private void findEntrances(final int cluster) {
+        final int x0 = (cluster % mNumClustersX) * mClusterSize;
+        final int y0 = (cluster / mNumClustersX) * mClusterSize;
+        final int x1 = Math.min(x0 + mClusterSize, mWidth);
+        final int y1 = Math.min(y0 + mClusterSize, mHeight);
+
+        // neighbor cluster -> transitions as {ax, ay, bx, by, cost}
+        final SparseArray<ArrayList<int[]>> transitions = new SparseArray<ArrayList<int[]>>();
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                // interior cell? skip
+                if (y > y0 && y < y1 - 1 && x > x0 && x < x1 - 1) {
+                    continue;
+                }
+
+                final int numNeighbors = getNeighbors(x, y);
+                for (int i = 0; i < numNeighbors; i++) {
+                    final int nx = mNeighborCells[i * 3];
+                    final int ny = mNeighborCells[i * 3 + 1];
+                    if (nx >= 0 && nx < mWidth && ny >= 0 && ny < mHeight) {
+                        final int other = getCluster(nx, ny);
+                        // a dirty neighbor with lower index has already scanned this border. Also the adapter doesn't check the cell itself, so make sure it's reachable back
+                        if (other != cluster && !(mDirtyClusters[other] && other < cluster) && isNeighbor(nx, ny, x, y)) {
+                            ArrayList<int[]> list = transitions.get(other);
+                            if (list == null) {
+                                list = new ArrayList<int[]>();
+                                transitions.put(other, list);
+                            }
+                            list.add(new int[] {
+                                    x, y, nx, ny, mNeighborCells[i * 3 + 2]
+                            });
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < transitions.size(); i++) {
+            final int other = transitions.keyAt(i);
+            final ArrayList<int[]> list = transitions.valueAt(i);
+            final ArrayList<GraphNode> entrances = new ArrayList<GraphNode>();
+
+            // split into contiguous runs, the cells come in scanning order along the border
+            int runStart = 0;
+            final int size = list.size();
+            for (int n = 1; n <= size; n++) {
+                if (n == size || !isAdjacent(list.get(n - 1), list.get(n))) {
+                    if (n - runStart >= ENTRANCE_SPLIT) {
+                        addEntrance(cluster, other, list.get(runStart), entrances);
+                        addEntrance(cluster, other, list.get(n - 1), entrances);
+                    } else {
+                        addEntrance(cluster, other, list.get((runStart + n - 1) / 2), entrances);
+                    }
+                    runStart = n;
+                }
+            }
+
+            mEntrances.put(getPairKey(cluster, other), entrances);
+            mTouchedClusters[other] = true;
+        }
+    }
+
+    /**
+     * Collect the neighbors of a cell into {@link #mNeighborCells} as x,y,cost
+     * 
+     * @return number of neighbors
+     */
+    private int getNeighbors(final int cellX, final int cellY) {
+        final AstarNode node = createNode(cellX, cellY);
+        Arrays.fill(mNeighbors, null);
+        mGridAdapter.getNodeNeighbors(node, mEmptySet, mEmptySet, mNeighbors);
+        int count = 0;
+        for (int i = 0; i < mNeighbors.length; i++) {
+            final AstarNode neighbor = mNeighbors[i];
+            if (neighbor == null) {
+                break;
+            }
+
+            mNeighborCells[count * 3] = neighbor.x;
+            mNeighborCells[count * 3 + 1] = neighbor.y;
+            mNeighborCells[count * 3 + 2] = neighbor.g;
+            count++;
+            mNodePool.release(neighbor);
+        }
+        mNodePool.release(node);
+
+        return count;
+    }
+
+    private boolean isNeighbor(final int cellX, final int cellY, final int neighborX, final int neighborY) {
+        final AstarNode node = createNode(cellX, cellY);
+        Arrays.fill(mNeighbors, null);
+        mGridAdapter.getNodeNeighbors(node, mEmptySet, mEmptySet, mNeighbors);
+        boolean found = false;
+        for (int i = 0; i < mNeighbors.length; i++) {
+            final AstarNode neighbor = mNeighbors[i];
+            if (neighbor == null) {
+                break;
+            }
+
+            found |= neighbor.x == neighborX && neighbor.y == neighborY;
+            mNodePool.release(neighbor);
+        }
+        mNodePool.release(node);
+
+        return found;
+    }
+
+    private static boolean isAdjacent(final int[] t1, final int[] t2) {
+        return Math.abs(t1[0] - t2[0]) <= 1 && Math.abs(t1[1] - t2[1]) <= 1 && Math.abs(t1[2] - t2[2]) <= 1 && Math.abs(t1[3] - t2[3]) <= 1;
+    }
+
+    private void addEntrance(final int cluster, final int other, final int[] transition, final ArrayList<GraphNode> entrances) {
+        final GraphNode a = obtainGraphNode(transition[0], transition[1], cluster);
+        final GraphNode b = obtainGraphNode(transition[2], transition[3], other);
+        a.edges.add(new Edge(b, transition[4], new int[] {
+                b.x, b.y
+        }));
+        b.edges.add(new Edge(a, transition[4], new int[] {
+                a.x, a.y
+        }));
+
+        entrances.add(a);
+        entrances.add(b);
+    }
+
+    private void removeEntrances(final ArrayList<GraphNode> entrances) {
+        for (int i = 0; i < entrances.size(); i += 2) {
+            final GraphNode a = entrances.get(i);
+            final GraphNode b = entrances.get(i + 1);
+            a.removeEdgesTo(b);
+            b.removeEdgesTo(a);
+            releaseGraphNode(a);
+            releaseGraphNode(b);
+        }
+    }
+
+    private GraphNode obtainGraphNode(final int x, final int y, final int cluster) {
+        final int key = AstarNode.generateKey(x, y);
+        GraphNode node = mGraphNodes.get(key);
+        if (node == null) {
+            node = new GraphNode(x, y, cluster);
+            mGraphNodes.put(key, node);
+            mClusterNodes.get(cluster).add(node);
+        }
+        node.refs++;
+
+        return node;
+    }
+
+    private void releaseGraphNode(final GraphNode node) {
+        if (--node.refs <= 0) {
+            mGraphNodes.remove(AstarNode.generateKey(node.x, node.y));
+            mClusterNodes.get(node.cluster).remove(node);
+        }
+    }
+
+    /**
+     * (Re)compute the edges between all the entrance nodes of a cluster
+     * 
+     * @param cluster
+     */
+    private void connectCluster(final int cluster) {
+        final ArrayList<GraphNode> nodes = mClusterNodes.get(cluster);
+        final int size = nodes.size();
+        for (int i = 0; i < size; i++) {
+            nodes.get(i).removeEdgesIn(cluster);
+        }
+
+        for (int i = 0; i < size; i++) {
+            final GraphNode a = nodes.get(i);
+            for (int j = i + 1; j < size; j++) {
+                final GraphNode b = nodes.get(j);
+                final Edge edge = searchCluster(cluster, a.x, a.y, b.x, b.y);
+                if (edge != null) {
+                    edge.to = b;
+                    a.edges.add(edge);
+                    b.edges.add(edge.reverse(a));
+                }
+            }
+        }
+    }
+
+    /**
+     * A* restricted to a cluster
+     * 
+     * @return the edge with the cell path excluding the start, or null if not reachable inside the cluster
+     */
+    private Edge searchCluster(final int cluster, final int startX, final int startY, final int endX, final int endY) {
+        mClusterAdapter.setCluster(cluster);
+        mAdapter = mClusterAdapter;
+        final AstarNode endNode = createNode(endX, endY);
+        final List<AstarNode> path = super.findPath(createNode(startX, startY), endNode, 0, false, null, null);
+        mAdapter = mGridAdapter;
+        mNodePool.release(endNode);
+
+        if (path == null) {
+            return null;
+        }
+
+        final int size = path.size();
+        final int[] cells = new int[(size - 1) * 2];
+        for (int i = 1; i < size; i++) {
+            final AstarNode node = path.get(i);
+            cells[(i - 1) * 2] = node.x;
+            cells[(i - 1) * 2 + 1] = node.y;
+        }
+        final Edge edge = new Edge(null, path.get(size - 1).g - path.get(0).g, cells);
+        recycleNodes(path);
+
+        return edge;
+    }
+
+    /**
+     * Insert the start and end temporarily into the abstract graph, search it, then refine the result into cells
+     * 
+     * @return the cells as x,y pairs including start and end, or null if no path
+     */
+    private int[] search(final int startX, final int startY, final int endX, final int endY, final int maxCost) {
+        if (startX < 0 || startX >= mWidth || startY < 0 || startY >= mHeight || endX < 0 || endX >= mWidth || endY < 0 || endY >= mHeight) {
+            return null;
+        }
+        if (startX == endX && startY == endY) {
+            return new int[] {
+                    startX, startY
+            };
+        }
+
+        final int startCluster = getCluster(startX, startY);
+        final int endCluster = getCluster(endX, endY);
+        final int startKey = AstarNode.generateKey(startX, startY);
+        final int endKey = AstarNode.generateKey(endX, endY);
+
+        // insert the start
+        GraphNode start = mGraphNodes.get(startKey);
+        final boolean tempStart = start == null;
+        if (tempStart) {
+            start = new GraphNode(startX, startY, startCluster);
+            mGraphNodes.put(startKey, start);
+            final ArrayList<GraphNode> nodes = mClusterNodes.get(startCluster);
+            for (int i = 0; i < nodes.size(); i++) {
+                final GraphNode node = nodes.get(i);
+                final Edge edge = searchCluster(startCluster, startX, startY, node.x, node.y);
+                if (edge != null) {
+                    edge.to = node;
+                    start.edges.add(edge);
+                }
+            }
+        }
+
+        // insert the end
+        GraphNode end = mGraphNodes.get(endKey);
+        final boolean tempEnd = end == null;
+        if (tempEnd) {
+            end = new GraphNode(endX, endY, endCluster);
+            mGraphNodes.put(endKey, end);
+            final ArrayList<GraphNode> nodes = mClusterNodes.get(endCluster);
+            for (int i = 0; i < nodes.size(); i++) {
+                final GraphNode node = nodes.get(i);
+                final Edge edge = searchCluster(endCluster, node.x, node.y, endX, endY);
+                if (edge != null) {
+                    edge.to = end;
+                    node.edges.add(edge);
+                    mMaxDegree = Math.max(mMaxDegree, node.edges.size());
+                }
+            }
+        }
+
+        // same cluster? the direct path is a candidate too, unless one of the loops above already added it
+        if (startCluster == endCluster && tempStart && tempEnd) {
+            final Edge edge = searchCluster(startCluster, startX, startY, endX, endY);
+            if (edge != null) {
+                edge.to = end;
+                start.edges.add(edge);
+            }
+        }
+        mMaxDegree = Math.max(mMaxDegree, start.edges.size());
+
+        // search the abstract graph
+        mAdapter = mGraphAdapter;
+        final AstarNode endNode = createNode(endX, endY);
+        final List<AstarNode> abstractPath = super.findPath(createNode(startX, startY), endNode, maxCost, false, null, null);
+        mAdapter = mGridAdapter;
+        mNodePool.release(endNode);
+
+        int[] cells = null;
+        if (abstractPath != null) {
+            // stitch the edge paths
+            mPathLength = 0;
+            appendCell(startX, startY);
+            GraphNode from = start;
+            for (int i = 1; i < abstractPath.size(); i++) {
+                final GraphNode to = mGraphNodes.get(abstractPath.get(i).getKey());
+                final int[] edgeCells = from.getEdgeTo(to).cells;
+                for (int n = 0; n < edgeCells.length; n += 2) {
+                    appendCell(edgeCells[n], edgeCells[n + 1]);
+                }
+                from = to;
+            }
+            cells = Arrays.copyOf(mPathBuffer, mPathLength);
+            recycleNodes(abstractPath);
+        }
+
+        // remove the temporary nodes
+        if (tempEnd) {
+            final ArrayList<GraphNode> nodes = mClusterNodes.get(endCluster);
+            for (int i = 0; i < nodes.size(); i++) {
+                nodes.get(i).removeEdgesTo(end);
+            }
+            mGraphNodes.remove(endKey);
+        }
+        if (tempStart) {
+            mGraphNodes.remove(startKey);
+        }
+
+        return cells;
+    }
+
+    private void appendCell(final int x, final int y) {
+        if (mPathLength + 2 > mPathBuffer.length) {
+            mPathBuffer = Arrays.copyOf(mPathBuffer, mPathBuffer.length * 2);
+        }
+        mPathBuffer[mPathLength++] = x;
+        mPathBuffer[mPathLength++] = y;
+    }
+
+    /**
+     * Convert the cells into a linked node path, optionally dropping the nodes on the same line
+     */
+    private List<AstarNode> createPath(final AstarNode start, final int[] cells, final boolean compression) {
+        final ArrayList<AstarNode> path = new ArrayList<AstarNode>();
+        start.parent = null;
+        path.add(start);
+
+        AstarNode lastNode = start;
+        int lastVectorX = 0, lastVectorY = 0;
+        for (int i = 2; i < cells.length; i += 2) {
+            final int x = cells[i];
+            final int y = cells[i + 1];
+            final int vectorX = x - cells[i - 2];
+            final int vectorY = y - cells[i - 1];
+            if (compression && i > 2 && vectorX == lastVectorX && vectorY == lastVectorY) {
+                // same line, move the last node
+                final AstarNode parent = lastNode.parent;
+                lastNode.reset(x, y);
+                lastNode.parent = parent;
+            } else {
+                final AstarNode node = createNode(x, y);
+                node.parent = lastNode;
+                path.add(node);
+                lastNode = node;
+            }
+
+            lastVectorX = vectorX;
+            lastVectorY = vectorY;
+        }
+
+        return path;
+    }
+
+    /**
+     * Limits the grid adapter to a single cluster
+     */
+    private class ClusterAdapter implements AstarAdapter {
+        private int mX0, mY0, mX1, mY1;
+
+        public void setCluster(final int cluster) {
+            mX0 = (cluster % mNumClustersX) * mClusterSize;
+            mY0 = (cluster / mNumClustersX) * mClusterSize;
+            mX1 = mX0 + mClusterSize;
+            mY1 = mY0 + mClusterSize;
+        }
+
+        public int getNodeMaxNeighbors() {
+            return mGridAdapter.getNodeMaxNeighbors();
+        }
+
+        public void getNodeNeighbors(final AstarNode node, final AstarNodeSet openNodes, final AstarNodeSet closedNodes, final AstarNode[] neighbors) {
+            mGridAdapter.getNodeNeighbors(node, openNodes, closedNodes, neighbors);
+
+            // drop the neighbors outside the cluster
+            int count = 0;
+            for (int i = 0; i < neighbors.length; i++) {
+                final AstarNode neighbor = neighbors[i];
+                if (neighbor == null) {
+                    break;
+                }
+
+                neighbors[i] = null;
+                if (neighbor.x >= mX0 && neighbor.x < mX1 && neighbor.y >= mY0 && neighbor.y < mY1) {
+                    neighbors[count++] = neighbor;
+                } else {
+                    mNodePool.release(neighbor);
+                }
+            }
+        }
+
+        public int getHeuristic(final AstarNode node1, final AstarNode node2) {
+            return mGridAdapter.getHeuristic(node1, node2);
+        }
+    }
+
+    /**
+     * Walks the abstract graph, with the edge costs as the node costs
+     */
+    private class GraphAdapter implements AstarAdapter {
+        public int getNodeMaxNeighbors() {
+            return mMaxDegree;
+        }
+
+        public void getNodeNeighbors(final AstarNode node, final AstarNodeSet openNodes, final AstarNodeSet closedNodes, final AstarNode[] neighbors) {
+            final GraphNode graphNode = mGraphNodes.get(node.getKey());
+            if (graphNode == null) {
+                return;
+            }
+
+            int count = 0;
+            final ArrayList<Edge> edges = graphNode.edges;
+            for (int i = 0; i < edges.size() && count < neighbors.length; i++) {
+                final GraphNode to = edges.get(i).to;
+                if (!closedNodes.containsXY(to.x, to.y)) {
+                    final AstarNode neighbor = createNode(to.x, to.y);
+                    neighbor.g = edges.get(i).cost;
+                    neighbors[count++] = neighbor;
+                }
+            }
+        }
+
+        public int getHeuristic(final AstarNode node1, final AstarNode node2) {
+            return mGridAdapter.getHeuristic(node1, node2);
+        }
+    }
+
+    private static class GraphNode {
+        final int x;
+        final int y;
+        final int cluster;
+        int refs = 0;
+        final ArrayList<Edge> edges = new ArrayList<Edge>(4);
+
+        GraphNode(final int x, final int y, final int cluster) {
+            this.x = x;
+            this.y = y;
+            this.cluster = cluster;
+        }
+
+        /**
+         * @return the cheapest edge to the node
+         */
+        Edge getEdgeTo(final GraphNode node) {
+            Edge best = null;
+            for (int i = 0; i < edges.size(); i++) {
+                final Edge edge = edges.get(i);
+                if (edge.to == node && (best == null || edge.cost < best.cost)) {
+                    best = edge;
+                }
+            }
+            return best;
+        }
+
+        void removeEdgesTo(final GraphNode node) {
+            for (int i = edges.size() - 1; i >= 0; i--) {
+                if (edges.get(i).to == node) {
+                    edges.remove(i);
+                }
+            }
+        }
+
+        void removeEdgesIn(final int cluster) {
+            for (int i = edges.size() - 1; i >= 0; i--) {
+                if (edges.get(i).to.cluster == cluster) {
+                    edges.remove(i);
+                }
+            }
+        }
+    }
+
+    private static class Edge {
+        GraphNode to;
+        final int cost;
+        final int[] cells; // excluding the from node, including the to node
+
+        Edge(final GraphNode to, final int cost, final int[] cells) {
+            this.to = to;
+            this.cost = cost;
+            this.cells = cells;
+        }
+
+        /**
+         * @return the same path the other way around, assuming symmetric costs
+         */
+        Edge reverse(final GraphNode from) {
+            final int len = cells.length;
+            final int[] reversed = new int[len];
+            // skip the last cell, which is the new start
+            for (int i = 0; i < len - 2; i += 2) {
+                reversed[i] = cells[len - 4 - i];
+                reversed[i + 1] = cells[len - 3 - i];
+            }
+            reversed[len - 2] = from.x;
+            reversed[len - 1] = from.y;
+
+            return new Edge(from, cost, reversed);
+        }
+    }
+}
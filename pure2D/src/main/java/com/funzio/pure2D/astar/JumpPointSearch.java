@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.astar;
+
+import com.funzio.pure2D.grid.RectGrid;
+
+/**
+ * @author long
+ * @category Jump Point Search for uniform-cost {@link RectGrid} maps. Successors are pruned by the direction of travel and then jumped along straight or diagonal lines until a forced neighbor
+ *           or the end is found, so only the jump points get into the open list. Follows the connectivity and corner-cutting rules of the given {@link RectGridAstarAdapter}. The returned
+ *           paths are filled in between the jump points, cell by cell, so they are the same shape as the {@link GridAstar} ones.
+ */
+public class JumpPointSearch extends GridAstar {
+    private static final int NONE = -1;
+
+    protected final RectGridAstarAdapter mRectAdapter;
+
+    // per search
+    private boolean mDiagonal;
+    private boolean mCornerCutting;
+    private int mEndX;
+    private int mEndY;
+
+    // pruned directions, as dx,dy pairs
+    private final int[] mDirections = new int[16];
+
+    public JumpPointSearch(final RectGridAstarAdapter adapter) {
+        super(adapter, adapter.getGrid().getSize().x, adapter.getGrid().getSize().y);
+
+        mRectAdapter = adapter;
+    }
+
+    @Override
+    public boolean beginPath(final int startX, final int startY, final int endX, final int endY, final int maxCost) {
+        mDiagonal = mRectAdapter.isDiagonal();
+        mCornerCutting = mRectAdapter.isCornerCutting();
+        mEndX = endX;
+        mEndY = endY;
+
+        return super.beginPath(startX, startY, endX, endY, maxCost);
+    }
+
+    @Override
+    protected int getSuccessors(final int cellX, final int cellY, final int parentCell, final int endX, final int endY) {
+        final int numDirections = parentCell == NONE ? getAllDirections(cellX, cellY) : getPrunedDirections(cellX, cellY, parentCell);
+
+        int count = 0;
+        for (int i = 0; i < numDirections; i++) {
+            final int dx = mDirections[i * 2];
+            final int dy = mDirections[i * 2 + 1];
+            final int jumpPoint = (dx != 0 && dy != 0) ? jumpDiagonal(cellX + dx, cellY + dy, dx, dy) : jumpStraight(cellX + dx, cellY + dy, dx, dy);
+            if (jumpPoint != NONE) {
+                final int x = jumpPoint % mWidth;
+                final int y = jumpPoint / mWidth;
+                mNeighbors[count * 2] = x;
+                mNeighbors[count * 2 + 1] = y;
+                // jumps are straight or diagonal lines, so the heuristic is the exact cost
+                mCosts[count] = mAdapter.getHeuristic(cellX, cellY, x, y);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * The start has no direction, use all the neighbors
+     */
+    private int getAllDirections(final int cellX, final int cellY) {
+        final int numNeighbors = mAdapter.getNeighbors(cellX, cellY, mNeighbors, mCosts);
+        for (int i = 0; i < numNeighbors; i++) {
+            mDirections[i * 2] = mNeighbors[i * 2] - cellX;
+            mDirections[i * 2 + 1] = mNeighbors[i * 2 + 1] - cellY;
+        }
+
+        return numNeighbors;
+    }
+
+    private int getPrunedDirections(final int x, final int y, final int parentCell) {
+        final int dx = Integer.signum(x - parentCell % mWidth);
+        final int dy = Integer.signum(y - parentCell / mWidth);
+        int count = 0;
+
+        if (!mDiagonal) {
+            if (dx != 0) {
+                count = addDirection(x, y, 0, -1, count);
+                count = addDirection(x, y, 0, 1, count);
+                count = addDirection(x, y, dx, 0, count);
+            } else {
+                count = addDirection(x, y, -1, 0, count);
+                count = addDirection(x, y, 1, 0, count);
+                count = addDirection(x, y, 0, dy, count);
+            }
+        } else if (mCornerCutting) {
+            if (dx != 0 && dy != 0) {
+                final boolean walkableX = isWalkable(x + dx, y);
+                final boolean walkableY = isWalkable(x, y + dy);
+                count = addDirection(x, y, 0, dy, count);
+                count = addDirection(x, y, dx, 0, count);
+                if (walkableX || walkableY) {
+                    count = addDirection(x, y, dx, dy, count);
+                }
+                // forced
+                if (!isWalkable(x - dx, y) && walkableY) {
+                    count = addDirection(x, y, -dx, dy, count);
+                }
+                if (!isWalkable(x, y - dy) && walkableX) {
+                    count = addDirection(x, y, dx, -dy, count);
+                }
+            } else if (dx == 0) {
+                if (isWalkable(x, y + dy)) {
+                    count = addDirection(x, y, 0, dy, count);
+                    // forced
+                    if (!isWalkable(x + 1, y)) {
+                        count = addDirection(x, y, 1, dy, count);
+                    }
+                    if (!isWalkable(x - 1, y)) {
+                        count = addDirection(x, y, -1, dy, count);
+                    }
+                }
+            } else {
+                if (isWalkable(x + dx, y)) {
+                    count = addDirection(x, y, dx, 0, count);
+                    // forced
+                    if (!isWalkable(x, y + 1)) {
+                        count = addDirection(x, y, dx, 1, count);
+                    }
+                    if (!isWalkable(x, y - 1)) {
+                        count = addDirection(x, y, dx, -1, count);
+                    }
+                }
+            }
+        } else {
+            if (dx != 0 && dy != 0) {
+                final boolean walkableX = isWalkable(x + dx, y);
+                final boolean walkableY = isWalkable(x, y + dy);
+                count = addDirection(x, y, 0, dy, count);
+                count = addDirection(x, y, dx, 0, count);
+                if (walkableX && walkableY) {
+                    count = addDirection(x, y, dx, dy, count);
+                }
+            } else if (dx != 0) {
+                final boolean walkableUp = isWalkable(x, y - 1);
+                final boolean walkableDown = isWalkable(x, y + 1);
+                if (isWalkable(x + dx, y)) {
+                    count = addDirection(x, y, dx, 0, count);
+                    if (walkableUp) {
+                        count = addDirection(x, y, dx, -1, count);
+                    }
+                    if (walkableDown) {
+                        count = addDirection(x, y, dx, 1, count);
+                    }
+                }
+                count = addDirection(x, y, 0, -1, count);
+                count = addDirection(x, y, 0, 1, count);
+            } else {
+                final boolean walkableLeft = isWalkable(x - 1, y);
+                final boolean walkableRight = isWalkable(x + 1, y);
+                if (isWalkable(x, y + dy)) {
+                    count = addDirection(x, y, 0, dy, count);
+                    if (walkableLeft) {
+                        count = addDirection(x, y, -1, dy, count);
+                    }
+                    if (walkableRight) {
+                        count = addDirection(x, y, 1, dy, count);
+                    }
+                }
+                count = addDirection(x, y, -1, 0, count);
+                count = addDirection(x, y, 1, 0, count);
+            }
+        }
+
+        return count;
+    }
+
+    private int addDirection(final int x, final int y, final int dx, final int dy, final int count) {
+        if (!isWalkable(x + dx, y + dy)) {
+            return count;
+        }
+
+        mDirections[count * 2] = dx;
+        mDirections[count * 2 + 1] = dy;
+        return count + 1;
+    }
+
+    private boolean isWalkable(final int x, final int y) {
+        return mRectAdapter.isWalkable(x, y);
+    }
+
+    /**
+     * Walk straight from a cell until a jump point
+     * 
+     * @return the jump point cell index, or -1 if blocked
+     */
+    private int jumpStraight(int x, int y, final int dx, final int dy) {
+        while (isWalkable(x, y)) {
+            if (x == mEndX && y == mEndY) {
+                return y * mWidth + x;
+            }
+
+            // forced neighbors?
+            if (!mDiagonal) {
+                if (dx != 0) {
+                    if ((isWalkable(x, y - 1) && !isWalkable(x - dx, y - 1)) || (isWalkable(x, y + 1) && !isWalkable(x - dx, y + 1))) {
+                        return y * mWidth + x;
+                    }
+                } else {
+                    if ((isWalkable(x - 1, y) && !isWalkable(x - 1, y - dy)) || (isWalkable(x + 1, y) && !isWalkable(x + 1, y - dy))) {
+                        return y * mWidth + x;
+                    }
+                    // moving vertically, look for horizontal jump points
+                    if (jumpStraight(x + 1, y, 1, 0) != NONE || jumpStraight(x - 1, y, -1, 0) != NONE) {
+                        return y * mWidth + x;
+                    }
+                }
+            } else if (mCornerCutting) {
+                if (dx != 0) {
+                    if ((isWalkable(x + dx, y + 1) && !isWalkable(x, y + 1)) || (isWalkable(x + dx, y - 1) && !isWalkable(x, y - 1))) {
+                        return y * mWidth + x;
+                    }
+                } else {
+                    if ((isWalkable(x + 1, y + dy) && !isWalkable(x + 1, y)) || (isWalkable(x - 1, y + dy) && !isWalkable(x - 1, y))) {
+                        return y * mWidth + x;
+                    }
+                }
+            } else {
+                if (dx != 0) {
+                    if ((isWalkable(x, y - 1) && !isWalkable(x - dx, y - 1)) || (isWalkable(x, y + 1) && !isWalkable(x - dx, y + 1))) {
+                        return y * mWidth + x;
+                    }
+                } else {
+                    if ((isWalkable(x - 1, y) && !isWalkable(x - 1, y - dy)) || (isWalkable(x + 1, y) && !isWalkable(x + 1, y - dy))) {
+                        return y * mWidth + x;
+                    }
+                }
+            }
+
+            x += dx;
+            y += dy;
+        }
+
+        return NONE;
+    }
+
+    /**
+     * Walk diagonally from a cell until a jump point
+     * 
+     * @return the jump point cell index, or -1 if blocked
+     */
+    private int jumpDiagonal(int x, int y, final int dx, final int dy) {
+        while (isWalkable(x, y)) {
+            if (x == mEndX && y == mEndY) {
+                return y * mWidth + x;
+            }
+
+            // forced neighbors?
+            if (mCornerCutting && ((isWalkable(x - dx, y + dy) && !isWalkable(x - dx, y)) || (isWalkable(x + dx, y - dy) && !isWalkable(x, y - dy)))) {
+                return y * mWidth + x;
+            }
+
+            // look for straight jump points
+            if (jumpStraight(x + dx, y, dx, 0) != NONE || jumpStraight(x, y + dy, 0, dy) != NONE) {
+                return y * mWidth + x;
+            }
+
+            // can we keep going?
+            final boolean walkableX = isWalkable(x + dx, y);
+            final boolean walkableY = isWalkable(x, y + dy);
+            if (mCornerCutting ? !(walkableX || walkableY) : !(walkableX && walkableY)) {
+                return NONE;
+            }
+
+            x += dx;
+            y += dy;
+        }
+
+        return NONE;
+    }
+
+    /**
+     * Fill in the cells between the jump points
+     * 
+     * @see com.funzio.pure2D.astar.GridAstar#buildPath(int)
+     */
+    @Override
+    protected int buildPath(final int endCell) {
+        // count the cells first
+        int count = 1;
+        for (int cell = endCell; mParents[cell] != NONE; cell = mParents[cell]) {
+            final int parent = mParents[cell];
+            count += Math.max(Math.abs(cell % mWidth - parent % mWidth), Math.abs(cell / mWidth - parent / mWidth));
+        }
+        ensurePathCapacity(count);
+
+        int i = count - 1;
+        mPath[i * 2] = endCell % mWidth;
+        mPath[i * 2 + 1] = endCell / mWidth;
+        for (int cell = endCell; mParents[cell] != NONE; cell = mParents[cell]) {
+            final int parent = mParents[cell];
+            final int parentX = parent % mWidth;
+            final int parentY = parent / mWidth;
+            int x = cell % mWidth;
+            int y = cell / mWidth;
+            final int dx = Integer.signum(parentX - x);
+            final int dy = Integer.signum(parentY - y);
+            // step back towards the parent
+            while (x != parentX || y != parentY) {
+                x += dx;
+                y += dy;
+                i--;
+                mPath[i * 2] = x;
+                mPath[i * 2 + 1] = y;
+            }
+        }
+
+        mPathLength = count;
+        return count;
+    }
+}
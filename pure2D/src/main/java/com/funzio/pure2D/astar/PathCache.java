@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.astar;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.graphics.Point;
+
+/**
+ * @author long
+ * @category A small LRU cache of cell paths keyed by start and end cells. Each entry remembers which regions (square blocks of cells) it passes through so that a cell change only drops the
+ *           paths that could be affected.
+ */
+public class PathCache {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int mCapacity;
+    private final int mRegionSize;
+    private final LinkedHashMap<Long, Entry> mEntries;
+
+    // stats
+    private int mNumHits = 0;
+    private int mNumMisses = 0;
+
+    /**
+     * @param capacity max number of paths to keep
+     * @param regionSize the size of the invalidation regions, in cells
+     */
+    public PathCache(final int capacity, final int regionSize) {
+        mCapacity = capacity;
+        mRegionSize = Math.max(1, regionSize);
+        // access-ordered for LRU
+        mEntries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Entry> eldest) {
+                return size() > mCapacity;
+            }
+        };
+    }
+
+    /**
+     * @param startX
+     * @param startY
+     * @param endX
+     * @param endY
+     * @return the cached cells as x,y pairs including both start and end, or null if not cached
+     */
+    public int[] get(final int startX, final int startY, final int endX, final int endY) {
+        final Entry entry = mEntries.get(getKey(startX, startY, endX, endY));
+        if (entry == null) {
+            mNumMisses++;
+            return null;
+        }
+
+        mNumHits++;
+        return entry.cells;
+    }
+
+    /**
+     * Cache a path
+     * 
+     * @param path the full path, including start and end, uncompressed
+     */
+    public void put(final List<? extends Point> path) {
+        final int size = path.size();
+        if (size == 0) {
+            return;
+        }
+
+        final int[] cells = new int[size * 2];
+        for (int i = 0; i < size; i++) {
+            final Point p = path.get(i);
+            cells[i * 2] = p.x;
+            cells[i * 2 + 1] = p.y;
+        }
+        put(cells);
+    }
+
+    /**
+     * Cache a path
+     * 
+     * @param cells the full path as x,y pairs, including start and end, uncompressed
+     */
+    public void put(final int[] cells) {
+        final int len = cells.length;
+        if (len < 2) {
+            return;
+        }
+
+        // collect the unique regions
+        final int[] regions = new int[len / 2];
+        for (int i = 0; i < regions.length; i++) {
+            regions[i] = getRegion(cells[i * 2], cells[i * 2 + 1]);
+        }
+        Arrays.sort(regions);
+        int numRegions = 0;
+        for (int i = 0; i < regions.length; i++) {
+            if (i == 0 || regions[i] != regions[i - 1]) {
+                regions[numRegions++] = regions[i];
+            }
+        }
+
+        mEntries.put(getKey(cells[0], cells[1], cells[len - 2], cells[len - 1]), new Entry(cells, Arrays.copyOf(regions, numRegions)));
+    }
+
+    /**
+     * Drop all the paths passing through the region of the specified cell
+     * 
+     * @param cellX
+     * @param cellY
+     * @return number of paths removed
+     */
+    public int invalidateCell(final int cellX, final int cellY) {
+        final int region = getRegion(cellX, cellY);
+        int count = 0;
+        final Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            if (Arrays.binarySearch(iterator.next().regions, region) >= 0) {
+                iterator.remove();
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    public void clear() {
+        mEntries.clear();
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getRegionSize() {
+        return mRegionSize;
+    }
+
+    public int getNumHits() {
+        return mNumHits;
+    }
+
+    public int getNumMisses() {
+        return mNumMisses;
+    }
+
+    public void resetStats() {
+        mNumHits = 0;
+        mNumMisses = 0;
+    }
+
+    private int getRegion(final int cellX, final int cellY) {
+        // 16 bits each side is plenty for grid cells
+        return ((cellY / mRegionSize) << 16) | ((cellX / mRegionSize) & 0xFFFF);
+    }
+
+    private static long getKey(final int startX, final int startY, final int endX, final int endY) {
+        return ((long) AstarNode.generateKey(startX, startY) << 32) | (AstarNode.generateKey(endX, endY) & 0xFFFFFFFFL);
+    }
+
+    private static class Entry {
+        final int[] cells;
+        final int[] regions; // sorted
+
+        Entry(final int[] cells, final int[] regions) {
+            this.cells = cells;
+            this.regions = regions;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.astar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import android.util.Log;
+
+import com.funzio.pure2D.utils.Pool;
+
+/**
+ * @author long
+ * @category Queues path requests and answers them via callbacks instead of blocking the game logic. Searches run either on worker threads, each with its own {@link PathFinder}, or on the
+ *           calling thread inside {@link #process()} within a per-frame time budget. Identical pending requests share one search, and requests can be cancelled any time before their callback.
+ *           <p>
+ *           {@link #findPath(int, int, int, int, int, boolean, Listener)}, {@link Request#cancel()} and {@link #process()} are meant to be called on the same thread, usually the GL thread, and
+ *           all the callbacks are delivered from {@link #process()} on that thread. With workers, the adapters read the grid from other threads, so the grid should not be changed while
+ *           requests are pending, or the paths can be stale. The grid listeners of {@link HierarchicalAstar} only queue the changes, they are applied by the searching thread.
+ *           </p>
+ *           <p>
+ *           A {@link SlicedPathFinder} such as {@link GridAstar} is run in slices of {@link #setSliceSize(int)} expansions and the budget is checked before each slice. Other finders run
+ *           a whole search per check, so one long search can still exceed the budget.
+ *           </p>
+ */
+public class PathService {
+    private static final String TAG = PathService.class.getSimpleName();
+
+    public static final int DEFAULT_FRAME_BUDGET = 2000; // microseconds
+    public static final int DEFAULT_SLICE_SIZE = 256; // expansions
+
+    private final PathFinder mFinder;
+    private final Worker[] mWorkers;
+
+    private final Object mLock = new Object();
+    private final LinkedList<Job> mQueue = new LinkedList<Job>();
+    private final LinkedList<Job> mDoneJobs = new LinkedList<Job>();
+    private boolean mRunning = true;
+
+    // caller thread only
+    private final HashMap<Long, Job> mJobMap = new HashMap<Long, Job>();
+    private final ArrayList<Job> mJobs = new ArrayList<Job>();
+    private int mFrameBudget = DEFAULT_FRAME_BUDGET;
+    private int mSliceSize = DEFAULT_SLICE_SIZE;
+    private Job mCurrentJob; // being sliced
+    private int mNumPending = 0;
+
+    // stats
+    private int mNumSearches = 0;
+    private int mNumDeduplicated = 0;
+    private int mNumCancelled = 0;
+
+    /**
+     * Time-sliced, the searches run inside {@link #process()}
+     * 
+     * @param finder
+     */
+    public PathService(final PathFinder finder) {
+        mFinder = finder;
+        mWorkers = null;
+    }
+
+    /**
+     * Worker threads, each with its own finder since they are not thread-safe
+     * 
+     * @param finderFactory
+     * @param numThreads
+     */
+    public PathService(final Pool.Factory<PathFinder> finderFactory, final int numThreads) {
+        mFinder = null;
+        mWorkers = new Worker[Math.max(1, numThreads)];
+        for (int i = 0; i < mWorkers.length; i++) {
+            mWorkers[i] = new Worker(i, finderFactory.create());
+            mWorkers[i].start();
+        }
+    }
+
+    /**
+     * Request a path. The listener gets called from {@link #process()}.
+     * 
+     * @param startX
+     * @param startY
+     * @param endX
+     * @param endY
+     * @param maxCost 0 for unlimited
+     * @param compressPath
+     * @param listener
+     * @return the request, to be cancelled if needed
+     */
+    public Request findPath(final int startX, final int startY, final int endX, final int endY, final int maxCost, final boolean compressPath, final Listener listener) {
+        final Request request = new Request(this, startX, startY, endX, endY, listener);
+        mNumPending++;
+
+        // same search pending?
+        final long key = ((long) AstarNode.generateKey(startX, startY) << 32) | (AstarNode.generateKey(endX, endY) & 0xFFFFFFFFL);
+        Job job = mJobMap.get(key);
+        if (job != null && job.maxCost == maxCost && job.compressPath == compressPath) {
+            mNumDeduplicated++;
+        } else {
+            job = new Job(key, startX, startY, endX, endY, maxCost, compressPath);
+            if (!mJobMap.containsKey(key)) {
+                mJobMap.put(key, job);
+            }
+            mJobs.add(job);
+
+            synchronized (mLock) {
+                mQueue.add(job);
+                mLock.notify();
+            }
+        }
+        job.requests.add(request);
+        request.mJob = job;
+
+        return request;
+    }
+
+    /**
+     * Cancel a request, its listener won't be called
+     * 
+     * @param request
+     * @return true if cancelled, false if already done or cancelled
+     */
+    public boolean cancel(final Request request) {
+        if (request.mDone || request.mCancelled) {
+            return false;
+        }
+
+        request.mCancelled = true;
+        mNumPending--;
+        mNumCancelled++;
+
+        final Job job = request.mJob;
+        job.requests.remove(request);
+        if (job.requests.isEmpty()) {
+            // nobody waits for it anymore
+            cancelJob(job);
+            mJobs.remove(job);
+        }
+
+        return true;
+    }
+
+    public void cancelAll() {
+        for (int i = 0; i < mJobs.size(); i++) {
+            final Job job = mJobs.get(i);
+            for (int n = 0; n < job.requests.size(); n++) {
+                job.requests.get(n).mCancelled = true;
+            }
+            mNumCancelled += job.requests.size();
+            job.requests.clear();
+            cancelJob(job);
+        }
+        mJobs.clear();
+        mNumPending = 0;
+    }
+
+    private void cancelJob(final Job job) {
+        job.cancelled = true;
+        if (mJobMap.get(job.key) == job) {
+            mJobMap.remove(job.key);
+        }
+
+        // not started yet? drop it, otherwise the result gets ignored
+        synchronized (mLock) {
+            mQueue.remove(job);
+        }
+    }
+
+    /**
+     * Run the time-sliced searches if any, then deliver the results. Call this once per frame.
+     * 
+     * @return number of callbacks delivered
+     */
+    public int process() {
+        if (mWorkers == null) {
+            // at least one slice per frame
+            final long deadline = System.nanoTime() + mFrameBudget * 1000L;
+            do {
+                if (mCurrentJob == null) {
+                    mCurrentJob = mQueue.poll();
+                    if (mCurrentJob == null) {
+                        break;
+                    }
+                }
+
+                if (step(mCurrentJob)) {
+                    mDoneJobs.add(mCurrentJob);
+                    mCurrentJob = null;
+                }
+            } while (System.nanoTime() < deadline);
+        }
+
+        int count = 0;
+        while (true) {
+            final Job job;
+            synchronized (mLock) {
+                job = mDoneJobs.poll();
+            }
+            if (job == null) {
+                break;
+            }
+
+            count += deliver(job);
+        }
+
+        return count;
+    }
+
+    private int deliver(final Job job) {
+        if (job.cancelled) {
+            return 0;
+        }
+
+        if (mJobMap.get(job.key) == job) {
+            mJobMap.remove(job.key);
+        }
+        mJobs.remove(job);
+        mNumSearches++;
+
+        // shared by the deduplicated requests
+        final int size = job.requests.size();
+        for (int i = 0; i < size; i++) {
+            final Request request = job.requests.get(i);
+            request.mDone = true;
+            mNumPending--;
+            if (request.mListener != null) {
+                request.mListener.onPathFound(request, job.path);
+            }
+        }
+        job.requests.clear();
+
+        return size;
+    }
+
+    /**
+     * Run a slice of a job on the calling thread
+     * 
+     * @return true if the job is done
+     */
+    private boolean step(final Job job) {
+        if (job.cancelled) {
+            return true;
+        } else if (!(mFinder instanceof SlicedPathFinder)) {
+            search(mFinder, job);
+            return true;
+        }
+
+        final SlicedPathFinder finder = (SlicedPathFinder) mFinder;
+        if (!job.started) {
+            job.started = true;
+            if (!finder.beginPath(finder.createNode(job.startX, job.startY), finder.createNode(job.endX, job.endY), job.maxCost, job.compressPath)) {
+                return true;
+            }
+        }
+
+        if (finder.stepPath(mSliceSize)) {
+            job.path = finder.getPath();
+            return true;
+        }
+
+        return false;
+    }
+
+    private void search(final PathFinder finder, final Job job) {
+        if (job.cancelled) {
+            return;
+        }
+
+        job.path = finder.findPath(finder.createNode(job.startX, job.startY), finder.createNode(job.endX, job.endY), job.maxCost, job.compressPath);
+    }
+
+    /**
+     * @param frameBudget the max time spent searching per {@link #process()} call, in microseconds. Only for the time-sliced mode.
+     */
+    public void setFrameBudget(final int frameBudget) {
+        mFrameBudget = frameBudget;
+    }
+
+    public int getFrameBudget() {
+        return mFrameBudget;
+    }
+
+    /**
+     * @param sliceSize the max number of nodes a {@link SlicedPathFinder} expands between the budget checks. Only for the time-sliced mode.
+     */
+    public void setSliceSize(final int sliceSize) {
+        mSliceSize = Math.max(1, sliceSize);
+    }
+
+    public int getSliceSize() {
+        return mSliceSize;
+    }
+
+    /**
+     * @return number of requests waiting for their callbacks
+     */
+    public int getNumPending() {
+        return mNumPending;
+    }
+
+    /**
+     * @return number of searches delivered, excluding the deduplicated requests
+     */
+    public int getNumSearches() {
+        return mNumSearches;
+    }
+
+    public int getNumDeduplicated() {
+        return mNumDeduplicated;
+    }
+
+    public int getNumCancelled() {
+        return mNumCancelled;
+    }
+
+    /**
+     * Cancel everything and stop the worker threads
+     */
+    public void dispose() {
+        cancelAll();
+
+        synchronized (mLock) {
+            mRunning = false;
+            mLock.notifyAll();
+        }
+    }
+
+    public static interface Listener {
+        /**
+         * @param request
+         * @param path the path, or null if not found. Deduplicated requests get the same list, treat it as read-only.
+         */
+        public void onPathFound(Request request, List<AstarNode> path);
+    }
+
+    public static class Request {
+        public final int startX;
+        public final int startY;
+        public final int endX;
+        public final int endY;
+
+        private final PathService mService;
+        private final Listener mListener;
+        private Job mJob;
+        private boolean mCancelled = false;
+        private boolean mDone = false;
+
+        private Request(final PathService service, final int startX, final int startY, final int endX, final int endY, final Listener listener) {
+            mService = service;
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
+            mListener = listener;
+        }
+
+        public boolean cancel() {
+            return mService.cancel(this);
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public boolean isDone() {
+            return mDone;
+        }
+    }
+
+    private static class Job {
+        final long key;
+        final int startX;
+        final int startY;
+        final int endX;
+        final int endY;
+        final int maxCost;
+        final boolean compressPath;
+
+        // caller thread only
+        final ArrayList<Request> requests = new ArrayList<Request>(1);
+
+        volatile boolean cancelled = false;
+        volatile List<AstarNode> path;
+        boolean started = false; // sliced
+
+        Job(final long key, final int startX, final int startY, final int endX, final int endY, final int maxCost, final boolean compressPath) {
+            this.key = key;
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
+            this.maxCost = maxCost;
+            this.compressPath = compressPath;
+        }
+    }
+
+    private class Worker extends Thread {
+        private final PathFinder mWorkerFinder;
+
+        public Worker(final int index, final PathFinder finder) {
+            super(TAG + "-" + index);
+
+            mWorkerFinder = finder;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Job job;
+                // wait for a job
+                synchronized (mLock) {
+                    while (mRunning && mQueue.isEmpty()) {
+                        try {
+                            mLock.wait();
+                        } catch (InterruptedException e) {
+                            // check again
+                        }
+                    }
+
+                    if (!mRunning) {
+                        return;
+                    }
+                    job = mQueue.poll();
+                }
+
+                try {
+                    search(mWorkerFinder, job);
+                } catch (Throwable e) {
+                    Log.e(TAG, "Search failed: " + job.startX + "," + job.startY + " -> " + job.endX + "," + job.endY, e);
+                    job.path = null;
+                }
+
+                synchronized (mLock) {
+                    mDoneJobs.add(job);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.astar;
+
+import com.funzio.pure2D.grid.RectGrid;
+
+/**
+ * @author long
+ * @category A {@link GridAstarAdapter} for {@link RectGrid}, 4 or 8-connected. Empty cells are walkable by default, override {@link #isWalkable(int, int)} otherwise.
+ */
+public class RectGridAstarAdapter implements GridAstarAdapter {
+    // costs are scaled so that diagonals stay integers
+    public static final int STRAIGHT_COST = 10;
+    public static final int DIAGONAL_COST = 14;
+
+    protected final RectGrid<?> mGrid;
+    protected final boolean mDiagonal;
+    protected boolean mCornerCutting = false;
+
+    /**
+     * @param grid
+     * @param diagonal true for 8-connected, false for 4-connected
+     */
+    public RectGridAstarAdapter(final RectGrid<?> grid, final boolean diagonal) {
+        mGrid = grid;
+        mDiagonal = diagonal;
+    }
+
+    public RectGrid<?> getGrid() {
+        return mGrid;
+    }
+
+    public boolean isDiagonal() {
+        return mDiagonal;
+    }
+
+    public boolean isCornerCutting() {
+        return mCornerCutting;
+    }
+
+    /**
+     * Allow diagonal moves past a blocked corner. By default a diagonal move needs both the straight cells next to it to be walkable.
+     * 
+     * @param cornerCutting
+     */
+    public void setCornerCutting(final boolean cornerCutting) {
+        mCornerCutting = cornerCutting;
+    }
+
+    public boolean isWalkable(final int cellX, final int cellY) {
+        return cellX >= 0 && cellY >= 0 && cellX < mGrid.getSize().x && cellY < mGrid.getSize().y && mGrid.getDataAt(cellX, cellY) == null;
+    }
+
+    /**
+     * @return true if a diagonal move from a cell by dx,dy is allowed, assuming the target is walkable
+     */
+    public boolean canMoveDiagonal(final int cellX, final int cellY, final int dx, final int dy) {
+        if (mCornerCutting) {
+            return isWalkable(cellX + dx, cellY) || isWalkable(cellX, cellY + dy);
+        } else {
+            return isWalkable(cellX + dx, cellY) && isWalkable(cellX, cellY + dy);
+        }
+    }
+
+    public int getMaxNeighbors() {
+        return mDiagonal ? 8 : 4;
+    }
+
+    public int getNeighbors(final int cellX, final int cellY, final int[] neighbors, final int[] costs) {
+        int count = 0;
+        count = addNeighbor(cellX + 1, cellY, STRAIGHT_COST, neighbors, costs, count);
+        count = addNeighbor(cellX - 1, cellY, STRAIGHT_COST, neighbors, costs, count);
+        count = addNeighbor(cellX, cellY + 1, STRAIGHT_COST, neighbors, costs, count);
+        count = addNeighbor(cellX, cellY - 1, STRAIGHT_COST, neighbors, costs, count);
+
+        if (mDiagonal) {
+            for (int dy = -1; dy <= 1; dy += 2) {
+                for (int dx = -1; dx <= 1; dx += 2) {
+                    if (canMoveDiagonal(cellX, cellY, dx, dy)) {
+                        count = addNeighbor(cellX + dx, cellY + dy, DIAGONAL_COST, neighbors, costs, count);
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private int addNeighbor(final int x, final int y, final int cost, final int[] neighbors, final int[] costs, final int count) {
+        if (!isWalkable(x, y)) {
+            return count;
+        }
+
+        neighbors[count * 2] = x;
+        neighbors[count * 2 + 1] = y;
+        costs[count] = cost;
+        return count + 1;
+    }
+
+    public int getHeuristic(final int cellX1, final int cellY1, final int cellX2, final int cellY2) {
+        final int dx = Math.abs(cellX2 - cellX1);
+        final int dy = Math.abs(cellY2 - cellY1);
+        if (mDiagonal) {
+            // octile distance
+            return STRAIGHT_COST * (dx + dy) + (DIAGONAL_COST - 2 * STRAIGHT_COST) * Math.min(dx, dy);
+        } else {
+            return STRAIGHT_COST * (dx + dy);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.astar;
+
+import java.util.List;
+
+/**
+ * @author long
+ * @category A {@link PathFinder} whose searches can be split into slices, such as by {@link PathService} to stay within its frame budget. An instance runs one sliced search at a
+ *           time, starting another one or calling {@link #findPath(AstarNode, AstarNode, int, boolean)} aborts it.
+ */
+public interface SlicedPathFinder extends PathFinder {
+    /**
+     * Start a search, to be continued by {@link #stepPath(int)}
+     * 
+     * @param start
+     * @param end
+     * @param maxCost 0 for unlimited
+     * @param compressPath true to drop the nodes on the same line
+     * @return false if the search can't start, such as the nodes are out of the grid
+     */
+    public boolean beginPath(final AstarNode start, final AstarNode end, final int maxCost, final boolean compressPath);
+
+    /**
+     * Continue the search
+     * 
+     * @param maxIterations the max number of nodes to expand in this call
+     * @return true if the search is done, see {@link #getPath()}
+     */
+    public boolean stepPath(final int maxIterations);
+
+    /**
+     * @return the path of the finished search including start and end, or null if not found
+     */
+    public List<AstarNode> getPath();
+}
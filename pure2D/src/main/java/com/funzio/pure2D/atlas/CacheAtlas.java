@@ -36,10 +36,11 @@ import com.funzio.pure2D.animation.PlayableObject;
 import com.funzio.pure2D.gl.gl10.FrameBuffer;
 import com.funzio.pure2D.gl.gl10.GLState;
 import com.funzio.pure2D.gl.gl10.textures.BufferTexture;
-import com.funzio.pure2D.utils.RectBinPacker;
+import com.funzio.pure2D.utils.MaxRectsPacker;
 
 /**
  * @author long
+ * @category Renders the frames of a target into frame buffers. The frames that don't fit in the max size spill to more pages, each with its own texture.
  */
 public class CacheAtlas extends Atlas {
 
@@ -49,7 +50,11 @@ public class CacheAtlas extends Atlas {
     private BufferTexture mTexture;
     private FrameBuffer mFrameBuffer;
 
-    private RectBinPacker mPacker;
+    // one per page, the first one is mTexture and mFrameBuffer
+    private BufferTexture[] mTextures;
+    private FrameBuffer[] mFrameBuffers;
+
+    private MaxRectsPacker mPacker;
     private PlayableObject mTarget;
 
     public CacheAtlas(final GLState glState, final PlayableObject target, final int maxWidth) {
@@ -63,81 +68,112 @@ public class CacheAtlas extends Atlas {
     }
 
     /**
-     * Creates a buffer texture to bind to the frame buffer
+     * Creates the buffer textures to bind to the frame buffers
      */
     private void initBuffer(final int maxWidth) {
-        mPacker = new RectBinPacker(maxWidth, !Pure2D.GL_NPOT_TEXTURE_SUPPORTED); // !Pure2D.GL_NPOT_TEXTURE_SUPPORTED
+        mPacker = new MaxRectsPacker(maxWidth, !Pure2D.GL_NPOT_TEXTURE_SUPPORTED); // !Pure2D.GL_NPOT_TEXTURE_SUPPORTED
+        mPacker.setRotationEnabled(true);
         final int frames = mTarget.getNumFrames();
+        final int[] sizes = new int[frames * 2];
         for (int i = 0; i < frames; i++) {
             final RectF frameRect = mTarget.getFrameRect(i);
-            mPacker.occupy(Math.round(frameRect.width()), Math.round(frameRect.height()));
+            sizes[i * 2] = Math.round(frameRect.width());
+            sizes[i * 2 + 1] = Math.round(frameRect.height());
         }
+        mPacker.occupyAll(sizes);
 
         // update the size
         mWidth = mPacker.getWidth();
         mHeight = mPacker.getHeight();
 
-        // Log.v(TAG, String.format("initBuffer(%d, %d)", mWidth, mHeight));
+        // Log.v(TAG, String.format("initBuffer(%d, %d) %d page(s)", mWidth, mHeight, mPacker.getNumPages()));
+
+        // create the new textures
+        createBuffers();
+    }
+
+    private void createBuffers() {
+        final int numPages = mPacker.getNumPages();
+        mFrameBuffers = new FrameBuffer[numPages];
+        mTextures = new BufferTexture[numPages];
+        for (int i = 0; i < numPages; i++) {
+            mFrameBuffers[i] = new FrameBuffer(mGLState, mPacker.getPageWidth(i), mPacker.getPageHeight(i), false);
+            mTextures[i] = (BufferTexture) mFrameBuffers[i].getTexture();
+        }
 
-        // create a new texture
-        mFrameBuffer = new FrameBuffer(mGLState, mWidth, mHeight, false);
-        mTexture = (BufferTexture) mFrameBuffer.getTexture();
+        mFrameBuffer = numPages > 0 ? mFrameBuffers[0] : null;
+        mTexture = numPages > 0 ? mTextures[0] : null;
     }
 
     /**
      * Render and generate the frames
      */
     private void generateFrames() {
-        mFrameBuffer.bind(Scene.AXIS_TOP_LEFT); // invert
-
-        // debug: draw bg
-        // final Rectangular debugRect = new Rectangular();
-        // debugRect.setSize(mWidth, mHeight);
-        // debugRect.setColor(new GLColor(0, 0.3f, 0, 1f));
-        // debugRect.draw(mGLState);
-
         final RectF posRect = new RectF();
         final int frames = mTarget.getNumFrames();
-        for (int i = 0; i < frames; i++) {
 
-            // prepare to draw the frame
-            mTarget.stopAt(i);
-            posRect.set(mPacker.getRect(i));
+        // create the frames, in the order of the target's frames
+        for (int i = 0; i < frames; i++) {
             final RectF frameRect = mTarget.getFrameRect(i);
-            mTarget.setOrigin(frameRect.left, frameRect.top);
+            final int page = mPacker.getPage(i);
+            if (page >= 0) {
+                posRect.set(mPacker.getRect(i));
+            } else {
+                // too big to fit
+                posRect.setEmpty();
+            }
 
-            // create frame
-            final AtlasFrame frame = new AtlasFrame(this, i, "", posRect);
+            // create frame, the other pages have their own sizes
+            final BufferTexture texture = page > 0 ? mTextures[page] : mTexture;
+            final AtlasFrame frame = page > 0 ? new AtlasFrame(texture, i, "", posRect) : new AtlasFrame(this, i, "", posRect);
             frame.mOffset = new PointF(frameRect.left, frameRect.top);
-            frame.setTexture(mTexture);
+            frame.setTexture(texture);
             addFrame(frame);
 
-            if (Math.round(frameRect.width()) == posRect.width()) {
-                mTarget.setRotation(0);
-                mTarget.setPosition(posRect.left, mHeight - (posRect.top + posRect.height())); // top to bottom
-                mTarget.draw(mGLState);
-            } else {
-                // rotate 90 CCW
-                mTarget.setRotation(90);
-                mTarget.setPosition(posRect.left + frameRect.height(), mHeight - (posRect.top + posRect.height())); // top to bottom
-                mTarget.draw(mGLState);
-
+            if (mPacker.isRotated(i)) {
                 frame.rotateCW();
             }
         }
 
-        // debug: draw dots
-        // final int pixelWidth = 2;
-        // final Rectangular r = new Rectangular();
-        // r.setSize(pixelWidth, pixelWidth);
-        // final TreeSet<Point> hots = mPacker.getHotPoints();
-        // for (Point p : hots) {
-        // r.setPosition(p.x, mHeight - p.y - pixelWidth);
-        // r.draw(mGLState);
-        // }
-
-        // done
-        mFrameBuffer.unbind();
+        // render the frames, page by page
+        final int numPages = mFrameBuffers.length;
+        for (int page = 0; page < numPages; page++) {
+            final FrameBuffer frameBuffer = mFrameBuffers[page];
+            final int pageHeight = mPacker.getPageHeight(page);
+            frameBuffer.bind(Scene.AXIS_TOP_LEFT); // invert
+
+            // debug: draw bg
+            // final Rectangular debugRect = new Rectangular();
+            // debugRect.setSize(mWidth, mHeight);
+            // debugRect.setColor(new GLColor(0, 0.3f, 0, 1f));
+            // debugRect.draw(mGLState);
+
+            for (int i = 0; i < frames; i++) {
+                if (mPacker.getPage(i) != page) {
+                    continue;
+                }
+
+                // prepare to draw the frame
+                mTarget.stopAt(i);
+                posRect.set(mPacker.getRect(i));
+                final RectF frameRect = mTarget.getFrameRect(i);
+                mTarget.setOrigin(frameRect.left, frameRect.top);
+
+                if (!mPacker.isRotated(i)) {
+                    mTarget.setRotation(0);
+                    mTarget.setPosition(posRect.left, pageHeight - (posRect.top + posRect.height())); // top to bottom
+                    mTarget.draw(mGLState);
+                } else {
+                    // rotate 90 CCW
+                    mTarget.setRotation(90);
+                    mTarget.setPosition(posRect.left + frameRect.height(), pageHeight - (posRect.top + posRect.height())); // top to bottom
+                    mTarget.draw(mGLState);
+                }
+            }
+
+            // done
+            frameBuffer.unbind();
+        }
     }
 
     /**
@@ -148,12 +184,13 @@ public class CacheAtlas extends Atlas {
             return;
         }
 
-        // remove the old texture
-        mGLState.getTextureManager().removeTexture(mTexture);
+        // remove the old textures
+        for (final BufferTexture texture : mTextures) {
+            mGLState.getTextureManager().removeTexture(texture);
+        }
 
-        // create a new texture
-        mFrameBuffer = new FrameBuffer(mGLState, mWidth, mHeight, false);
-        mTexture = (BufferTexture) mFrameBuffer.getTexture();
+        // create the new textures
+        createBuffers();
 
         // re-generate the frames
         getMasterFrameSet().removeAllFrames();
@@ -164,7 +201,19 @@ public class CacheAtlas extends Atlas {
         return mTexture;
     }
 
+    public BufferTexture getTexture(final int page) {
+        return mTextures[page];
+    }
+
     public FrameBuffer getFrameBuffer() {
         return mFrameBuffer;
     }
+
+    public FrameBuffer getFrameBuffer(final int page) {
+        return mFrameBuffers[page];
+    }
+
+    public int getNumPages() {
+        return mTextures.length;
+    }
 }
@@ -105,6 +105,22 @@ public class JsonAtlas extends Atlas {
         }
     }
 
+    /**
+     * Load from a JSON string
+     * 
+     * @param json
+     * @param scale
+     * @throws JSONException
+     */
+    public void loadJSON(final String json, final float scale) throws JSONException {
+        parse(json, scale);
+
+        // listener
+        if (mListener != null) {
+            mListener.onAtlasLoad(JsonAtlas.this);
+        }
+    }
+
     /**
      * Load from file system
      * 
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import java.util.List;
+import java.util.Random;
+
+import com.funzio.pure2D.astar.Astar;
+import com.funzio.pure2D.astar.AstarAdapter;
+import com.funzio.pure2D.astar.AstarNode;
+import com.funzio.pure2D.astar.AstarNodeSet;
+import com.funzio.pure2D.gl.gl10.GLState;
+
+/**
+ * @author long
+ * @category Find a path across a square grid with random obstacles, corner to corner, one search per operation
+ */
+public class AstarBenchmark extends Benchmark {
+    private final int mSize;
+    private final float mDensity;
+    private boolean[] mBlocked;
+    private Astar mAstar;
+    private int mPathLength;
+
+    /**
+     * @param size the grid width and height
+     * @param density the ratio of blocked cells, from 0 to 1
+     */
+    public AstarBenchmark(final int size, final float density) {
+        super("astar");
+
+        mSize = size;
+        mDensity = density;
+    }
+
+    @Override
+    protected void setup(final GLState glState) {
+        super.setup(glState);
+
+        final Random random = new Random(1);
+        mBlocked = new boolean[mSize * mSize];
+        for (int i = 0; i < mBlocked.length; i++) {
+            mBlocked[i] = random.nextFloat() < mDensity;
+        }
+        // keep the corners open
+        mBlocked[0] = false;
+        mBlocked[mBlocked.length - 1] = false;
+
+        mAstar = new Astar(new AstarAdapter() {
+            @Override
+            public int getNodeMaxNeighbors() {
+                return 4;
+            }
+
+            @Override
+            public void getNodeNeighbors(final AstarNode node, final AstarNodeSet openNodes, final AstarNodeSet closedNodes, final AstarNode[] neighbors) {
+                int index = 0;
+                index = addNeighbor(node.x - 1, node.y, closedNodes, neighbors, index);
+                index = addNeighbor(node.x + 1, node.y, closedNodes, neighbors, index);
+                index = addNeighbor(node.x, node.y - 1, closedNodes, neighbors, index);
+                addNeighbor(node.x, node.y + 1, closedNodes, neighbors, index);
+            }
+
+            @Override
+            public int getHeuristic(final AstarNode node1, final AstarNode node2) {
+                return Math.abs(node2.x - node1.x) + Math.abs(node2.y - node1.y);
+            }
+        }, mSize * mSize, false);
+        mAstar.prewarmNodePool(mSize * mSize);
+    }
+
+    private int addNeighbor(final int x, final int y, final AstarNodeSet closedNodes, final AstarNode[] neighbors, final int index) {
+        if (x < 0 || y < 0 || x >= mSize || y >= mSize || mBlocked[y * mSize + x] || closedNodes.containsXY(x, y)) {
+            return index;
+        }
+
+        neighbors[index] = mAstar.createNode(x, y);
+        return index + 1;
+    }
+
+    @Override
+    protected void run() {
+        final List<AstarNode> path = mAstar.findPath(mAstar.createNode(0, 0), mAstar.createNode(mSize - 1, mSize - 1), 0, false);
+        if (path != null) {
+            mPathLength = path.size();
+            mAstar.recycleNodes(path);
+        } else {
+            mPathLength = 0;
+        }
+    }
+
+    @Override
+    protected void teardown() {
+        mAstar = null;
+        mBlocked = null;
+
+        super.teardown();
+    }
+
+    @Override
+    public String getParams() {
+        return "size=" + mSize + ", density=" + mDensity + ", path=" + mPathLength;
+    }
+}
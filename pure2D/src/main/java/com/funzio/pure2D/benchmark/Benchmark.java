@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import com.funzio.pure2D.gl.gl10.GLState;
+
+/**
+ * @author long
+ * @category A benchmark of one engine hot path. {@link #run()} is one operation, it gets called many times between {@link #setup(GLState)} and {@link #teardown()}.
+ * @see BenchmarkSuite
+ */
+abstract public class Benchmark {
+    public final String name;
+    protected GLState mGLState;
+
+    public Benchmark(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Prepare the data, not measured
+     * 
+     * @param glState a GLState on a {@link RecordingGL}
+     */
+    protected void setup(final GLState glState) {
+        mGLState = glState;
+    }
+
+    /**
+     * One operation, measured
+     */
+    abstract protected void run();
+
+    /**
+     * Release the data, not measured
+     */
+    protected void teardown() {
+        mGLState = null;
+    }
+
+    /**
+     * @return the parameters, for the report
+     */
+    public String getParams() {
+        return "";
+    }
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Build;
+import android.util.Log;
+
+import com.funzio.pure2D.astar.Astar;
+import com.funzio.pure2D.gl.GLFloatBuffer;
+import com.funzio.pure2D.gl.gl10.GLState;
+
+/**
+ * @author long
+ * @category BenchmarkSuite runs the engine hot paths against a {@link RecordingGL}, so they can be measured the same way on any device or emulator without a surface. The results
+ *           go to JSON, one file per commit, to compare them.
+ *           <p>
+ *           Each benchmark gets warmed up, then timed per operation. The report has the mean, the min, the percentiles and the GL calls per operation.
+ *           </p>
+ */
+public class BenchmarkSuite {
+    private static final String TAG = BenchmarkSuite.class.getSimpleName();
+
+    public static final int DEFAULT_WARMUPS = 20;
+    public static final int DEFAULT_ITERATIONS = 100;
+
+    private final RecordingGL mRecordingGL = new RecordingGL();
+    private final GLState mGLState = new GLState(mRecordingGL.getGL());
+    private final ArrayList<Benchmark> mBenchmarks = new ArrayList<Benchmark>();
+    private int mNumWarmups = DEFAULT_WARMUPS;
+    private int mNumIterations = DEFAULT_ITERATIONS;
+
+    /**
+     * @return a suite with the default benchmarks: scene update/draw, UniGroup stacking, quad mesh updates, A*, bin packing, packer occupancy and atlas parsing
+     */
+    public static BenchmarkSuite createDefault() {
+        final BenchmarkSuite suite = new BenchmarkSuite();
+        suite.add(new SceneBenchmark(1000, false));
+        suite.add(new SceneBenchmark(1000, true));
+        suite.add(new UniGroupBenchmark(1000));
+        suite.add(new UpdateSchedulerBenchmark(200, 20, 1));
+        suite.add(new UpdateSchedulerBenchmark(200, 20, 4));
+        suite.add(new QuadMeshBenchmark(4096, 1));
+        suite.add(new QuadMeshBenchmark(4096, 4096));
+        suite.add(new AstarBenchmark(128, 0.2f));
+        suite.add(new GridAstarBenchmark(false, 128, 0.2f, GridAstarBenchmark.ASTAR));
+        suite.add(new GridAstarBenchmark(false, 128, 0.2f, GridAstarBenchmark.GRID_ASTAR));
+        suite.add(new GridAstarBenchmark(false, 128, 0.2f, GridAstarBenchmark.JUMP_POINT));
+        suite.add(new GridAstarBenchmark(true, 128, 0.2f, GridAstarBenchmark.ASTAR));
+        suite.add(new GridAstarBenchmark(true, 128, 0.2f, GridAstarBenchmark.GRID_ASTAR));
+        suite.add(new RectBinPackerBenchmark(500));
+        for (int set = PackerBenchmark.SET_UI; set <= PackerBenchmark.SET_PARTICLES; set++) {
+            for (int packer = PackerBenchmark.RECT_BIN; packer <= PackerBenchmark.MAX_RECTS_BSSF_ROTATED; packer++) {
+                suite.add(new PackerBenchmark(packer, set));
+            }
+        }
+        suite.add(new JsonAtlasBenchmark(500));
+
+        return suite;
+    }
+
+    public void add(final Benchmark benchmark) {
+        mBenchmarks.add(benchmark);
+    }
+
+    public List<Benchmark> getBenchmarks() {
+        return mBenchmarks;
+    }
+
+    /**
+     * @param numWarmups the number of operations before measuring
+     * @param numIterations the number of measured operations
+     */
+    public void setup(final int numWarmups, final int numIterations) {
+        mNumWarmups = numWarmups;
+        mNumIterations = numIterations;
+    }
+
+    public Result run(final Benchmark benchmark) {
+        Log.v(TAG, "run(): " + benchmark.name);
+
+        // no logs in the hot paths
+        final boolean astarLog = Astar.LOG_ENABLED;
+        Astar.LOG_ENABLED = false;
+
+        benchmark.setup(mGLState);
+        for (int i = 0; i < mNumWarmups; i++) {
+            benchmark.run();
+        }
+
+        mRecordingGL.reset();
+        final int numBytesCopiedStart = GLFloatBuffer.getNumBytesCopied();
+        final long[] times = new long[mNumIterations];
+        for (int i = 0; i < mNumIterations; i++) {
+            final long start = System.nanoTime();
+            benchmark.run();
+            times[i] = System.nanoTime() - start;
+        }
+        final int numGLCalls = mRecordingGL.getNumCalls();
+        final int numBytesCopied = GLFloatBuffer.getNumBytesCopied() - numBytesCopiedStart;
+        benchmark.teardown();
+
+        Astar.LOG_ENABLED = astarLog;
+
+        return new Result(benchmark, times, numGLCalls, numBytesCopied);
+    }
+
+    public ArrayList<Result> runAll() {
+        final ArrayList<Result> results = new ArrayList<Result>(mBenchmarks.size());
+        for (final Benchmark benchmark : mBenchmarks) {
+            results.add(run(benchmark));
+        }
+
+        return results;
+    }
+
+    /**
+     * @param label the commit or build the results belong to
+     * @param results
+     * @return the results as JSON
+     * @throws JSONException
+     */
+    public JSONObject toJSON(final String label, final List<Result> results) throws JSONException {
+        final JSONObject json = new JSONObject();
+        json.put("label", label);
+        json.put("time", System.currentTimeMillis());
+        json.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        json.put("sdk", Build.VERSION.SDK_INT);
+        json.put("warmups", mNumWarmups);
+        json.put("iterations", mNumIterations);
+
+        final JSONArray array = new JSONArray();
+        for (final Result result : results) {
+            array.put(result.toJSON());
+        }
+        json.put("results", array);
+
+        return json;
+    }
+
+    /**
+     * Run all the benchmarks and write the results to a JSON file
+     * 
+     * @param label the commit or build the results belong to
+     * @param file
+     * @return the results
+     * @throws IOException
+     * @throws JSONException
+     */
+    public ArrayList<Result> runAll(final String label, final File file) throws IOException, JSONException {
+        final ArrayList<Result> results = runAll();
+
+        final FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(toJSON(label, results).toString(2));
+        } finally {
+            writer.close();
+        }
+
+        return results;
+    }
+
+    public static class Result {
+        public final String name;
+        public final String params;
+        public final int numIterations;
+        public final long mean; // ns
+        public final long min; // ns
+        public final long p50; // ns
+        public final long p95; // ns
+        public final long max; // ns
+        public final float glCalls; // per operation
+        public final float bytesCopied; // into the GL buffers, per operation
+
+        public Result(final Benchmark benchmark, final long[] times, final int numGLCalls, final int numBytesCopied) {
+            name = benchmark.name;
+            params = benchmark.getParams();
+            numIterations = times.length;
+
+            final long[] sorted = times.clone();
+            Arrays.sort(sorted);
+            long total = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                total += sorted[i];
+            }
+            final int n = sorted.length;
+            mean = n > 0 ? total / n : 0;
+            min = n > 0 ? sorted[0] : 0;
+            p50 = n > 0 ? sorted[(n - 1) / 2] : 0;
+            p95 = n > 0 ? sorted[(int) Math.ceil(n * 0.95f) - 1] : 0;
+            max = n > 0 ? sorted[n - 1] : 0;
+            glCalls = n > 0 ? (float) numGLCalls / n : 0;
+            bytesCopied = n > 0 ? (float) numBytesCopied / n : 0;
+        }
+
+        public JSONObject toJSON() throws JSONException {
+            final JSONObject json = new JSONObject();
+            json.put("name", name);
+            json.put("params", params);
+            json.put("iterations", numIterations);
+            json.put("mean_ns", mean);
+            json.put("min_ns", min);
+            json.put("p50_ns", p50);
+            json.put("p95_ns", p95);
+            json.put("max_ns", max);
+            json.put("gl_calls", glCalls);
+            json.put("bytes_copied", bytesCopied);
+
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(%s): %.3f ms, p95 %.3f ms, %.0f GL calls, %.0f bytes copied", name, params, mean / 1000000f, p95 / 1000000f, glCalls, bytesCopied);
+        }
+    }
+}
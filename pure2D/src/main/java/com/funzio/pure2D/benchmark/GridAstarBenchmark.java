@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import java.util.List;
+import java.util.Random;
+
+import com.funzio.pure2D.astar.Astar;
+import com.funzio.pure2D.astar.AstarAdapter;
+import com.funzio.pure2D.astar.AstarNode;
+import com.funzio.pure2D.astar.AstarNodeSet;
+import com.funzio.pure2D.astar.GridAstar;
+import com.funzio.pure2D.astar.GridAstarAdapter;
+import com.funzio.pure2D.astar.HexGridAstarAdapter;
+import com.funzio.pure2D.astar.JumpPointSearch;
+import com.funzio.pure2D.astar.RectGridAstarAdapter;
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.grid.AbstractGrid;
+import com.funzio.pure2D.grid.HexGrid;
+import com.funzio.pure2D.grid.RectGrid;
+import com.funzio.pure2D.grid.VerticalHexGrid;
+
+/**
+ * @author long
+ * @category Find a path corner to corner on a {@link RectGrid} (4-connected) or {@link VerticalHexGrid} with random obstacles, using {@link Astar}, {@link GridAstar} or
+ *           {@link JumpPointSearch} (rect only), one search per operation
+ */
+public class GridAstarBenchmark extends Benchmark {
+    public static final int ASTAR = 0;
+    public static final int GRID_ASTAR = 1;
+    public static final int JUMP_POINT = 2;
+    private static final String[] ENGINE_NAMES = {
+            "astar_", "grid_astar_", "jps_"
+    };
+
+    private static final Object BLOCK = new Object();
+
+    private final boolean mHex;
+    private final int mSize;
+    private final float mDensity;
+    private final int mEngine;
+
+    private AbstractGrid<Object> mGrid;
+    private GridAstarAdapter mGridAdapter;
+    private Astar mAstar;
+    private GridAstar mGridAstar;
+    private final int[] mNeighbors = new int[HexGrid.CELL_MAX_NEIGHBORS * 2];
+    private final int[] mCosts = new int[HexGrid.CELL_MAX_NEIGHBORS];
+    private int mPathLength;
+
+    /**
+     * @param hex true for a hex grid, false for a rect grid
+     * @param size the grid width and height
+     * @param density the ratio of blocked cells, from 0 to 1
+     * @param engine one of {@link #ASTAR}, {@link #GRID_ASTAR} and {@link #JUMP_POINT}
+     */
+    public GridAstarBenchmark(final boolean hex, final int size, final float density, final int engine) {
+        super(ENGINE_NAMES[engine] + (hex ? "hex" : "rect"));
+
+        if (hex && engine == JUMP_POINT) {
+            throw new IllegalArgumentException("Jump Point Search only works on rect grids");
+        }
+
+        mHex = hex;
+        mSize = size;
+        mDensity = density;
+        mEngine = engine;
+    }
+
+    @Override
+    protected void setup(final GLState glState) {
+        super.setup(glState);
+
+        if (mHex) {
+            final VerticalHexGrid<Object> grid = new VerticalHexGrid<Object>(mSize, mSize, false);
+            mGridAdapter = new HexGridAstarAdapter(grid);
+            mGrid = grid;
+        } else {
+            final RectGrid<Object> grid = new RectGrid<Object>(mSize, mSize);
+            mGridAdapter = new RectGridAstarAdapter(grid, false);
+            mGrid = grid;
+        }
+
+        final Random random = new Random(1);
+        for (int y = 0; y < mSize; y++) {
+            for (int x = 0; x < mSize; x++) {
+                if (random.nextFloat() < mDensity) {
+                    mGrid.setDataAt(x, y, BLOCK);
+                }
+            }
+        }
+        // keep the corners open
+        mGrid.setDataAt(0, 0, null);
+        mGrid.setDataAt(mSize - 1, mSize - 1, null);
+
+        if (mEngine == JUMP_POINT) {
+            mGridAstar = new JumpPointSearch((RectGridAstarAdapter) mGridAdapter);
+        } else if (mEngine == GRID_ASTAR) {
+            mGridAstar = new GridAstar(mGridAdapter, mSize, mSize);
+        } else {
+            // the same neighbors, via nodes
+            mAstar = new Astar(new AstarAdapter() {
+                @Override
+                public int getNodeMaxNeighbors() {
+                    return mGridAdapter.getMaxNeighbors();
+                }
+
+                @Override
+                public void getNodeNeighbors(final AstarNode node, final AstarNodeSet openNodes, final AstarNodeSet closedNodes, final AstarNode[] neighbors) {
+                    final int numNeighbors = mGridAdapter.getNeighbors(node.x, node.y, mNeighbors, mCosts);
+                    int index = 0;
+                    for (int i = 0; i < numNeighbors; i++) {
+                        final int x = mNeighbors[i * 2];
+                        final int y = mNeighbors[i * 2 + 1];
+                        if (!closedNodes.containsXY(x, y)) {
+                            final AstarNode neighbor = mAstar.createNode(x, y);
+                            neighbor.g = mCosts[i];
+                            neighbors[index++] = neighbor;
+                        }
+                    }
+                }
+
+                @Override
+                public int getHeuristic(final AstarNode node1, final AstarNode node2) {
+                    return mGridAdapter.getHeuristic(node1.x, node1.y, node2.x, node2.y);
+                }
+            }, mSize * mSize, false);
+            mAstar.prewarmNodePool(mSize * mSize);
+        }
+    }
+
+    @Override
+    protected void run() {
+        if (mGridAstar != null) {
+            mPathLength = mGridAstar.findPath(0, 0, mSize - 1, mSize - 1, 0);
+        } else {
+            final List<AstarNode> path = mAstar.findPath(mAstar.createNode(0, 0), mAstar.createNode(mSize - 1, mSize - 1), 0, false);
+            if (path != null) {
+                mPathLength = path.size();
+                mAstar.recycleNodes(path);
+            } else {
+                mPathLength = 0;
+            }
+        }
+    }
+
+    @Override
+    protected void teardown() {
+        mAstar = null;
+        mGridAstar = null;
+        mGridAdapter = null;
+        mGrid = null;
+
+        super.teardown();
+    }
+
+    @Override
+    public String getParams() {
+        return "size=" + mSize + ", density=" + mDensity + ", path=" + mPathLength;
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import org.json.JSONException;
+
+import com.funzio.pure2D.atlas.JsonAtlas;
+import com.funzio.pure2D.gl.gl10.GLState;
+
+/**
+ * @author long
+ * @category Parse a TexturePacker JSON atlas of N trimmed frames, one atlas per operation
+ */
+public class JsonAtlasBenchmark extends Benchmark {
+    private final int mNumFrames;
+    private String mJson;
+
+    public JsonAtlasBenchmark(final int numFrames) {
+        super("json_atlas");
+
+        mNumFrames = numFrames;
+    }
+
+    @Override
+    protected void setup(final GLState glState) {
+        super.setup(glState);
+
+        // a grid of 64x64 frames, trimmed by 2 pixels
+        final int columns = 32;
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\"frames\":[");
+        for (int i = 0; i < mNumFrames; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            final int x = (i % columns) * 64;
+            final int y = (i / columns) * 64;
+            sb.append("{\"filename\":\"frame_").append(i).append(".png\",");
+            sb.append("\"frame\":{\"x\":").append(x).append(",\"y\":").append(y).append(",\"w\":60,\"h\":60},");
+            sb.append("\"rotated\":").append(i % 7 == 0).append(",\"trimmed\":true,");
+            sb.append("\"spriteSourceSize\":{\"x\":2,\"y\":2,\"w\":60,\"h\":60},");
+            sb.append("\"sourceSize\":{\"w\":64,\"h\":64}}");
+        }
+        sb.append("],\"meta\":{\"image\":\"atlas.png\",\"size\":{\"w\":2048,\"h\":");
+        sb.append(((mNumFrames + columns - 1) / columns) * 64).append("},\"scale\":\"1\"}}");
+        mJson = sb.toString();
+    }
+
+    @Override
+    protected void run() {
+        try {
+            new JsonAtlas().loadJSON(mJson, 1f);
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    protected void teardown() {
+        mJson = null;
+
+        super.teardown();
+    }
+
+    @Override
+    public String getParams() {
+        return "frames=" + mNumFrames;
+    }
+}
@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import android.graphics.PointF;
+
+import com.funzio.pure2D.DisplayObject;
+import com.funzio.pure2D.containers.DisplayGroup;
+import com.funzio.pure2D.particles.nova.NovaBatchEmitter;
+import com.funzio.pure2D.particles.nova.NovaEmitter;
+import com.funzio.pure2D.particles.nova.NovaFactory;
+import com.funzio.pure2D.particles.nova.NovaTracks;
+import com.funzio.pure2D.particles.nova.vo.NovaEmitterVO;
+import com.funzio.pure2D.particles.nova.vo.NovaParticleVO;
+
+/**
+ * NovaBenchmark measures the spawn cost and the per-frame cost of a Nova emitter's particles, emitted as NovaParticles with Animators versus emitted by a
+ * {@link NovaBatchEmitter} from the compiled {@link NovaTracks}. Only the simulation is measured, nothing is drawn. Run it on the device, on any thread that doesn't touch the
+ * factory at the same time. {@link NovaBurstBenchmark} runs it as part of a {@link BenchmarkSuite}.
+ * 
+ * @author long
+ */
+public class NovaBenchmark {
+    public static final int DEFAULT_NUM_PARTICLES = 2000;
+    public static final int DEFAULT_NUM_FRAMES = 120;
+    public static final int DEFAULT_DELTA_TIME = 16;
+
+    private final NovaFactory mFactory;
+    private int mNumParticles = DEFAULT_NUM_PARTICLES;
+    private int mNumFrames = DEFAULT_NUM_FRAMES;
+    private int mDeltaTime = DEFAULT_DELTA_TIME;
+
+    public NovaBenchmark(final NovaFactory factory) {
+        mFactory = factory;
+    }
+
+    /**
+     * @param numParticles the number of particles to spawn per run, capped by {@link NovaBatchEmitter#MAX_CAPACITY}
+     * @param numFrames the number of frames to simulate after spawning
+     * @param deltaTime the frame time in ms
+     */
+    public void setup(final int numParticles, final int numFrames, final int deltaTime) {
+        mNumParticles = Math.min(numParticles, NovaBatchEmitter.MAX_CAPACITY);
+        mNumFrames = numFrames;
+        mDeltaTime = deltaTime;
+    }
+
+    /**
+     * Emit the particles of an emitter as NovaParticles, today's path
+     * 
+     * @param emitterVO
+     * @return the result
+     */
+    public Result runParticles(final NovaEmitterVO emitterVO) {
+        final Result result = new Result("Particles");
+        if (emitterVO.particles == null || emitterVO.particles.isEmpty()) {
+            return result;
+        }
+
+        final DisplayGroup group = new DisplayGroup();
+        final ParticleEmitter emitter = new ParticleEmitter(mFactory, emitterVO);
+        group.addChild(emitter);
+
+        final int numVOs = emitterVO.particles.size();
+        long time = System.nanoTime();
+        for (int i = 0; i < mNumParticles; i++) {
+            final NovaParticleVO vo = emitterVO.particles.get(i % numVOs);
+            emitter.emit(vo, i / numVOs);
+        }
+        result.mSpawnTime = System.nanoTime() - time;
+        result.mNumParticles = mNumParticles;
+
+        // the emitter and its layers stay, only the particles get updated
+        emitter.mFrozen = true;
+        time = System.nanoTime();
+        for (int f = 0; f < mNumFrames; f++) {
+            result.mNumUpdates += countParticles(group, emitter);
+            group.update(mDeltaTime);
+        }
+        result.mFrameTime = System.nanoTime() - time;
+
+        group.removeAllChildren();
+
+        return result;
+    }
+
+    /**
+     * Emit the particles of an emitter with a {@link NovaBatchEmitter}. The particles that can't be batched are skipped.
+     * 
+     * @param emitterVO
+     * @return the result
+     */
+    public Result runBatch(final NovaEmitterVO emitterVO) {
+        final Result result = new Result("Batch");
+        if (emitterVO.particles == null || emitterVO.particles.isEmpty()) {
+            return result;
+        }
+
+        // compile ahead, like when batching is enabled
+        mFactory.compile();
+
+        final DisplayGroup group = new DisplayGroup();
+        final BatchEmitter emitter = new BatchEmitter(mFactory, emitterVO);
+        group.addChild(emitter);
+
+        final int numVOs = emitterVO.particles.size();
+        long time = System.nanoTime();
+        for (int i = 0; i < mNumParticles; i++) {
+            final NovaParticleVO vo = emitterVO.particles.get(i % numVOs);
+            if (mFactory.isBatchable(vo)) {
+                emitter.emit(vo, i / numVOs);
+            }
+        }
+        result.mSpawnTime = System.nanoTime() - time;
+        result.mNumParticles = emitter.getNumBatchedParticles();
+
+        time = System.nanoTime();
+        for (int f = 0; f < mNumFrames && emitter.getNumBatchedParticles() > 0; f++) {
+            result.mNumUpdates += emitter.getNumBatchedParticles();
+            emitter.step(mDeltaTime);
+        }
+        result.mFrameTime = System.nanoTime() - time;
+
+        emitter.clearParticles();
+        group.removeAllChildren();
+
+        return result;
+    }
+
+    /**
+     * Run both paths and compare them
+     * 
+     * @param emitterName
+     * @return the report
+     */
+    public String run(final String emitterName) {
+        final NovaEmitterVO emitterVO = mFactory.getNovaVO().getEmitterVO(emitterName);
+        if (emitterVO == null) {
+            return "Emitter not found: " + emitterName;
+        }
+
+        final Result particles = runParticles(emitterVO);
+        final Result batch = runBatch(emitterVO);
+
+        return emitterName + " x " + mNumParticles + ", " + mNumFrames + " frames\n" + particles + "\n" + batch;
+    }
+
+    /**
+     * @return the number of particles in the group and the emitter's layers
+     */
+    private static int countParticles(final DisplayGroup group, final NovaEmitter emitter) {
+        int count = 0;
+        final int numChildren = group.getNumChildren();
+        for (int i = 0; i < numChildren; i++) {
+            final DisplayObject child = group.getChildAt(i);
+            if (child instanceof DisplayGroup) {
+                // a layer
+                count += ((DisplayGroup) child).getNumChildren();
+            } else if (child != emitter) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Emits on demand instead of from its Timeline
+     */
+    private static class ParticleEmitter extends NovaEmitter {
+        protected boolean mFrozen = false;
+
+        public ParticleEmitter(final NovaFactory factory, final NovaEmitterVO vo) {
+            super(factory, vo, new PointF());
+        }
+
+        public void emit(final NovaParticleVO particleVO, final int emitIndex) {
+            emitParticle(particleVO, emitIndex);
+        }
+
+        @Override
+        public boolean update(final int deltaTime) {
+            return mFrozen ? false : super.update(deltaTime);
+        }
+    }
+
+    /**
+     * Emits and simulates on demand
+     */
+    private static class BatchEmitter extends NovaBatchEmitter {
+        public BatchEmitter(final NovaFactory factory, final NovaEmitterVO vo) {
+            super(factory, vo, new PointF());
+        }
+
+        public void emit(final NovaParticleVO particleVO, final int emitIndex) {
+            emitParticle(particleVO, emitIndex);
+        }
+
+        public void step(final int deltaTime) {
+            simulate(deltaTime);
+        }
+    }
+
+    public static class Result {
+        public final String name;
+        protected int mNumParticles = 0;
+        protected long mNumUpdates = 0;
+        protected long mSpawnTime = 0;
+        protected long mFrameTime = 0;
+
+        public Result(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the average spawn time per particle in ns
+         */
+        public float getSpawnTime() {
+            return mNumParticles > 0 ? (float) mSpawnTime / mNumParticles : 0;
+        }
+
+        /**
+         * @return the average update time per particle per frame in ns
+         */
+        public float getFrameTime() {
+            return mNumUpdates > 0 ? (float) mFrameTime / mNumUpdates : 0;
+        }
+
+        public int getNumParticles() {
+            return mNumParticles;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d particles, spawn %.0f ns, frame %.0f ns per particle", name, mNumParticles, getSpawnTime(), getFrameTime());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.particles.nova.NovaFactory;
+import com.funzio.pure2D.particles.nova.vo.NovaEmitterVO;
+
+/**
+ * @author long
+ * @category Emit a burst of N particles from a Nova emitter and simulate it for a few frames, one burst per operation. It needs a loaded {@link NovaFactory}, so it's not part of
+ *           {@link BenchmarkSuite#createDefault()}.
+ * @see NovaBenchmark
+ */
+public class NovaBurstBenchmark extends Benchmark {
+    public static final int NUM_FRAMES = 30;
+
+    private final NovaFactory mFactory;
+    private final String mEmitterName;
+    private final int mNumParticles;
+    private final boolean mBatching;
+    private NovaBenchmark mNovaBenchmark;
+    private NovaEmitterVO mEmitterVO;
+
+    public NovaBurstBenchmark(final NovaFactory factory, final String emitterName, final int numParticles, final boolean batching) {
+        super(batching ? "nova_burst_batched" : "nova_burst");
+
+        mFactory = factory;
+        mEmitterName = emitterName;
+        mNumParticles = numParticles;
+        mBatching = batching;
+    }
+
+    @Override
+    protected void setup(final GLState glState) {
+        super.setup(glState);
+
+        mEmitterVO = mFactory.getNovaVO().getEmitterVO(mEmitterName);
+        mNovaBenchmark = new NovaBenchmark(mFactory);
+        mNovaBenchmark.setup(mNumParticles, NUM_FRAMES, SceneBenchmark.DELTA_TIME);
+    }
+
+    @Override
+    protected void run() {
+        if (mEmitterVO == null) {
+            return;
+        }
+
+        if (mBatching) {
+            mNovaBenchmark.runBatch(mEmitterVO);
+        } else {
+            mNovaBenchmark.runParticles(mEmitterVO);
+        }
+    }
+
+    @Override
+    protected void teardown() {
+        mNovaBenchmark = null;
+        mEmitterVO = null;
+
+        super.teardown();
+    }
+
+    @Override
+    public String getParams() {
+        return "emitter=" + mEmitterName + ", particles=" + mNumParticles + ", frames=" + NUM_FRAMES;
+    }
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import java.util.Random;
+
+import android.graphics.Rect;
+
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.utils.MaxRectsPacker;
+import com.funzio.pure2D.utils.RectBinPacker;
+import com.funzio.pure2D.utils.RectPacker;
+
+/**
+ * @author long
+ * @category Pack a seeded sprite set with one of the packers, one packing per operation. The occupancy is the sprite area over the area of the bins, the sprites that
+ *           don't fit are counted as dropped. The old packers take the sprites in order like their callers did, MaxRects sorts them first like its callers do.
+ */
+@SuppressWarnings("deprecation")
+public class PackerBenchmark extends Benchmark {
+    public static final int MAX_WIDTH = 2048;
+
+    // packers
+    public static final int RECT_BIN = 0;
+    public static final int RECT = 1;
+    public static final int MAX_RECTS_BSSF = 2;
+    public static final int MAX_RECTS_BAF = 3;
+    public static final int MAX_RECTS_BSSF_ROTATED = 4;
+    private static final String[] PACKER_NAMES = {
+            "rect_bin", "rect", "max_rects_bssf", "max_rects_baf", "max_rects_bssf_rotated"
+    };
+
+    // sprite sets
+    public static final int SET_UI = 0;
+    public static final int SET_GLYPHS = 1;
+    public static final int SET_PARTICLES = 2;
+    private static final String[] SET_NAMES = {
+            "ui", "glyphs", "particles"
+    };
+
+    private final int mPacker;
+    private final int mSet;
+    private int[] mSizes;
+    private int mNumRects;
+
+    // results of the last run
+    private int mNumPacked;
+    private long mPackedArea;
+    private long mBinArea;
+    private int mNumPages;
+    private int mWidth;
+    private int mHeight;
+
+    public PackerBenchmark(final int packer, final int set) {
+        super("packer");
+
+        mPacker = packer;
+        mSet = set;
+    }
+
+    @Override
+    protected void setup(final GLState glState) {
+        super.setup(glState);
+
+        final Random random = new Random(1);
+        if (mSet == SET_UI) {
+            // icons, buttons, bars and a few panels
+            mNumRects = 200;
+            mSizes = new int[mNumRects * 2];
+            for (int i = 0; i < mNumRects; i++) {
+                final int kind = random.nextInt(10);
+                if (kind < 5) {
+                    // icon
+                    mSizes[i * 2] = mSizes[i * 2 + 1] = 32 + random.nextInt(65);
+                } else if (kind < 8) {
+                    // button
+                    mSizes[i * 2] = 96 + random.nextInt(161);
+                    mSizes[i * 2 + 1] = 32 + random.nextInt(33);
+                } else if (kind < 9) {
+                    // bar
+                    mSizes[i * 2] = 256 + random.nextInt(257);
+                    mSizes[i * 2 + 1] = 12 + random.nextInt(25);
+                } else {
+                    // panel
+                    mSizes[i * 2] = 160 + random.nextInt(193);
+                    mSizes[i * 2 + 1] = 128 + random.nextInt(129);
+                }
+            }
+        } else if (mSet == SET_GLYPHS) {
+            // narrow and tall glyphs of a 48px font
+            mNumRects = 256;
+            mSizes = new int[mNumRects * 2];
+            for (int i = 0; i < mNumRects; i++) {
+                mSizes[i * 2] = 8 + random.nextInt(37);
+                mSizes[i * 2 + 1] = 30 + random.nextInt(29);
+            }
+        } else {
+            // particles, mostly power of 2
+            mNumRects = 300;
+            mSizes = new int[mNumRects * 2];
+            for (int i = 0; i < mNumRects; i++) {
+                if (random.nextInt(4) > 0) {
+                    mSizes[i * 2] = mSizes[i * 2 + 1] = 8 << random.nextInt(4);
+                } else {
+                    mSizes[i * 2] = 8 + random.nextInt(57);
+                    mSizes[i * 2 + 1] = 8 + random.nextInt(57);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void run() {
+        mNumPacked = 0;
+        mPackedArea = 0;
+
+        if (mPacker == RECT_BIN) {
+            final RectBinPacker packer = new RectBinPacker(MAX_WIDTH, true);
+            for (int i = 0; i < mNumRects; i++) {
+                count(packer.occupy(mSizes[i * 2], mSizes[i * 2 + 1]));
+            }
+            setBin(1, packer.getWidth(), packer.getHeight());
+            mBinArea = mWidth * mHeight;
+        } else if (mPacker == RECT) {
+            final RectPacker packer = new RectPacker(MAX_WIDTH, true);
+            for (int i = 0; i < mNumRects; i++) {
+                count(packer.occupy(mSizes[i * 2], mSizes[i * 2 + 1]));
+            }
+            setBin(1, packer.getWidth(), packer.getHeight());
+            mBinArea = mWidth * mHeight;
+        } else {
+            final MaxRectsPacker packer = new MaxRectsPacker(MAX_WIDTH, true);
+            packer.setHeuristic(mPacker == MAX_RECTS_BAF ? MaxRectsPacker.BEST_AREA_FIT : MaxRectsPacker.BEST_SHORT_SIDE_FIT);
+            packer.setRotationEnabled(mPacker == MAX_RECTS_BSSF_ROTATED);
+            packer.occupyAll(mSizes);
+            for (int i = 0; i < mNumRects; i++) {
+                count(packer.getRect(i));
+            }
+            setBin(packer.getNumPages(), packer.getWidth(), packer.getHeight());
+            mBinArea = 0;
+            for (int i = 0; i < mNumPages; i++) {
+                mBinArea += packer.getPageWidth(i) * packer.getPageHeight(i);
+            }
+        }
+    }
+
+    private void count(final Rect rect) {
+        if (rect != null) {
+            mNumPacked++;
+            mPackedArea += rect.width() * rect.height();
+        }
+    }
+
+    private void setBin(final int numPages, final int width, final int height) {
+        mNumPages = numPages;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    @Override
+    protected void teardown() {
+        mSizes = null;
+
+        super.teardown();
+    }
+
+    /**
+     * @return the sprite area over the area of the bins, from 0 to 1
+     */
+    public float getOccupancy() {
+        return mBinArea > 0 ? (float) mPackedArea / mBinArea : 0;
+    }
+
+    @Override
+    public String getParams() {
+        return String.format("packer=%s, set=%s, rects=%d, dropped=%d, occupancy=%.3f, pages=%d, bin=%dx%d", PACKER_NAMES[mPacker], SET_NAMES[mSet], mNumRects,
+                mNumRects - mNumPacked, getOccupancy(), mNumPages, mWidth, mHeight);
+    }
+}
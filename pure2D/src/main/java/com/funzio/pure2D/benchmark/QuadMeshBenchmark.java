@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.QuadMeshBuffer;
+import com.funzio.pure2D.gl.gl10.QuadMeshColorBuffer;
+import com.funzio.pure2D.gl.gl10.textures.QuadMeshTextureCoordBuffer;
+
+/**
+ * @author long
+ * @category Change M of the N cells of a quad mesh, with its colors and texture coordinates, then draw it, one frame per operation. The bytes copied per operation show how
+ *           much of the mesh gets copied for a small change, like one glyph of a text or one sprite of a UniGroup.
+ */
+public class QuadMeshBenchmark extends Benchmark {
+    public static final int CELL_SIZE = 16;
+
+    private final int mNumCells;
+    private final int mNumChanged;
+    private QuadMeshBuffer mMeshBuffer;
+    private QuadMeshTextureCoordBuffer mTextureCoordBuffer;
+    private QuadMeshColorBuffer mColorBuffer;
+    private int mFrame;
+
+    public QuadMeshBenchmark(final int numCells, final int numChanged) {
+        super("quadmesh");
+
+        mNumCells = numCells;
+        mNumChanged = Math.min(numChanged, numCells);
+    }
+
+    @Override
+    protected void setup(final GLState glState) {
+        super.setup(glState);
+
+        mMeshBuffer = new QuadMeshBuffer(mNumCells);
+        mTextureCoordBuffer = new QuadMeshTextureCoordBuffer(mNumCells);
+        mColorBuffer = new QuadMeshColorBuffer(mNumCells);
+        for (int i = 0; i < mNumCells; i++) {
+            mMeshBuffer.setRectAt(i, (i % 64) * CELL_SIZE, (i / 64) * CELL_SIZE, CELL_SIZE, CELL_SIZE);
+            mTextureCoordBuffer.setRectAt(i, 0, 0, 1, 1);
+        }
+        mFrame = 0;
+    }
+
+    @Override
+    protected void run() {
+        // move a window of cells, so a different range changes every frame
+        final int first = (mFrame++ * mNumChanged) % mNumCells;
+        final float alpha = (mFrame & 1) == 0 ? 1 : 0.5f;
+        for (int i = 0; i < mNumChanged; i++) {
+            final int index = (first + i) % mNumCells;
+            mMeshBuffer.setRectAt(index, (index % 64) * CELL_SIZE + (mFrame & 1), (index / 64) * CELL_SIZE, CELL_SIZE, CELL_SIZE);
+            mColorBuffer.setAlphaAt(index, alpha);
+        }
+
+        mColorBuffer.apply(mGLState);
+        mTextureCoordBuffer.apply(mGLState);
+        mMeshBuffer.draw(mGLState);
+        mColorBuffer.unapply(mGLState);
+    }
+
+    @Override
+    protected void teardown() {
+        mMeshBuffer.dispose();
+        mTextureCoordBuffer.dispose();
+        mColorBuffer.dispose();
+        mMeshBuffer = null;
+        mTextureCoordBuffer = null;
+        mColorBuffer = null;
+
+        super.teardown();
+    }
+
+    @Override
+    public String getParams() {
+        return "cells=" + mNumCells + ", changed=" + mNumChanged;
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * @author long
+ * @category RecordingGL is a GL10 that draws nothing and counts the calls instead, so the engine's draw paths can run without a GL context. It's a dynamic proxy, each call costs a
+ *           reflective dispatch, so the draw timings are only comparable with each other.
+ */
+public class RecordingGL implements InvocationHandler {
+    private final GL10 mGL;
+    private final HashMap<String, int[]> mCalls = new HashMap<String, int[]>();
+    private int mNumCalls = 0;
+
+    public RecordingGL() {
+        mGL = (GL10) Proxy.newProxyInstance(GL10.class.getClassLoader(), new Class<?>[] {
+            GL10.class
+        }, this);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        final Class<?> declaring = method.getDeclaringClass();
+        if (declaring == Object.class) {
+            // equals(), hashCode(), toString()
+            final String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else {
+                return RecordingGL.class.getSimpleName();
+            }
+        }
+
+        // count
+        final String name = method.getName();
+        int[] count = mCalls.get(name);
+        if (count == null) {
+            count = new int[1];
+            mCalls.put(name, count);
+        }
+        count[0]++;
+        mNumCalls++;
+
+        // default values
+        final Class<?> type = method.getReturnType();
+        if (type == int.class) {
+            return 0; // also GL_NO_ERROR
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == String.class) {
+            return "";
+        }
+
+        return null;
+    }
+
+    public GL10 getGL() {
+        return mGL;
+    }
+
+    /**
+     * @return the number of GL calls since the last {@link #reset()}
+     */
+    public int getNumCalls() {
+        return mNumCalls;
+    }
+
+    /**
+     * @param name the GL function, such as "glDrawElements"
+     * @return the number of calls to it since the last {@link #reset()}
+     */
+    public int getNumCalls(final String name) {
+        final int[] count = mCalls.get(name);
+        return count != null ? count[0] : 0;
+    }
+
+    /**
+     * @return the number of calls per GL function since the last {@link #reset()}
+     */
+    public Map<String, Integer> getCalls() {
+        final HashMap<String, Integer> calls = new HashMap<String, Integer>();
+        for (Map.Entry<String, int[]> entry : mCalls.entrySet()) {
+            if (entry.getValue()[0] > 0) {
+                calls.put(entry.getKey(), entry.getValue()[0]);
+            }
+        }
+
+        return calls;
+    }
+
+    public void reset() {
+        for (int[] count : mCalls.values()) {
+            count[0] = 0;
+        }
+        mNumCalls = 0;
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import java.util.Random;
+
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.utils.RectBinPacker;
+
+/**
+ * @author long
+ * @category Pack N random rects into a fresh bin, one bin per operation
+ */
+public class RectBinPackerBenchmark extends Benchmark {
+    public static final int MAX_WIDTH = 2048;
+    public static final int MIN_RECT_SIZE = 8;
+    public static final int MAX_RECT_SIZE = 64;
+
+    private final int mNumRects;
+    private int[] mSizes;
+    private int mWidth;
+    private int mHeight;
+
+    public RectBinPackerBenchmark(final int numRects) {
+        super("rect_bin_packer");
+
+        mNumRects = numRects;
+    }
+
+    @Override
+    protected void setup(final GLState glState) {
+        super.setup(glState);
+
+        final Random random = new Random(1);
+        mSizes = new int[mNumRects * 2];
+        for (int i = 0; i < mSizes.length; i++) {
+            mSizes[i] = MIN_RECT_SIZE + random.nextInt(MAX_RECT_SIZE - MIN_RECT_SIZE);
+        }
+    }
+
+    @Override
+    protected void run() {
+        final RectBinPacker packer = new RectBinPacker(MAX_WIDTH, true);
+        for (int i = 0; i < mNumRects; i++) {
+            packer.occupy(mSizes[i * 2], mSizes[i * 2 + 1]);
+        }
+        mWidth = packer.getWidth();
+        mHeight = packer.getHeight();
+    }
+
+    @Override
+    protected void teardown() {
+        mSizes = null;
+
+        super.teardown();
+    }
+
+    @Override
+    public String getParams() {
+        return "rects=" + mNumRects + ", bin=" + mWidth + "x" + mHeight;
+    }
+}
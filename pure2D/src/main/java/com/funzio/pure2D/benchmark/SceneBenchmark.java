@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import java.util.Random;
+
+import com.funzio.pure2D.LoopModes;
+import com.funzio.pure2D.animators.RotateAnimator;
+import com.funzio.pure2D.containers.DisplayGroup;
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.QuadBatch;
+import com.funzio.pure2D.shapes.Sprite;
+
+/**
+ * @author long
+ * @category Update and draw N rotating sprites in a group, one frame per operation, with or without batching
+ */
+public class SceneBenchmark extends Benchmark {
+    public static final int DELTA_TIME = 16;
+    public static final int AREA_SIZE = 1024;
+
+    private final int mNumSprites;
+    private final boolean mBatching;
+    private DisplayGroup mGroup;
+    private QuadBatch mQuadBatch;
+
+    public SceneBenchmark(final int numSprites, final boolean batching) {
+        super(batching ? "scene_batched" : "scene");
+
+        mNumSprites = numSprites;
+        mBatching = batching;
+    }
+
+    @Override
+    protected void setup(final GLState glState) {
+        super.setup(glState);
+
+        final Random random = new Random(1);
+        mGroup = new DisplayGroup();
+        for (int i = 0; i < mNumSprites; i++) {
+            final Sprite sprite = new Sprite();
+            sprite.setSize(32, 32);
+            sprite.setPosition(random.nextInt(AREA_SIZE), random.nextInt(AREA_SIZE));
+            // batching needs the bounds
+            sprite.setAutoUpdateBounds(mBatching);
+
+            final RotateAnimator rotate = new RotateAnimator(null);
+            rotate.setDuration(1000 + random.nextInt(1000));
+            rotate.setLoop(LoopModes.LOOP_REPEAT);
+            sprite.addManipulator(rotate);
+            rotate.start(0, 360);
+
+            mGroup.addChild(sprite);
+        }
+
+        if (mBatching) {
+            mQuadBatch = new QuadBatch(glState);
+        }
+    }
+
+    @Override
+    protected void run() {
+        mGroup.update(DELTA_TIME);
+
+        if (mQuadBatch != null) {
+            mGLState.setQuadBatch(mQuadBatch);
+            mGroup.draw(mGLState);
+            mGLState.setQuadBatch(null);
+        } else {
+            mGroup.draw(mGLState);
+        }
+    }
+
+    @Override
+    protected void teardown() {
+        mGroup.removeAllChildren();
+        mGroup = null;
+        mQuadBatch = null;
+
+        super.teardown();
+    }
+
+    @Override
+    public String getParams() {
+        return "sprites=" + mNumSprites;
+    }
+}
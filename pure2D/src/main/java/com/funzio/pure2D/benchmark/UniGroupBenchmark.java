@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import java.util.Random;
+
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.uni.UniGroup;
+import com.funzio.pure2D.uni.UniRect;
+
+/**
+ * @author long
+ * @category Stack and draw N moving rects in a UniGroup, one frame per operation
+ */
+public class UniGroupBenchmark extends Benchmark {
+    public static final int DELTA_TIME = 16;
+    public static final int AREA_SIZE = 1024;
+
+    private final int mNumRects;
+    private UniGroup mGroup;
+    private UniRect[] mRects;
+    private int mFrame;
+
+    public UniGroupBenchmark(final int numRects) {
+        super("unigroup");
+
+        mNumRects = numRects;
+    }
+
+    @Override
+    protected void setup(final GLState glState) {
+        super.setup(glState);
+
+        final Random random = new Random(1);
+        mGroup = new UniGroup();
+        mRects = new UniRect[mNumRects];
+        for (int i = 0; i < mNumRects; i++) {
+            final UniRect rect = new UniRect();
+            rect.setSize(32, 32);
+            rect.setPosition(random.nextInt(AREA_SIZE), random.nextInt(AREA_SIZE));
+            mGroup.addChild(rect);
+            mRects[i] = rect;
+        }
+        mFrame = 0;
+    }
+
+    @Override
+    protected void run() {
+        // move them all, so everything gets restacked
+        final float dx = (mFrame++ & 1) == 0 ? 1 : -1;
+        for (int i = 0; i < mNumRects; i++) {
+            final UniRect rect = mRects[i];
+            rect.setPosition(rect.getPosition().x + dx, rect.getPosition().y);
+        }
+
+        mGroup.update(DELTA_TIME);
+        mGroup.draw(mGLState);
+    }
+
+    @Override
+    protected void teardown() {
+        mGroup.removeAllChildren();
+        mGroup = null;
+        mRects = null;
+
+        super.teardown();
+    }
+
+    @Override
+    public String getParams() {
+        return "rects=" + mNumRects;
+    }
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.benchmark;
+
+import com.funzio.pure2D.LoopModes;
+import com.funzio.pure2D.animators.MoveAnimator;
+import com.funzio.pure2D.animators.RotateAnimator;
+import com.funzio.pure2D.containers.DisplayGroup;
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.shapes.Rectangular;
+import com.funzio.pure2D.utils.UpdateScheduler;
+
+/**
+ * @author long
+ * @category Update N independent groups of animated shapes with an {@link UpdateScheduler}, one frame per operation. Compare the thread counts to see how the update scales, nothing is
+ *           drawn.
+ */
+public class UpdateSchedulerBenchmark extends Benchmark {
+    public static final int DELTA_TIME = 16;
+
+    private final int mNumChildren;
+    private final int mNumShapes;
+    private final int mNumThreads;
+    private DisplayGroup mRoot;
+    private UpdateScheduler mScheduler;
+
+    /**
+     * @param numChildren the number of independent children
+     * @param numShapes the number of animated shapes per child
+     * @param numThreads the number of threads, 1 for the serial path
+     */
+    public UpdateSchedulerBenchmark(final int numChildren, final int numShapes, final int numThreads) {
+        super("update_scheduler");
+
+        mNumChildren = numChildren;
+        mNumShapes = numShapes;
+        mNumThreads = numThreads;
+    }
+
+    @Override
+    protected void setup(final GLState glState) {
+        super.setup(glState);
+
+        mRoot = new DisplayGroup();
+        for (int i = 0; i < mNumChildren; i++) {
+            final DisplayGroup child = new DisplayGroup();
+            for (int j = 0; j < mNumShapes; j++) {
+                final Rectangular shape = new Rectangular();
+                shape.setSize(10, 10);
+
+                final MoveAnimator move = new MoveAnimator(null);
+                move.setDuration(500 + (i + j) % 500);
+                move.setLoop(LoopModes.LOOP_REVERSE);
+                shape.addManipulator(move);
+                move.start(0, 0, 100, 100);
+
+                final RotateAnimator rotate = new RotateAnimator(null);
+                rotate.setDuration(1000);
+                rotate.setLoop(LoopModes.LOOP_REPEAT);
+                shape.addManipulator(rotate);
+                rotate.start(0, 360);
+
+                child.addChild(shape);
+            }
+            mRoot.addChild(child);
+        }
+
+        if (mNumThreads > 1) {
+            mScheduler = new UpdateScheduler(mNumThreads);
+            mScheduler.setMinChildren(2);
+            mRoot.setUpdateScheduler(mScheduler);
+        }
+    }
+
+    @Override
+    protected void run() {
+        mRoot.update(DELTA_TIME);
+    }
+
+    @Override
+    protected void teardown() {
+        mRoot.setUpdateScheduler(null);
+        if (mScheduler != null) {
+            mScheduler.dispose();
+            mScheduler = null;
+        }
+        mRoot.removeAllChildren();
+        mRoot = null;
+
+        super.teardown();
+    }
+
+    @Override
+    public String getParams() {
+        return "children=" + mNumChildren + ", shapes=" + mNumShapes + ", threads=" + mNumThreads;
+    }
+}
@@ -45,8 +45,11 @@ import com.funzio.pure2D.exceptions.Pure2DException;
 import com.funzio.pure2D.geom.Rectangle;
 import com.funzio.pure2D.gl.gl10.FrameBuffer;
 import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.QuadBatch;
+import com.funzio.pure2D.gl.gl10.RenderSnapshot;
 import com.funzio.pure2D.shapes.DummyDrawer;
 import com.funzio.pure2D.ui.UIManager;
+import com.funzio.pure2D.utils.UpdateScheduler;
 
 /**
  * @author long
@@ -80,6 +83,22 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
     protected int[] mOriginalScissor;
     protected RectF mClipStageRect;
 
+    // spatial index
+    protected SpatialIndex mSpatialIndex;
+    protected ArrayList<DisplayObject> mIndexedChildren;
+    protected ArrayList<DisplayObject> mTouchCandidates;
+    protected ArrayList<Touchable> mTouchTargets;
+    protected ArrayList<Touchable> mTouchFocus;
+
+    // static subtree
+    protected boolean mStatic = false;
+    protected int mNumDescendants = 0;
+    protected int mNumUpdatedDescendants = 0;
+    protected int mNumSkippedDescendants = 0;
+
+    // parallel update
+    protected UpdateScheduler mUpdateScheduler;
+
     protected boolean mWrapContentWidth = false;
     protected boolean mWrapContentHeight = false;
 
@@ -97,25 +116,63 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
     protected void updateChildren(final int deltaTime) {
         super.updateChildren(deltaTime);
 
+        // static subtree, skip it until something inside or the bounds are invalidated
+        if (mStatic && (mInvalidateFlags & (BOUNDS | CHILDREN)) == 0) {
+            mNumUpdatedDescendants = 0;
+            mNumSkippedDescendants = mNumDescendants;
+            return;
+        }
+
         final boolean forceChildrenConstraints = ((mInvalidateFlags & (SIZE | PARENT | PARENT_BOUNDS)) != 0);
 
         DisplayObject child;
         float temp, sx = mSize.x, sy = mSize.y;
+        int numUpdated = 0, numSkipped = 0;
+
+        // independent children, prepare them and update them in parallel
+        final boolean parallel = mUpdateScheduler != null && mUpdateScheduler.isParallel(mNumChildren);
+        if (parallel) {
+            for (int i = 0; i < mNumChildren; i++) {
+                child = mChildren.get(i);
+
+                if (forceChildrenConstraints) {
+                    invalidateChild(child, PARENT);
+                }
+
+                // hint child to update bounds
+                if (child.isAlive() && (mInvalidateFlags & BOUNDS) != 0) {
+                    invalidateChild(child, PARENT_BOUNDS);
+                }
+            }
+
+            // NOTE: meanwhile, the children only add CHILDREN to the flags of this group and above, so nothing gets lost
+            mUpdateScheduler.update(mChildren, mNumChildren, deltaTime);
+        }
+
         for (int i = 0; i < mNumChildren; i++) {
             child = mChildren.get(i);
 
-            if (forceChildrenConstraints) {
-                child.invalidate(PARENT);
+            if (forceChildrenConstraints && !parallel) {
+                invalidateChild(child, PARENT);
             }
 
             if (child.isAlive()) {
-                // hint child to update bounds
-                if ((mInvalidateFlags & BOUNDS) != 0) {
-                    child.invalidate(PARENT_BOUNDS);
+                if (!parallel) {
+                    // hint child to update bounds
+                    if ((mInvalidateFlags & BOUNDS) != 0) {
+                        invalidateChild(child, PARENT_BOUNDS);
+                    }
+
+                    // update child
+                    child.update(deltaTime);
                 }
 
-                // update child
-                child.update(deltaTime);
+                // stats
+                numUpdated++;
+                if (child instanceof DisplayGroup) {
+                    numUpdated += ((DisplayGroup) child).mNumUpdatedDescendants;
+                    numSkipped += ((DisplayGroup) child).mNumSkippedDescendants;
+                }
             }
 
             // match content size
@@ -151,10 +208,25 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
                 // hint the children to update bounds next frame
                 for (int i = 0; i < mNumChildren; i++) {
                     child = mChildren.get(i);
-                    child.invalidate(PARENT_BOUNDS);
+                    invalidateChild(child, PARENT_BOUNDS);
                 }
             }
         }
+
+        mNumUpdatedDescendants = numUpdated;
+        mNumSkippedDescendants = numSkipped;
+        mNumDescendants = numUpdated + numSkipped;
+    }
+
+    /**
+     * Invalidate a child without the notification back to this group, which is being updated anyway
+     */
+    protected void invalidateChild(final DisplayObject child, final int flags) {
+        if (child instanceof BaseDisplayObject) {
+            ((BaseDisplayObject) child).invalidateFromParent(flags);
+        } else {
+            child.invalidate(flags);
+        }
     }
 
     @Override
@@ -163,6 +235,13 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             return false;
         }
 
+        // the children's global matrices don't match where they get drawn, suspend batching for the whole subtree
+        final QuadBatch batch = glState.getQuadBatch();
+        if (batch != null && !isBatchable()) {
+            // this also draws the pending quads
+            glState.setQuadBatch(null);
+        }
+
         drawStart(glState);
 
         // NOTE: this clipping method doesn't work for Rotation!!!
@@ -260,6 +339,11 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
 
         drawEnd(glState);
 
+        // resume batching
+        if (batch != null) {
+            glState.setQuadBatch(batch);
+        }
+
         // validate visual and children, NOT bounds
         mInvalidateFlags &= ~(VISUAL | CHILDREN);
 
@@ -280,15 +364,30 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             }
         }
 
+        // only visit the children in the camera
+        final RectF cameraRect = mScene != null ? mScene.getCameraRect() : null;
+        ArrayList<DisplayObject> children = mChildrenDisplayOrder;
+        if (mSpatialIndex != null) {
+            mSpatialIndex.validate(mChildrenDisplayOrder);
+
+            if (cameraRect != null) {
+                mSpatialIndex.query(cameraRect, mIndexedChildren);
+                children = mIndexedChildren;
+            }
+        }
+
         // draw the children
         int numVisibles = 0;
         final boolean uiEnabled = mTouchable && mScene != null && mScene.isUIEnabled();
         DisplayObject child;
-        final int numChildren = mChildrenDisplayOrder.size();
+        final int numChildren = children.size();
+        int numCulled = mChildrenDisplayOrder.size() - numChildren;
         for (int i = 0; i < numChildren; i++) {
-            child = mChildrenDisplayOrder.get(i);
+            child = children.get(i);
 
-            if (child.shouldDraw(mScene != null ? mScene.getCameraRect() : null)) {
+            if (!child.shouldDraw(cameraRect)) {
+                numCulled++;
+            } else {
                 // draw frame, check alpha for optimization
                 child.draw(glState);
 
@@ -304,10 +403,90 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
                 }
             }
         }
+        glState.addCulled(numCulled);
 
         return true;
     }
 
+    /**
+     * Record the children one by one when possible, otherwise the whole group gets drawn directly.
+     * 
+     * @hide For internal use
+     * @see com.funzio.pure2D.BaseDisplayObject#record(com.funzio.pure2D.gl.gl10.GLState, com.funzio.pure2D.gl.gl10.RenderSnapshot)
+     */
+    @Override
+    public void record(final GLState glState, final RenderSnapshot snapshot) {
+        if (mNumChildren == 0) {
+            return;
+        }
+
+        if (!isRecordable()) {
+            snapshot.addObject(this, getParentMatrix());
+            return;
+        }
+
+        // same as drawChildren()
+        final RectF cameraRect = mScene != null ? mScene.getCameraRect() : null;
+        ArrayList<DisplayObject> children = mChildrenDisplayOrder;
+        if (mSpatialIndex != null) {
+            mSpatialIndex.validate(mChildrenDisplayOrder);
+
+            if (cameraRect != null) {
+                mSpatialIndex.query(cameraRect, mIndexedChildren);
+                children = mIndexedChildren;
+            }
+        }
+
+        DisplayObject child;
+        final int numChildren = children.size();
+        for (int i = 0; i < numChildren; i++) {
+            child = children.get(i);
+
+            if (child.shouldDraw(cameraRect)) {
+                if (child instanceof BaseDisplayObject) {
+                    ((BaseDisplayObject) child).record(glState, snapshot);
+                } else {
+                    snapshot.addObject(child, mMatrix);
+                }
+            }
+        }
+
+        // validate visual and children, NOT bounds
+        mInvalidateFlags &= ~(VISUAL | CHILDREN);
+    }
+
+    /**
+     * @return true if the children can be recorded one by one into a {@link RenderSnapshot}: a plain 2D group with up-to-date bounds, no clipping, cache, mask, perspective or
+     *         touchables to collect.
+     */
+    protected boolean isRecordable() {
+        if (!isBatchable()) {
+            return false;
+        }
+
+        // things that need to be drawn directly
+        return !mClippingEnabled && mMask == null && (Pure2D.DEBUG_FLAGS | mDebugFlags) == 0 && !(mTouchable && mScene != null && mScene.isUIEnabled());
+    }
+
+    /**
+     * @return true if the children can go into the {@link QuadBatch} with their global matrices: a 2D group with an up-to-date matrix, not cached into a frame buffer and
+     *         without perspective.
+     */
+    protected boolean isBatchable() {
+        // the matrix needs to be updated by updateBounds()
+        if (mMatrix == null || !(mAutoUpdateBounds || Pure2D.AUTO_UPDATE_BOUNDS) || (mInvalidateFlags & BOUNDS) != 0) {
+            return false;
+        }
+
+        // things the matrix doesn't cover
+        if (mZ != 0 || mPivot.x != mPivot.y || (mRotation != 0 && (mRotationVectorX != 0 || mRotationVectorY != 0 || mRotationVectorZ != 1))) {
+            return false;
+        }
+
+        // the cache is drawn in local space
+        return !mCacheEnabled && !mPerspectiveEnabled;
+    }
+
     /**
      * Test to see if a child can be seen in this container.
      * 
@@ -371,6 +550,16 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
     }
 
     public boolean addChild(final DisplayObject child) {
+        // children are being updated in parallel, add it after that
+        if (UpdateScheduler.isDeferring()) {
+            return UpdateScheduler.defer(new Runnable() {
+                @Override
+                public void run() {
+                    addChild(child);
+                }
+            });
+        }
+
         if (mChildren.indexOf(child) < 0) {
 
             // check id
@@ -385,6 +574,9 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             mChildrenIds.put(childId, child);
             mChildren.add(child);
             mNumChildren++;
+            if (mSpatialIndex != null) {
+                mSpatialIndex.add(child);
+            }
 
             // child callback
             child.onAdded(this);
@@ -398,6 +590,16 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
     }
 
     public boolean addChild(final DisplayObject child, final int index) {
+        // children are being updated in parallel, add it after that
+        if (UpdateScheduler.isDeferring()) {
+            return UpdateScheduler.defer(new Runnable() {
+                @Override
+                public void run() {
+                    addChild(child, index);
+                }
+            });
+        }
+
         if (index <= mNumChildren && mChildren.indexOf(child) < 0) {
 
             // check id
@@ -412,6 +614,9 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             mChildrenIds.put(childId, child);
             mChildren.add(index, child);
             mNumChildren++;
+            if (mSpatialIndex != null) {
+                mSpatialIndex.add(child);
+            }
 
             // child callback
             child.onAdded(this);
@@ -424,6 +629,16 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
     }
 
     public boolean removeChild(final DisplayObject child) {
+        // children are being updated in parallel, remove it after that
+        if (UpdateScheduler.isDeferring()) {
+            return UpdateScheduler.defer(new Runnable() {
+                @Override
+                public void run() {
+                    removeChild(child);
+                }
+            });
+        }
+
         if (mChildren.indexOf(child) >= 0) {
 
             // child callback
@@ -432,6 +647,10 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             mChildrenIds.remove(child.getId());
             mChildren.remove(child);
             mNumChildren--;
+            if (mSpatialIndex != null) {
+                mSpatialIndex.remove(child);
+                mSpatialIndex.invalidateOrder();
+            }
 
             // child callback
             child.onRemoved();
@@ -445,6 +664,16 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
     }
 
     public boolean removeChild(final int index) {
+        // children are being updated in parallel, remove it after that
+        if (UpdateScheduler.isDeferring()) {
+            return UpdateScheduler.defer(new Runnable() {
+                @Override
+                public void run() {
+                    removeChild(index);
+                }
+            });
+        }
+
         if (index < mNumChildren) {
             final DisplayObject child = mChildren.get(index);
 
@@ -454,6 +683,10 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             mChildrenIds.remove(child.getId());
             mChildren.remove(child);
             mNumChildren--;
+            if (mSpatialIndex != null) {
+                mSpatialIndex.remove(child);
+                mSpatialIndex.invalidateOrder();
+            }
 
             // child callback
             child.onRemoved();
@@ -467,6 +700,17 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
     }
 
     public void removeAllChildren() {
+        // children are being updated in parallel, remove them after that
+        if (UpdateScheduler.isDeferring()) {
+            UpdateScheduler.defer(new Runnable() {
+                @Override
+                public void run() {
+                    removeAllChildren();
+                }
+            });
+            return;
+        }
+
         // call children
         // for (int i = 0; i < mNumChildren; i++) {
         // final DisplayObject child = mChildren.get(i);
@@ -485,6 +729,9 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
         mChildrenIds.clear();
         mChildren.clear();
         mNumChildren = 0;
+        if (mSpatialIndex != null) {
+            mSpatialIndex.clear();
+        }
         invalidate(CHILDREN);
     }
 
@@ -538,6 +785,9 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
 
         mChildren.set(index1, child2);
         mChildren.set(index2, child1);
+        if (mSpatialIndex != null) {
+            mSpatialIndex.invalidateOrder();
+        }
         invalidate(CHILDREN);
 
         return true;
@@ -564,6 +814,9 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
 
         mChildren.set(index1, child2);
         mChildren.set(index2, child1);
+        if (mSpatialIndex != null) {
+            mSpatialIndex.invalidateOrder();
+        }
         invalidate(CHILDREN);
 
         return true;
@@ -584,6 +837,9 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             mChildren.set(i, mChildren.get(i + 1));
         }
         mChildren.set(mNumChildren - 1, child);
+        if (mSpatialIndex != null) {
+            mSpatialIndex.invalidateOrder();
+        }
         invalidate(CHILDREN);
 
         return true;
@@ -604,6 +860,9 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             mChildren.set(i, mChildren.get(i - 1));
         }
         mChildren.set(0, child);
+        if (mSpatialIndex != null) {
+            mSpatialIndex.invalidateOrder();
+        }
         invalidate(CHILDREN);
 
         return true;
@@ -642,6 +901,10 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
     @Override
     public boolean onTouchEvent(final MotionEvent event) {
 
+        if (mSpatialIndex != null && mScene != null) {
+            return onIndexedTouchEvent(event) || mModal;
+        }
+
         if (mNumChildren > 0 && mVisibleTouchables != null) {
             // start from front to back
             for (int i = mVisibleTouchables.size() - 1; i >= 0; i--) {
@@ -656,6 +919,137 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
         return mModal;
     }
 
+    /**
+     * Dispatch a touch event with the spatial index. Touch-downs only go to the children under the point, the other events go to the children that took control of a touch-down.
+     * Unbounded children such as groups get all the events.
+     * 
+     * @param event
+     * @return true if a child takes control
+     */
+    protected boolean onIndexedTouchEvent(final MotionEvent event) {
+        if (mNumChildren == 0) {
+            return false;
+        }
+
+        if (mTouchCandidates == null) {
+            mTouchCandidates = new ArrayList<DisplayObject>();
+            mTouchTargets = new ArrayList<Touchable>();
+            mTouchFocus = new ArrayList<Touchable>();
+        }
+
+        final int action = event.getActionMasked();
+        final boolean down = action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_POINTER_DOWN;
+        final RectF cameraRect = mScene.getCameraRect();
+        final ArrayList<DisplayObject> candidates = mTouchCandidates;
+
+        if (down) {
+            final int pointerIndex = (event.getAction() & MotionEvent.ACTION_POINTER_INDEX_MASK) >> MotionEvent.ACTION_POINTER_INDEX_SHIFT;
+            final PointF touchedPoint = mScene.getTouchedPoint(pointerIndex);
+            mSpatialIndex.query(touchedPoint.x, touchedPoint.y, candidates);
+        } else {
+            // the unbounded ones
+            mSpatialIndex.queryUnbounded(candidates);
+            // and the focused ones
+            final int numFocus = mTouchFocus.size();
+            for (int i = 0; i < numFocus; i++) {
+                final DisplayObject focus = (DisplayObject) mTouchFocus.get(i);
+                if (candidates.indexOf(focus) < 0) {
+                    candidates.add(focus);
+                }
+            }
+        }
+
+        // sort by z, the same as drawChildren()
+        final ArrayList<Touchable> touchables = mTouchTargets;
+        touchables.clear();
+        final int numCandidates = candidates.size();
+        for (int i = 0; i < numCandidates; i++) {
+            final DisplayObject child = candidates.get(i);
+            if (child instanceof Touchable && ((Touchable) child).isTouchable() && child.shouldDraw(cameraRect)) {
+                final float childZ = child.getZ();
+                int j = touchables.size();
+                while (j > 0 && ((DisplayObject) touchables.get(j - 1)).getZ() > childZ) {
+                    j--;
+                }
+                touchables.add(j, (Touchable) child);
+            }
+        }
+
+        boolean controlled = false;
+        // start from front to back
+        for (int i = touchables.size() - 1; i >= 0; i--) {
+            final Touchable touchable = touchables.get(i);
+            if (touchable.onTouchEvent(event)) {
+                if (down && mTouchFocus.indexOf(touchable) < 0) {
+                    mTouchFocus.add(touchable);
+                }
+                controlled = true;
+                break;
+            }
+        }
+
+        // all pointers are up
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            mTouchFocus.clear();
+        }
+
+        return controlled;
+    }
+
+    public SpatialIndex getSpatialIndex() {
+        return mSpatialIndex;
+    }
+
+    /**
+     * Set a spatial index for the children. This is useful for a large number of children, such as tiles of a map, under a scrolling Camera. Only the children in the Camera's rect get
+     * visited on drawing, and the ones under the touched point on touching. The children's bounds need to be auto-updated.
+     * 
+     * @param spatialIndex the index, null to disable
+     * @see SpatialIndex
+     */
+    public void setSpatialIndex(final SpatialIndex spatialIndex) {
+        if (mSpatialIndex != null) {
+            mSpatialIndex.clear();
+        }
+
+        mSpatialIndex = spatialIndex;
+
+        if (mSpatialIndex != null) {
+            for (int i = 0; i < mNumChildren; i++) {
+                mSpatialIndex.add(mChildren.get(i));
+            }
+
+            if (mIndexedChildren == null) {
+                mIndexedChildren = new ArrayList<DisplayObject>();
+            }
+        }
+
+        invalidate(CHILDREN);
+    }
+
+    /**
+     * Called after a child's bounds are updated
+     * 
+     * @param child
+     * @hide
+     */
+    public void onChildBoundsUpdated(final DisplayObject child) {
+        if (mSpatialIndex != null) {
+            // children are being updated in parallel, the index isn't thread-safe so invalidate after that
+            if (UpdateScheduler.isDeferring()) {
+                UpdateScheduler.defer(new Runnable() {
+                    @Override
+                    public void run() {
+                        onChildBoundsUpdated(child);
+                    }
+                });
+                return;
+            }
+
+            mSpatialIndex.invalidate(child);
+        }
+    }
+
     @Override
     public void setTouchable(final boolean touchable) {
         mTouchable = touchable;
@@ -774,6 +1168,9 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
         }
 
         mChildrenDisplayOrder = childrenDisplayOrder;
+        if (mSpatialIndex != null) {
+            mSpatialIndex.invalidateOrder();
+        }
 
         invalidate(CHILDREN);
     }
@@ -784,6 +1181,66 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
         }
     }
 
+    public boolean isStatic() {
+        return mStatic;
+    }
+
+    /**
+     * Make this a static subtree. The children don't get updated until something inside or the bounds of this group get invalidated. Animators and Manipulators in the subtree are
+     * paused meanwhile.
+     * 
+     * @param value
+     */
+    public void setStatic(final boolean value) {
+        mStatic = value;
+
+        // one full update
+        invalidate(CHILDREN);
+    }
+
+    public boolean isChildrenIndependent() {
+        return mUpdateScheduler != null;
+    }
+
+    /**
+     * Declare the children independent, so they can be updated in parallel with the shared {@link UpdateScheduler}. This suits per-layer groups, emitters, wheel items... Children
+     * added/removed and listener callbacks during the update are deferred until all the children are updated.
+     * 
+     * @param value
+     * @see #setUpdateScheduler(UpdateScheduler)
+     */
+    public void setChildrenIndependent(final boolean value) {
+        setUpdateScheduler(value ? UpdateScheduler.getInstance() : null);
+    }
+
+    public UpdateScheduler getUpdateScheduler() {
+        return mUpdateScheduler;
+    }
+
+    /**
+     * Set the scheduler that updates the children in parallel, null to update them one by one
+     * 
+     * @param scheduler
+     */
+    public void setUpdateScheduler(final UpdateScheduler scheduler) {
+        mUpdateScheduler = scheduler;
+    }
+
+    /**
+     * @return number of descendants updated by the last update, including grand children
+     */
+    public int getNumUpdatedDescendants() {
+        return mNumUpdatedDescendants;
+    }
+
+    /**
+     * @return number of descendants skipped by the last update because of static subtrees
+     * @see #setStatic(boolean)
+     */
+    public int getNumSkippedDescendants() {
+        return mNumSkippedDescendants;
+    }
+
     public boolean isWrapContentWidth() {
         return mWrapContentWidth;
     }
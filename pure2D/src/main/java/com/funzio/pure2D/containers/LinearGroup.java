@@ -150,6 +150,12 @@ public abstract class LinearGroup extends DisplayGroup {
         invalidateChildrenPosition();
     }
 
+    @Override
+    protected boolean isRecordable() {
+        // the children are checked against the bounds while drawing
+        return false;
+    }
+
     @Override
     protected void onAddedChild(final DisplayObject child) {
         super.onAddedChild(child);
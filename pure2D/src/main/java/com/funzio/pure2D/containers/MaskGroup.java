@@ -42,12 +42,20 @@ public class MaskGroup extends DisplayGroup implements Maskable {
         super();
     }
 
+    @Override
+    protected boolean isRecordable() {
+        // the stencil needs to be drawn directly
+        return false;
+    }
+
     @Override
     public boolean draw(final GLState glState) {
         mStencilBuffer.setGLState(glState);
 
+        glState.flushQuadBatch();
         mStencilBuffer.startMask();
         final boolean success = super.draw(glState);
+        glState.flushQuadBatch();
         mStencilBuffer.endMask();
 
         // if show children
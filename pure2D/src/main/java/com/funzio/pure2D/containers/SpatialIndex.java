@@ -0,0 +1,404 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.containers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import android.graphics.RectF;
+
+import com.funzio.pure2D.BaseDisplayObject;
+import com.funzio.pure2D.DisplayObject;
+
+/**
+ * @author long
+ * @category A uniform grid of the children's global bounds, hashed into a fixed number of buckets so it works for any world size. Used by {@link DisplayGroup} to find the children
+ *           in the Camera's rect or under a touched point without checking all of them. Changes are queued and only applied by {@link #validate(ArrayList)} which is called on
+ *           drawing, inside the UI lock.
+ * @see DisplayGroup#setSpatialIndex(SpatialIndex)
+ */
+public class SpatialIndex {
+    public static final float DEFAULT_CELL_SIZE = 256;
+    public static final int DEFAULT_NUM_BUCKETS = 1024;
+    // objects covering more cells than this are always returned
+    public static final int MAX_CELLS_PER_OBJECT = 64;
+
+    protected static class Entry {
+        protected final DisplayObject mObject;
+        protected int mOrder;
+        // the cell range, empty when mLeft > mRight
+        protected int mLeft = 0, mTop = 0, mRight = -1, mBottom = -1;
+        protected boolean mUnbounded = false;
+        protected boolean mPending = false;
+        protected boolean mRemoved = false;
+        protected int mStamp = 0;
+
+        protected Entry(final DisplayObject object) {
+            mObject = object;
+        }
+    }
+
+    protected final float mCellSize;
+    protected final ArrayList<Entry>[] mBuckets;
+    protected final int mBucketMask;
+
+    protected final HashMap<DisplayObject, Entry> mEntries = new HashMap<DisplayObject, Entry>();
+    protected final ArrayList<Entry> mUnboundedEntries = new ArrayList<Entry>();
+    protected final ArrayList<Entry> mPendingEntries = new ArrayList<Entry>();
+    protected boolean mOrderInvalidated = false;
+    protected int mStamp = 0;
+
+    // query results
+    private Entry[] mResultEntries = new Entry[64];
+    private long[] mResultKeys = new long[64];
+
+    public SpatialIndex() {
+        this(DEFAULT_CELL_SIZE, DEFAULT_NUM_BUCKETS);
+    }
+
+    public SpatialIndex(final float cellSize) {
+        this(cellSize, DEFAULT_NUM_BUCKETS);
+    }
+
+    /**
+     * @param cellSize the cell size in global coordinates, usually a few times the size of an average child
+     * @param numBuckets number of buckets, rounded up to a power of 2
+     */
+    @SuppressWarnings("unchecked")
+    public SpatialIndex(final float cellSize, final int numBuckets) {
+        mCellSize = cellSize;
+
+        int size = 1;
+        while (size < numBuckets) {
+            size <<= 1;
+        }
+        mBuckets = new ArrayList[size];
+        mBucketMask = size - 1;
+    }
+
+    /**
+     * Add an object, it's indexed on the next {@link #validate(ArrayList)}
+     * 
+     * @param object
+     */
+    public void add(final DisplayObject object) {
+        if (mEntries.containsKey(object)) {
+            return;
+        }
+
+        final Entry entry = new Entry(object);
+        mEntries.put(object, entry);
+        entry.mPending = true;
+        mPendingEntries.add(entry);
+        mOrderInvalidated = true;
+    }
+
+    /**
+     * Remove an object, it's unindexed on the next {@link #validate(ArrayList)}
+     * 
+     * @param object
+     */
+    public void remove(final DisplayObject object) {
+        final Entry entry = mEntries.remove(object);
+        if (entry != null) {
+            entry.mRemoved = true;
+            if (!entry.mPending) {
+                entry.mPending = true;
+                mPendingEntries.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Flag the bounds of an object are changed
+     * 
+     * @param object
+     */
+    public void invalidate(final DisplayObject object) {
+        final Entry entry = mEntries.get(object);
+        if (entry != null && !entry.mPending) {
+            entry.mPending = true;
+            mPendingEntries.add(entry);
+        }
+    }
+
+    /**
+     * Flag the display order is changed
+     */
+    public void invalidateOrder() {
+        mOrderInvalidated = true;
+    }
+
+    public void clear() {
+        for (int i = 0; i <= mBucketMask; i++) {
+            if (mBuckets[i] != null) {
+                mBuckets[i].clear();
+            }
+        }
+
+        mEntries.clear();
+        mUnboundedEntries.clear();
+        mPendingEntries.clear();
+        mOrderInvalidated = false;
+    }
+
+    /**
+     * Apply the pending changes
+     * 
+     * @param displayOrder the children in display order
+     */
+    public void validate(final ArrayList<DisplayObject> displayOrder) {
+        final int numPending = mPendingEntries.size();
+        for (int i = 0; i < numPending; i++) {
+            final Entry entry = mPendingEntries.get(i);
+            entry.mPending = false;
+
+            if (entry.mRemoved) {
+                unlink(entry);
+            } else {
+                relocate(entry);
+            }
+        }
+        mPendingEntries.clear();
+
+        // only when children are added, removed or swapped
+        if (mOrderInvalidated) {
+            final int size = displayOrder.size();
+            for (int i = 0; i < size; i++) {
+                final Entry entry = mEntries.get(displayOrder.get(i));
+                if (entry != null) {
+                    entry.mOrder = i;
+                }
+            }
+            mOrderInvalidated = false;
+        }
+    }
+
+    protected void relocate(final Entry entry) {
+        final DisplayObject object = entry.mObject;
+        final boolean unbounded = object instanceof BaseDisplayObject ? ((BaseDisplayObject) object).isBypassCameraClipping() : true;
+
+        int left = 0, top = 0, right = -1, bottom = -1;
+        if (!unbounded) {
+            final RectF bounds = object.getBounds();
+            left = (int) Math.floor(bounds.left / mCellSize);
+            top = (int) Math.floor(bounds.top / mCellSize);
+            right = (int) Math.floor(bounds.right / mCellSize);
+            bottom = (int) Math.floor(bounds.bottom / mCellSize);
+        }
+
+        // diff check
+        if (unbounded == entry.mUnbounded && left == entry.mLeft && top == entry.mTop && right == entry.mRight && bottom == entry.mBottom) {
+            return;
+        }
+
+        unlink(entry);
+
+        if (unbounded || (long) (right - left + 1) * (bottom - top + 1) > MAX_CELLS_PER_OBJECT) {
+            entry.mUnbounded = true;
+            mUnboundedEntries.add(entry);
+        } else {
+            for (int y = top; y <= bottom; y++) {
+                for (int x = left; x <= right; x++) {
+                    final int hash = getBucket(x, y);
+                    if (mBuckets[hash] == null) {
+                        mBuckets[hash] = new ArrayList<Entry>();
+                    }
+                    mBuckets[hash].add(entry);
+                }
+            }
+        }
+
+        entry.mLeft = left;
+        entry.mTop = top;
+        entry.mRight = right;
+        entry.mBottom = bottom;
+    }
+
+    protected void unlink(final Entry entry) {
+        if (entry.mUnbounded) {
+            mUnboundedEntries.remove(entry);
+            entry.mUnbounded = false;
+        } else {
+            for (int y = entry.mTop; y <= entry.mBottom; y++) {
+                for (int x = entry.mLeft; x <= entry.mRight; x++) {
+                    mBuckets[getBucket(x, y)].remove(entry);
+                }
+            }
+        }
+
+        entry.mLeft = entry.mTop = 0;
+        entry.mRight = entry.mBottom = -1;
+    }
+
+    protected int getBucket(final int cellX, final int cellY) {
+        return ((cellX * 73856093) ^ (cellY * 19349663)) & mBucketMask;
+    }
+
+    /**
+     * Find the objects that intersect a rect, plus the unbounded ones
+     * 
+     * @param rect in global coordinates
+     * @param result the objects in display order
+     * @return number of objects found
+     */
+    public int query(final RectF rect, final ArrayList<DisplayObject> result) {
+        final int stamp = ++mStamp;
+        int num = collectUnbounded(stamp);
+
+        final int left = (int) Math.floor(rect.left / mCellSize);
+        final int top = (int) Math.floor(rect.top / mCellSize);
+        final int right = (int) Math.floor(rect.right / mCellSize);
+        final int bottom = (int) Math.floor(rect.bottom / mCellSize);
+
+        if ((long) (right - left + 1) * (bottom - top + 1) > mBucketMask) {
+            // more cells than buckets, just visit every bucket once
+            for (int i = 0; i <= mBucketMask; i++) {
+                num = collect(mBuckets[i], rect, stamp, num);
+            }
+        } else {
+            for (int y = top; y <= bottom; y++) {
+                for (int x = left; x <= right; x++) {
+                    num = collect(mBuckets[getBucket(x, y)], rect, stamp, num);
+                }
+            }
+        }
+
+        return sort(num, result);
+    }
+
+    /**
+     * Find the objects that contain a point, plus the unbounded ones
+     * 
+     * @param x in global coordinates
+     * @param y in global coordinates
+     * @param result the objects in display order
+     * @return number of objects found
+     */
+    public int query(final float x, final float y, final ArrayList<DisplayObject> result) {
+        final int stamp = ++mStamp;
+        int num = collectUnbounded(stamp);
+
+        final ArrayList<Entry> bucket = mBuckets[getBucket((int) Math.floor(x / mCellSize), (int) Math.floor(y / mCellSize))];
+        if (bucket != null) {
+            final int size = bucket.size();
+            for (int i = 0; i < size; i++) {
+                final Entry entry = bucket.get(i);
+                if (entry.mStamp != stamp && entry.mObject.getBounds().contains(x, y)) {
+                    entry.mStamp = stamp;
+                    num = addResult(entry, num);
+                }
+            }
+        }
+
+        return sort(num, result);
+    }
+
+    /**
+     * Find the unbounded objects only
+     * 
+     * @param result the objects in display order
+     * @return number of objects found
+     */
+    public int queryUnbounded(final ArrayList<DisplayObject> result) {
+        return sort(collectUnbounded(++mStamp), result);
+    }
+
+    private int collectUnbounded(final int stamp) {
+        int num = 0;
+        final int size = mUnboundedEntries.size();
+        for (int i = 0; i < size; i++) {
+            final Entry entry = mUnboundedEntries.get(i);
+            entry.mStamp = stamp;
+            num = addResult(entry, num);
+        }
+
+        return num;
+    }
+
+    private int collect(final ArrayList<Entry> bucket, final RectF rect, final int stamp, int num) {
+        if (bucket == null) {
+            return num;
+        }
+
+        final int size = bucket.size();
+        for (int i = 0; i < size; i++) {
+            final Entry entry = bucket.get(i);
+            // dedup the objects in multiple cells, then check the real bounds
+            if (entry.mStamp != stamp) {
+                entry.mStamp = stamp;
+                if (RectF.intersects(rect, entry.mObject.getBounds())) {
+                    num = addResult(entry, num);
+                }
+            }
+        }
+
+        return num;
+    }
+
+    private int addResult(final Entry entry, final int num) {
+        if (num == mResultEntries.length) {
+            mResultEntries = Arrays.copyOf(mResultEntries, num * 2);
+            mResultKeys = new long[num * 2];
+        }
+        mResultEntries[num] = entry;
+
+        return num + 1;
+    }
+
+    private int sort(final int num, final ArrayList<DisplayObject> result) {
+        // sort by display order
+        for (int i = 0; i < num; i++) {
+            mResultKeys[i] = ((long) mResultEntries[i].mOrder << 32) | i;
+        }
+        Arrays.sort(mResultKeys, 0, num);
+
+        result.clear();
+        for (int i = 0; i < num; i++) {
+            result.add(mResultEntries[(int) mResultKeys[i]].mObject);
+        }
+
+        return num;
+    }
+
+    public float getCellSize() {
+        return mCellSize;
+    }
+
+    /**
+     * @return number of indexed objects
+     */
+    public int getNumObjects() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return number of objects that are always returned by the queries
+     */
+    public int getNumUnboundedObjects() {
+        return mUnboundedEntries.size();
+    }
+}
@@ -280,6 +280,12 @@ public class Wheel3D extends DisplayGroup implements Animator.AnimatorListener,
         invalidateChildrenPosition();
     }
 
+    @Override
+    protected boolean isBatchable() {
+        // 3D
+        return false;
+    }
+
     @Override
     protected void onAddedChild(final DisplayObject child) {
         super.onAddedChild(child);
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.gl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * @author long
+ * @category DirectBufferPool recycles the direct ByteBuffers of the vertex, color, texture coordinate and index buffers. Direct buffers are slow to allocate and their native
+ *           memory is only freed when the GC finalizes them, so the released ones are kept by size class (powers of 2) and given out again.
+ *           <p>
+ *           A buffer must not be used anymore after {@link #release(ByteBuffer)}.
+ *           </p>
+ */
+public class DirectBufferPool {
+    public static final int MIN_SIZE = 64; // bytes, the smallest class
+    public static final int MAX_POOLED_SIZE = 4 * 1024 * 1024; // bigger buffers are allocated exactly and not pooled
+    public static final int DEFAULT_MAX_POOLED_BYTES = 8 * 1024 * 1024;
+
+    private static final int MIN_CLASS = getSizeClass(MIN_SIZE);
+    private static final int NUM_CLASSES = getSizeClass(MAX_POOLED_SIZE) - MIN_CLASS + 1;
+
+    @SuppressWarnings("unchecked")
+    private static final ArrayList<ByteBuffer>[] sFreeBuffers = new ArrayList[NUM_CLASSES];
+    private static int sMaxPooledBytes = DEFAULT_MAX_POOLED_BYTES;
+
+    // stats
+    private static long sNumBytesAllocated = 0; // in total
+    private static long sNumBytesInUse = 0;
+    private static long sNumBytesPooled = 0;
+    private static int sNumAllocations = 0;
+    private static int sNumReuses = 0;
+
+    private DirectBufferPool() {
+        // static only
+    }
+
+    /**
+     * Get a direct buffer in native order
+     * 
+     * @param numBytes
+     * @return a cleared buffer, its capacity can be bigger than numBytes
+     */
+    public static synchronized ByteBuffer obtain(final int numBytes) {
+        final ByteBuffer buffer;
+        if (numBytes > MAX_POOLED_SIZE) {
+            buffer = allocate(numBytes);
+        } else {
+            final int index = getSizeClass(Math.max(numBytes, MIN_SIZE)) - MIN_CLASS;
+            final ArrayList<ByteBuffer> free = sFreeBuffers[index];
+            if (free != null && !free.isEmpty()) {
+                buffer = free.remove(free.size() - 1);
+                buffer.clear();
+                sNumBytesPooled -= buffer.capacity();
+                sNumReuses++;
+            } else {
+                buffer = allocate(1 << (index + MIN_CLASS));
+            }
+        }
+
+        sNumBytesInUse += buffer.capacity();
+        return buffer;
+    }
+
+    /**
+     * Give a buffer from {@link #obtain(int)} back
+     * 
+     * @param buffer
+     */
+    public static synchronized void release(final ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        sNumBytesInUse -= capacity;
+
+        // only the size classes, and not too many
+        if (capacity > MAX_POOLED_SIZE || capacity < MIN_SIZE || Integer.bitCount(capacity) != 1 || sNumBytesPooled + capacity > sMaxPooledBytes) {
+            return;
+        }
+
+        final int index = getSizeClass(capacity) - MIN_CLASS;
+        if (sFreeBuffers[index] == null) {
+            sFreeBuffers[index] = new ArrayList<ByteBuffer>();
+        }
+        sFreeBuffers[index].add(buffer);
+        sNumBytesPooled += capacity;
+    }
+
+    /**
+     * Drop the pooled buffers, so the GC can free them
+     */
+    public static synchronized void clear() {
+        for (int i = 0; i < NUM_CLASSES; i++) {
+            if (sFreeBuffers[i] != null) {
+                sFreeBuffers[i].clear();
+            }
+        }
+        sNumBytesPooled = 0;
+    }
+
+    private static ByteBuffer allocate(final int numBytes) {
+        sNumBytesAllocated += numBytes;
+        sNumAllocations++;
+
+        return ByteBuffer.allocateDirect(numBytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @param numBytes
+     * @return log2 of the smallest power of 2 >= numBytes
+     */
+    private static int getSizeClass(final int numBytes) {
+        return 32 - Integer.numberOfLeadingZeros(numBytes - 1);
+    }
+
+    public static synchronized int getMaxPooledBytes() {
+        return sMaxPooledBytes;
+    }
+
+    /**
+     * @param maxPooledBytes the most bytes kept for reuse, the extra released buffers are left to the GC
+     */
+    public static synchronized void setMaxPooledBytes(final int maxPooledBytes) {
+        sMaxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * @return native bytes allocated since the start, including the ones freed by the GC
+     */
+    public static synchronized long getNumBytesAllocated() {
+        return sNumBytesAllocated;
+    }
+
+    /**
+     * @return native bytes obtained and not released yet
+     */
+    public static synchronized long getNumBytesInUse() {
+        return sNumBytesInUse;
+    }
+
+    /**
+     * @return native bytes kept for reuse
+     */
+    public static synchronized long getNumBytesPooled() {
+        return sNumBytesPooled;
+    }
+
+    public static synchronized int getNumAllocations() {
+        return sNumAllocations;
+    }
+
+    public static synchronized int getNumReuses() {
+        return sNumReuses;
+    }
+}
@@ -25,16 +25,25 @@
 package com.funzio.pure2D.gl;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author long
  */
 public class GLFloatBuffer {
     public FloatBuffer mBuffer;
+    private ByteBuffer mByteBuffer; // from the DirectBufferPool
 
-    private int mCapacity = 0;
+    // where the values are in the StreamVBO, for internal use only
+    public int mStreamOffset = 0;
+    public int mStreamLength = 0;
+    public int mStreamGeneration = 0;
+
+    private int mCapacity = 0; // floats allocated
+
+    // floats copied into the direct buffers, for profiling. Process-wide, the buffers can be filled on any thread
+    private static final AtomicInteger sNumFloatsCopied = new AtomicInteger();
 
     public GLFloatBuffer() {
         // nothing now
@@ -47,11 +56,8 @@ public class GLFloatBuffer {
     public void setValues(final float... values) {
         // null check and create new buffer
         if (values != null) {
-            if (mBuffer == null || mCapacity != values.length) {
-                // a float is 4 bytes, therefore we multiply the number if vertices with 4.
-                ByteBuffer bb = ByteBuffer.allocateDirect(values.length * 4);
-                bb.order(ByteOrder.nativeOrder());
-                mBuffer = bb.asFloatBuffer();
+            if (mBuffer == null || mCapacity < values.length) {
+                allocate(values.length);
             } else {
                 // recycle for perf
                 mBuffer.clear();
@@ -59,20 +65,76 @@ public class GLFloatBuffer {
 
             mBuffer.put(values);
             mBuffer.flip();
-            mCapacity = values.length;
+            sNumFloatsCopied.addAndGet(values.length);
+            // changed, upload again
+            mStreamGeneration = 0;
         } else if (mBuffer != null) {
-            mBuffer.clear();
-            mBuffer = null;
-            mCapacity = 0;
+            release();
+            mStreamGeneration = 0;
         }
     }
 
+    /**
+     * Copy a range of values to the same position in the buffer, the others are kept. It falls back to {@link #setValues(float...)} when the number of values changed.
+     * 
+     * @param values
+     * @param start the first value
+     * @param count number of values
+     */
+    public void putValues(final float[] values, final int start, final int count) {
+        if (mBuffer == null || mBuffer.limit() != values.length) {
+            setValues(values);
+            return;
+        }
+
+        // absolute bulk put
+        mBuffer.position(start);
+        mBuffer.put(values, start, count);
+        mBuffer.position(0);
+        sNumFloatsCopied.addAndGet(count);
+        // changed, upload again
+        mStreamGeneration = 0;
+    }
+
+    private void allocate(final int numFloats) {
+        // grow geometrically, so a growing mesh doesn't reallocate every time
+        final int capacity = Math.max(numFloats, mCapacity * 2);
+
+        // the old one goes back to the pool
+        release();
+
+        // a float is 4 bytes, therefore we multiply the number if vertices with 4.
+        mByteBuffer = DirectBufferPool.obtain(capacity * 4);
+        mBuffer = mByteBuffer.asFloatBuffer();
+        mCapacity = mBuffer.capacity();
+    }
+
+    private void release() {
+        if (mByteBuffer != null) {
+            DirectBufferPool.release(mByteBuffer);
+            mByteBuffer = null;
+        }
+        mBuffer = null;
+        mCapacity = 0;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
     public void dispose() {
         // texture coordinates buffer
         if (mBuffer != null) {
-            mBuffer.clear();
-            mBuffer = null;
-            mCapacity = 0;
+            release();
         }
     }
+
+    /**
+     * This counter is process-wide: it's shared by all the buffers of all the scenes and threads, and never reset. Take the difference between two reads to measure a period, it wraps around.
+     * 
+     * @return running total of the bytes copied into all the buffers
+     */
+    public static int getNumBytesCopied() {
+        return sNumFloatsCopied.get() * 4;
+    }
 }
@@ -56,6 +56,28 @@ public class BlendModes {
         return bf != null && (bf.src == GL10.GL_ONE && bf.dst == GL10.GL_ONE_MINUS_SRC_ALPHA);
     }
 
+    /**
+     * @param bf
+     * @return true if the result doesn't depend on the drawing order of the primitives blended with this function, such as ADD and MULTIPLY
+     */
+    public static boolean isCommutative(final BlendFunc bf) {
+        if (bf == null) {
+            return false;
+        }
+
+        return isCommutative(bf.src, bf.dst) && (bf.src_alpha < 0 || isCommutative(bf.src_alpha, bf.dst_alpha));
+    }
+
+    private static boolean isCommutative(final int src, final int dst) {
+        if (dst == GL10.GL_ONE) {
+            // dst + src * factor, the factor must not depend on dst
+            return src != GL10.GL_DST_COLOR && src != GL10.GL_ONE_MINUS_DST_COLOR && src != GL10.GL_DST_ALPHA && src != GL10.GL_ONE_MINUS_DST_ALPHA && src != GL10.GL_SRC_ALPHA_SATURATE;
+        }
+
+        // dst * src
+        return (src == GL10.GL_DST_COLOR && dst == GL10.GL_ZERO) || (src == GL10.GL_ZERO && dst == GL10.GL_SRC_COLOR);
+    }
+
     public static BlendFunc getBlendFunc(final String mode) {
         if (ADD.equalsIgnoreCase(mode)) {
             return ADD_FUNC;
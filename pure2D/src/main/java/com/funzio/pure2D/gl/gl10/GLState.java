@@ -24,9 +24,13 @@
  */
 package com.funzio.pure2D.gl.gl10;
 
+import java.nio.FloatBuffer;
+
 import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
 import javax.microedition.khronos.opengles.GL11ExtensionPack;
 
+import android.opengl.GLES11;
 import android.opengl.GLES11Ext;
 import android.opengl.GLU;
 import android.util.Log;
@@ -36,6 +40,7 @@ import com.funzio.pure2D.Pure2D;
 import com.funzio.pure2D.Scene;
 import com.funzio.pure2D.Stage;
 import com.funzio.pure2D.gl.GLColor;
+import com.funzio.pure2D.gl.GLFloatBuffer;
 import com.funzio.pure2D.gl.gl10.textures.Texture;
 import com.funzio.pure2D.gl.gl10.textures.TextureCoordBuffer;
 import com.funzio.pure2D.gl.gl10.textures.TextureManager;
@@ -52,12 +57,14 @@ public class GLState {
 
     // texture
     private Texture mTexture = null;
+    private int mAlphaTextureID = 0; // bound to the second texture unit
     private boolean mTextureEnabled = false;
     private TextureCoordBuffer mTextureCoordBuffer;
     private boolean mTextureCoordArrayEnabled = false;
 
     // array toggles
     private VertexBuffer mVertexBuffer;
+    private FloatBuffer mVertexPointer; // the memory the vertex array points to
     private boolean mVertexArrayEnabled = false;
     private boolean mDepthTestEnabled = false;
     private boolean mScissorTestEnabled = false;
@@ -83,6 +90,29 @@ public class GLState {
     private TextureManager mTextureManager;
     private int mAxisSystem = Scene.AXIS_BOTTOM_LEFT;
 
+    // batching
+    private QuadBatch mQuadBatch;
+
+    // dynamic arrays are appended into this, right before drawing
+    private StreamVBO mStreamVBO;
+    private ColorBuffer mColorBuffer;
+    private boolean mVertexPending = false;
+    private boolean mColorPending = false;
+    private boolean mCoordsPending = false;
+    // offsets in the StreamVBO, -1 for client-side
+    private int mVertexOffset = -1;
+    private int mColorOffset = -1;
+    private int mCoordsOffset = -1;
+
+    // stats, for profiling
+    private int mNumDrawCalls = 0;
+    private int mNumVerticesDrawn = 0;
+    private int mNumTextureBinds = 0;
+    private int mNumBlendChanges = 0;
+    private int mNumColorChanges = 0;
+    private int mNumCulled = 0;
+    private int mNumBytesCopiedStart = 0; // the process-wide count at the last resetStats()
+
     // public Camera mCamera;
 
     // private int mInvalidateFlags = 0;
@@ -103,11 +133,13 @@ public class GLState {
         // mInvalidateFlags = InvalidateFlags.SURFACE;
 
         mTexture = null;
+        mAlphaTextureID = 0;
         mTextureEnabled = false;
         mTextureCoordBuffer = null;
         mTextureCoordArrayEnabled = false;
 
         mVertexBuffer = null;
+        mVertexPointer = null;
         mVertexArrayEnabled = false;
         mDepthTestEnabled = false;
         mScissorTestEnabled = false;
@@ -122,6 +154,16 @@ public class GLState {
         mLineWidth = 0;
         mFrameBuffer = 0;
 
+        mQuadBatch = null;
+
+        // the buffer id is gone with the context
+        if (mStreamVBO != null) {
+            mStreamVBO.reset();
+        }
+        mColorBuffer = null;
+        mVertexPending = mColorPending = mCoordsPending = false;
+        mVertexOffset = mColorOffset = mCoordsOffset = -1;
+
         clearErrors();
     }
 
@@ -156,6 +198,9 @@ public class GLState {
      * @see #Scene , Scene.AXIS_BOTTOM_LEFT, Scene.AXIS_TOP_LEFT
      */
     public void setProjection(final float projection, final float left, final float right, final float bottom, final float top) {
+        // pending quads belong to the current projection
+        flushQuadBatch();
+
         if (projection == Scene.PROJECTION_PERSPECTIVE) {
             final float width = right - left + 1;
             final float height = top - bottom + 1;
@@ -191,6 +236,8 @@ public class GLState {
     }
 
     public void setViewport(final int x, final int y, final int width, final int height) {
+        flushQuadBatch();
+
         mGL.glViewport(x, y, width, height);
         mViewport[0] = x;
         mViewport[1] = y;
@@ -228,6 +275,7 @@ public class GLState {
         if (mFrameBuffer == frameBuffer) {
             return false;
         }
+        flushQuadBatch();
         mFrameBuffer = frameBuffer;
 
         // only works for GLES11
@@ -252,10 +300,59 @@ public class GLState {
         // bind to gl
         mTexture = texture;
         mGL.glBindTexture(GL10.GL_TEXTURE_2D, mTexture.mTextureID);
+        mNumTextureBinds++;
+
+        // separate alpha channel
+        setAlphaTexture(mTexture.mAlphaTextureID);
 
         return true;
     }
 
+    /**
+     * Bind the alpha channel to the second texture unit, or disable it
+     * 
+     * @param textureID 0 to disable
+     */
+    private void setAlphaTexture(final int textureID) {
+        // diff check
+        if (mAlphaTextureID == textureID) {
+            return;
+        }
+
+        mGL.glActiveTexture(GL10.GL_TEXTURE1);
+        mGL.glClientActiveTexture(GL10.GL_TEXTURE1);
+        if (textureID != 0) {
+            if (mAlphaTextureID == 0) {
+                mGL.glEnable(GL10.GL_TEXTURE_2D);
+                mGL.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+
+                // color from the first unit, alpha modulated by this unit
+                mGL.glTexEnvf(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE, GL11.GL_COMBINE);
+                mGL.glTexEnvf(GL10.GL_TEXTURE_ENV, GL11.GL_COMBINE_RGB, GL10.GL_REPLACE);
+                mGL.glTexEnvf(GL10.GL_TEXTURE_ENV, GL11.GL_SRC0_RGB, GL11.GL_PREVIOUS);
+                mGL.glTexEnvf(GL10.GL_TEXTURE_ENV, GL11.GL_OPERAND0_RGB, GL10.GL_SRC_COLOR);
+                mGL.glTexEnvf(GL10.GL_TEXTURE_ENV, GL11.GL_COMBINE_ALPHA, GL10.GL_MODULATE);
+                mGL.glTexEnvf(GL10.GL_TEXTURE_ENV, GL11.GL_SRC0_ALPHA, GL11.GL_PREVIOUS);
+                mGL.glTexEnvf(GL10.GL_TEXTURE_ENV, GL11.GL_OPERAND0_ALPHA, GL10.GL_SRC_ALPHA);
+                mGL.glTexEnvf(GL10.GL_TEXTURE_ENV, GL11.GL_SRC1_ALPHA, GL10.GL_TEXTURE);
+                mGL.glTexEnvf(GL10.GL_TEXTURE_ENV, GL11.GL_OPERAND1_ALPHA, GL10.GL_SRC_ALPHA);
+            }
+            mGL.glBindTexture(GL10.GL_TEXTURE_2D, textureID);
+
+            // same coordinates as the color
+            if (mTextureCoordBuffer != null) {
+                mGL.glTexCoordPointer(2, GL10.GL_FLOAT, 0, mTextureCoordBuffer.mBuffer);
+            }
+        } else {
+            mGL.glDisable(GL10.GL_TEXTURE_2D);
+            mGL.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+        }
+        mGL.glActiveTexture(GL10.GL_TEXTURE0);
+        mGL.glClientActiveTexture(GL10.GL_TEXTURE0);
+
+        mAlphaTextureID = textureID;
+    }
+
     public boolean unbindTexture() {
         // diff check
         if (mTexture == null) {
@@ -264,6 +361,7 @@ public class GLState {
 
         // unbind to gl
         mTexture = null;
+        setAlphaTexture(0);
         // mGL.glBindTexture(GL10.GL_TEXTURE_2D, mTextureID);
 
         // make sure it's disabled
@@ -304,17 +402,191 @@ public class GLState {
         // return false;
         // }
 
-        // values check
-        final boolean same = mVertexBuffer instanceof QuadBuffer && buffer instanceof QuadBuffer && QuadBuffer.compare((QuadBuffer) mVertexBuffer, (QuadBuffer) buffer);
+        // values check, the memory pointed to must still be the last buffer's, it might have been released to the pool and reused
+        final boolean same = mVertexBuffer instanceof QuadBuffer && buffer instanceof QuadBuffer && mVertexBuffer.mBuffer == mVertexPointer
+                && QuadBuffer.compare((QuadBuffer) mVertexBuffer, (QuadBuffer) buffer);
         if (buffer != null && !same) {
-            mGL.glVertexPointer(buffer.mVertexPointerSize, GL10.GL_FLOAT, 0, buffer.mBuffer);
+            if (mStreamVBO != null) {
+                mVertexPending = true;
+            } else {
+                mGL.glVertexPointer(buffer.mVertexPointerSize, GL10.GL_FLOAT, 0, buffer.mBuffer);
+                mVertexOffset = -1;
+            }
+            mVertexPointer = buffer.mBuffer;
         }
 
         // now keep
         mVertexBuffer = buffer;
+
+        // this is right before drawing
+        if (buffer != null) {
+            validateArrays(buffer.getNumVerticesUsed());
+        }
+        return true;
+    }
+
+    public VertexBuffer getVertexBuffer() {
+        return mVertexBuffer;
+    }
+
+    public boolean setColorBuffer(final ColorBuffer buffer) {
+        if (buffer != null) {
+            if (mStreamVBO != null) {
+                mColorPending = true;
+            } else {
+                mGL.glColorPointer(4, GL10.GL_FLOAT, 0, buffer.mBuffer);
+                mColorOffset = -1;
+            }
+        }
+
+        // now keep
+        mColorBuffer = buffer;
         return true;
     }
 
+    /**
+     * Upload the pending vertex, color and texture coordinate arrays into the StreamVBO and point to them. Called right before drawing.
+     * 
+     * @param numVertices number of vertices to be drawn
+     */
+    public void validateArrays(final int numVertices) {
+        if (mStreamVBO == null || !(mVertexPending || mColorPending || mCoordsPending)) {
+            return;
+        }
+
+        if (mVertexPending && mVertexBuffer != null) {
+            final int offset = mStreamVBO.upload(mVertexBuffer, Math.min(numVertices * mVertexBuffer.mVertexPointerSize, mVertexBuffer.mBuffer.limit()));
+            mVertexOffset = offset;
+            if (offset >= 0) {
+                GLES11.glVertexPointer(mVertexBuffer.mVertexPointerSize, GL10.GL_FLOAT, 0, offset);
+            } else {
+                mStreamVBO.unbind();
+                mGL.glVertexPointer(mVertexBuffer.mVertexPointerSize, GL10.GL_FLOAT, 0, mVertexBuffer.mBuffer);
+            }
+        }
+
+        if (mColorPending && mColorBuffer != null && mColorBuffer.mBuffer != null) {
+            final int offset = mStreamVBO.upload(mColorBuffer, Math.min(numVertices * 4, mColorBuffer.mBuffer.limit()));
+            mColorOffset = offset;
+            if (offset >= 0) {
+                GLES11.glColorPointer(4, GL10.GL_FLOAT, 0, offset);
+            } else {
+                mStreamVBO.unbind();
+                mGL.glColorPointer(4, GL10.GL_FLOAT, 0, mColorBuffer.mBuffer);
+            }
+        }
+
+        if (mCoordsPending && mTextureCoordBuffer != null && mTextureCoordBuffer.mBuffer != null) {
+            final int offset = mStreamVBO.upload(mTextureCoordBuffer, Math.min(numVertices * 2, mTextureCoordBuffer.mBuffer.limit()));
+            mCoordsOffset = offset;
+            if (offset >= 0) {
+                GLES11.glTexCoordPointer(2, GL10.GL_FLOAT, 0, offset);
+                // the alpha channel uses the same coordinates
+                if (mAlphaTextureID != 0) {
+                    mGL.glClientActiveTexture(GL10.GL_TEXTURE1);
+                    GLES11.glTexCoordPointer(2, GL10.GL_FLOAT, 0, offset);
+                    mGL.glClientActiveTexture(GL10.GL_TEXTURE0);
+                }
+            } else {
+                mStreamVBO.unbind();
+                applyTextureCoordPointer(mTextureCoordBuffer);
+            }
+        }
+
+        // the other pointers are client-side
+        mStreamVBO.unbind();
+        mVertexPending = mColorPending = mCoordsPending = false;
+    }
+
+    /**
+     * Point the vertex, color and texture coordinate arrays at a vertex. This is for the meshes that have more vertices than 16-bit indices can address, they are drawn in chunks.
+     * 
+     * @param firstVertex
+     * @see QuadMeshBuffer#draw(GLState, int, int)
+     */
+    public void setFirstVertex(final int firstVertex) {
+        if (mVertexBuffer != null && mVertexBuffer.mBuffer != null) {
+            final int size = mVertexBuffer.mVertexPointerSize;
+            if (mVertexOffset >= 0) {
+                mStreamVBO.bind();
+                GLES11.glVertexPointer(size, GL10.GL_FLOAT, 0, mVertexOffset + firstVertex * size * 4);
+            } else {
+                unbindStreamVBO();
+                mVertexBuffer.mBuffer.position(firstVertex * size);
+                mGL.glVertexPointer(size, GL10.GL_FLOAT, 0, mVertexBuffer.mBuffer);
+                mVertexBuffer.mBuffer.position(0);
+            }
+        }
+
+        if (mColorArrayEnabled && mColorBuffer != null && mColorBuffer.mBuffer != null) {
+            if (mColorOffset >= 0) {
+                mStreamVBO.bind();
+                GLES11.glColorPointer(4, GL10.GL_FLOAT, 0, mColorOffset + firstVertex * 4 * 4);
+            } else {
+                unbindStreamVBO();
+                mColorBuffer.mBuffer.position(firstVertex * 4);
+                mGL.glColorPointer(4, GL10.GL_FLOAT, 0, mColorBuffer.mBuffer);
+                mColorBuffer.mBuffer.position(0);
+            }
+        }
+
+        if (mTextureCoordArrayEnabled && mTextureCoordBuffer != null && mTextureCoordBuffer.mBuffer != null) {
+            if (mCoordsOffset >= 0) {
+                mStreamVBO.bind();
+                GLES11.glTexCoordPointer(2, GL10.GL_FLOAT, 0, mCoordsOffset + firstVertex * 2 * 4);
+                if (mAlphaTextureID != 0) {
+                    mGL.glClientActiveTexture(GL10.GL_TEXTURE1);
+                    GLES11.glTexCoordPointer(2, GL10.GL_FLOAT, 0, mCoordsOffset + firstVertex * 2 * 4);
+                    mGL.glClientActiveTexture(GL10.GL_TEXTURE0);
+                }
+            } else {
+                unbindStreamVBO();
+                mTextureCoordBuffer.mBuffer.position(firstVertex * 2);
+                applyTextureCoordPointer(mTextureCoordBuffer);
+                mTextureCoordBuffer.mBuffer.position(0);
+            }
+        }
+
+        unbindStreamVBO();
+    }
+
+    private void unbindStreamVBO() {
+        if (mStreamVBO != null) {
+            mStreamVBO.unbind();
+        }
+    }
+
+    /**
+     * @return the StreamVBO, or null if the arrays are client-side
+     */
+    public StreamVBO getStreamVBO() {
+        return mStreamVBO;
+    }
+
+    /**
+     * Set a StreamVBO for the dynamic arrays, or null to use client-side arrays. Requires GLES11.
+     * 
+     * @param streamVBO
+     */
+    public void setStreamVBO(final StreamVBO streamVBO) {
+        if (mStreamVBO == streamVBO) {
+            return;
+        }
+
+        flushQuadBatch();
+
+        if (mStreamVBO != null) {
+            mStreamVBO.dispose();
+        }
+        mStreamVBO = streamVBO;
+
+        // point again
+        mVertexBuffer = null;
+        mVertexPointer = null;
+        mVertexPending = mColorPending = mCoordsPending = false;
+        mVertexOffset = mColorOffset = mCoordsOffset = -1;
+    }
+
     /**
      * @return the textureEnabled
      */
@@ -351,7 +623,12 @@ public class GLState {
 
         // values check
         if (buffer != null) { // && !TextureCoordBuffer.compare(mTextureCoordBuffer, buffer) // not correct for all cases
-            mGL.glTexCoordPointer(2, GL10.GL_FLOAT, 0, buffer.mBuffer);
+            if (mStreamVBO != null) {
+                mCoordsPending = true;
+            } else {
+                applyTextureCoordPointer(buffer);
+                mCoordsOffset = -1;
+            }
         }
 
         // now keep
@@ -359,6 +636,17 @@ public class GLState {
         return true;
     }
 
+    private void applyTextureCoordPointer(final TextureCoordBuffer buffer) {
+        mGL.glTexCoordPointer(2, GL10.GL_FLOAT, 0, buffer.mBuffer);
+
+        // the alpha channel uses the same coordinates
+        if (mAlphaTextureID != 0) {
+            mGL.glClientActiveTexture(GL10.GL_TEXTURE1);
+            mGL.glTexCoordPointer(2, GL10.GL_FLOAT, 0, buffer.mBuffer);
+            mGL.glClientActiveTexture(GL10.GL_TEXTURE0);
+        }
+    }
+
     public TextureCoordBuffer getTextureCoordBuffer() {
         return mTextureCoordBuffer;
     }
@@ -460,6 +748,7 @@ public class GLState {
 
         // apply
         mGL.glColor4f(mColor.r, mColor.g, mColor.b, mColor.a);
+        mNumColorChanges++;
 
         return true;
     }
@@ -476,6 +765,7 @@ public class GLState {
         // apply
         mColor.setValues(r, g, b, a);
         mGL.glColor4f(mColor.r, mColor.g, mColor.b, mColor.a);
+        mNumColorChanges++;
 
         return true;
     }
@@ -510,6 +800,7 @@ public class GLState {
                 } else {
                     GLES11Ext.glBlendFuncSeparateOES(mBlendFunc.src, mBlendFunc.dst, mBlendFunc.src_alpha, mBlendFunc.dst_alpha);
                 }
+                mNumBlendChanges++;
                 return true;
             } else {
                 return false;
@@ -526,6 +817,7 @@ public class GLState {
         } else {
             GLES11Ext.glBlendFuncSeparateOES(blendFunc.src, blendFunc.dst, blendFunc.src_alpha, blendFunc.dst_alpha);
         }
+        mNumBlendChanges++;
 
         return true;
     }
@@ -612,6 +904,7 @@ public class GLState {
         if (mScissorTestEnabled == scissorEnabled) {
             return;
         }
+        flushQuadBatch();
 
         mScissorTestEnabled = scissorEnabled;
 
@@ -623,6 +916,8 @@ public class GLState {
     }
 
     public void setScissor(final int x, final int y, final int width, final int height) {
+        flushQuadBatch();
+
         mGL.glScissor(x, y, width, height);
         mScissor[0] = x;
         mScissor[1] = y;
@@ -658,4 +953,117 @@ public class GLState {
     public Stage getStage() {
         return mStage;
     }
+
+    public QuadBatch getQuadBatch() {
+        return mQuadBatch;
+    }
+
+    /**
+     * Set the batch that collects the quads of the objects being drawn. Null to disable batching.
+     * 
+     * @hide For internal use
+     * @param quadBatch
+     * @see com.funzio.pure2D.BaseScene#setBatchingEnabled(boolean)
+     */
+    public void setQuadBatch(final QuadBatch quadBatch) {
+        // diff check
+        if (mQuadBatch == quadBatch) {
+            return;
+        }
+
+        // draw what's left
+        flushQuadBatch();
+
+        mQuadBatch = quadBatch;
+    }
+
+    /**
+     * Draw the pending quads, if any. This needs to be called before changing any GL state that affects them.
+     * 
+     * @return true if something was drawn
+     */
+    public boolean flushQuadBatch() {
+        return mQuadBatch != null && mQuadBatch.flush();
+    }
+
+    /**
+     * Count a draw call, called by the buffers right before glDrawArrays()/glDrawElements()
+     * 
+     * @hide For internal use
+     * @param numVertices the number of vertices or indices submitted
+     */
+    public void addDrawCall(final int numVertices) {
+        mNumDrawCalls++;
+        mNumVerticesDrawn += numVertices;
+    }
+
+    /**
+     * Count the objects skipped by the camera culling
+     * 
+     * @hide For internal use
+     * @param numObjects
+     */
+    public void addCulled(final int numObjects) {
+        mNumCulled += numObjects;
+    }
+
+    public void resetStats() {
+        mNumDrawCalls = 0;
+        mNumVerticesDrawn = 0;
+        mNumTextureBinds = 0;
+        mNumBlendChanges = 0;
+        mNumColorChanges = 0;
+        mNumCulled = 0;
+        mNumBytesCopiedStart = GLFloatBuffer.getNumBytesCopied();
+    }
+
+    /**
+     * @return number of glDrawArrays()/glDrawElements() calls since the last {@link #resetStats()}
+     */
+    public int getNumDrawCalls() {
+        return mNumDrawCalls;
+    }
+
+    /**
+     * @return number of vertices or indices submitted since the last {@link #resetStats()}
+     */
+    public int getNumVerticesDrawn() {
+        return mNumVerticesDrawn;
+    }
+
+    /**
+     * @return number of texture binds since the last {@link #resetStats()}
+     */
+    public int getNumTextureBinds() {
+        return mNumTextureBinds;
+    }
+
+    /**
+     * @return number of blending changes since the last {@link #resetStats()}
+     */
+    public int getNumBlendChanges() {
+        return mNumBlendChanges;
+    }
+
+    /**
+     * @return number of color changes since the last {@link #resetStats()}
+     */
+    public int getNumColorChanges() {
+        return mNumColorChanges;
+    }
+
+    /**
+     * @return number of objects culled by the camera since the last {@link #resetStats()}
+     */
+    public int getNumCulled() {
+        return mNumCulled;
+    }
+
+    /**
+     * @return number of bytes copied into the vertex, color and texture coordinate buffers since the last {@link #resetStats()}. The buffers filled meanwhile by other scenes or threads are
+     *         included, see {@link GLFloatBuffer#getNumBytesCopied()}.
+     */
+    public int getNumBytesCopied() {
+        return GLFloatBuffer.getNumBytesCopied() - mNumBytesCopiedStart;
+    }
 }
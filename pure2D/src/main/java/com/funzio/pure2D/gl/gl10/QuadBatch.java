@@ -0,0 +1,401 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.gl.gl10;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.graphics.Matrix;
+
+import com.funzio.pure2D.gl.GLColor;
+import com.funzio.pure2D.gl.gl10.textures.QuadMeshTextureCoordBuffer;
+import com.funzio.pure2D.gl.gl10.textures.Texture;
+
+/**
+ * @author long
+ * @category This class collects the quads of consecutive objects that share the same Texture and Blending function and draws them with a single call. With a sorting mode, the quads
+ *           are recorded into a {@link RenderCommandBuffer} instead and sorted by states before being drawn.
+ * @see GLState#setQuadBatch(QuadBatch)
+ */
+public class QuadBatch {
+    public static final int DEFAULT_NUM_QUADS = 256;
+    // 16-bit indices
+    public static final int MAX_NUM_QUADS = 0x10000 / QuadMeshBuffer.NUM_VERTICES_PER_CELL;
+
+    protected GLState mGLState;
+
+    protected QuadMeshBuffer mMeshBuffer;
+    protected QuadMeshTextureCoordBuffer mTextureCoordBuffer;
+    protected QuadMeshColorBuffer mColorBuffer;
+    protected int mCapacity;
+    protected int mNumQuads = 0;
+
+    // current state
+    protected Texture mTexture;
+    protected BlendFunc mBlendFunc = new BlendFunc();
+    protected boolean mHasBlendFunc = false;
+
+    // deferred mode
+    protected RenderCommandBuffer mCommandBuffer;
+    private float[] mSortedVertices;
+    private float[] mSortedTextureCoords;
+    private float[] mSortedColors;
+
+    private final float[] mVertices = new float[QuadMeshBuffer.NUM_VERTICES_PER_CELL * 2];
+
+    // stats
+    protected int mNumDrawCalls = 0;
+    protected int mNumQuadsDrawn = 0;
+
+    public QuadBatch(final GLState glState) {
+        this(glState, DEFAULT_NUM_QUADS);
+    }
+
+    public QuadBatch(final GLState glState, final int numQuads) {
+        mGLState = glState;
+        mCapacity = Math.min(numQuads, MAX_NUM_QUADS);
+
+        mMeshBuffer = new QuadMeshBuffer(mCapacity);
+        mTextureCoordBuffer = new QuadMeshTextureCoordBuffer(mCapacity);
+        mColorBuffer = new QuadMeshColorBuffer(mCapacity);
+    }
+
+    /**
+     * Add a quad to the batch. The pending quads get flushed when the Texture or Blending function changes, unless there is a sorting mode.
+     * 
+     * @param texture the texture, can be null
+     * @param blendFunc the blending function, null means default
+     * @param color the final color of the quad
+     * @param vertices the 4 local vertices in the same order as {@link QuadBuffer}
+     * @param matrix the global matrix to transform the vertices with, can be null
+     * @param textureCoords the 8 texture coordinates, required when there is a texture
+     * @return true if the quad is added
+     */
+    public boolean add(final Texture texture, final BlendFunc blendFunc, final GLColor color, final float[] vertices, final Matrix matrix, final float[] textureCoords) {
+        if (texture != null && textureCoords == null) {
+            return false;
+        }
+
+        // state changed?
+        if (mNumQuads > 0 && mCommandBuffer == null && (texture != mTexture || (blendFunc == null ? mHasBlendFunc : !mHasBlendFunc || !mBlendFunc.equals(blendFunc)))) {
+            flush();
+        }
+
+        // full?
+        if (mNumQuads == mCapacity) {
+            flush();
+
+            // grow for the next frames, the current content is already flushed
+            if (mCapacity < MAX_NUM_QUADS) {
+                setCapacity(mCapacity * 2);
+            }
+        }
+
+        // keep the state
+        mTexture = texture;
+        mHasBlendFunc = blendFunc != null;
+        if (mHasBlendFunc) {
+            mBlendFunc.set(blendFunc);
+        }
+
+        // transform on CPU
+        System.arraycopy(vertices, 0, mVertices, 0, mVertices.length);
+        if (matrix != null) {
+            matrix.mapPoints(mVertices);
+        }
+        mMeshBuffer.setValuesAt(mNumQuads, mVertices);
+        mColorBuffer.setColorAt(mNumQuads, color);
+        if (texture != null) {
+            mTextureCoordBuffer.setRectAt(mNumQuads, textureCoords);
+        }
+
+        // record it
+        if (mCommandBuffer != null) {
+            mCommandBuffer.add(texture, blendFunc, mNumQuads, 1);
+        }
+
+        mNumQuads++;
+
+        return true;
+    }
+
+    /**
+     * Draw all the pending quads
+     * 
+     * @return true if there was something to draw
+     */
+    public boolean flush() {
+        if (mNumQuads == 0) {
+            return false;
+        }
+
+        if (mCommandBuffer != null) {
+            flushCommands();
+            return true;
+        }
+
+        final GLState glState = mGLState;
+        final GL10 gl = glState.mGL;
+
+        // the vertices are already global
+        gl.glPushMatrix();
+        gl.glLoadIdentity();
+
+        glState.setAlphaTestEnabled(false);
+        glState.setBlendFunc(mHasBlendFunc ? mBlendFunc : null);
+
+        // color buffer
+        mColorBuffer.apply(glState);
+
+        // texture
+        if (mTexture != null) {
+            // bind the texture
+            mTexture.bind();
+
+            // apply coords
+            mTextureCoordBuffer.apply(glState);
+        } else {
+            // unbind the texture
+            glState.unbindTexture();
+            glState.setTextureCoordArrayEnabled(false);
+        }
+
+        // flush it out
+        mMeshBuffer.setIndicesNumUsed(mNumQuads * QuadMeshBuffer.NUM_INDICES_PER_CELL);
+        mMeshBuffer.draw(glState);
+
+        // no color buffer for the others
+        glState.setColorArrayEnabled(false);
+
+        gl.glPopMatrix();
+
+        mNumDrawCalls++;
+        mNumQuadsDrawn += mNumQuads;
+        mNumQuads = 0;
+        mTexture = null;
+
+        return true;
+    }
+
+    /**
+     * Sort the recorded commands and draw them, merging the ones with the same states
+     */
+    protected void flushCommands() {
+        final RenderCommandBuffer commands = mCommandBuffer;
+        commands.sort();
+        final int numCommands = commands.getNumCommands();
+
+        // move the quads into the submission order so the same states become contiguous
+        if (commands.isReordered()) {
+            reorderQuads();
+        }
+
+        // the range draws below share the same arrays
+        mMeshBuffer.setIndicesNumUsed(mNumQuads * QuadMeshBuffer.NUM_INDICES_PER_CELL);
+
+        final GLState glState = mGLState;
+        final GL10 gl = glState.mGL;
+
+        // the vertices are already global
+        gl.glPushMatrix();
+        gl.glLoadIdentity();
+
+        glState.setAlphaTestEnabled(false);
+
+        // color buffer
+        mColorBuffer.apply(glState);
+
+        boolean coordsApplied = false;
+        int first = 0;
+        int num = 0;
+        for (int i = 0; i < numCommands; i++) {
+            final int command = commands.getSortedCommand(i);
+            num += commands.getNumQuads(command);
+
+            // merge with the next command?
+            if (i < numCommands - 1 && commands.hasSameStates(command, commands.getSortedCommand(i + 1))) {
+                continue;
+            }
+
+            glState.setBlendFunc(commands.getBlendFunc(command));
+
+            // texture
+            final Texture texture = commands.getTexture(command);
+            if (texture != null) {
+                // bind the texture
+                texture.bind();
+
+                // apply coords once
+                if (!coordsApplied) {
+                    mTextureCoordBuffer.apply(glState);
+                    coordsApplied = true;
+                } else {
+                    glState.setTextureCoordArrayEnabled(true);
+                }
+            } else {
+                // unbind the texture
+                glState.unbindTexture();
+                glState.setTextureCoordArrayEnabled(false);
+            }
+
+            mMeshBuffer.draw(glState, first, num);
+            mNumDrawCalls++;
+
+            first += num;
+            num = 0;
+        }
+
+        // no color buffer for the others
+        glState.setColorArrayEnabled(false);
+
+        gl.glPopMatrix();
+
+        mNumQuadsDrawn += mNumQuads;
+        mNumQuads = 0;
+        commands.reset();
+    }
+
+    /**
+     * Copy the quads into the sorted order of the commands
+     */
+    private void reorderQuads() {
+        final RenderCommandBuffer commands = mCommandBuffer;
+        final int vertexSize = QuadMeshBuffer.NUM_VERTICES_PER_CELL * 2;
+        final int coordSize = QuadMeshTextureCoordBuffer.NUM_COORD_PER_CELL;
+        final int colorSize = QuadMeshColorBuffer.NUM_COLOR_PER_CELL * QuadMeshColorBuffer.NUM_CHANNEL_PER_COLOR;
+
+        if (mSortedVertices == null || mSortedVertices.length < mCapacity * vertexSize) {
+            mSortedVertices = new float[mCapacity * vertexSize];
+            mSortedTextureCoords = new float[mCapacity * coordSize];
+            mSortedColors = new float[mCapacity * colorSize];
+        }
+
+        final float[] vertices = mMeshBuffer.getVertices();
+        final float[] coords = mTextureCoordBuffer.getValues();
+        final float[] colors = mColorBuffer.getValues();
+        final int numCommands = commands.getNumCommands();
+        int dst = 0;
+        for (int i = 0; i < numCommands; i++) {
+            final int command = commands.getSortedCommand(i);
+            final int src = commands.getFirstQuad(command);
+            final int num = commands.getNumQuads(command);
+
+            System.arraycopy(vertices, src * vertexSize, mSortedVertices, dst * vertexSize, num * vertexSize);
+            System.arraycopy(coords, src * coordSize, mSortedTextureCoords, dst * coordSize, num * coordSize);
+            System.arraycopy(colors, src * colorSize, mSortedColors, dst * colorSize, num * colorSize);
+            dst += num;
+        }
+
+        mMeshBuffer.setValuesAt(0, mNumQuads, 0, mSortedVertices);
+        mTextureCoordBuffer.setValuesAt(0, mNumQuads, 0, mSortedTextureCoords);
+        mColorBuffer.setValuesAt(0, mNumQuads, 0, mSortedColors);
+    }
+
+    public int getSortingMode() {
+        return mCommandBuffer == null ? RenderCommandBuffer.SORTING_NONE : mCommandBuffer.getSortingMode();
+    }
+
+    /**
+     * Set the sorting mode. Anything other than {@link RenderCommandBuffer#SORTING_NONE} defers the drawing until the next flush so the quads can be sorted by Texture and Blending
+     * function.
+     * 
+     * @param sortingMode
+     * @see RenderCommandBuffer#SORTING_NONE, RenderCommandBuffer#SORTING_COMMUTATIVE, RenderCommandBuffer#SORTING_ALL
+     */
+    public void setSortingMode(final int sortingMode) {
+        if (sortingMode == getSortingMode()) {
+            return;
+        }
+
+        // draw with the current mode first
+        flush();
+
+        if (sortingMode == RenderCommandBuffer.SORTING_NONE) {
+            mCommandBuffer = null;
+        } else {
+            if (mCommandBuffer == null) {
+                mCommandBuffer = new RenderCommandBuffer();
+            }
+            mCommandBuffer.setSortingMode(sortingMode);
+        }
+    }
+
+    /**
+     * @return the command buffer, null if there is no sorting
+     */
+    public RenderCommandBuffer getCommandBuffer() {
+        return mCommandBuffer;
+    }
+
+    protected void setCapacity(final int numQuads) {
+        mCapacity = Math.min(numQuads, MAX_NUM_QUADS);
+
+        mMeshBuffer.setNumCells(mCapacity);
+        mTextureCoordBuffer.setNumCells(mCapacity);
+        mColorBuffer.setNumCells(mCapacity);
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getNumPendingQuads() {
+        return mNumQuads;
+    }
+
+    /**
+     * @return number of draw calls since the last {@link #resetStats()}
+     */
+    public int getNumDrawCalls() {
+        return mNumDrawCalls;
+    }
+
+    /**
+     * @return number of quads drawn since the last {@link #resetStats()}
+     */
+    public int getNumQuadsDrawn() {
+        return mNumQuadsDrawn;
+    }
+
+    public void resetStats() {
+        mNumDrawCalls = 0;
+        mNumQuadsDrawn = 0;
+
+        if (mCommandBuffer != null) {
+            mCommandBuffer.resetStats();
+        }
+    }
+
+    public void dispose() {
+        mNumQuads = 0;
+        mTexture = null;
+        if (mCommandBuffer != null) {
+            mCommandBuffer.reset();
+        }
+
+        mMeshBuffer.dispose();
+        mTextureCoordBuffer.dispose();
+        mColorBuffer.dispose();
+    }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.gl.gl10;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import com.funzio.pure2D.gl.DirectBufferPool;
+
+/**
+ * @author long
+ * @category QuadIndices holds one index buffer for all the quad meshes, since their indices are always the same pattern. It grows on demand up to the 16-bit limit, the bigger
+ *           meshes are drawn in chunks of {@link #MAX_CELLS} quads.
+ *           <p>
+ *           This is for the GL thread only, the position of the buffer gets changed while drawing. Don't keep the buffer, it gets replaced when growing.
+ *           </p>
+ * @see QuadMeshBuffer
+ */
+public class QuadIndices {
+    public static final int MAX_CELLS = 65536 / QuadMeshBuffer.NUM_VERTICES_PER_CELL; // 16-bit indices
+    public static final int MIN_CELLS = 64;
+
+    private static ByteBuffer sByteBuffer;
+    private static ShortBuffer sBuffer;
+    private static int sNumCells = 0;
+
+    private QuadIndices() {
+        // static only
+    }
+
+    /**
+     * @param numCells
+     * @return the indices of at least numCells quads, up to {@link #MAX_CELLS}
+     */
+    public static ShortBuffer getBuffer(final int numCells) {
+        if (numCells > sNumCells && sNumCells < MAX_CELLS) {
+            // grow geometrically
+            grow(Math.min(MAX_CELLS, Math.max(Math.max(numCells, MIN_CELLS), sNumCells * 2)));
+        }
+
+        return sBuffer;
+    }
+
+    private static void grow(final int numCells) {
+        if (sByteBuffer != null) {
+            DirectBufferPool.release(sByteBuffer);
+        }
+
+        final int numIndices = numCells * QuadMeshBuffer.NUM_INDICES_PER_CELL;
+        sByteBuffer = DirectBufferPool.obtain(numIndices * 2);
+        sBuffer = sByteBuffer.asShortBuffer();
+
+        int vertexStart = 0;
+        for (int i = 0; i < numCells; i++) {
+            // first triangle
+            sBuffer.put((short) vertexStart);
+            sBuffer.put((short) (vertexStart + 1));
+            sBuffer.put((short) (vertexStart + 2));
+            // second triangle
+            sBuffer.put((short) (vertexStart + 2));
+            sBuffer.put((short) (vertexStart + 1));
+            sBuffer.put((short) (vertexStart + 3));
+            vertexStart += QuadMeshBuffer.NUM_VERTICES_PER_CELL;
+        }
+        sBuffer.flip();
+        sNumCells = numCells;
+    }
+
+    /**
+     * @return number of quads in the buffer
+     */
+    public static int getNumCells() {
+        return sNumCells;
+    }
+}
@@ -24,19 +24,24 @@
  */
 package com.funzio.pure2D.gl.gl10;
 
+import java.nio.ShortBuffer;
+
 import javax.microedition.khronos.opengles.GL10;
 
 /**
  * @author long
+ * @description The indices are shared by all the meshes, see {@link QuadIndices}.
  */
 public class QuadMeshBuffer extends VertexBuffer {
     public static final int NUM_VERTICES_PER_CELL = 4;
     public static final int NUM_INDICES_PER_CELL = 6;
 
     protected float[] mVertices;
-    protected short[] mIndices;
     protected int mNumCells = 0;
     protected boolean mInvalidated = false;
+    // changed cells
+    protected int mDirtyStart = 0;
+    protected int mDirtyEnd = 0;
 
     public QuadMeshBuffer(final int numCells) {
         super(GL10.GL_TRIANGLES, numCells * NUM_VERTICES_PER_CELL);
@@ -48,7 +53,6 @@ public class QuadMeshBuffer extends VertexBuffer {
         if (numCells > mNumCells) {
             // final float[] currentVertices = mVertices;
             mVertices = new float[numCells * NUM_VERTICES_PER_CELL * mVertexPointerSize];
-            mIndices = new short[numCells * NUM_INDICES_PER_CELL];
 
             // restore values
             // if (currentVertices != null) {
@@ -57,34 +61,42 @@ public class QuadMeshBuffer extends VertexBuffer {
             // }
             // }
 
-            // indices is always fixed
-            int start = 0;
-            short vertexStart = 0;
-            for (int i = 0; i < numCells; i++) {
-                // first triangle
-                mIndices[start] = vertexStart;
-                mIndices[start + 1] = (short) (vertexStart + 1);
-                mIndices[start + 2] = (short) (vertexStart + 2);
-                // second triangle
-                mIndices[start + 3] = (short) (vertexStart + 2);
-                mIndices[start + 4] = (short) (vertexStart + 1);
-                mIndices[start + 5] = (short) (vertexStart + 3);
-                start += NUM_INDICES_PER_CELL;
-                vertexStart += NUM_VERTICES_PER_CELL;
-            }
-            setIndices(mIndices);
-
-            mInvalidated = true;
+            invalidateCells(0, numCells);
         }
 
         mNumCells = numCells;
         mVerticesNum = numCells * NUM_VERTICES_PER_CELL;
+        // indices are shared
+        mIndicesNum = numCells * NUM_INDICES_PER_CELL;
     }
 
     public int getNumCells() {
         return mNumCells;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.gl.gl10.VertexBuffer#getNumVerticesUsed()
+     */
+    @Override
+    public int getNumVerticesUsed() {
+        if (mIndicesNumUsed > 0) {
+            final int numCells = (Math.min(mIndicesNumUsed, mIndicesNum) + NUM_INDICES_PER_CELL - 1) / NUM_INDICES_PER_CELL;
+            return numCells * NUM_VERTICES_PER_CELL;
+        }
+
+        return mVerticesNum;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.gl.gl10.VertexBuffer#getIndexBuffer()
+     */
+    @Override
+    public ShortBuffer getIndexBuffer() {
+        return QuadIndices.getBuffer(mNumCells);
+    }
+
     /**
      * @return
      */
@@ -114,7 +126,7 @@ public class QuadMeshBuffer extends VertexBuffer {
         mVertices[start + 6] = x + width;
         mVertices[start + 7] = y;
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     /**
@@ -139,7 +151,7 @@ public class QuadMeshBuffer extends VertexBuffer {
         mVertices[start + 4] = x + width;
         mVertices[start + 5] = y;
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     public void setValuesAt(final int index, final float... values) {
@@ -150,7 +162,7 @@ public class QuadMeshBuffer extends VertexBuffer {
             mVertices[start + i] = values[i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, (length + NUM_VERTICES_PER_CELL * mVertexPointerSize - 1) / (NUM_VERTICES_PER_CELL * mVertexPointerSize));
     }
 
     public void setValuesAt(final int index, final int numCells, final float... values) {
@@ -161,7 +173,7 @@ public class QuadMeshBuffer extends VertexBuffer {
             mVertices[start + i] = values[i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, numCells);
     }
 
     public void setValuesAt(final int index, final int numCells, final int srcOffset, final float... values) {
@@ -172,26 +184,84 @@ public class QuadMeshBuffer extends VertexBuffer {
             mVertices[start + i] = values[srcOffset + i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, numCells);
+    }
+
+    /**
+     * Flag the cells to be copied into the buffer
+     * 
+     * @param index
+     * @param numCells
+     */
+    protected void invalidateCells(final int index, final int numCells) {
+        if (mInvalidated) {
+            mDirtyStart = Math.min(mDirtyStart, index);
+            mDirtyEnd = Math.max(mDirtyEnd, index + numCells);
+        } else {
+            mDirtyStart = index;
+            mDirtyEnd = index + numCells;
+            mInvalidated = true;
+        }
     }
 
     /**
-     * Applies the values set by {@link #setRectAt(int, float...)}
+     * Applies the values set by {@link #setRectAt(int, float...)}, only the changed cells are copied
      */
     protected void validate() {
         if (mInvalidated) {
-            setValues(mVertices);
+            final int cellSize = NUM_VERTICES_PER_CELL * mVertexPointerSize;
+            putValues(mVertices, mDirtyStart * cellSize, Math.min(mDirtyEnd * cellSize, mVertices.length) - mDirtyStart * cellSize);
 
             // unflag
             mInvalidated = false;
         }
     }
 
-    @Override
-    public void draw(final GLState glState) {
+    /**
+     * Draw a range of cells only
+     * 
+     * @param glState
+     * @param cellIndex the first cell
+     * @param numCells number of cells
+     */
+    public void draw(final GLState glState, final int cellIndex, final int numCells) {
         validate();
 
-        super.draw(glState);
+        glState.setVertexArrayEnabled(true);
+        glState.setVertexBuffer(this);
+
+        final ShortBuffer indices = QuadIndices.getBuffer(cellIndex + numCells);
+        if (cellIndex + numCells <= QuadIndices.MAX_CELLS) {
+            indices.position(cellIndex * NUM_INDICES_PER_CELL);
+            glState.addDrawCall(numCells * NUM_INDICES_PER_CELL);
+            glState.mGL.glDrawElements(mPrimitive, numCells * NUM_INDICES_PER_CELL, GL10.GL_UNSIGNED_SHORT, indices);
+            indices.position(0);
+            return;
+        }
+
+        // too many vertices for 16-bit indices, draw in chunks from their first vertex
+        int cell = cellIndex;
+        final int end = cellIndex + numCells;
+        while (cell < end) {
+            final int chunkStart = cell - cell % QuadIndices.MAX_CELLS;
+            final int num = Math.min(end, chunkStart + QuadIndices.MAX_CELLS) - cell;
+            glState.setFirstVertex(chunkStart * NUM_VERTICES_PER_CELL);
+
+            indices.position((cell - chunkStart) * NUM_INDICES_PER_CELL);
+            glState.addDrawCall(num * NUM_INDICES_PER_CELL);
+            glState.mGL.glDrawElements(mPrimitive, num * NUM_INDICES_PER_CELL, GL10.GL_UNSIGNED_SHORT, indices);
+            cell += num;
+        }
+        indices.position(0);
+        glState.setFirstVertex(0);
+    }
+
+    @Override
+    public void draw(final GLState glState) {
+        final int numCells = mIndicesNumUsed > 0 ? Math.min(mIndicesNumUsed, mIndicesNum) / NUM_INDICES_PER_CELL : mNumCells;
+        if (numCells > 0) {
+            draw(glState, 0, numCells);
+        }
     }
 
 }
@@ -37,6 +37,9 @@ public class QuadMeshColorBuffer extends ColorBuffer {
     protected int mNumCells = 0;
 
     protected boolean mInvalidated = false;
+    // changed cells
+    protected int mDirtyStart = 0;
+    protected int mDirtyEnd = 0;
 
     public QuadMeshColorBuffer(final int numCells) {
         super();
@@ -58,7 +61,7 @@ public class QuadMeshColorBuffer extends ColorBuffer {
                 }
             }
 
-            mInvalidated = true;
+            invalidateCells(0, numCells);
         }
 
         mNumCells = numCells;
@@ -96,7 +99,7 @@ public class QuadMeshColorBuffer extends ColorBuffer {
             }
         }
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     public void setColorAt(final int index, final float r, final float g, final float b, final float a) {
@@ -109,7 +112,7 @@ public class QuadMeshColorBuffer extends ColorBuffer {
             mValues[start++] = a;
         }
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     public void setAlphaAt(final int index, final float alpha) {
@@ -122,7 +125,7 @@ public class QuadMeshColorBuffer extends ColorBuffer {
             start += NUM_COLOR_PER_CELL;
         }
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     public void setValuesAt(final int index, final int numCells, final float... values) {
@@ -133,7 +136,7 @@ public class QuadMeshColorBuffer extends ColorBuffer {
             mValues[start + i] = values[i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, numCells);
     }
 
     public void setValuesAt(final int index, final int numCells, final int srcOffset, final float... values) {
@@ -144,7 +147,7 @@ public class QuadMeshColorBuffer extends ColorBuffer {
             mValues[start + i] = values[srcOffset + i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, numCells);
     }
 
     public void setValuesAt(final int index, final int numCells, final int srcOffset, final float[] values, final float[] multipliers) {
@@ -155,15 +158,33 @@ public class QuadMeshColorBuffer extends ColorBuffer {
             mValues[start + i] = values[srcOffset + i] * multipliers[srcOffset + i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, numCells);
+    }
+
+    /**
+     * Flag the cells to be copied into the buffer
+     * 
+     * @param index
+     * @param numCells
+     */
+    protected void invalidateCells(final int index, final int numCells) {
+        if (mInvalidated) {
+            mDirtyStart = Math.min(mDirtyStart, index);
+            mDirtyEnd = Math.max(mDirtyEnd, index + numCells);
+        } else {
+            mDirtyStart = index;
+            mDirtyEnd = index + numCells;
+            mInvalidated = true;
+        }
     }
 
     /**
-     * Applies the values set by {@link #setColorAt(int, float...)}
+     * Applies the values set by {@link #setColorAt(int, float...)}, only the changed cells are copied
      */
     protected void validate() {
         if (mInvalidated) {
-            setValues(mValues);
+            final int cellSize = NUM_CHANNEL_PER_COLOR * NUM_COLOR_PER_CELL;
+            putValues(mValues, mDirtyStart * cellSize, Math.min(mDirtyEnd * cellSize, mValues.length) - mDirtyStart * cellSize);
 
             mInvalidated = false;
         }
@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.gl.gl10;
+
+import java.util.Arrays;
+
+import com.funzio.pure2D.gl.gl10.textures.Texture;
+
+/**
+ * @author long
+ * @category This class records the draw commands (texture, blending function, quad range) of a frame so they can be sorted by states before being submitted. Commands are only
+ *           reordered when it cannot change the result: within a layer of commutative blending (such as additive particles), or anywhere when {@link #SORTING_ALL} is used.
+ * @see QuadBatch#setSortingMode(int)
+ */
+public class RenderCommandBuffer {
+    public static final int DEFAULT_NUM_COMMANDS = 64;
+
+    // sorting modes
+    public static final int SORTING_NONE = 0;
+    public static final int SORTING_COMMUTATIVE = 1; // only the commands that use the same commutative blending function, such as ADD and MULTIPLY
+    public static final int SORTING_ALL = 2; // draw order doesn't matter, i.e. no overlapping
+
+    // sort key: [layer:19][texture:12][blend:8][command:24]
+    private static final int COMMAND_BITS = 24;
+    private static final int BLEND_BITS = 8;
+    private static final int TEXTURE_BITS = 12;
+    private static final int LAYER_BITS = 19;
+    private static final int MAX_COMMANDS = 1 << COMMAND_BITS;
+    private static final int MAX_BLEND_FUNCS = 1 << BLEND_BITS;
+    private static final int MAX_TEXTURES = 1 << TEXTURE_BITS;
+    private static final int MAX_LAYERS = 1 << LAYER_BITS;
+
+    protected int mSortingMode = SORTING_COMMUTATIVE;
+
+    // the commands
+    protected int mNumCommands = 0;
+    protected int[] mLayers;
+    protected int[] mTextureSlots;
+    protected int[] mBlendSlots;
+    protected int[] mFirstQuads;
+    protected int[] mNumQuads;
+    // submission order
+    protected long[] mSortKeys;
+    protected int[] mOrder;
+    protected boolean mSorted = false;
+    protected boolean mReordered = false;
+
+    // the states, slot 0 is null
+    protected Texture[] mTextures = new Texture[16];
+    protected int mNumTextures = 1;
+    protected BlendFunc[] mBlendFuncs = new BlendFunc[8];
+    protected int mNumBlendFuncs = 1;
+
+    // layering
+    protected int mLayer = 0;
+    protected boolean mLastCommutative = false;
+    protected boolean mSortable = true;
+
+    // stats
+    private int mNumCommandsSubmitted = 0;
+    private int mNumStateSwitchesRecorded = 0;
+    private int mNumStateSwitchesSubmitted = 0;
+
+    public RenderCommandBuffer() {
+        this(DEFAULT_NUM_COMMANDS);
+    }
+
+    public RenderCommandBuffer(final int numCommands) {
+        allocate(numCommands);
+    }
+
+    protected void allocate(final int numCommands) {
+        mLayers = mLayers == null ? new int[numCommands] : Arrays.copyOf(mLayers, numCommands);
+        mTextureSlots = mTextureSlots == null ? new int[numCommands] : Arrays.copyOf(mTextureSlots, numCommands);
+        mBlendSlots = mBlendSlots == null ? new int[numCommands] : Arrays.copyOf(mBlendSlots, numCommands);
+        mFirstQuads = mFirstQuads == null ? new int[numCommands] : Arrays.copyOf(mFirstQuads, numCommands);
+        mNumQuads = mNumQuads == null ? new int[numCommands] : Arrays.copyOf(mNumQuads, numCommands);
+        mSortKeys = new long[numCommands];
+        mOrder = new int[numCommands];
+    }
+
+    /**
+     * Record a command. Consecutive quads with the same states are merged into the previous command.
+     * 
+     * @param texture the texture, can be null
+     * @param blendFunc the blending function, null means default
+     * @param firstQuad the index of the first quad
+     * @param numQuads number of quads
+     */
+    public void add(final Texture texture, final BlendFunc blendFunc, final int firstQuad, final int numQuads) {
+        final int textureSlot = getTextureSlot(texture);
+        final int blendSlot = getBlendSlot(blendFunc);
+
+        if (mNumCommands > 0) {
+            final int last = mNumCommands - 1;
+            // same states and contiguous, just extend
+            if (mTextureSlots[last] == textureSlot && mBlendSlots[last] == blendSlot && mFirstQuads[last] + mNumQuads[last] == firstQuad) {
+                mNumQuads[last] += numQuads;
+                return;
+            }
+
+            // a new layer is needed when the order is observable
+            final boolean commutative = mSortingMode == SORTING_ALL || (mSortingMode == SORTING_COMMUTATIVE && BlendModes.isCommutative(blendFunc));
+            if (!commutative || !mLastCommutative || (mSortingMode != SORTING_ALL && mBlendSlots[last] != blendSlot)) {
+                mLayer++;
+            }
+            mLastCommutative = commutative;
+        } else {
+            mLastCommutative = mSortingMode == SORTING_ALL || (mSortingMode == SORTING_COMMUTATIVE && BlendModes.isCommutative(blendFunc));
+        }
+
+        // full?
+        if (mNumCommands == mLayers.length) {
+            allocate(mNumCommands * 2);
+        }
+
+        final int index = mNumCommands++;
+        mLayers[index] = mLayer;
+        mTextureSlots[index] = textureSlot;
+        mBlendSlots[index] = blendSlot;
+        mFirstQuads[index] = firstQuad;
+        mNumQuads[index] = numQuads;
+        mSorted = false;
+
+        // out of key space, keep the recorded order
+        if (mNumCommands >= MAX_COMMANDS || mLayer >= MAX_LAYERS || mNumTextures > MAX_TEXTURES || mNumBlendFuncs > MAX_BLEND_FUNCS) {
+            mSortable = false;
+        }
+    }
+
+    protected int getTextureSlot(final Texture texture) {
+        if (texture == null) {
+            return 0;
+        }
+
+        // a frame usually has a few textures only
+        for (int i = 1; i < mNumTextures; i++) {
+            if (mTextures[i] == texture) {
+                return i;
+            }
+        }
+
+        if (mNumTextures == mTextures.length) {
+            mTextures = Arrays.copyOf(mTextures, mNumTextures * 2);
+        }
+        mTextures[mNumTextures] = texture;
+
+        return mNumTextures++;
+    }
+
+    protected int getBlendSlot(final BlendFunc blendFunc) {
+        if (blendFunc == null) {
+            return 0;
+        }
+
+        for (int i = 1; i < mNumBlendFuncs; i++) {
+            if (mBlendFuncs[i].equals(blendFunc)) {
+                return i;
+            }
+        }
+
+        if (mNumBlendFuncs == mBlendFuncs.length) {
+            mBlendFuncs = Arrays.copyOf(mBlendFuncs, mNumBlendFuncs * 2);
+        }
+        // copy because the blending function can be changed after this
+        if (mBlendFuncs[mNumBlendFuncs] == null) {
+            mBlendFuncs[mNumBlendFuncs] = new BlendFunc();
+        }
+        mBlendFuncs[mNumBlendFuncs].set(blendFunc);
+
+        return mNumBlendFuncs++;
+    }
+
+    /**
+     * Sort the recorded commands by (layer, texture, blending function) and count the state switches before and after
+     */
+    public void sort() {
+        if (mSorted) {
+            return;
+        }
+
+        final int numCommands = mNumCommands;
+        mReordered = false;
+        if (mSortingMode != SORTING_NONE && mSortable && numCommands > 1 && mLayer < numCommands - 1) {
+            for (int i = 0; i < numCommands; i++) {
+                mSortKeys[i] = ((long) mLayers[i] << (TEXTURE_BITS + BLEND_BITS + COMMAND_BITS)) | ((long) mTextureSlots[i] << (BLEND_BITS + COMMAND_BITS)) | ((long) mBlendSlots[i] << COMMAND_BITS) | i;
+            }
+            Arrays.sort(mSortKeys, 0, numCommands);
+
+            for (int i = 0; i < numCommands; i++) {
+                mOrder[i] = (int) (mSortKeys[i] & (MAX_COMMANDS - 1));
+                if (mOrder[i] != i) {
+                    mReordered = true;
+                }
+            }
+        } else {
+            for (int i = 0; i < numCommands; i++) {
+                mOrder[i] = i;
+            }
+        }
+
+        // stats
+        int lastRecorded = -1, lastSubmitted = -1;
+        for (int i = 0; i < numCommands; i++) {
+            if (lastRecorded < 0 || !hasSameStates(lastRecorded, i)) {
+                mNumStateSwitchesRecorded++;
+            }
+            lastRecorded = i;
+
+            if (lastSubmitted < 0 || !hasSameStates(lastSubmitted, mOrder[i])) {
+                mNumStateSwitchesSubmitted++;
+            }
+            lastSubmitted = mOrder[i];
+        }
+        mNumCommandsSubmitted += numCommands;
+
+        mSorted = true;
+    }
+
+    /**
+     * Clear the commands and states for the next recording
+     */
+    public void reset() {
+        mNumCommands = 0;
+        mLayer = 0;
+        mLastCommutative = false;
+        mSortable = true;
+        mSorted = false;
+        mReordered = false;
+
+        // release the references
+        for (int i = 1; i < mNumTextures; i++) {
+            mTextures[i] = null;
+        }
+        mNumTextures = 1;
+        mNumBlendFuncs = 1;
+    }
+
+    public boolean hasSameStates(final int command1, final int command2) {
+        return mTextureSlots[command1] == mTextureSlots[command2] && mBlendSlots[command1] == mBlendSlots[command2];
+    }
+
+    public int getNumCommands() {
+        return mNumCommands;
+    }
+
+    /**
+     * @param index the submission index
+     * @return the command at the specified submission index
+     * @see #sort()
+     */
+    public int getSortedCommand(final int index) {
+        return mOrder[index];
+    }
+
+    /**
+     * @return true if the sorting changed the order of the commands
+     */
+    public boolean isReordered() {
+        return mReordered;
+    }
+
+    public Texture getTexture(final int command) {
+        return mTextures[mTextureSlots[command]];
+    }
+
+    public BlendFunc getBlendFunc(final int command) {
+        return mBlendFuncs[mBlendSlots[command]];
+    }
+
+    public int getFirstQuad(final int command) {
+        return mFirstQuads[command];
+    }
+
+    public int getNumQuads(final int command) {
+        return mNumQuads[command];
+    }
+
+    public int getSortingMode() {
+        return mSortingMode;
+    }
+
+    /**
+     * @param sortingMode
+     * @see #SORTING_NONE, #SORTING_COMMUTATIVE, #SORTING_ALL
+     */
+    public void setSortingMode(final int sortingMode) {
+        mSortingMode = sortingMode;
+    }
+
+    /**
+     * @return number of commands submitted since the last {@link #resetStats()}
+     */
+    public int getNumCommandsSubmitted() {
+        return mNumCommandsSubmitted;
+    }
+
+    /**
+     * @return number of texture/blending switches in the recorded order since the last {@link #resetStats()}
+     */
+    public int getNumStateSwitchesRecorded() {
+        return mNumStateSwitchesRecorded;
+    }
+
+    /**
+     * @return number of texture/blending switches in the sorted order since the last {@link #resetStats()}
+     */
+    public int getNumStateSwitchesSubmitted() {
+        return mNumStateSwitchesSubmitted;
+    }
+
+    public void resetStats() {
+        mNumCommandsSubmitted = 0;
+        mNumStateSwitchesRecorded = 0;
+        mNumStateSwitchesSubmitted = 0;
+    }
+}
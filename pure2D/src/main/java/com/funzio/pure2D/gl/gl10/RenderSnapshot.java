@@ -0,0 +1,391 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+/**
+ * 
+ */
+package com.funzio.pure2D.gl.gl10;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.graphics.Matrix;
+
+import com.funzio.pure2D.DisplayObject;
+import com.funzio.pure2D.gl.GLColor;
+import com.funzio.pure2D.gl.gl10.textures.QuadMeshTextureCoordBuffer;
+import com.funzio.pure2D.gl.gl10.textures.Texture;
+
+/**
+ * @author long
+ * @category This class is a recorded frame of a Scene, made on the simulation thread and drawn on the GL thread. The quads of the batchable objects are transformed and copied into
+ *           the snapshot, so drawing them doesn't touch the objects at all. The objects that can't be batched are kept in order and drawn directly, with their parent's matrix at
+ *           the time of recording.
+ * @see com.funzio.pure2D.BaseScene#setSimulationThreaded(boolean)
+ */
+public class RenderSnapshot extends QuadBatch {
+    private static final int VERTEX_SIZE = QuadMeshBuffer.NUM_VERTICES_PER_CELL * 2;
+    private static final int COORD_SIZE = QuadMeshTextureCoordBuffer.NUM_COORD_PER_CELL;
+    private static final int COLOR_SIZE = QuadMeshColorBuffer.NUM_COLOR_PER_CELL * QuadMeshColorBuffer.NUM_CHANNEL_PER_COLOR;
+    private static final int MATRIX_SIZE = 9;
+
+    // runs of quads with the same states
+    protected int mNumRuns = 0;
+    protected int[] mRunFirstQuads = new int[16];
+    protected int[] mRunNumQuads = new int[16];
+    protected Texture[] mRunTextures = new Texture[16];
+    protected BlendFunc[] mRunBlendFuncs = new BlendFunc[16];
+    protected boolean[] mRunHasBlendFuncs = new boolean[16];
+    private boolean mRunOpen = false;
+
+    // the objects drawn directly, before the run at the same index
+    protected int mNumObjects = 0;
+    protected DisplayObject[] mObjects = new DisplayObject[8];
+    protected int[] mObjectRuns = new int[8];
+    protected float[] mObjectMatrices = new float[8 * MATRIX_SIZE];
+    protected boolean[] mObjectHasMatrices = new boolean[8];
+
+    private final float[] mVertices = new float[VERTEX_SIZE];
+    private final float[] mMatrixValues = new float[MATRIX_SIZE];
+    private final float[] mGLMatrix = new float[16];
+
+    // stats
+    protected long mFrame = 0;
+    protected long mSimulationTime = 0;
+
+    public RenderSnapshot(final GLState glState) {
+        super(glState);
+    }
+
+    public RenderSnapshot(final GLState glState, final int numQuads) {
+        super(glState, numQuads);
+    }
+
+    /**
+     * Record a quad. Unlike {@link QuadBatch}, nothing is drawn until {@link #draw(Object)}.
+     * 
+     * @return true if the quad is recorded, false if it doesn't fit and the object needs to be recorded with {@link #addObject(DisplayObject, Matrix)} instead
+     * @see com.funzio.pure2D.gl.gl10.QuadBatch#add(com.funzio.pure2D.gl.gl10.textures.Texture, com.funzio.pure2D.gl.gl10.BlendFunc, com.funzio.pure2D.gl.GLColor, float[],
+     *      android.graphics.Matrix, float[])
+     */
+    @Override
+    public boolean add(final Texture texture, final BlendFunc blendFunc, final GLColor color, final float[] vertices, final Matrix matrix, final float[] textureCoords) {
+        if (texture != null && textureCoords == null) {
+            return false;
+        }
+
+        // full?
+        if (mNumQuads == mCapacity) {
+            if (mCapacity == MAX_NUM_QUADS) {
+                return false;
+            }
+            grow(mCapacity * 2);
+        }
+
+        // state changed?
+        if (!mRunOpen || texture != mTexture || (blendFunc == null ? mHasBlendFunc : !mHasBlendFunc || !mBlendFunc.equals(blendFunc))) {
+            addRun(texture, blendFunc);
+        }
+
+        // transform on CPU
+        System.arraycopy(vertices, 0, mVertices, 0, VERTEX_SIZE);
+        if (matrix != null) {
+            matrix.mapPoints(mVertices);
+        }
+        mMeshBuffer.setValuesAt(mNumQuads, mVertices);
+        mColorBuffer.setColorAt(mNumQuads, color);
+        if (texture != null) {
+            mTextureCoordBuffer.setRectAt(mNumQuads, textureCoords);
+        }
+
+        mRunNumQuads[mNumRuns - 1]++;
+        mNumQuads++;
+
+        return true;
+    }
+
+    /**
+     * Nothing to flush, the quads are kept until the snapshot is drawn
+     * 
+     * @see com.funzio.pure2D.gl.gl10.QuadBatch#flush()
+     */
+    @Override
+    public boolean flush() {
+        return false;
+    }
+
+    private void addRun(final Texture texture, final BlendFunc blendFunc) {
+        if (mNumRuns == mRunFirstQuads.length) {
+            final int size = mNumRuns * 2;
+            mRunFirstQuads = copyOf(mRunFirstQuads, size);
+            mRunNumQuads = copyOf(mRunNumQuads, size);
+            final Texture[] textures = new Texture[size];
+            System.arraycopy(mRunTextures, 0, textures, 0, mNumRuns);
+            mRunTextures = textures;
+            final BlendFunc[] blendFuncs = new BlendFunc[size];
+            System.arraycopy(mRunBlendFuncs, 0, blendFuncs, 0, mNumRuns);
+            mRunBlendFuncs = blendFuncs;
+            final boolean[] hasBlendFuncs = new boolean[size];
+            System.arraycopy(mRunHasBlendFuncs, 0, hasBlendFuncs, 0, mNumRuns);
+            mRunHasBlendFuncs = hasBlendFuncs;
+        }
+
+        // keep the state
+        mTexture = texture;
+        mHasBlendFunc = blendFunc != null;
+        if (mHasBlendFunc) {
+            mBlendFunc.set(blendFunc);
+        }
+
+        mRunFirstQuads[mNumRuns] = mNumQuads;
+        mRunNumQuads[mNumRuns] = 0;
+        mRunTextures[mNumRuns] = texture;
+        mRunHasBlendFuncs[mNumRuns] = mHasBlendFunc;
+        if (mHasBlendFunc) {
+            // recycle the instances
+            if (mRunBlendFuncs[mNumRuns] == null) {
+                mRunBlendFuncs[mNumRuns] = new BlendFunc();
+            }
+            mRunBlendFuncs[mNumRuns].set(blendFunc);
+        }
+        mNumRuns++;
+        mRunOpen = true;
+    }
+
+    /**
+     * Record an object that has to be drawn directly
+     * 
+     * @param object
+     * @param parentMatrix the global matrix of the object's parent, null for the Scene
+     */
+    public void addObject(final DisplayObject object, final Matrix parentMatrix) {
+        if (mNumObjects == mObjects.length) {
+            final int size = mNumObjects * 2;
+            final DisplayObject[] objects = new DisplayObject[size];
+            System.arraycopy(mObjects, 0, objects, 0, mNumObjects);
+            mObjects = objects;
+            mObjectRuns = copyOf(mObjectRuns, size);
+            final float[] matrices = new float[size * MATRIX_SIZE];
+            System.arraycopy(mObjectMatrices, 0, matrices, 0, mNumObjects * MATRIX_SIZE);
+            mObjectMatrices = matrices;
+            final boolean[] hasMatrices = new boolean[size];
+            System.arraycopy(mObjectHasMatrices, 0, hasMatrices, 0, mNumObjects);
+            mObjectHasMatrices = hasMatrices;
+        }
+
+        mObjects[mNumObjects] = object;
+        mObjectRuns[mNumObjects] = mNumRuns;
+        mObjectHasMatrices[mNumObjects] = parentMatrix != null;
+        if (parentMatrix != null) {
+            parentMatrix.getValues(mMatrixValues);
+            System.arraycopy(mMatrixValues, 0, mObjectMatrices, mNumObjects * MATRIX_SIZE, MATRIX_SIZE);
+        }
+        mNumObjects++;
+
+        // the next quads come after this object
+        mRunOpen = false;
+    }
+
+    /**
+     * Called on the simulation thread when the recording is done. The buffers get prepared here instead of on the GL thread.
+     * 
+     * @param frame the frame number
+     * @param simulationTime the time spent to update and record, in ns
+     */
+    public void finish(final long frame, final long simulationTime) {
+        mFrame = frame;
+        mSimulationTime = simulationTime;
+
+        if (mNumQuads > 0) {
+            mMeshBuffer.setIndicesNumUsed(mNumQuads * QuadMeshBuffer.NUM_INDICES_PER_CELL);
+            mMeshBuffer.validate();
+            mColorBuffer.validate();
+        }
+    }
+
+    /**
+     * Draw the recorded quads and objects, on the GL thread
+     * 
+     * @param lock the lock to hold while drawing the objects directly, since they still belong to the simulation thread
+     */
+    public void draw(final Object lock) {
+        final GLState glState = mGLState;
+        final GL10 gl = glState.mGL;
+
+        int object = 0;
+        boolean coordsApplied = false;
+        for (int run = 0; run <= mNumRuns; run++) {
+            // the objects before this run
+            if (object < mNumObjects && mObjectRuns[object] == run) {
+                // the states might be changed by the objects
+                glState.setColorArrayEnabled(false);
+                coordsApplied = false;
+
+                synchronized (lock) {
+                    while (object < mNumObjects && mObjectRuns[object] == run) {
+                        drawObject(gl, object++);
+                    }
+                }
+            }
+
+            if (run == mNumRuns) {
+                break;
+            }
+
+            // the vertices are already global
+            gl.glPushMatrix();
+            gl.glLoadIdentity();
+
+            glState.setAlphaTestEnabled(false);
+            glState.setBlendFunc(mRunHasBlendFuncs[run] ? mRunBlendFuncs[run] : null);
+            mColorBuffer.apply(glState);
+
+            // texture
+            final Texture texture = mRunTextures[run];
+            if (texture != null) {
+                // bind the texture
+                texture.bind();
+
+                // apply coords once
+                if (!coordsApplied) {
+                    mTextureCoordBuffer.apply(glState);
+                    coordsApplied = true;
+                } else {
+                    glState.setTextureCoordArrayEnabled(true);
+                }
+            } else {
+                // unbind the texture
+                glState.unbindTexture();
+                glState.setTextureCoordArrayEnabled(false);
+            }
+
+            mMeshBuffer.draw(glState, mRunFirstQuads[run], mRunNumQuads[run]);
+            mNumDrawCalls++;
+
+            gl.glPopMatrix();
+        }
+
+        // no color buffer for the others
+        glState.setColorArrayEnabled(false);
+
+        mNumQuadsDrawn += mNumQuads;
+    }
+
+    private void drawObject(final GL10 gl, final int index) {
+        final DisplayObject object = mObjects[index];
+        // removed since the recording?
+        if (object.getScene() == null) {
+            return;
+        }
+
+        gl.glPushMatrix();
+        if (mObjectHasMatrices[index]) {
+            // 2D affine matrix to GL
+            final int offset = index * MATRIX_SIZE;
+            final float[] m = mGLMatrix;
+            m[0] = mObjectMatrices[offset + Matrix.MSCALE_X];
+            m[1] = mObjectMatrices[offset + Matrix.MSKEW_Y];
+            m[4] = mObjectMatrices[offset + Matrix.MSKEW_X];
+            m[5] = mObjectMatrices[offset + Matrix.MSCALE_Y];
+            m[10] = 1;
+            m[12] = mObjectMatrices[offset + Matrix.MTRANS_X];
+            m[13] = mObjectMatrices[offset + Matrix.MTRANS_Y];
+            m[15] = 1;
+            gl.glLoadMatrixf(m, 0);
+        } else {
+            gl.glLoadIdentity();
+        }
+
+        object.draw(mGLState);
+        mNumDrawCalls++;
+
+        gl.glPopMatrix();
+    }
+
+    /**
+     * Clear the recording, on the simulation thread before recording the next frame
+     */
+    public void reset() {
+        mNumQuads = 0;
+        mTexture = null;
+        mHasBlendFunc = false;
+        mRunOpen = false;
+
+        for (int i = 0; i < mNumRuns; i++) {
+            mRunTextures[i] = null;
+        }
+        mNumRuns = 0;
+
+        for (int i = 0; i < mNumObjects; i++) {
+            mObjects[i] = null;
+        }
+        mNumObjects = 0;
+    }
+
+    /**
+     * Grow the buffers, keeping the recorded quads
+     * 
+     * @param numQuads
+     */
+    private void grow(final int numQuads) {
+        final float[] vertices = mMeshBuffer.getVertices();
+        final float[] coords = mTextureCoordBuffer.getValues();
+        final float[] colors = mColorBuffer.getValues();
+
+        setCapacity(numQuads);
+
+        mMeshBuffer.setValuesAt(0, mNumQuads, 0, vertices);
+        mTextureCoordBuffer.setValuesAt(0, mNumQuads, 0, coords);
+        mColorBuffer.setValuesAt(0, mNumQuads, 0, colors);
+    }
+
+    private static int[] copyOf(final int[] values, final int size) {
+        final int[] copy = new int[size];
+        System.arraycopy(values, 0, copy, 0, Math.min(values.length, size));
+
+        return copy;
+    }
+
+    public int getNumQuads() {
+        return mNumQuads;
+    }
+
+    public int getNumRuns() {
+        return mNumRuns;
+    }
+
+    public int getNumObjects() {
+        return mNumObjects;
+    }
+
+    public long getFrame() {
+        return mFrame;
+    }
+
+    /**
+     * @return the time spent to update and record this snapshot, in ns
+     */
+    public long getSimulationTime() {
+        return mSimulationTime;
+    }
+}
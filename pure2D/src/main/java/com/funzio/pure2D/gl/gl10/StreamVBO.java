@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.gl.gl10;
+
+import javax.microedition.khronos.opengles.GL11;
+
+import android.opengl.GLES11;
+
+import com.funzio.pure2D.gl.GLFloatBuffer;
+
+/**
+ * @author long
+ * @category A large GL buffer shared by the dynamic vertex, color and texture coordinate arrays of a frame. Each array is appended with glBufferSubData() and drawn from its offset; the
+ *           buffer is orphaned at the first upload of every frame so the driver doesn't have to wait for the previous frame. Small arrays and the ones that don't fit stay client-side.
+ * @see GLState#setStreamVBO(StreamVBO)
+ */
+public class StreamVBO {
+    public static final int DEFAULT_CAPACITY = 1024 * 1024; // bytes
+    public static final int DEFAULT_MIN_BYTES = 512; // smaller arrays are cheaper client-side
+
+    private final int mCapacity;
+    private final int mUsage;
+    private int mMinBytes = DEFAULT_MIN_BYTES;
+
+    private int mBufferID = 0;
+    private int mHead = 0;
+    private int mGeneration = 1;
+    private boolean mOrphaned = false;
+    private boolean mBound = false;
+    private final int[] mScratch = new int[1];
+
+    // stats
+    private int mNumUploads = 0;
+    private int mNumFallbacks = 0;
+    private int mBytesUploaded = 0;
+
+    public StreamVBO() {
+        this(DEFAULT_CAPACITY, GL11.GL_DYNAMIC_DRAW);
+    }
+
+    /**
+     * @param capacity in bytes
+     * @param usage GL_DYNAMIC_DRAW, GLES 1.1 has no GL_STREAM_DRAW
+     */
+    public StreamVBO(final int capacity, final int usage) {
+        mCapacity = capacity;
+        mUsage = usage;
+    }
+
+    /**
+     * Rewind the buffer. Called at the beginning of every frame.
+     */
+    public void beginFrame() {
+        mHead = 0;
+        mGeneration++;
+        mOrphaned = false;
+
+        mNumUploads = 0;
+        mNumFallbacks = 0;
+        mBytesUploaded = 0;
+    }
+
+    /**
+     * Append the first values of a buffer, unless they are already uploaded in this frame. The stream buffer is left bound when successful.
+     * 
+     * @param buffer
+     * @param numFloats
+     * @return the byte offset in the stream buffer, or -1 if the buffer should be used client-side
+     */
+    public int upload(final GLFloatBuffer buffer, final int numFloats) {
+        // already there?
+        if (buffer.mStreamGeneration == mGeneration && buffer.mStreamLength >= numFloats) {
+            bind();
+            return buffer.mStreamOffset;
+        }
+
+        final int numBytes = numFloats * 4;
+        if (numBytes < mMinBytes) {
+            return -1;
+        } else if (mHead + numBytes > mCapacity) {
+            mNumFallbacks++;
+            return -1;
+        }
+
+        bind();
+        if (!mOrphaned) {
+            // detach the storage of the previous frame, no stall
+            GLES11.glBufferData(GL11.GL_ARRAY_BUFFER, mCapacity, null, mUsage);
+            mOrphaned = true;
+        }
+
+        buffer.mBuffer.position(0);
+        GLES11.glBufferSubData(GL11.GL_ARRAY_BUFFER, mHead, numBytes, buffer.mBuffer);
+
+        // remember for the other draws of the same buffer
+        buffer.mStreamOffset = mHead;
+        buffer.mStreamLength = numFloats;
+        buffer.mStreamGeneration = mGeneration;
+
+        mHead += numBytes;
+        mNumUploads++;
+        mBytesUploaded += numBytes;
+
+        return buffer.mStreamOffset;
+    }
+
+    /**
+     * Bind the stream buffer, for the pointers with offsets
+     */
+    public void bind() {
+        if (mBufferID == 0) {
+            GLES11.glGenBuffers(1, mScratch, 0);
+            mBufferID = mScratch[0];
+            mOrphaned = false;
+        }
+
+        if (!mBound) {
+            GLES11.glBindBuffer(GL11.GL_ARRAY_BUFFER, mBufferID);
+            mBound = true;
+        }
+    }
+
+    /**
+     * Unbind so the next pointers are client-side
+     */
+    public void unbind() {
+        if (mBound) {
+            GLES11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+            mBound = false;
+        }
+    }
+
+    /**
+     * Forget the buffer id, after the GL context is lost
+     */
+    public void reset() {
+        mBufferID = 0;
+        mBound = false;
+        mGeneration++;
+    }
+
+    public void dispose() {
+        unbind();
+
+        if (mBufferID != 0) {
+            mScratch[0] = mBufferID;
+            GLES11.glDeleteBuffers(1, mScratch, 0);
+            mBufferID = 0;
+        }
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getMinBytes() {
+        return mMinBytes;
+    }
+
+    /**
+     * Set the size (in bytes) under which the arrays stay client-side
+     * 
+     * @param minBytes
+     */
+    public void setMinBytes(final int minBytes) {
+        mMinBytes = minBytes;
+    }
+
+    /**
+     * @return number of arrays uploaded in the current frame
+     */
+    public int getNumUploads() {
+        return mNumUploads;
+    }
+
+    /**
+     * @return number of arrays that didn't fit in the current frame
+     */
+    public int getNumFallbacks() {
+        return mNumFallbacks;
+    }
+
+    /**
+     * @return bytes uploaded in the current frame
+     */
+    public int getBytesUploaded() {
+        return mBytesUploaded;
+    }
+}
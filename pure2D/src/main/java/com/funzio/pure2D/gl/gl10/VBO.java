@@ -31,13 +31,20 @@ import android.opengl.GLES11;
 
 /**
  * @author long
- * @description This is designed for large buffer only and requires GLES11.
+ * @description This is designed for large buffer only and requires GLES11. The buffer ids are kept, changes are uploaded with glBufferSubData() and the storage is only
+ *              reallocated when it grows.
  */
 public class VBO extends VertexBuffer {
 
     private int mVertexID = 0;
     private int mIndexID = 0;
-    private boolean mInvalidated = false;
+    private int mUsage = GL11.GL_STATIC_DRAW;
+    private int mVertexCapacity = 0; // bytes allocated on the GL side
+    private int mIndexCapacity = 0;
+    private boolean mIndicesInvalidated;
+    // changed range, in floats. No initializers, the super constructor sets them
+    private int mDirtyStart;
+    private int mDirtyEnd;
     private final int[] mScratch = new int[1];
 
     public VBO(final int primitive, final int verticesNum, final float... vertices) {
@@ -52,67 +59,108 @@ public class VBO extends VertexBuffer {
     public void setValues(final float... values) {
         super.setValues(values);
 
-        // flag
-        mInvalidated = true;
+        // all changed
+        mDirtyStart = 0;
+        mDirtyEnd = values != null ? values.length : 0;
     }
 
     /*
      * (non-Javadoc)
-     * @see com.funzio.pure2D.gl.gl10.VertexBuffer#draw(com.funzio.pure2D.gl.gl10.GLState)
+     * @see com.funzio.pure2D.gl.gl10.VertexBuffer#setIndices(short[])
      */
     @Override
-    public void draw(final GLState glState) {
-        glState.setVertexArrayEnabled(true);
+    public void setIndices(final short... indices) {
+        super.setIndices(indices);
 
-        if (mVertexID == 0 || mInvalidated) {
+        mIndicesInvalidated = true;
+    }
 
-            if (mVertexID != 0) {
-                mScratch[0] = mVertexID;
-                // unload it
-                GLES11.glDeleteBuffers(1, mScratch, 0);
-            }
-            if (mIndexID != 0) {
-                mScratch[0] = mIndexID;
-                // unload it
-                GLES11.glDeleteBuffers(1, mScratch, 0);
-            }
+    /**
+     * Flag a range of values that was changed directly in mBuffer, to be uploaded on the next draw
+     * 
+     * @param start index of the first float
+     * @param count number of floats
+     */
+    public void invalidate(final int start, final int count) {
+        if (mDirtyEnd > mDirtyStart) {
+            mDirtyStart = Math.min(mDirtyStart, start);
+            mDirtyEnd = Math.max(mDirtyEnd, start + count);
+        } else {
+            mDirtyStart = start;
+            mDirtyEnd = start + count;
+        }
+    }
 
-            // create new vertex id
+    /**
+     * Upload the changes, the vertex buffer is left bound
+     */
+    protected void validate() {
+        if (mVertexID == 0) {
             GLES11.glGenBuffers(1, mScratch, 0);
             mVertexID = mScratch[0];
-            // bind it
-            GLES11.glBindBuffer(GL11.GL_ARRAY_BUFFER, mVertexID);
-            // load it
-            GLES11.glBufferData(GLES11.GL_ARRAY_BUFFER, mVerticesNum * mVertexPointerSize * 4, mBuffer, GLES11.GL_STATIC_DRAW);
+            mVertexCapacity = 0;
+        }
+        GLES11.glBindBuffer(GL11.GL_ARRAY_BUFFER, mVertexID);
+
+        final int numFloats = mVerticesNum * mVertexPointerSize;
+        final int numBytes = numFloats * 4;
+        if (numBytes > mVertexCapacity || (mDirtyStart == 0 && mDirtyEnd >= numFloats)) {
+            // new storage, or all replaced: the old storage gets orphaned instead of waited for
+            mBuffer.position(0);
+            GLES11.glBufferData(GL11.GL_ARRAY_BUFFER, numBytes, mBuffer, mUsage);
+            mVertexCapacity = numBytes;
+        } else if (mDirtyEnd > mDirtyStart) {
+            // only the changed range
+            final int end = Math.min(mDirtyEnd, numFloats);
+            mBuffer.position(mDirtyStart);
+            GLES11.glBufferSubData(GL11.GL_ARRAY_BUFFER, mDirtyStart * 4, (end - mDirtyStart) * 4, mBuffer);
+            mBuffer.position(0);
+        }
+        mDirtyStart = mDirtyEnd = 0;
 
-            if (mIndicesNum > 0) {
-                // create new index id
+        if (mIndicesNum > 0) {
+            if (mIndexID == 0) {
                 GLES11.glGenBuffers(1, mScratch, 0);
                 mIndexID = mScratch[0];
-                // bind it
-                GLES11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, mIndexID);
-                // load it
-                GLES11.glBufferData(GLES11.GL_ELEMENT_ARRAY_BUFFER, mIndicesNum * 2, mIndexBuffer, GLES11.GL_STATIC_DRAW);
+                mIndexCapacity = 0;
+                mIndicesInvalidated = true;
             }
-
-            // unflag
-            mInvalidated = false;
-        } else {
-            // bind vertex buffer
-            GLES11.glBindBuffer(GL11.GL_ARRAY_BUFFER, mVertexID);
-
-            if (mIndexID != 0) {
-                // bind index buffer
-                GLES11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, mIndexID);
+            GLES11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, mIndexID);
+
+            if (mIndicesInvalidated) {
+                final int indexBytes = mIndicesNum * 2;
+                if (indexBytes > mIndexCapacity) {
+                    GLES11.glBufferData(GL11.GL_ELEMENT_ARRAY_BUFFER, indexBytes, mIndexBuffer, mUsage);
+                    mIndexCapacity = indexBytes;
+                } else {
+                    GLES11.glBufferSubData(GL11.GL_ELEMENT_ARRAY_BUFFER, 0, indexBytes, mIndexBuffer);
+                }
+                mIndicesInvalidated = false;
             }
         }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.gl.gl10.VertexBuffer#draw(com.funzio.pure2D.gl.gl10.GLState)
+     */
+    @Override
+    public void draw(final GLState glState) {
+        glState.setVertexArrayEnabled(true);
+        // pending colors and coordinates, before binding this
+        glState.validateArrays(mVerticesNum);
+
+        validate();
 
         // Specifies the location and data format of an array of vertex coordinates to use when rendering.
         GLES11.glVertexPointer(mVertexPointerSize, GL11.GL_FLOAT, 0, 0);
 
         if (mIndicesNum > 0) {
-            GLES11.glDrawElements(mPrimitive, mIndicesNum, GL10.GL_UNSIGNED_SHORT, 0);
+            final int indicesNum = mIndicesNumUsed > 0 ? Math.min(mIndicesNumUsed, mIndicesNum) : mIndicesNum;
+            glState.addDrawCall(indicesNum);
+            GLES11.glDrawElements(mPrimitive, indicesNum, GL10.GL_UNSIGNED_SHORT, 0);
         } else {
+            glState.addDrawCall(mVerticesNum);
             GLES11.glDrawArrays(mPrimitive, 0, mVerticesNum);
         }
 
@@ -121,27 +169,56 @@ public class VBO extends VertexBuffer {
         if (mIndexID != 0) {
             GLES11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
         }
+
+        // the vertex pointer is in this buffer, the next one has to be set again
+        glState.setVertexBuffer(null);
     }
 
     public void unload() {
-        if (mVertexID == 0) {
+        if (mVertexID != 0) {
             mScratch[0] = mVertexID;
             GLES11.glDeleteBuffers(1, mScratch, 0);
             mVertexID = 0;
+            mVertexCapacity = 0;
+        }
 
-            // check index
-            if (mIndexID != 0) {
-                mScratch[0] = mIndexID;
-                GLES11.glDeleteBuffers(1, mScratch, 0);
-                mIndexID = 0;
-            }
+        // check index
+        if (mIndexID != 0) {
+            mScratch[0] = mIndexID;
+            GLES11.glDeleteBuffers(1, mScratch, 0);
+            mIndexID = 0;
+            mIndexCapacity = 0;
         }
+
+        // upload all again
+        mDirtyStart = 0;
+        mDirtyEnd = mBuffer != null ? mBuffer.limit() : 0;
+        mIndicesInvalidated = true;
     }
 
     public int getVertexID() {
         return mVertexID;
     }
 
+    public int getUsage() {
+        return mUsage;
+    }
+
+    /**
+     * Set the usage hint for the next allocation: GL_STATIC_DRAW (default) or GL_DYNAMIC_DRAW if the values change often
+     * 
+     * @param usage
+     */
+    public void setUsage(final int usage) {
+        if (mUsage != usage) {
+            mUsage = usage;
+            // reallocate
+            mVertexCapacity = 0;
+            mIndexCapacity = 0;
+            mIndicesInvalidated = true;
+        }
+    }
+
     /*
      * (non-Javadoc)
      * @see com.funzio.pure2D.gl.gl10.VertexBuffer#dispose()
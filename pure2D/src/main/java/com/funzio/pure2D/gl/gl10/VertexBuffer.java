@@ -25,11 +25,11 @@
 package com.funzio.pure2D.gl.gl10;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
 
+import com.funzio.pure2D.gl.DirectBufferPool;
 import com.funzio.pure2D.gl.GLFloatBuffer;
 
 /**
@@ -41,6 +41,7 @@ public class VertexBuffer extends GLFloatBuffer {
     protected int mIndicesNum = 0;
     protected int mIndicesNumUsed = 0;
     protected ShortBuffer mIndexBuffer;
+    private ByteBuffer mIndexByteBuffer; // from the DirectBufferPool
     protected int mVertexPointerSize = 2; // only x & y
 
     public VertexBuffer(final int primitive, final int verticesNum, final float... vertices) {
@@ -61,11 +62,12 @@ public class VertexBuffer extends GLFloatBuffer {
 
     public void setIndices(final short... indices) {
         if (indices != null) {
-            if (mIndexBuffer == null || mIndicesNum != indices.length) {
+            if (mIndexBuffer == null || mIndexBuffer.capacity() < indices.length) {
+                releaseIndices();
+
                 // short is 2 bytes, therefore we multiply the number if vertices with 2.
-                ByteBuffer bb = ByteBuffer.allocateDirect(indices.length * 2);
-                bb.order(ByteOrder.nativeOrder());
-                mIndexBuffer = bb.asShortBuffer();
+                mIndexByteBuffer = DirectBufferPool.obtain(indices.length * 2);
+                mIndexBuffer = mIndexByteBuffer.asShortBuffer();
             } else {
                 // recycle for better perf
                 mIndexBuffer.clear();
@@ -76,12 +78,19 @@ public class VertexBuffer extends GLFloatBuffer {
             mIndicesNum = indices.length;
         } else if (mIndexBuffer != null) {
             // clean up
-            mIndexBuffer.clear();
-            mIndexBuffer = null;
+            releaseIndices();
             mIndicesNum = 0;
         }
     }
 
+    private void releaseIndices() {
+        if (mIndexByteBuffer != null) {
+            DirectBufferPool.release(mIndexByteBuffer);
+            mIndexByteBuffer = null;
+        }
+        mIndexBuffer = null;
+    }
+
     public ShortBuffer getIndexBuffer() {
         return mIndexBuffer;
     }
@@ -98,6 +107,13 @@ public class VertexBuffer extends GLFloatBuffer {
         mIndicesNumUsed = indicesNumUsed;
     }
 
+    /**
+     * @return number of vertices used by the indices, or all of them
+     */
+    public int getNumVerticesUsed() {
+        return mVerticesNum;
+    }
+
     public int getPrimitive() {
         return mPrimitive;
     }
@@ -123,8 +139,11 @@ public class VertexBuffer extends GLFloatBuffer {
         glState.setVertexBuffer(this);
 
         if (mIndicesNum > 0) {
-            glState.mGL.glDrawElements(mPrimitive, mIndicesNumUsed > 0 ? Math.min(mIndicesNumUsed, mIndicesNum) : mIndicesNum, GL10.GL_UNSIGNED_SHORT, mIndexBuffer);
+            final int indicesNum = mIndicesNumUsed > 0 ? Math.min(mIndicesNumUsed, mIndicesNum) : mIndicesNum;
+            glState.addDrawCall(indicesNum);
+            glState.mGL.glDrawElements(mPrimitive, indicesNum, GL10.GL_UNSIGNED_SHORT, mIndexBuffer);
         } else {
+            glState.addDrawCall(mVerticesNum);
             glState.mGL.glDrawArrays(mPrimitive, 0, mVerticesNum);
         }
 
@@ -138,8 +157,7 @@ public class VertexBuffer extends GLFloatBuffer {
 
         // indices buffer
         if (mIndexBuffer != null) {
-            mIndexBuffer.clear();
-            mIndexBuffer = null;
+            releaseIndices();
             mIndicesNum = 0;
         }
     }
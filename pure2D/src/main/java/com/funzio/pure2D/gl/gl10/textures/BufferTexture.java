@@ -72,6 +72,14 @@ public class BufferTexture extends Texture {
         setBitmapSize(bitmapWidth, bitmapHeight, actualWidth, actualHeight);
     }
 
+    /**
+     * @return false, the content is rendered, it cannot be reloaded
+     */
+    @Override
+    public boolean isEvictable() {
+        return false;
+    }
+
     /*
      * (non-Javadoc)
      * @see com.funzio.pure2D.gl.gl10.Texture#reload()
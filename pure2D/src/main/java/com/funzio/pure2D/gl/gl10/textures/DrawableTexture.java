@@ -97,6 +97,13 @@ public class DrawableTexture extends Texture {
         mDrawable = drawable;
         mOptions = options;
 
+        // stream it if possible
+        final TextureStreamer streamer = getStreamer();
+        if (streamer != null) {
+            streamer.queue(this, new StreamLoader(), mLoadPriority);
+            return;
+        }
+
         // AsyncTask can only be initialized on UI Thread, especially on Android 2.2
         mGLState.getStage().getHandler().post(new Runnable() {
             @Override
@@ -120,16 +127,7 @@ public class DrawableTexture extends Texture {
 
                 @Override
                 public void run() {
-                    if (bitmap != null) {
-                        load(bitmap, dimensions[0], dimensions[1], mOptions != null ? mOptions.inMipmaps : 0);
-                        bitmap.recycle();
-                    } else {
-                        Log.e(TAG, "Unable to load bitmap: " + mDrawable);
-                        // callback, regardless whether it's successful or not
-                        if (mListener != null) {
-                            mListener.onTextureLoad(DrawableTexture.this);
-                        }
-                    }
+                    onBitmapLoaded(bitmap, dimensions);
                 }
             });
 
@@ -137,6 +135,34 @@ public class DrawableTexture extends Texture {
         }
     }
 
+    private class StreamLoader implements TextureStreamer.Loader {
+        @Override
+        public Bitmap decode(final int[] dimensions) {
+            return Pure2DUtils.getResourceBitmap(mResources, mDrawable, mOptions, dimensions);
+        }
+
+        @Override
+        public void upload(final Bitmap bitmap, final int[] dimensions) {
+            onBitmapLoaded(bitmap, dimensions);
+        }
+    }
+
+    /**
+     * Called on GL thread when the async bitmap is decoded
+     */
+    private void onBitmapLoaded(final Bitmap bitmap, final int[] dimensions) {
+        if (bitmap != null) {
+            load(bitmap, dimensions[0], dimensions[1], mOptions != null ? mOptions.inMipmaps : 0);
+            bitmap.recycle();
+        } else {
+            Log.e(TAG, "Unable to load bitmap: " + mDrawable);
+            // callback, regardless whether it's successful or not
+            if (mListener != null) {
+                mListener.onTextureLoad(this);
+            }
+        }
+    }
+
     /**
      * @return the resources
      */
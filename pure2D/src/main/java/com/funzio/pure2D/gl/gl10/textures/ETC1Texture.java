@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.gl.gl10.textures;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.opengl.ETC1;
+import android.opengl.ETC1Util;
+import android.util.Log;
+
+import com.funzio.pure2D.gl.DirectBufferPool;
+import com.funzio.pure2D.gl.gl10.GLState;
+
+/**
+ * @author long
+ * @category An ETC1 compressed texture from a PKM file, which is memory-mapped and uploaded as is, without decoding. ETC1 has no alpha, so the alpha channel can be loaded from a separate
+ *           "*_alpha.pkm" file (see {@link TextureOptions#inETC1Alpha}) and is applied on the second texture unit. The PKM files can be made by tools/PkmConverter.java.
+ */
+public class ETC1Texture extends Texture {
+    public static final String FILE_PKM = ".pkm";
+    public static final String ALPHA_SUFFIX = "_alpha";
+
+    private static final int PKM_HEADER_SIZE = 16;
+
+    private AssetManager mAssetManager; // null means file system
+    private String mFilePath;
+    private TextureOptions mOptions;
+
+    /**
+     * @param glState
+     * @param assetManager null to load from file system
+     * @param filePath
+     * @param options
+     */
+    protected ETC1Texture(final GLState glState, final AssetManager assetManager, final String filePath, final TextureOptions options) {
+        super(glState);
+
+        mAssetManager = assetManager;
+
+        load(filePath, options);
+    }
+
+    /**
+     * Load synchronously. This MUST be executed on GL Thread.
+     * 
+     * @param filePath
+     * @param options
+     */
+    public void load(final String filePath, final TextureOptions options) {
+        mFilePath = filePath;
+        mOptions = options;
+
+        // clean up the previous one
+        unload();
+
+        final ByteBuffer data = readFile(filePath);
+        if (data == null || !isValid(data)) {
+            Log.e(TAG, "Unable to load PKM: " + filePath, new Exception());
+            // callback, regardless whether it's successful or not
+            if (mListener != null) {
+                mListener.onTextureLoad(this);
+            }
+            return;
+        }
+
+        final int width = data.getShort(8) & 0xFFFF;
+        final int height = data.getShort(10) & 0xFFFF;
+        final int actualWidth = data.getShort(12) & 0xFFFF;
+        final int actualHeight = data.getShort(14) & 0xFFFF;
+
+        // alpha channel first, so it gets bound with the color
+        int alphaSize = 0;
+        if (options != null && options.inETC1Alpha) {
+            final String alphaPath = filePath.substring(0, filePath.length() - FILE_PKM.length()) + ALPHA_SUFFIX + FILE_PKM;
+            final ByteBuffer alphaData = readFile(alphaPath);
+            if (alphaData != null && isValid(alphaData) && (alphaData.getShort(8) & 0xFFFF) == width && (alphaData.getShort(10) & 0xFFFF) == height) {
+                loadAlpha(getImageData(alphaData), width, height);
+                alphaSize = width * height;
+            } else {
+                Log.e(TAG, "Unable to load alpha PKM: " + alphaPath);
+            }
+        }
+
+        final ByteBuffer image = getImageData(data);
+        if (ETC1Util.isETC1Supported()) {
+            loadCompressed(ETC1.ETC1_RGB8_OES, width, height, image, image.remaining(), actualWidth, actualHeight);
+        } else {
+            // decode on CPU then
+            Log.w(TAG, "ETC1 is not supported, decoding: " + filePath);
+            final ByteBuffer pixels = DirectBufferPool.obtain(width * height * 2);
+            ETC1.decodeImage(image, pixels, width, height, 2, width * 2);
+            loadPixels(GL10.GL_RGB, GL10.GL_UNSIGNED_SHORT_5_6_5, width, height, pixels, 2, actualWidth, actualHeight);
+            DirectBufferPool.release(pixels);
+        }
+
+        if (alphaSize > 0) {
+            setMemorySize(mMemorySize + alphaSize);
+        }
+    }
+
+    /**
+     * Decode the alpha PKM and upload it as an 8-bit alpha texture
+     */
+    private void loadAlpha(final ByteBuffer image, final int width, final int height) {
+        final int numPixels = width * height;
+        final ByteBuffer rgb = DirectBufferPool.obtain(numPixels * 3);
+        ETC1.decodeImage(image, rgb, width, height, 3, width * 3);
+
+        // the channels are the same, take red
+        final ByteBuffer alpha = DirectBufferPool.obtain(numPixels);
+        for (int i = 0; i < numPixels; i++) {
+            alpha.put(i, rgb.get(i * 3));
+        }
+        DirectBufferPool.release(rgb);
+
+        final int[] ids = new int[1];
+        mGL.glGenTextures(1, ids, 0);
+        mGL.glBindTexture(GL10.GL_TEXTURE_2D, ids[0]);
+        mGL.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_ALPHA, width, height, 0, GL10.GL_ALPHA, GL10.GL_UNSIGNED_BYTE, alpha);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+        mGL.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
+        mAlphaTextureID = ids[0];
+        DirectBufferPool.release(alpha);
+
+        // the binding changed behind GLState
+        mGLState.unbindTexture();
+    }
+
+    @Override
+    public void unload() {
+        if (mAlphaTextureID != 0) {
+            final int[] ids = {
+                mAlphaTextureID
+            };
+            mGL.glDeleteTextures(1, ids, 0);
+            mAlphaTextureID = 0;
+        }
+
+        super.unload();
+    }
+
+    @Override
+    public void reload() {
+        load(mFilePath, mOptions);
+    }
+
+    /**
+     * Map the file into a direct buffer, or read it if it's compressed inside the apk
+     * 
+     * @param filePath
+     * @return the content, or null if failed
+     */
+    private ByteBuffer readFile(final String filePath) {
+        InputStream stream = null;
+        try {
+            if (mAssetManager == null) {
+                final FileInputStream fileStream = new FileInputStream(filePath);
+                stream = fileStream;
+                final FileChannel channel = fileStream.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+
+            try {
+                final AssetFileDescriptor descriptor = mAssetManager.openFd(filePath);
+                final FileInputStream fileStream = descriptor.createInputStream();
+                stream = fileStream;
+                return fileStream.getChannel().map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength());
+            } catch (IOException e) {
+                // compressed asset, read it then
+                stream = mAssetManager.open(filePath);
+                final ByteBuffer buffer = ByteBuffer.allocateDirect(stream.available());
+                final byte[] bytes = new byte[4096];
+                int count;
+                while ((count = stream.read(bytes)) > 0) {
+                    buffer.put(bytes, 0, count);
+                }
+                buffer.position(0);
+                return buffer;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Reading Error: " + filePath, e);
+            return null;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Check the PKM header
+     */
+    private static boolean isValid(final ByteBuffer data) {
+        if (data.capacity() < PKM_HEADER_SIZE || data.get(0) != 'P' || data.get(1) != 'K' || data.get(2) != 'M' || data.get(3) != ' ' || data.get(4) != '1' || data.get(5) != '0') {
+            return false;
+        }
+
+        final int width = data.getShort(8) & 0xFFFF;
+        final int height = data.getShort(10) & 0xFFFF;
+        return data.capacity() >= PKM_HEADER_SIZE + ETC1.getEncodedDataSize(width, height);
+    }
+
+    /**
+     * @return the encoded image, after the header
+     */
+    private static ByteBuffer getImageData(final ByteBuffer data) {
+        data.position(PKM_HEADER_SIZE);
+        final ByteBuffer image = data.slice();
+        data.position(0);
+
+        return image;
+    }
+
+    public String getFilePath() {
+        return mFilePath;
+    }
+
+    @Override
+    public String toString() {
+        return mFilePath;
+    }
+}
@@ -98,6 +98,13 @@ public class FileTexture extends Texture {
         mFilePath = filePath;
         mOptions = options;
 
+        // stream it if possible
+        final TextureStreamer streamer = getStreamer();
+        if (streamer != null) {
+            streamer.queue(this, new StreamLoader(), mLoadPriority);
+            return;
+        }
+
         // AsyncTask can only be initialized on UI Thread, especially on Android 2.2
         mGLState.getStage().getHandler().post(new Runnable() {
             @Override
@@ -121,16 +128,7 @@ public class FileTexture extends Texture {
 
                 @Override
                 public void run() {
-                    if (bitmap != null) {
-                        load(bitmap, dimensions[0], dimensions[1], mOptions != null ? mOptions.inMipmaps : 0);
-                        bitmap.recycle();
-                    } else {
-                        Log.e(TAG, "Unable to load bitmap: " + mFilePath);
-                        // callback, regardless whether it's successful or not
-                        if (mListener != null) {
-                            mListener.onTextureLoad(FileTexture.this);
-                        }
-                    }
+                    onBitmapLoaded(bitmap, dimensions);
                 }
             });
 
@@ -138,6 +136,34 @@ public class FileTexture extends Texture {
         }
     }
 
+    private class StreamLoader implements TextureStreamer.Loader {
+        @Override
+        public Bitmap decode(final int[] dimensions) {
+            return Pure2DUtils.getFileBitmap(mFilePath, mOptions, dimensions);
+        }
+
+        @Override
+        public void upload(final Bitmap bitmap, final int[] dimensions) {
+            onBitmapLoaded(bitmap, dimensions);
+        }
+    }
+
+    /**
+     * Called on GL thread when the async bitmap is decoded
+     */
+    private void onBitmapLoaded(final Bitmap bitmap, final int[] dimensions) {
+        if (bitmap != null) {
+            load(bitmap, dimensions[0], dimensions[1], mOptions != null ? mOptions.inMipmaps : 0);
+            bitmap.recycle();
+        } else {
+            Log.e(TAG, "Unable to load bitmap: " + mFilePath);
+            // callback, regardless whether it's successful or not
+            if (mListener != null) {
+                mListener.onTextureLoad(this);
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return mFilePath;
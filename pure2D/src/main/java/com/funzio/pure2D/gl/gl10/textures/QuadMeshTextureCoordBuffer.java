@@ -34,6 +34,9 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
 
     protected int mNumCells;
     protected boolean mInvalidated = false;
+    // changed cells
+    protected int mDirtyStart = 0;
+    protected int mDirtyEnd = 0;
 
     protected float mScaleX = 1;
     protected float mScaleY = 1;
@@ -56,7 +59,7 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
             // }
             // }
 
-            mInvalidated = true;
+            invalidateCells(0, numCells);
         }
 
         mNumCells = numCells;
@@ -88,7 +91,7 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
         mValues[start + 6] = (x + width);
         mValues[start + 7] = (y + height);
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     public void setRectFlipVerticalAt(final int index, final float x, final float y, final float width, final float height) {
@@ -103,7 +106,7 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
         mValues[start + 6] = (x + width);
         mValues[start + 7] = y;
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     /**
@@ -125,7 +128,7 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
         mValues[start + 6] = values[6];
         mValues[start + 7] = values[7];
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     public void setValuesAt(final int index, final int numCells, final float... values) {
@@ -136,7 +139,7 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
             mValues[start + i] = values[i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, numCells);
     }
 
     public void setValuesAt(final int index, final int numCells, final int srcOffset, final float... values) {
@@ -147,18 +150,37 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
             mValues[start + i] = values[srcOffset + i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, numCells);
+    }
+
+    /**
+     * Flag the cells to be copied into the buffer
+     * 
+     * @param index
+     * @param numCells
+     */
+    protected void invalidateCells(final int index, final int numCells) {
+        if (mInvalidated) {
+            mDirtyStart = Math.min(mDirtyStart, index);
+            mDirtyEnd = Math.max(mDirtyEnd, index + numCells);
+        } else {
+            mDirtyStart = index;
+            mDirtyEnd = index + numCells;
+            mInvalidated = true;
+        }
     }
 
     /**
-     * Applies the values set by {@link #setRectAt(int, float...)}
+     * Applies the values set by {@link #setRectAt(int, float...)}, only the changed cells are copied
      */
     protected void validate() {
         if (mInvalidated) {
+            final int start = mDirtyStart * NUM_COORD_PER_CELL;
+            final int end = Math.min(mDirtyEnd * NUM_COORD_PER_CELL, mValues.length);
 
             // scale the values
-            if (mValues != null && (mScaleX != 1 || mScaleY != 1)) {
-                for (int i = 0; i < mValues.length; i++) {
+            if (mScaleX != 1 || mScaleY != 1) {
+                for (int i = start; i < end; i++) {
                     if (i % 2 == 0) {
                         mValues[i] *= mScaleX;
                     } else {
@@ -167,7 +189,7 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
                 }
             }
 
-            setValues(mValues);
+            putValues(mValues, start, end - start);
 
             // unflag
             mInvalidated = false;
@@ -182,8 +204,8 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
         mScaleX = scaleX;
         mScaleY = scaleY;
 
-        // unflag
-        mInvalidated = true;
+        // all of them
+        invalidateCells(0, mNumCells);
     }
 
     @Override
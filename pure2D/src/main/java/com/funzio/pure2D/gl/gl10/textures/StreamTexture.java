@@ -56,6 +56,14 @@ public class StreamTexture extends Texture {
         }
     }
 
+    /**
+     * @return false, the stream is already consumed
+     */
+    @Override
+    public boolean isEvictable() {
+        return false;
+    }
+
     @Override
     public void reload() {
         load(mStream, mOptions);
@@ -27,6 +27,8 @@ package com.funzio.pure2D.gl.gl10.textures;
 import javax.microedition.khronos.opengles.GL10;
 import javax.microedition.khronos.opengles.GL11;
 
+import java.nio.Buffer;
+
 import android.graphics.Bitmap;
 import android.graphics.PointF;
 import android.opengl.GLU;
@@ -53,6 +55,7 @@ public abstract class Texture {
     private boolean mHasMipmaps = false;
 
     public int mTextureID = 0; // note: valid texture id can be negative (on Kindle Fire)
+    public int mAlphaTextureID = 0; // separate alpha channel, such as for ETC1
     public float mCoordScaleX = 1;
     public float mCoordScaleY = 1;
 
@@ -64,6 +67,18 @@ public abstract class Texture {
     protected int mIdleTime = 0;
     protected boolean mExpired = false;
 
+    // streaming stuff
+    protected int mLoadPriority = TextureStreamer.PRIORITY_DEFAULT;
+    volatile boolean mStreaming = false; // pending in the TextureStreamer
+
+    // memory stuff
+    TextureManager mManager; // the manager which accounts this texture
+    int mManagerIndex = -1; // index in the manager's list, for fast removal
+    TextureKey mKey; // when shared by the manager
+    int mRefCount = 0;
+    protected int mMemorySize = 0; // estimated bytes in video memory
+    protected int mLastBindTime = 0; // manager's time, for LRU eviction
+
     protected Texture(final GLState glState) {
         mGLState = glState;
         mGL = mGLState.mGL;
@@ -92,22 +107,11 @@ public abstract class Texture {
     public void load(final Bitmap bitmap, final int actualWidth, final int actualHeight, final int mipmaps) {
         setBitmapSize(bitmap != null ? bitmap.getWidth() : actualWidth, bitmap != null ? bitmap.getHeight() : actualHeight, actualWidth, actualHeight);
 
-        final int[] ids = new int[1];
-        // clear the previous error(s), to make sure
-        mGLState.clearErrors();
-        mGL.glGenTextures(1, ids, 0);
-        mTextureID = ids[0];
-
-        int error = mGL.glGetError();
         if (LOG_ENABLED) {
-            Log.v(TAG, String.format("load(%s, %d, %d); id: %d, error: %d", bitmap, actualWidth, actualHeight, mTextureID, error));
+            Log.v(TAG, String.format("load(%s, %d, %d)", bitmap, actualWidth, actualHeight));
         }
 
-        // error checking
-        if (error == 0 && mTextureID != 0) {
-            // mGL.glBindTexture(GL10.GL_TEXTURE_2D, mTextureID);
-            mGLState.bindTexture(this);
-
+        if (generateTexture()) {
             // load the bitmap into gl
             if (bitmap == null) {
                 // create a blank texture
@@ -135,12 +139,17 @@ public abstract class Texture {
             // mGL.glBindTexture(GL10.GL_TEXTURE_2D, 0);
             // mGLState.unbindTexture();
 
+            // memory accounting
+            int memorySize = bitmap != null ? bitmap.getWidth() * bitmap.getHeight() * getBytesPerPixel(bitmap.getConfig()) : actualWidth * actualHeight * 4;
+            if (mHasMipmaps) {
+                // the whole chain is about 1/3 more
+                memorySize += memorySize / 3;
+            }
+            setMemorySize(memorySize);
+
             // unexpire
             mExpired = false;
             mIdleTime = 0;
-        } else {
-            Log.e(TAG, "Failed to generate Texture: " + GLU.gluErrorString(error), new Exception());
-            // TODO maybe throw an Exception here
         }
 
         // callback, regardless whether it's successful or not
@@ -149,6 +158,104 @@ public abstract class Texture {
         }
     }
 
+    /**
+     * Load a compressed image such as ETC1. This MUST be executed on GL Thread.
+     * 
+     * @param internalFormat such as ETC1.ETC1_RGB8_OES
+     * @param width the image width
+     * @param height the image height
+     * @param data the compressed image
+     * @param dataSize in bytes
+     * @param actualWidth
+     * @param actualHeight
+     */
+    protected void loadCompressed(final int internalFormat, final int width, final int height, final Buffer data, final int dataSize, final int actualWidth, final int actualHeight) {
+        setBitmapSize(width, height, actualWidth, actualHeight);
+
+        if (LOG_ENABLED) {
+            Log.v(TAG, String.format("loadCompressed(%d, %d, %d, %d)", internalFormat, width, height, dataSize));
+        }
+
+        if (generateTexture()) {
+            mGL.glCompressedTexImage2D(GL10.GL_TEXTURE_2D, 0, internalFormat, width, height, 0, dataSize, data);
+            setFilters(mMinFilter, mMagFilter);
+            setMemorySize(dataSize);
+
+            // unexpire
+            mExpired = false;
+            mIdleTime = 0;
+        }
+
+        // callback, regardless whether it's successful or not
+        if (mListener != null) {
+            mListener.onTextureLoad(this);
+        }
+    }
+
+    /**
+     * Load raw pixels. This MUST be executed on GL Thread.
+     * 
+     * @param format such as GL10.GL_RGB
+     * @param type such as GL10.GL_UNSIGNED_SHORT_5_6_5
+     * @param width the image width
+     * @param height the image height
+     * @param pixels
+     * @param bytesPerPixel
+     * @param actualWidth
+     * @param actualHeight
+     */
+    protected void loadPixels(final int format, final int type, final int width, final int height, final Buffer pixels, final int bytesPerPixel, final int actualWidth, final int actualHeight) {
+        setBitmapSize(width, height, actualWidth, actualHeight);
+
+        if (LOG_ENABLED) {
+            Log.v(TAG, String.format("loadPixels(%d, %d, %d, %d)", format, type, width, height));
+        }
+
+        if (generateTexture()) {
+            mGL.glTexImage2D(GL10.GL_TEXTURE_2D, 0, format, width, height, 0, format, type, pixels);
+            setFilters(mMinFilter, mMagFilter);
+            setMemorySize(width * height * bytesPerPixel);
+
+            // unexpire
+            mExpired = false;
+            mIdleTime = 0;
+        }
+
+        // callback, regardless whether it's successful or not
+        if (mListener != null) {
+            mListener.onTextureLoad(this);
+        }
+    }
+
+    /**
+     * Generate and bind a new texture id
+     * 
+     * @return true if successful
+     */
+    private boolean generateTexture() {
+        final int[] ids = new int[1];
+        // clear the previous error(s), to make sure
+        mGLState.clearErrors();
+        mGL.glGenTextures(1, ids, 0);
+        mTextureID = ids[0];
+
+        final int error = mGL.glGetError();
+        if (LOG_ENABLED) {
+            Log.v(TAG, String.format("generateTexture(); id: %d, error: %d", mTextureID, error));
+        }
+
+        // error checking
+        if (error == 0 && mTextureID != 0) {
+            // mGL.glBindTexture(GL10.GL_TEXTURE_2D, mTextureID);
+            mGLState.bindTexture(this);
+            return true;
+        } else {
+            Log.e(TAG, "Failed to generate Texture: " + GLU.gluErrorString(error), new Exception());
+            // TODO maybe throw an Exception here
+            return false;
+        }
+    }
+
     protected void setBitmapSize(final int bitmapWidth, final int bitmapHeight, final int actualWidth, final int actualHeight) {
         mSize.x = actualWidth == 0 ? bitmapWidth : actualWidth;
         mSize.y = actualHeight == 0 ? bitmapHeight : actualHeight;
@@ -200,6 +307,10 @@ public abstract class Texture {
 
         // if previously expired, auto reload it!
         if (mExpired && mTextureID == 0) {
+            if (mManager != null) {
+                mManager.mNumReloads++;
+            }
+
             reload();
 
             // unexpire
@@ -213,9 +324,21 @@ public abstract class Texture {
 
             // no longer idle
             mIdleTime = 0;
+            if (mManager != null) {
+                mLastBindTime = mManager.mTime;
+                mManager.mNumHits++;
+            }
         } else {
             // texture is not ready, notify the glstate
             mGLState.unbindTexture();
+
+            // still streaming in? it's visible now so it should go first
+            if (mStreaming) {
+                final TextureStreamer streamer = getStreamer();
+                if (streamer != null) {
+                    streamer.boost(this, TextureStreamer.PRIORITY_VISIBLE);
+                }
+            }
         }
     }
 
@@ -244,6 +367,49 @@ public abstract class Texture {
             // now unbind me
             mGLState.unbindTexture();
         }
+
+        setMemorySize(0);
+    }
+
+    /**
+     * Unload this Texture to free up memory. It gets reloaded automatically on the next {@link #bind()}.
+     */
+    void evict() {
+        unload();
+
+        // flag, same as expiration
+        mExpired = true;
+    }
+
+    /**
+     * @return true if this Texture can be unloaded and reloaded later without losing its content. This is used by {@link TextureManager#setMemoryBudget(int)}.
+     */
+    public boolean isEvictable() {
+        return true;
+    }
+
+    /**
+     * @return the estimated size in video memory, in bytes
+     */
+    public int getMemorySize() {
+        return mMemorySize;
+    }
+
+    protected void setMemorySize(final int memorySize) {
+        if (mManager != null) {
+            mManager.mMemoryUsage += memorySize - mMemorySize;
+        }
+        mMemorySize = memorySize;
+    }
+
+    protected static int getBytesPerPixel(final Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else {
+            return 4;
+        }
     }
 
     public int getTextureID() {
@@ -261,6 +427,7 @@ public abstract class Texture {
         if (mGL != mGLState.mGL) {
             mGL = mGLState.mGL;
             mTextureID = 0; // clear the previous id
+            setMemorySize(0); // gone with the previous context
 
             // reload now
             reload();
@@ -320,6 +487,49 @@ public abstract class Texture {
         return mExpired;
     }
 
+    public int getLoadPriority() {
+        return mLoadPriority;
+    }
+
+    /**
+     * Set the priority of the async loading, used by the {@link TextureStreamer}. Higher goes first.
+     * 
+     * @param loadPriority
+     */
+    public void setLoadPriority(final int loadPriority) {
+        mLoadPriority = loadPriority;
+
+        if (mStreaming) {
+            final TextureStreamer streamer = getStreamer();
+            if (streamer != null) {
+                streamer.boost(this, loadPriority);
+            }
+        }
+    }
+
+    /**
+     * @return number of references if this Texture is shared by the TextureManager, 0 otherwise
+     * @see TextureManager#releaseTexture(Texture)
+     */
+    public int getRefCount() {
+        return mRefCount;
+    }
+
+    /**
+     * @return true if this Texture is waiting to be decoded or uploaded by the {@link TextureStreamer}
+     */
+    public boolean isStreaming() {
+        return mStreaming;
+    }
+
+    /**
+     * @return the streamer of the current TextureManager, can be null
+     */
+    protected TextureStreamer getStreamer() {
+        final TextureManager manager = mGLState.getTextureManager();
+        return manager != null ? manager.getStreamer() : null;
+    }
+
     @Override
     public String toString() {
         return "Texture {id: " + mTextureID + ", size: " + mSize.x + " x " + mSize.y + "}";
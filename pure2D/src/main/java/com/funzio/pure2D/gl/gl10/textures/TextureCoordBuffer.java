@@ -61,8 +61,9 @@ public class TextureCoordBuffer extends GLFloatBuffer {
     public void setValues(final float... values) {
         super.setValues(values);
 
-        if (values != null) {
-            if (mValues == null) {
+        // the subclasses pass their own values
+        if (values != null && values != mValues) {
+            if (mValues == null || mValues.length != values.length) {
                 mValues = new float[values.length];
             }
             // store the values
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.gl.gl10.textures;
+
+import android.graphics.Bitmap;
+
+/**
+ * @author long
+ * @category A hash key of a shared Texture: the source URI and a snapshot of the {@link TextureOptions}, so changing the options afterward doesn't affect the key.
+ * @see TextureManager#acquireAssetTexture(String, TextureOptions, boolean)
+ */
+final class TextureKey {
+    private final String mUri;
+    private final boolean mHasOptions;
+    private final Class<?> mOptionsClass;
+    private final Bitmap.Config mConfig;
+    private final boolean mScaled;
+    private final boolean mDither;
+    private final int mSampleSize;
+    private final float mScaleX;
+    private final float mScaleY;
+    private final boolean mPo2;
+    private final int mMipmaps;
+    private final boolean mETC1Alpha;
+    private final int mHashCode;
+
+    public TextureKey(final String uri, final TextureOptions options) {
+        mUri = uri;
+        mHasOptions = options != null;
+        if (mHasOptions) {
+            mOptionsClass = options.getClass();
+            mConfig = options.inPreferredConfig;
+            mScaled = options.inScaled;
+            mDither = options.inDither;
+            mSampleSize = options.inSampleSize;
+            mScaleX = options.inScaleX;
+            mScaleY = options.inScaleY;
+            mPo2 = options.inPo2;
+            mMipmaps = options.inMipmaps;
+            mETC1Alpha = options.inETC1Alpha;
+        } else {
+            mOptionsClass = null;
+            mConfig = null;
+            mScaled = false;
+            mDither = false;
+            mSampleSize = 0;
+            mScaleX = mScaleY = 1;
+            mPo2 = false;
+            mMipmaps = 0;
+            mETC1Alpha = false;
+        }
+
+        // pre-compute
+        int hash = mUri.hashCode();
+        if (mHasOptions) {
+            hash = hash * 31 + (mConfig != null ? mConfig.hashCode() : 0);
+            hash = hash * 31 + Float.floatToIntBits(mScaleX);
+            hash = hash * 31 + Float.floatToIntBits(mScaleY);
+            hash = hash * 31 + mSampleSize;
+            hash = hash * 31 + mMipmaps;
+            hash = hash * 31 + (mPo2 ? 1 : 0) + (mScaled ? 2 : 0) + (mDither ? 4 : 0) + (mETC1Alpha ? 8 : 0);
+        }
+        mHashCode = hash;
+    }
+
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (object == this) {
+            return true;
+        } else if (!(object instanceof TextureKey)) {
+            return false;
+        }
+
+        final TextureKey key = (TextureKey) object;
+        return mHashCode == key.mHashCode && mUri.equals(key.mUri) && mHasOptions == key.mHasOptions && mOptionsClass == key.mOptionsClass && mConfig == key.mConfig && mScaled == key.mScaled
+                && mDither == key.mDither && mSampleSize == key.mSampleSize && mScaleX == key.mScaleX && mScaleY == key.mScaleY && mPo2 == key.mPo2 && mMipmaps == key.mMipmaps
+                && mETC1Alpha == key.mETC1Alpha;
+    }
+
+    @Override
+    public String toString() {
+        return mUri;
+    }
+}
@@ -30,11 +30,15 @@ import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.util.Log;
 
+import com.funzio.pure2D.Pure2DURI;
 import com.funzio.pure2D.Scene;
 import com.funzio.pure2D.gl.gl10.GLState;
 import com.funzio.pure2D.text.TextOptions;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 
 import javax.microedition.khronos.opengles.GL10;
 
@@ -46,8 +50,17 @@ public class TextureManager {
     public static final String TAG = TextureManager.class.getSimpleName();
     public static final int DEFAULT_EXPIRATION_CHECK_INTERVAL = 60 * 1000; // ms
 
+    private static final Comparator<Texture> LRU_COMPARATOR = new Comparator<Texture>() {
+        @Override
+        public int compare(final Texture left, final Texture right) {
+            return left.mLastBindTime < right.mLastBindTime ? -1 : (left.mLastBindTime == right.mLastBindTime ? 0 : 1);
+        }
+    };
+
     protected Scene mScene;
     protected ArrayList<Texture> mTextures = new ArrayList<Texture>();
+    // shared textures, by source and options
+    protected HashMap<TextureKey, Texture> mSharedTextures = new HashMap<TextureKey, Texture>();
     protected GLState mGLState;
     protected GL10 mGL;
 
@@ -58,6 +71,19 @@ public class TextureManager {
     protected int mExpirationCheckInterval = 0; // <= 0 means disabled
     protected int mExpirationCheckElapsedTime = 0;
 
+    // async decoding and uploading
+    protected TextureStreamer mStreamer;
+
+    // memory budget
+    protected int mMemoryBudget = 0; // bytes, <= 0 means unlimited
+    protected long mMemoryUsage = 0; // bytes, updated by the textures
+    protected int mTime = 0; // ms, for the LRU
+    protected ArrayList<Texture> mEvictionCandidates = new ArrayList<Texture>();
+    // stats
+    protected int mNumHits = 0;
+    protected int mNumEvictions = 0;
+    protected int mNumReloads = 0;
+
     public TextureManager(final Scene scene, final Resources res) {
         mScene = scene;
         if (mScene != null) {
@@ -67,6 +93,8 @@ public class TextureManager {
 
         mResources = res;
         mAssets = mResources.getAssets();
+
+        mStreamer = new TextureStreamer();
     }
 
     public Scene getScene() {
@@ -96,6 +124,71 @@ public class TextureManager {
         mExpirationCheckInterval = expirationCheckInterval;
     }
 
+    public int getMemoryBudget() {
+        return mMemoryBudget;
+    }
+
+    /**
+     * Set the max estimated video memory (in bytes) of all the Textures. When it's exceeded, the least recently bound Textures get unloaded and they will be reloaded automatically when they
+     * are bound again. By default, there is no budget.
+     *
+     * @param memoryBudget in bytes, <= 0 to disable
+     * @see Texture#isEvictable()
+     */
+    public void setMemoryBudget(final int memoryBudget) {
+        mMemoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return the estimated video memory of all the loaded Textures, in bytes
+     */
+    public long getMemoryUsage() {
+        return mMemoryUsage;
+    }
+
+    /**
+     * @return number of binds on loaded Textures
+     */
+    public int getNumHits() {
+        return mNumHits;
+    }
+
+    /**
+     * @return number of Textures unloaded by the memory budget
+     */
+    public int getNumEvictions() {
+        return mNumEvictions;
+    }
+
+    /**
+     * @return number of Textures reloaded after being evicted or expired
+     */
+    public int getNumReloads() {
+        return mNumReloads;
+    }
+
+    public void resetStats() {
+        mNumHits = 0;
+        mNumEvictions = 0;
+        mNumReloads = 0;
+    }
+
+    public TextureStreamer getStreamer() {
+        return mStreamer;
+    }
+
+    /**
+     * Set the streamer for the async textures. Null falls back to AsyncTask loading.
+     *
+     * @param streamer
+     */
+    public void setStreamer(final TextureStreamer streamer) {
+        if (mStreamer != null && mStreamer != streamer) {
+            mStreamer.dispose();
+        }
+        mStreamer = streamer;
+    }
+
     /**
      * Call this when GL changed
      *
@@ -230,6 +323,44 @@ public class TextureManager {
         return texture;
     }
 
+    /**
+     * Create a new ETC1 Texture from a PKM file in the AssetManager
+     *
+     * @param filePath
+     * @param options
+     * @return
+     * @see TextureOptions#inETC1Alpha
+     */
+    public ETC1Texture createETC1Texture(final String filePath, final TextureOptions options) {
+        Log.v(TAG, String.format("createETC1Texture(%s, %s)", filePath, options));
+
+        final ETC1Texture texture = new ETC1Texture(mGLState, mAssets, filePath, options);
+
+        // add to list
+        addTexture(texture);
+
+        return texture;
+    }
+
+    /**
+     * Create a new ETC1 Texture from a PKM file
+     *
+     * @param filePath
+     * @param options
+     * @return
+     * @see TextureOptions#inETC1Alpha
+     */
+    public ETC1Texture createETC1FileTexture(final String filePath, final TextureOptions options) {
+        Log.v(TAG, String.format("createETC1FileTexture(%s, %s)", filePath, options));
+
+        final ETC1Texture texture = new ETC1Texture(mGLState, null, filePath, options);
+
+        // add to list
+        addTexture(texture);
+
+        return texture;
+    }
+
     /**
      * Create a new Texture from a URL
      *
@@ -364,6 +495,174 @@ public class TextureManager {
         return texture;
     }
 
+    /**
+     * Get a shared Texture from an AssetManager. Identical requests share the same Texture until it's released.
+     *
+     * @param filePath
+     * @param options
+     * @param async
+     * @return
+     * @see #releaseTexture(Texture)
+     */
+    public AssetTexture acquireAssetTexture(final String filePath, final TextureOptions options, final boolean async) {
+        final TextureKey key = new TextureKey(Pure2DURI.ASSET + filePath, options);
+        AssetTexture texture = (AssetTexture) acquireTexture(key);
+        if (texture == null) {
+            texture = createAssetTexture(filePath, options, async);
+            shareTexture(key, texture);
+        }
+
+        return texture;
+    }
+
+    /**
+     * Get a shared Texture from a file. Identical requests share the same Texture until it's released.
+     *
+     * @param filePath
+     * @param options
+     * @param async
+     * @return
+     * @see #releaseTexture(Texture)
+     */
+    public FileTexture acquireFileTexture(final String filePath, final TextureOptions options, final boolean async) {
+        final TextureKey key = new TextureKey(Pure2DURI.FILE + filePath, options);
+        FileTexture texture = (FileTexture) acquireTexture(key);
+        if (texture == null) {
+            texture = createFileTexture(filePath, options, async);
+            shareTexture(key, texture);
+        }
+
+        return texture;
+    }
+
+    /**
+     * Get a shared Texture from a Drawable. Identical requests share the same Texture until it's released.
+     *
+     * @param drawable
+     * @param options
+     * @param async
+     * @return
+     * @see #releaseTexture(Texture)
+     */
+    public DrawableTexture acquireDrawableTexture(final int drawable, final TextureOptions options, final boolean async) {
+        final TextureKey key = new TextureKey(Pure2DURI.DRAWABLE + drawable, options);
+        DrawableTexture texture = (DrawableTexture) acquireTexture(key);
+        if (texture == null) {
+            texture = createDrawableTexture(drawable, options, async);
+            shareTexture(key, texture);
+        }
+
+        return texture;
+    }
+
+    /**
+     * Get a shared ETC1 Texture from a PKM file. Identical requests share the same Texture until it's released.
+     *
+     * @param filePath
+     * @param options
+     * @param fromAssets true to load from the AssetManager, false from file system
+     * @return
+     * @see #releaseTexture(Texture)
+     */
+    public ETC1Texture acquireETC1Texture(final String filePath, final TextureOptions options, final boolean fromAssets) {
+        final TextureKey key = new TextureKey((fromAssets ? Pure2DURI.ASSET : Pure2DURI.FILE) + filePath, options);
+        ETC1Texture texture = (ETC1Texture) acquireTexture(key);
+        if (texture == null) {
+            texture = fromAssets ? createETC1Texture(filePath, options) : createETC1FileTexture(filePath, options);
+            shareTexture(key, texture);
+        }
+
+        return texture;
+    }
+
+    /**
+     * Get a shared Texture from a URL. Identical requests share the same Texture until it's released.
+     *
+     * @param url
+     * @param options
+     * @param async
+     * @return
+     * @see #releaseTexture(Texture)
+     */
+    public URLTexture acquireURLTexture(final String url, final TextureOptions options, final boolean async) {
+        final TextureKey key = new TextureKey(url, options);
+        URLTexture texture = (URLTexture) acquireTexture(key);
+        if (texture == null) {
+            texture = createURLTexture(url, options, async);
+            shareTexture(key, texture);
+        }
+
+        return texture;
+    }
+
+    /**
+     * Get a shared Texture from a URL and Cache. Identical requests share the same Texture until it's released.
+     *
+     * @param fileUrl
+     * @param cachePath
+     * @param options
+     * @param async
+     * @return
+     * @see #releaseTexture(Texture)
+     */
+    public URLCacheTexture acquireURLCacheTexture(final String fileUrl, final String cachePath, final TextureOptions options, final boolean async) {
+        final TextureKey key = new TextureKey(Pure2DURI.CACHE + cachePath, options);
+        URLCacheTexture texture = (URLCacheTexture) acquireTexture(key);
+        if (texture == null) {
+            texture = createURLCacheTexture(fileUrl, cachePath, options, async);
+            shareTexture(key, texture);
+        }
+
+        return texture;
+    }
+
+    /**
+     * @param key
+     * @return the shared Texture with one more reference, or null if not found
+     */
+    protected Texture acquireTexture(final TextureKey key) {
+        final Texture texture = mSharedTextures.get(key);
+        if (texture != null) {
+            texture.mRefCount++;
+        }
+
+        return texture;
+    }
+
+    /**
+     * Register a Texture of this manager as shared, with one reference
+     *
+     * @param key
+     * @param texture
+     */
+    protected void shareTexture(final TextureKey key, final Texture texture) {
+        texture.mKey = key;
+        texture.mRefCount = 1;
+        mSharedTextures.put(key, texture);
+    }
+
+    /**
+     * Release a reference of a shared Texture. The Texture gets removed and unloaded when the last reference is released. A Texture that is not shared gets removed right away.
+     *
+     * @param texture
+     * @return true if the Texture was removed
+     */
+    public boolean releaseTexture(final Texture texture) {
+        if (texture.mKey != null && --texture.mRefCount > 0) {
+            return false;
+        }
+
+        return removeTexture(texture, true);
+    }
+
+    /**
+     * @return number of the shared Textures
+     * @see #acquireAssetTexture(String, TextureOptions, boolean)
+     */
+    public int getNumSharedTextures() {
+        return mSharedTextures.size();
+    }
+
     /**
      * Add a new texture which created outside this manager
      *
@@ -371,6 +670,24 @@ public class TextureManager {
      * @return
      */
     public boolean addTexture(final Texture texture) {
+        if (texture.mManager == this) {
+            // already added
+            return false;
+        } else if (texture.mManager != null) {
+            final TextureManager manager = texture.mManager;
+            // keep streaming it with this manager's streamer, or let the old one finish it
+            if (texture.mStreaming && manager.mStreamer != null && mStreamer != null) {
+                manager.mStreamer.requeue(texture, mStreamer);
+            }
+            manager.detachTexture(texture);
+        }
+
+        // take over the accounting
+        texture.mManager = this;
+        texture.mManagerIndex = mTextures.size();
+        texture.mLastBindTime = mTime;
+        mMemoryUsage += texture.mMemorySize;
+
         return mTextures.add(texture);
     }
 
@@ -380,9 +697,58 @@ public class TextureManager {
      * @param texture
      */
     public void removeTexture(final Texture texture) {
-        if (mTextures.remove(texture)) {
+        removeTexture(texture, true);
+    }
+
+    /**
+     * Remove a specific Texture in O(1)
+     *
+     * @param texture
+     * @param unload
+     * @return true if the Texture was in this manager
+     */
+    protected boolean removeTexture(final Texture texture, final boolean unload) {
+        if (texture.mManager != this) {
+            return false;
+        }
+
+        if (mStreamer != null) {
+            mStreamer.cancel(texture);
+        }
+
+        if (unload) {
             texture.unload();
         }
+
+        detachTexture(texture);
+
+        return true;
+    }
+
+    /**
+     * Remove a Texture from the accounting in O(1), without touching its data
+     *
+     * @param texture
+     */
+    private void detachTexture(final Texture texture) {
+        // no longer shared
+        if (texture.mKey != null) {
+            mSharedTextures.remove(texture.mKey);
+            texture.mKey = null;
+            texture.mRefCount = 0;
+        }
+
+        // swap with the last one for O(1) removal
+        final int index = texture.mManagerIndex;
+        final Texture last = mTextures.remove(mTextures.size() - 1);
+        if (last != texture) {
+            mTextures.set(index, last);
+            last.mManagerIndex = index;
+        }
+
+        mMemoryUsage -= texture.mMemorySize;
+        texture.mManager = null;
+        texture.mManagerIndex = -1;
     }
 
     /**
@@ -425,11 +791,37 @@ public class TextureManager {
     public void removeAllTextures() {
         Log.v(TAG, "removeAllTextures()");
 
+        if (mStreamer != null) {
+            mStreamer.cancelAll();
+        }
+
         // unload all first
         unloadAllTextures();
 
         // empty
+        final int len = mTextures.size();
+        for (int i = 0; i < len; i++) {
+            final Texture texture = mTextures.get(i);
+            texture.mManager = null;
+            texture.mManagerIndex = -1;
+            texture.mKey = null;
+            texture.mRefCount = 0;
+        }
         mTextures.clear();
+        mSharedTextures.clear();
+        mMemoryUsage = 0;
+    }
+
+    /**
+     * Stop the streaming workers. The async textures fall back to AsyncTask loading afterward.
+     */
+    public void dispose() {
+        Log.v(TAG, "dispose()");
+
+        if (mStreamer != null) {
+            mStreamer.dispose();
+            mStreamer = null;
+        }
     }
 
     /**
@@ -437,6 +829,19 @@ public class TextureManager {
      * @hide For internal use only. Do NOT call!
      */
     public void update(final int deltaTime) {
+        final int lastTime = mTime;
+        mTime += deltaTime;
+
+        // upload the decoded textures, within budget
+        if (mStreamer != null) {
+            mStreamer.process();
+        }
+
+        // memory check
+        if (mMemoryBudget > 0 && mMemoryUsage > mMemoryBudget) {
+            evictTextures(lastTime);
+        }
+
         // negative check
         if (mExpirationCheckInterval > 0) {
 
@@ -454,6 +859,32 @@ public class TextureManager {
         }
     }
 
+    /**
+     * Unload the least recently bound Textures until the memory usage is within budget. The ones bound in the last frame are kept.
+     *
+     * @param lastTime
+     */
+    protected void evictTextures(final int lastTime) {
+        // find the candidates
+        final int len = mTextures.size();
+        for (int i = 0; i < len; i++) {
+            final Texture texture = mTextures.get(i);
+            if (texture.mTextureID != 0 && texture.mLastBindTime < lastTime && texture.isEvictable()) {
+                mEvictionCandidates.add(texture);
+            }
+        }
+
+        // oldest first
+        Collections.sort(mEvictionCandidates, LRU_COMPARATOR);
+
+        final int num = mEvictionCandidates.size();
+        for (int i = 0; i < num && mMemoryUsage > mMemoryBudget; i++) {
+            mEvictionCandidates.get(i).evict();
+            mNumEvictions++;
+        }
+        mEvictionCandidates.clear();
+    }
+
     public int getNumTextures() {
         return mTextures.size();
     }
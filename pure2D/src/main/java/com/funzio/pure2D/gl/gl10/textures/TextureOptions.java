@@ -37,6 +37,7 @@ public class TextureOptions extends BitmapFactory.Options {
     public float inScaleY = 1;
     public boolean inPo2 = !Pure2D.GL_NPOT_TEXTURE_SUPPORTED; // power of 2 dimensions
     public int inMipmaps = 0; // for GL texture mipmapping
+    public boolean inETC1Alpha = false; // for ETC1Texture, load the alpha channel from "*_alpha.pkm"
 
     /**
      * Use {@link #getDefault()} to create a default instance
@@ -59,6 +60,7 @@ public class TextureOptions extends BitmapFactory.Options {
         options.inScaleX = options.inScaleY = 1;
         options.inPo2 = !Pure2D.GL_NPOT_TEXTURE_SUPPORTED;
         options.inMipmaps = 0;
+        options.inETC1Alpha = false;
 
         return options;
     }
@@ -73,6 +75,7 @@ public class TextureOptions extends BitmapFactory.Options {
         inScaleY = options.inScaleY;
         inPo2 = options.inPo2;
         inMipmaps = options.inMipmaps;
+        inETC1Alpha = options.inETC1Alpha;
     }
 
     @Override
@@ -26,6 +26,8 @@
  */
 package com.funzio.pure2D.gl.gl10.textures;
 
+import java.util.ArrayList;
+
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
@@ -37,20 +39,21 @@ import com.funzio.pure2D.Pure2D;
 import com.funzio.pure2D.atlas.Atlas;
 import com.funzio.pure2D.atlas.AtlasFrame;
 import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.utils.MaxRectsPacker;
 import com.funzio.pure2D.utils.Pure2DUtils;
-import com.funzio.pure2D.utils.RectBinPacker;
 
 /**
  * @author long
+ * @category Packs the bitmaps into one or more atlas pages, the ones that don't fit in the max texture size spill to the next page
  */
 public class TexturePacker {
     protected static final String TAG = TexturePacker.class.getSimpleName();
 
     private final TextureOptions mTextureOptions;
-    private Texture mTexture;
+    private final ArrayList<Texture> mTextures = new ArrayList<Texture>();
+    private final ArrayList<Atlas> mAtlases = new ArrayList<Atlas>();
 
-    private Atlas mAtlas;
-    private RectBinPacker mRectPacker;
+    private MaxRectsPacker mRectPacker;
     private Resources mResources;
     private String mPackageName;
 
@@ -63,7 +66,7 @@ public class TexturePacker {
         mPackageName = packageName;
         mTextureOptions = (textureOptions == null) ? TextureOptions.getDefault() : textureOptions;
 
-        mRectPacker = new RectBinPacker(Math.min(textureMaxSize, Pure2D.GL_MAX_TEXTURE_SIZE), mTextureOptions.inPo2);
+        mRectPacker = new MaxRectsPacker(Math.min(textureMaxSize, Pure2D.GL_MAX_TEXTURE_SIZE), mTextureOptions.inPo2);
         mRectPacker.setRotationEnabled(false);
     }
 
@@ -71,40 +74,49 @@ public class TexturePacker {
      * This can only called on GL Thread
      *
      * @param glState
-     * @return
+     * @return the texture of the first page
      */
     public Texture createTexture(final GLState glState, final String... uris) {
         return createTexture(glState.getTextureManager(), uris);
     }
 
     /**
-     * This can only called on GL Thread
+     * This can only called on GL Thread. One texture is created per page, see {@link #getTexture(int)}.
      *
      * @param textureManager
-     * @return
+     * @return the texture of the first page
      */
     public Texture createTexture(final TextureManager textureManager, final String... uris) {
-        if (mTexture == null) {
-            mTexture = textureManager.createDynamicTexture(new TextureManager.TextureRunnable() {
-
-                @Override
-                public void run(final Texture texture) {
-                    final Bitmap bitmap = createBitmap(uris);
-                    if (bitmap != null) {
-                        texture.load(bitmap, bitmap.getWidth(), bitmap.getHeight(), 0);
-                        bitmap.recycle();
-                    }
+        if (mTextures.isEmpty()) {
+            if (!pack(uris)) {
+                return null;
+            }
 
-                    // apply texture to atlas
-                    mAtlas.getMasterFrameSet().setTexture(texture);
-                }
-            });
+            final int numPages = mAtlases.size();
+            for (int i = 0; i < numPages; i++) {
+                final int page = i;
+                final Texture texture = textureManager.createDynamicTexture(new TextureManager.TextureRunnable() {
+
+                    @Override
+                    public void run(final Texture texture) {
+                        final Bitmap bitmap = createBitmap(page, uris);
+                        if (bitmap != null) {
+                            texture.load(bitmap, bitmap.getWidth(), bitmap.getHeight(), 0);
+                            bitmap.recycle();
+                        }
+
+                        // apply texture to atlas
+                        mAtlases.get(page).getMasterFrameSet().setTexture(texture);
+                    }
+                });
 
-            mTexture.reload();
-            // mTexture.setFilters(GL10.GL_LINEAR, GL10.GL_LINEAR); // better output
+                texture.reload();
+                // texture.setFilters(GL10.GL_LINEAR, GL10.GL_LINEAR); // better output
+                mTextures.add(texture);
+            }
         }
 
-        return mTexture;
+        return mTextures.get(0);
     }
 
     public TextureOptions getTextureOptions() {
@@ -112,45 +124,113 @@ public class TexturePacker {
     }
 
     public Texture getTexture() {
-        return mTexture;
+        return mTextures.isEmpty() ? null : mTextures.get(0);
+    }
+
+    public Texture getTexture(final int page) {
+        return mTextures.get(page);
     }
 
     public Atlas getAtlas() {
-        return mAtlas;
+        return mAtlases.isEmpty() ? null : mAtlases.get(0);
     }
 
-    public Bitmap createBitmap(final String... uris) {
+    public Atlas getAtlas(final int page) {
+        return mAtlases.get(page);
+    }
+
+    public int getNumPages() {
+        return mAtlases.size();
+    }
+
+    /**
+     * Find the places of the bitmaps and prepare the atlases, one per page
+     *
+     * @param uris
+     * @return false if a bitmap can't be loaded or packed
+     */
+    public boolean pack(final String... uris) {
 
         // find the bounds
         final int length = uris.length;
         final int[] dimens = new int[2];
+        final int[] sizes = new int[length * 2];
         String uri;
-        // pack the rects
-        mRectPacker.reset();
         for (int i = 0; i < length; i++) {
             uri = uris[i];
             if (!Pure2DUtils.getUriBitmapDimensions(mResources, mPackageName, uri, mTextureOptions, dimens)) {
                 Log.e(TAG, "Error loading bitmap: " + uri);
-                return null;
+                return false;
+            }
+            sizes[i * 2] = dimens[0];
+            sizes[i * 2 + 1] = dimens[1];
+        }
+
+        // pack the rects, the biggest first
+        mRectPacker.reset();
+        if (!mRectPacker.occupyAll(sizes)) {
+            Log.e(TAG, "Error packing bitmaps!");
+            return false;
+        }
+
+        // prepare the atlases
+        final int numPages = mRectPacker.getNumPages();
+        for (int i = 0; i < numPages; i++) {
+            final int width = mRectPacker.getPageWidth(i);
+            final int height = mRectPacker.getPageHeight(i);
+            if (i < mAtlases.size()) {
+                final Atlas atlas = mAtlases.get(i);
+                atlas.setSize(width, height);
+                atlas.removeAllFrames();
+            } else {
+                mAtlases.add(new Atlas(width, height));
             }
-            // occupy
-            mRectPacker.occupy(dimens[0], dimens[1]);
+        }
+        while (mAtlases.size() > numPages) {
+            mAtlases.remove(mAtlases.size() - 1);
         }
 
-        // prepare the atlas
-        if (mAtlas == null) {
-            mAtlas = new Atlas(mRectPacker.getWidth(), mRectPacker.getHeight());
-        } else {
-            mAtlas.setSize(mRectPacker.getWidth(), mRectPacker.getHeight());
-            mAtlas.removeAllFrames();
+        // add the frames
+        for (int i = 0; i < length; i++) {
+            final Atlas atlas = mAtlases.get(mRectPacker.getPage(i));
+            final AtlasFrame frame = new AtlasFrame(atlas, atlas.getMasterFrameSet().getNumFrames(), uris[i], new RectF(mRectPacker.getRect(i)));
+            atlas.addFrame(frame);
         }
 
+        return true;
+    }
+
+    /**
+     * Pack the bitmaps and draw the first page
+     *
+     * @param uris
+     * @return the bitmap of the first page
+     */
+    public Bitmap createBitmap(final String... uris) {
+        return pack(uris) ? createBitmap(0, uris) : null;
+    }
+
+    /**
+     * Draw a page, after {@link #pack(String...)}
+     *
+     * @param page
+     * @param uris the same ones that were packed
+     * @return the bitmap of the page
+     */
+    public Bitmap createBitmap(final int page, final String... uris) {
         // create a new bitmap
-        final Bitmap bitmap = Bitmap.createBitmap(mRectPacker.getWidth(), mRectPacker.getHeight(), mTextureOptions.inPreferredConfig);
+        final Bitmap bitmap = Bitmap.createBitmap(mRectPacker.getPageWidth(page), mRectPacker.getPageHeight(page), mTextureOptions.inPreferredConfig);
         // use a canvas to draw the bitmaps
         final Canvas canvas = new Canvas(bitmap);
         // draw the bitmaps
+        final int length = uris.length;
+        final int[] dimens = new int[2];
+        String uri;
         for (int i = 0; i < length; i++) {
+            if (mRectPacker.getPage(i) != page) {
+                continue;
+            }
+
             uri = uris[i];
             final Bitmap subBitmap = Pure2DUtils.getUriBitmap(mResources, mPackageName, uri, mTextureOptions, dimens);
             // error check
@@ -165,10 +245,6 @@ public class TexturePacker {
 
             // recycle the bitmap
             subBitmap.recycle();
-
-            // add frame to atlas
-            final AtlasFrame frame = new AtlasFrame(mAtlas, i, uri, new RectF(rect));
-            mAtlas.addFrame(frame);
         }
 
         return bitmap;
@@ -0,0 +1,493 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.gl.gl10.textures;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * @author long
+ * @category Streams async textures in: bitmaps get decoded by a small pool of worker threads, then wait in a priority queue to be uploaded on the GL thread by {@link #process()}, within a
+ *           time and byte budget per frame, so a burst of textures gets spread over several frames instead of one long frame. Textures that get bound while still pending are bumped to
+ *           {@link #PRIORITY_VISIBLE}.
+ * @see TextureManager#getStreamer()
+ */
+public class TextureStreamer {
+    public static final String TAG = TextureStreamer.class.getSimpleName();
+
+    public static final int DEFAULT_NUM_WORKERS = 2;
+    public static final int DEFAULT_UPLOAD_TIME = 4000; // microseconds per frame
+    public static final int DEFAULT_UPLOAD_BYTES = 4 * 1024 * 1024; // per frame
+
+    public static final int PRIORITY_DEFAULT = 0;
+    public static final int PRIORITY_VISIBLE = 100;
+
+    private static final int QUEUE_NONE = 0;
+    private static final int QUEUE_DECODE = 1;
+    private static final int QUEUE_UPLOAD = 2;
+
+    private static final Comparator<Job> COMPARATOR = new Comparator<Job>() {
+        @Override
+        public int compare(final Job left, final Job right) {
+            // higher priority first, then first come first served
+            if (left.priority != right.priority) {
+                return right.priority - left.priority;
+            }
+            return left.sequence < right.sequence ? -1 : (left.sequence == right.sequence ? 0 : 1);
+        }
+    };
+
+    private final int mNumWorkers;
+    private Worker[] mWorkers;
+    private final Object mLock = new Object();
+    private boolean mRunning = true;
+
+    // guarded by mLock
+    private final PriorityQueue<Job> mDecodeQueue = new PriorityQueue<Job>(16, COMPARATOR);
+    private final PriorityQueue<Job> mUploadQueue = new PriorityQueue<Job>(16, COMPARATOR);
+    private final HashMap<Texture, Job> mJobs = new HashMap<Texture, Job>();
+    private long mSequence = 0;
+
+    private int mUploadTime = DEFAULT_UPLOAD_TIME;
+    private int mUploadBytes = DEFAULT_UPLOAD_BYTES;
+
+    // stats
+    private int mNumRequested = 0;
+    private int mNumUploaded = 0;
+    private int mNumFailed = 0;
+    private long mBytesUploaded = 0;
+    private long mTotalLatency = 0;
+    private long mMaxLatency = 0;
+    private int mLastUploads = 0;
+    private long mLastUploadTime = 0;
+
+    public TextureStreamer() {
+        this(DEFAULT_NUM_WORKERS);
+    }
+
+    /**
+     * @param numWorkers number of decoding threads, started on the first request
+     */
+    public TextureStreamer(final int numWorkers) {
+        mNumWorkers = Math.max(1, numWorkers);
+    }
+
+    /**
+     * Queue a texture to be decoded then uploaded. A pending request for the same texture gets replaced.
+     * 
+     * @param texture
+     * @param loader
+     * @param priority higher goes first
+     */
+    public void queue(final Texture texture, final Loader loader, final int priority) {
+        synchronized (mLock) {
+            if (mWorkers == null) {
+                startWorkers();
+            }
+
+            cancelJob(mJobs.get(texture));
+
+            final Job job = new Job(texture, loader, priority, mSequence++);
+            mJobs.put(texture, job);
+            job.queue = QUEUE_DECODE;
+            mDecodeQueue.add(job);
+            texture.mStreaming = true;
+            mNumRequested++;
+
+            mLock.notify();
+        }
+    }
+
+    /**
+     * Raise the priority of a pending texture
+     * 
+     * @param texture
+     * @param priority
+     * @return true if the texture is pending and got raised
+     */
+    public boolean boost(final Texture texture, final int priority) {
+        synchronized (mLock) {
+            final Job job = mJobs.get(texture);
+            if (job == null || job.priority >= priority) {
+                return false;
+            }
+
+            // re-sort
+            if (job.queue == QUEUE_DECODE) {
+                mDecodeQueue.remove(job);
+                job.priority = priority;
+                mDecodeQueue.add(job);
+            } else if (job.queue == QUEUE_UPLOAD) {
+                mUploadQueue.remove(job);
+                job.priority = priority;
+                mUploadQueue.add(job);
+            } else {
+                // being decoded
+                job.priority = priority;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Cancel a pending texture
+     * 
+     * @param texture
+     * @return true if it was pending
+     */
+    public boolean cancel(final Texture texture) {
+        synchronized (mLock) {
+            final Job job = mJobs.get(texture);
+            cancelJob(job);
+            return job != null;
+        }
+    }
+
+    /**
+     * Move a pending texture to another streamer, such as when the texture is moved to another manager. The decoding starts over there.
+     * 
+     * @param texture
+     * @param target
+     * @return true if the texture was pending and is now pending in the target
+     */
+    public boolean requeue(final Texture texture, final TextureStreamer target) {
+        final Job job;
+        synchronized (mLock) {
+            job = mJobs.get(texture);
+            if (job == null) {
+                return false;
+            } else if (target == this) {
+                return true;
+            }
+            cancelJob(job);
+        }
+
+        target.queue(texture, job.loader, job.priority);
+        return true;
+    }
+
+    public void cancelAll() {
+        synchronized (mLock) {
+            for (final Job job : mJobs.values()) {
+                job.cancelled = true;
+                job.texture.mStreaming = false;
+                if (job.bitmap != null) {
+                    job.bitmap.recycle();
+                    job.bitmap = null;
+                }
+            }
+            mJobs.clear();
+            mDecodeQueue.clear();
+            mUploadQueue.clear();
+        }
+    }
+
+    private void cancelJob(final Job job) {
+        if (job == null) {
+            return;
+        }
+
+        job.cancelled = true;
+        job.texture.mStreaming = false;
+        mJobs.remove(job.texture);
+        if (job.queue == QUEUE_DECODE) {
+            mDecodeQueue.remove(job);
+        } else if (job.queue == QUEUE_UPLOAD) {
+            mUploadQueue.remove(job);
+            if (job.bitmap != null) {
+                job.bitmap.recycle();
+                job.bitmap = null;
+            }
+        }
+        job.queue = QUEUE_NONE;
+    }
+
+    /**
+     * Upload the decoded textures, by priority, until the frame budget is used. At least one texture gets uploaded per call if any is ready. This MUST be executed on GL Thread.
+     * 
+     * @return number of textures uploaded
+     */
+    public int process() {
+        final long startTime = System.nanoTime();
+        final long deadline = startTime + mUploadTime * 1000L;
+        int count = 0;
+        long bytes = 0;
+
+        while (true) {
+            final Job job;
+            synchronized (mLock) {
+                final Job next = mUploadQueue.peek();
+                if (next == null) {
+                    break;
+                }
+
+                // budget check
+                if (count > 0 && (bytes + next.bytes > mUploadBytes || System.nanoTime() >= deadline)) {
+                    break;
+                }
+
+                job = mUploadQueue.poll();
+                job.queue = QUEUE_NONE;
+                mJobs.remove(job.texture);
+                job.texture.mStreaming = false;
+            }
+
+            // upload, the loader recycles the bitmap
+            job.loader.upload(job.bitmap, job.dimensions);
+            if (job.bitmap != null) {
+                mNumUploaded++;
+            } else {
+                mNumFailed++;
+            }
+            job.bitmap = null;
+
+            final long latency = System.nanoTime() - job.requestTime;
+            mTotalLatency += latency;
+            if (latency > mMaxLatency) {
+                mMaxLatency = latency;
+            }
+
+            bytes += job.bytes;
+            count++;
+        }
+
+        mBytesUploaded += bytes;
+        mLastUploads = count;
+        mLastUploadTime = System.nanoTime() - startTime;
+
+        return count;
+    }
+
+    private void startWorkers() {
+        mWorkers = new Worker[mNumWorkers];
+        for (int i = 0; i < mNumWorkers; i++) {
+            mWorkers[i] = new Worker(i);
+            mWorkers[i].start();
+        }
+    }
+
+    /**
+     * Set the per-frame upload budget
+     * 
+     * @param uploadTime in microseconds
+     * @param uploadBytes
+     */
+    public void setUploadBudget(final int uploadTime, final int uploadBytes) {
+        mUploadTime = uploadTime;
+        mUploadBytes = uploadBytes;
+    }
+
+    public int getUploadTime() {
+        return mUploadTime;
+    }
+
+    public int getUploadBytes() {
+        return mUploadBytes;
+    }
+
+    /**
+     * @return number of textures waiting to be decoded or uploaded
+     */
+    public int getNumPending() {
+        synchronized (mLock) {
+            return mJobs.size();
+        }
+    }
+
+    /**
+     * @return the ratio of finished requests, from 0 to 1
+     */
+    public float getProgress() {
+        return mNumRequested == 0 ? 1 : (float) (mNumUploaded + mNumFailed) / mNumRequested;
+    }
+
+    public int getNumRequested() {
+        return mNumRequested;
+    }
+
+    public int getNumUploaded() {
+        return mNumUploaded;
+    }
+
+    public int getNumFailed() {
+        return mNumFailed;
+    }
+
+    public long getBytesUploaded() {
+        return mBytesUploaded;
+    }
+
+    /**
+     * @return the average time from request to upload, in ms
+     */
+    public float getAverageLatency() {
+        final int count = mNumUploaded + mNumFailed;
+        return count == 0 ? 0 : mTotalLatency / 1000000f / count;
+    }
+
+    /**
+     * @return the max time from request to upload, in ms
+     */
+    public float getMaxLatency() {
+        return mMaxLatency / 1000000f;
+    }
+
+    /**
+     * @return number of textures uploaded by the last {@link #process()}
+     */
+    public int getLastUploads() {
+        return mLastUploads;
+    }
+
+    /**
+     * @return time spent by the last {@link #process()}, in ms
+     */
+    public float getLastUploadTime() {
+        return mLastUploadTime / 1000000f;
+    }
+
+    public void resetStats() {
+        mNumRequested = getNumPending();
+        mNumUploaded = 0;
+        mNumFailed = 0;
+        mBytesUploaded = 0;
+        mTotalLatency = 0;
+        mMaxLatency = 0;
+    }
+
+    /**
+     * Cancel everything and stop the workers
+     */
+    public void dispose() {
+        cancelAll();
+
+        synchronized (mLock) {
+            mRunning = false;
+            mLock.notifyAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TextureStreamer {pending: %d, uploaded: %d, failed: %d, bytes: %d, latency: %.1f / %.1f ms}", getNumPending(), mNumUploaded, mNumFailed, mBytesUploaded, getAverageLatency(), getMaxLatency());
+    }
+
+    /**
+     * How to decode and upload one texture
+     */
+    public static interface Loader {
+        /**
+         * Called on a worker thread
+         * 
+         * @param dimensions to be filled with the actual width and height
+         * @return the bitmap, or null if failed
+         */
+        public Bitmap decode(int[] dimensions);
+
+        /**
+         * Called on GL thread. The bitmap should be recycled afterward.
+         * 
+         * @param bitmap the decoded bitmap, or null if failed
+         * @param dimensions
+         */
+        public void upload(Bitmap bitmap, int[] dimensions);
+    }
+
+    private static class Job {
+        final Texture texture;
+        final Loader loader;
+        final long sequence;
+        final long requestTime = System.nanoTime();
+        final int[] dimensions = new int[2];
+        int priority;
+        int queue = QUEUE_NONE;
+        boolean cancelled = false;
+        Bitmap bitmap;
+        int bytes = 0;
+
+        Job(final Texture texture, final Loader loader, final int priority, final long sequence) {
+            this.texture = texture;
+            this.loader = loader;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    private class Worker extends Thread {
+        public Worker(final int index) {
+            super(TAG + "-" + index);
+
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Job job;
+                // wait for a job
+                synchronized (mLock) {
+                    while (mRunning && mDecodeQueue.isEmpty()) {
+                        try {
+                            mLock.wait();
+                        } catch (InterruptedException e) {
+                            // check again
+                        }
+                    }
+
+                    if (!mRunning) {
+                        return;
+                    }
+                    job = mDecodeQueue.poll();
+                    job.queue = QUEUE_NONE;
+                }
+
+                Bitmap bitmap = null;
+                try {
+                    bitmap = job.loader.decode(job.dimensions);
+                } catch (Throwable e) {
+                    Log.e(TAG, "Decoding failed: " + job.texture, e);
+                }
+
+                synchronized (mLock) {
+                    if (job.cancelled) {
+                        if (bitmap != null) {
+                            bitmap.recycle();
+                        }
+                    } else {
+                        job.bitmap = bitmap;
+                        job.bytes = bitmap != null ? bitmap.getRowBytes() * bitmap.getHeight() : 0;
+                        job.queue = QUEUE_UPLOAD;
+                        mUploadQueue.add(job);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -43,6 +43,7 @@ public abstract class AbstractGrid<T> implements Grid<T> {
     protected RectF mBounds = new RectF();
 
     protected ArrayList<PointF> mScratchList;
+    protected ArrayList<Listener> mListeners;
 
     public AbstractGrid(final int width, final int height) {
         setSize(width, height);
@@ -89,12 +90,40 @@ public abstract class AbstractGrid<T> implements Grid<T> {
             return;
         }
 
-        mData[cellY][cellX] = data;
+        if (mData[cellY][cellX] != data) {
+            mData[cellY][cellX] = data;
+
+            // notify
+            if (mListeners != null) {
+                for (int i = 0; i < mListeners.size(); i++) {
+                    mListeners.get(i).onCellChanged(this, cellX, cellY);
+                }
+            }
+        }
+    }
+
+    /**
+     * Listen to cell changes made via {@link #setDataAt(int, int, Object)}, such as for invalidating cached paths
+     * 
+     * @param listener
+     */
+    public void addListener(final Listener listener) {
+        if (mListeners == null) {
+            mListeners = new ArrayList<Listener>();
+        }
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public boolean removeListener(final Listener listener) {
+        return mListeners != null && mListeners.remove(listener);
     }
 
     public void dispose() {
         mSize = null;
         mData = null;
+        mListeners = null;
     }
 
     public RectF getBounds() {
@@ -246,4 +275,8 @@ public abstract class AbstractGrid<T> implements Grid<T> {
 
         return count;
     }
+
+    public static interface Listener {
+        public void onCellChanged(AbstractGrid<?> grid, int cellX, int cellY);
+    }
 }
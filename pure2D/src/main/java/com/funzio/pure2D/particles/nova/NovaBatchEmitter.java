@@ -0,0 +1,886 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.particles.nova;
+
+import android.graphics.PointF;
+
+import com.funzio.pure2D.Displayable;
+import com.funzio.pure2D.LoopModes;
+import com.funzio.pure2D.Scene;
+import com.funzio.pure2D.atlas.AtlasFrame;
+import com.funzio.pure2D.atlas.AtlasFrameSet;
+import com.funzio.pure2D.animators.Timeline;
+import com.funzio.pure2D.gl.GLColor;
+import com.funzio.pure2D.gl.gl10.BlendFunc;
+import com.funzio.pure2D.gl.gl10.BlendModes;
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.QuadBatch;
+import com.funzio.pure2D.gl.gl10.QuadMeshBuffer;
+import com.funzio.pure2D.gl.gl10.QuadMeshColorBuffer;
+import com.funzio.pure2D.gl.gl10.textures.QuadMeshTextureCoordBuffer;
+import com.funzio.pure2D.gl.gl10.textures.Texture;
+import com.funzio.pure2D.particles.nova.vo.NovaEmitterVO;
+import com.funzio.pure2D.particles.nova.vo.NovaParticleVO;
+import com.funzio.pure2D.utils.Pure2DUtils;
+
+/**
+ * NovaBatchEmitter is a NovaEmitter that keeps its particles in flat arrays instead of creating a NovaParticle for each of them. The particles are simulated in a tight loop from
+ * their {@link NovaTracks} and drawn with one {@link QuadMeshBuffer} and {@link QuadMeshColorBuffer}, one draw call per Texture and Blending function.
+ * <p>
+ * The particles are in the parent's coordinates, same as NovaParticles, and drawn at the emitter's place in the display list, grouped by Texture. Particles that can't be batched
+ * are still emitted as NovaParticles.
+ * </p>
+ * 
+ * @author long
+ * @see NovaFactory#setBatchingEnabled(boolean)
+ * @see NovaFactory#isBatchable(NovaParticleVO)
+ */
+public class NovaBatchEmitter extends NovaEmitter {
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final int MAX_CAPACITY = QuadBatch.MAX_NUM_QUADS;
+
+    // same as NovaParticle without a texture
+    private static final int DUMMY_SIZE = 50;
+    private static final int NUM_VERTEX_VALUES = QuadMeshBuffer.NUM_VERTICES_PER_CELL * 2;
+    private static final int NUM_COORD_VALUES = QuadMeshTextureCoordBuffer.NUM_COORD_PER_CELL;
+    private static final int NUM_COLOR_VALUES = QuadMeshColorBuffer.NUM_COLOR_PER_CELL * QuadMeshColorBuffer.NUM_CHANNEL_PER_COLOR;
+
+    // the value slots of a particle, see compileValues()
+    private static final int SLOT_X = 0;
+    private static final int SLOT_Y = 1;
+    private static final int SLOT_SCALE_X = 2;
+    private static final int SLOT_SCALE_Y = 3;
+    private static final int SLOT_ROTATION = 4;
+    private static final int SLOT_ALPHA = 5;
+    private static final int SLOT_COLOR = 6;
+    private static final int SLOT_START_FRAME = 7;
+
+    // the particles
+    protected int mCapacity = 0;
+    protected int mNumParticles = 0;
+    protected float[] mAges;
+    protected float[] mLifetimes;
+    // initial values
+    protected float[] mStartX;
+    protected float[] mStartY;
+    protected float[] mStartRotations;
+    protected float[] mStartScaleX;
+    protected float[] mStartScaleY;
+    protected float[] mStartAlphas;
+    protected float[] mStartColors;
+    // current values
+    protected float[] mX;
+    protected float[] mY;
+    protected float[] mRotations;
+    protected float[] mScaleX;
+    protected float[] mScaleY;
+    protected float[] mAlphas;
+    protected float[] mColors;
+    // sprite
+    protected float[] mOriginX;
+    protected float[] mOriginY;
+    protected float[] mWidths;
+    protected float[] mHeights;
+    protected float[] mFrameTimes;
+    protected float[] mFrameDurations;
+    protected int[] mStartFrames;
+    protected int[] mFrameLoops;
+    protected int[] mFrames;
+    protected AtlasFrameSet[] mFrameSets;
+    protected Texture[] mTextures;
+    protected BlendFunc[] mBlendFuncs;
+    // animators
+    protected NovaTracks[] mTracks;
+    protected float[] mTrackData;
+    protected int mTrackStride = 0;
+
+    // drawing
+    private QuadMeshBuffer mMeshBuffer;
+    private QuadMeshTextureCoordBuffer mTextureCoordBuffer;
+    private QuadMeshColorBuffer mColorBuffer;
+    private int mBufferCapacity = 0;
+    private float[] mVertices;
+    private float[] mTextureCoords;
+    private float[] mColorValues;
+    private int[] mKeys;
+    private int mNumKeys = 0;
+    private Texture[] mKeyTextures = new Texture[4];
+    private BlendFunc[] mKeyBlendFuncs = new BlendFunc[4];
+    private int[] mKeyCounts = new int[4];
+    private int[] mKeyOffsets = new int[4];
+
+    private final NovaParticle mDelegatingParticle = new NovaParticle();
+    private final PointF mNextPosition = new PointF();
+    private boolean mTimelineCompleted = false;
+
+    public NovaBatchEmitter(final NovaFactory factory, final NovaEmitterVO vo, final PointF pos, final Object... params) {
+        super(factory, vo, pos, params);
+
+        // particles can be anywhere
+        mBypassCameraClipping = true;
+    }
+
+    @Override
+    public void reset(final Object... params) {
+        super.reset(params);
+
+        clearParticles();
+        mTimelineCompleted = false;
+    }
+
+    @Override
+    protected void emitParticle(final NovaParticleVO particleVO, final int emitIndex) {
+        if (!mFactory.isBatchable(particleVO)) {
+            super.emitParticle(particleVO, emitIndex);
+            return;
+        }
+
+        // find the animator
+        final NovaTracks tracks = (particleVO.animator != null && !particleVO.animator.isEmpty()) ? mFactory.getTracks(mFactory.mNovaVO.getAnimatorVO(NovaConfig.getString(particleVO.animator, emitIndex))) : NovaTracks.NONE;
+        if (tracks == null || mNumParticles == MAX_CAPACITY) {
+            return;
+        }
+
+        if (mNumParticles == mCapacity) {
+            setCapacity(Math.min(Math.max(mCapacity * 2, DEFAULT_CAPACITY), MAX_CAPACITY));
+        }
+        if (tracks.getNumTracks() * NovaTracks.STRIDE > mTrackStride) {
+            setTrackStride(tracks.getNumTracks() * NovaTracks.STRIDE);
+        }
+
+        // everything random of this particle comes from its seed
+        final int seed = NovaConfig.RANDOM.nextInt();
+        final NovaValues values = mFactory.getParticleValues(particleVO);
+
+        final int i = mNumParticles++;
+        mTracks[i] = tracks;
+        mAges[i] = 0;
+        mLifetimes[i] = tracks.sample(seed, emitIndex, mTrackData, i * mTrackStride);
+
+        // same as NovaParticle.reset()
+        getNextPosition(mNextPosition);
+        mStartX[i] = mNextPosition.x + values.getInt(SLOT_X, seed, emitIndex, 0);
+        mStartY[i] = mNextPosition.y + values.getInt(SLOT_Y, seed, emitIndex, 0);
+        mStartScaleX[i] = values.getFloat(SLOT_SCALE_X, seed, emitIndex, 1);
+        mStartScaleY[i] = values.getFloat(SLOT_SCALE_Y, seed, emitIndex, 1);
+        mStartRotations[i] = values.getFloat(SLOT_ROTATION, seed, emitIndex, 0);
+        mStartAlphas[i] = values.getFloat(SLOT_ALPHA, seed, emitIndex, 1);
+        final int color = values.getColorOffset(SLOT_COLOR, seed, emitIndex);
+        final int c = i * 4;
+        if (color >= 0) {
+            System.arraycopy(values.getValues(), color, mStartColors, c, 4);
+        } else {
+            mStartColors[c] = mStartColors[c + 1] = mStartColors[c + 2] = mStartColors[c + 3] = 1;
+        }
+        mBlendFuncs[i] = BlendModes.getBlendFunc(NovaConfig.getString(particleVO.blend_mode, emitIndex));
+
+        // let the delegator find the sprite
+        mDelegatingParticle.delegate(this, particleVO);
+        final AtlasFrameSet frameSet = mDelegatingParticle.getAtlasFrameSet();
+        final Texture texture = mDelegatingParticle.getTexture();
+        mFrameSets[i] = frameSet;
+        mTextures[i] = texture;
+        mFrameTimes[i] = 0;
+        if (frameSet != null) {
+            final int numFrames = frameSet.getNumFrames();
+            mStartFrames[i] = Math.max(0, Math.min(values.getInt(SLOT_START_FRAME, seed, emitIndex, 0), numFrames - 1));
+            mFrames[i] = mStartFrames[i];
+            mFrameLoops[i] = particleVO.loop_mode != null ? NovaConfig.getLoopMode(NovaConfig.getString(particleVO.loop_mode, emitIndex)) : LoopModes.LOOP_REPEAT;
+            mFrameDurations[i] = frameSet.getFps() > 0 ? 1000f / frameSet.getFps() : 0;
+            final PointF size = frameSet.getFrameMaxSize();
+            mWidths[i] = size.x;
+            mHeights[i] = size.y;
+        } else if (texture != null) {
+            final PointF size = mDelegatingParticle.getSize();
+            mWidths[i] = size.x;
+            mHeights[i] = size.y;
+        } else {
+            // just a dummy box
+            mWidths[i] = mHeights[i] = DUMMY_SIZE;
+        }
+        if (particleVO.hasOriginAtCenter()) {
+            mOriginX[i] = mWidths[i] * 0.5f;
+            mOriginY[i] = mHeights[i] * 0.5f;
+        } else {
+            mOriginX[i] = particleVO.origin_x;
+            mOriginY[i] = particleVO.origin_y;
+        }
+
+        // initial values
+        evaluate(i);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.BaseDisplayObject#update(int)
+     */
+    @Override
+    public boolean update(final int deltaTime) {
+        // the existing particles first, the new ones start at age 0
+        if (mNumParticles > 0) {
+            simulate(deltaTime);
+        }
+
+        final boolean updated = super.update(deltaTime);
+
+        if (mNumParticles > 0) {
+            invalidate(VISUAL);
+        } else if (mTimelineCompleted) {
+            // all done
+            queueFinish();
+        }
+
+        return updated;
+    }
+
+    /**
+     * Age the particles, remove the dead ones and evaluate the rest.
+     * 
+     * @param deltaTime
+     */
+    protected void simulate(final int deltaTime) {
+        final int num = mNumParticles;
+        int alive = 0;
+        for (int i = 0; i < num; i++) {
+            final float age = mAges[i] + deltaTime;
+            if (age >= mLifetimes[i]) {
+                // dead
+                continue;
+            }
+
+            // compact, keeping the order
+            if (alive != i) {
+                moveParticle(i, alive);
+            }
+            mAges[alive] = age;
+
+            // frames, same as Clip.update()
+            final AtlasFrameSet frameSet = mFrameSets[alive];
+            if (frameSet != null) {
+                final int numFrames = frameSet.getNumFrames();
+                if (numFrames > 1) {
+                    mFrameTimes[alive] += mFrameDurations[alive] > 0 ? deltaTime / mFrameDurations[alive] : 1;
+
+                    final int frame = mStartFrames[alive] + (int) mFrameTimes[alive];
+                    final int loop = mFrameLoops[alive];
+                    if (loop == LoopModes.LOOP_REPEAT) {
+                        mFrames[alive] = frame % numFrames;
+                    } else if (loop == LoopModes.LOOP_REVERSE) {
+                        final int cycle = (numFrames - 1) * 2;
+                        final int current = frame % cycle;
+                        mFrames[alive] = current >= numFrames ? cycle - current : current;
+                    } else {
+                        mFrames[alive] = Math.min(frame, numFrames - 1);
+                    }
+                } else {
+                    mFrames[alive] = 0;
+                }
+            }
+
+            evaluate(alive);
+            alive++;
+        }
+
+        // release the references
+        for (int i = alive; i < num; i++) {
+            mTracks[i] = null;
+            mFrameSets[i] = null;
+            mTextures[i] = null;
+            mBlendFuncs[i] = null;
+        }
+
+        mNumParticles = alive;
+    }
+
+    /**
+     * Apply the tracks to the initial values of a particle
+     * 
+     * @param i
+     */
+    protected void evaluate(final int i) {
+        final NovaTracks tracks = mTracks[i];
+        final float[] data = mTrackData;
+        final float age = mAges[i];
+        final int c = i * 4;
+
+        float x = mStartX[i];
+        float y = mStartY[i];
+        float rotation = mStartRotations[i];
+        float scaleX = mStartScaleX[i];
+        float scaleY = mStartScaleY[i];
+        float alpha = mStartAlphas[i];
+        float r = mStartColors[c];
+        float g = mStartColors[c + 1];
+        float b = mStartColors[c + 2];
+        float a = mStartColors[c + 3];
+
+        // the absolute values come from the latest started track
+        float scaleStart = Float.NEGATIVE_INFINITY;
+        float alphaStart = Float.NEGATIVE_INFINITY;
+        float colorStart = Float.NEGATIVE_INFINITY;
+
+        final int numTracks = tracks.getNumTracks();
+        int base = i * mTrackStride;
+        for (int t = 0; t < numTracks; t++, base += NovaTracks.STRIDE) {
+            final float start = data[base + NovaTracks.START];
+            if (age < start) {
+                continue;
+            }
+
+            final float value = tracks.getValue(t, data, base, age);
+            final int p = base + NovaTracks.PARAMS;
+            switch (tracks.getType(t)) {
+                case NovaTracks.TYPE_MOVE:
+                    final float moved = value - tracks.getStartValue(t);
+                    x += moved * data[p];
+                    y += moved * data[p + 1];
+                    break;
+
+                case NovaTracks.TYPE_ROTATE:
+                    rotation += (value - tracks.getStartValue(t)) * data[p];
+                    break;
+
+                case NovaTracks.TYPE_SCALE:
+                    if (start >= scaleStart) {
+                        scaleStart = start;
+                        scaleX = data[p] + value * data[p + 2];
+                        scaleY = data[p + 1] + value * data[p + 3];
+                    }
+                    break;
+
+                case NovaTracks.TYPE_ALPHA:
+                    if (start >= alphaStart) {
+                        alphaStart = start;
+                        alpha = data[p] + value * data[p + 1];
+                    }
+                    break;
+
+                case NovaTracks.TYPE_COLOR:
+                    if (start >= colorStart) {
+                        colorStart = start;
+                        r = data[p] + value * data[p + 4];
+                        g = data[p + 1] + value * data[p + 5];
+                        b = data[p + 2] + value * data[p + 6];
+                        a = data[p + 3] + value * data[p + 7];
+                    }
+                    break;
+            }
+        }
+
+        mX[i] = x;
+        mY[i] = y;
+        mRotations[i] = rotation;
+        mScaleX[i] = scaleX;
+        mScaleY[i] = scaleY;
+        mAlphas[i] = alpha;
+        mColors[c] = r;
+        mColors[c + 1] = g;
+        mColors[c + 2] = b;
+        mColors[c + 3] = a;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.BaseDisplayObject#draw(com.funzio.pure2D.gl.gl10.GLState)
+     */
+    @Override
+    public boolean draw(final GLState glState) {
+        // validate visual only
+        mInvalidateFlags &= ~VISUAL;
+
+        if (mNumParticles == 0) {
+            return false;
+        }
+
+        // keep the order with the pending quads
+        glState.flushQuadBatch();
+
+        if (fillBuffers() == 0) {
+            return false;
+        }
+
+        // the particles are in the parent's coordinates, no need to apply this emitter's matrix
+        glState.setAlphaTestEnabled(false);
+        mColorBuffer.apply(glState);
+
+        boolean coordsApplied = false;
+        int first = 0;
+        for (int k = 0; k < mNumKeys; k++) {
+            final int num = mKeyCounts[k];
+
+            glState.setBlendFunc(mKeyBlendFuncs[k]);
+
+            final Texture texture = mKeyTextures[k];
+            if (texture != null) {
+                // bind the texture
+                texture.bind();
+
+                // apply coords once
+                if (!coordsApplied) {
+                    mTextureCoordBuffer.apply(glState);
+                    coordsApplied = true;
+                } else {
+                    glState.setTextureCoordArrayEnabled(true);
+                }
+            } else {
+                // unbind the texture
+                glState.unbindTexture();
+                glState.setTextureCoordArrayEnabled(false);
+            }
+
+            mMeshBuffer.draw(glState, first, num);
+            first += num;
+        }
+
+        // no color buffer for the others
+        glState.setColorArrayEnabled(false);
+
+        return true;
+    }
+
+    /**
+     * Group the visible particles by Texture and Blending function and write their quads, in the same order within a group.
+     * 
+     * @return number of quads
+     */
+    private int fillBuffers() {
+        final Displayable parent = mParent instanceof Displayable ? (Displayable) mParent : null;
+        final BlendFunc parentBlendFunc = parent != null ? parent.getInheritedBlendFunc() : null;
+        final GLColor parentColor = parent != null ? parent.getInheritedColor() : null;
+
+        // count the groups
+        mNumKeys = 0;
+        int numQuads = 0;
+        for (int i = 0; i < mNumParticles; i++) {
+            final Texture texture = getTextureAt(i);
+            if (mAlphas[i] <= 0 || (texture != null && !texture.isLoaded())) {
+                // not visible
+                mKeys[i] = -1;
+                continue;
+            }
+
+            mKeys[i] = findKey(texture, mBlendFuncs[i] != null ? mBlendFuncs[i] : parentBlendFunc);
+            mKeyCounts[mKeys[i]]++;
+            numQuads++;
+        }
+
+        if (numQuads == 0) {
+            return 0;
+        }
+
+        if (numQuads > mBufferCapacity) {
+            setBufferCapacity(Math.max(numQuads, mBufferCapacity * 2));
+        }
+
+        int offset = 0;
+        for (int k = 0; k < mNumKeys; k++) {
+            mKeyOffsets[k] = offset;
+            offset += mKeyCounts[k];
+        }
+
+        final boolean flipped = mScene != null && mScene.getAxisSystem() == Scene.AXIS_TOP_LEFT;
+        for (int i = 0; i < mNumParticles; i++) {
+            final int key = mKeys[i];
+            if (key >= 0) {
+                writeQuad(i, mKeyOffsets[key]++, flipped, parentColor);
+            }
+        }
+
+        mMeshBuffer.setValuesAt(0, numQuads, 0, mVertices);
+        mMeshBuffer.setIndicesNumUsed(numQuads * QuadMeshBuffer.NUM_INDICES_PER_CELL);
+        mTextureCoordBuffer.setValuesAt(0, numQuads, 0, mTextureCoords);
+        mColorBuffer.setValuesAt(0, numQuads, 0, mColorValues);
+
+        return numQuads;
+    }
+
+    private int findKey(final Texture texture, final BlendFunc blendFunc) {
+        for (int k = 0; k < mNumKeys; k++) {
+            if (mKeyTextures[k] == texture && (mKeyBlendFuncs[k] == blendFunc || (blendFunc != null && mKeyBlendFuncs[k] != null && mKeyBlendFuncs[k].equals(blendFunc)))) {
+                return k;
+            }
+        }
+
+        // new group
+        if (mNumKeys == mKeyTextures.length) {
+            final int size = mNumKeys * 2;
+            final Texture[] textures = new Texture[size];
+            final BlendFunc[] blendFuncs = new BlendFunc[size];
+            System.arraycopy(mKeyTextures, 0, textures, 0, mNumKeys);
+            System.arraycopy(mKeyBlendFuncs, 0, blendFuncs, 0, mNumKeys);
+            mKeyTextures = textures;
+            mKeyBlendFuncs = blendFuncs;
+            // the counts of the existing groups are still needed
+            final int[] counts = new int[size];
+            final int[] offsets = new int[size];
+            System.arraycopy(mKeyCounts, 0, counts, 0, mNumKeys);
+            System.arraycopy(mKeyOffsets, 0, offsets, 0, mNumKeys);
+            mKeyCounts = counts;
+            mKeyOffsets = offsets;
+        }
+
+        mKeyTextures[mNumKeys] = texture;
+        mKeyBlendFuncs[mNumKeys] = blendFunc;
+        mKeyCounts[mNumKeys] = 0;
+
+        return mNumKeys++;
+    }
+
+    private Texture getTextureAt(final int i) {
+        final AtlasFrameSet frameSet = mFrameSets[i];
+        if (frameSet != null && mFrames[i] < frameSet.getNumFrames()) {
+            final Texture texture = frameSet.getFrame(mFrames[i]).getTexture();
+            if (texture != null) {
+                return texture;
+            }
+        }
+
+        return mTextures[i];
+    }
+
+    /**
+     * Transform the quad of a particle on CPU, same as the matrix of BaseDisplayObject: rotate, scale and then translate.
+     */
+    private void writeQuad(final int i, final int cell, final boolean flipped, final GLColor parentColor) {
+        final AtlasFrameSet frameSet = mFrameSets[i];
+        final AtlasFrame frame = (frameSet != null && mFrames[i] < frameSet.getNumFrames()) ? frameSet.getFrame(mFrames[i]) : null;
+
+        // local corners, relative to the origin
+        float left = -mOriginX[i];
+        float bottom = -mOriginY[i];
+        final float width, height;
+        if (frame != null) {
+            final PointF size = frame.getSize();
+            width = size.x;
+            height = size.y;
+            if (frame.mOffset != null) {
+                left += frame.mOffset.x;
+                bottom += frame.mOffset.y;
+            }
+        } else {
+            width = mWidths[i];
+            height = mHeights[i];
+        }
+        final float right = left + width;
+        final float top = bottom + height;
+
+        final float rotation = mRotations[i];
+        final float cos, sin;
+        if (rotation != 0) {
+            final float radian = rotation * Pure2DUtils.DEGREE_TO_RADIAN;
+            cos = (float) Math.cos(radian);
+            sin = (float) Math.sin(radian);
+        } else {
+            cos = 1;
+            sin = 0;
+        }
+        final float scaleX = mScaleX[i];
+        final float scaleY = mScaleY[i];
+        final float x = mX[i];
+        final float y = mY[i];
+
+        // same order as QuadMeshBuffer.setRectAt()
+        final float[] vertices = mVertices;
+        int v = cell * NUM_VERTEX_VALUES;
+        vertices[v++] = x + scaleX * (left * cos - top * sin);
+        vertices[v++] = y + scaleY * (left * sin + top * cos);
+        vertices[v++] = x + scaleX * (left * cos - bottom * sin);
+        vertices[v++] = y + scaleY * (left * sin + bottom * cos);
+        vertices[v++] = x + scaleX * (right * cos - top * sin);
+        vertices[v++] = y + scaleY * (right * sin + top * cos);
+        vertices[v++] = x + scaleX * (right * cos - bottom * sin);
+        vertices[v] = y + scaleY * (right * sin + bottom * cos);
+
+        // texture coordinates
+        final Texture texture = getTextureAt(i);
+        if (texture != null) {
+            final int t = cell * NUM_COORD_VALUES;
+            final float[] coords = mTextureCoords;
+            if (frame != null) {
+                System.arraycopy(frame.getTextureCoords(), 0, coords, t, NUM_COORD_VALUES);
+            } else {
+                coords[t] = 0;
+                coords[t + 1] = 0;
+                coords[t + 2] = 0;
+                coords[t + 3] = 1;
+                coords[t + 4] = 1;
+                coords[t + 5] = 0;
+                coords[t + 6] = 1;
+                coords[t + 7] = 1;
+            }
+
+            // match with the Axis system
+            if (flipped) {
+                float swap = coords[t + 1];
+                coords[t + 1] = coords[t + 3];
+                coords[t + 3] = swap;
+                swap = coords[t + 5];
+                coords[t + 5] = coords[t + 7];
+                coords[t + 7] = swap;
+            }
+
+            // match with the Texture scale
+            if (texture.mCoordScaleX != 1 || texture.mCoordScaleY != 1) {
+                for (int n = 0; n < NUM_COORD_VALUES; n += 2) {
+                    coords[t + n] *= texture.mCoordScaleX;
+                    coords[t + n + 1] *= texture.mCoordScaleY;
+                }
+            }
+        }
+
+        // color, same as BaseDisplayObject.getInheritedColor()
+        final int c = i * 4;
+        final float alpha = mAlphas[i];
+        float r, g, b;
+        if (BlendModes.isInterpolate(mBlendFuncs[i])) {
+            r = mColors[c];
+            g = mColors[c + 1];
+            b = mColors[c + 2];
+        } else {
+            r = mColors[c] * alpha;
+            g = mColors[c + 1] * alpha;
+            b = mColors[c + 2] * alpha;
+        }
+        float a = mColors[c + 3] * alpha;
+        if (parentColor != null) {
+            r *= parentColor.r;
+            g *= parentColor.g;
+            b *= parentColor.b;
+            a *= parentColor.a;
+        }
+
+        final float[] colors = mColorValues;
+        int n = cell * NUM_COLOR_VALUES;
+        for (int k = 0; k < QuadMeshColorBuffer.NUM_COLOR_PER_CELL; k++) {
+            colors[n++] = r;
+            colors[n++] = g;
+            colors[n++] = b;
+            colors[n++] = a;
+        }
+    }
+
+    private void moveParticle(final int src, final int dst) {
+        mAges[dst] = mAges[src];
+        mLifetimes[dst] = mLifetimes[src];
+        mStartX[dst] = mStartX[src];
+        mStartY[dst] = mStartY[src];
+        mStartRotations[dst] = mStartRotations[src];
+        mStartScaleX[dst] = mStartScaleX[src];
+        mStartScaleY[dst] = mStartScaleY[src];
+        mStartAlphas[dst] = mStartAlphas[src];
+        System.arraycopy(mStartColors, src * 4, mStartColors, dst * 4, 4);
+        mOriginX[dst] = mOriginX[src];
+        mOriginY[dst] = mOriginY[src];
+        mWidths[dst] = mWidths[src];
+        mHeights[dst] = mHeights[src];
+        mFrameTimes[dst] = mFrameTimes[src];
+        mFrameDurations[dst] = mFrameDurations[src];
+        mStartFrames[dst] = mStartFrames[src];
+        mFrameLoops[dst] = mFrameLoops[src];
+        mFrames[dst] = mFrames[src];
+        mFrameSets[dst] = mFrameSets[src];
+        mTextures[dst] = mTextures[src];
+        mBlendFuncs[dst] = mBlendFuncs[src];
+        mTracks[dst] = mTracks[src];
+        if (mTrackStride > 0) {
+            System.arraycopy(mTrackData, src * mTrackStride, mTrackData, dst * mTrackStride, mTrackStride);
+        }
+        // the current values get evaluated after this
+    }
+
+    /**
+     * Compile the value lists of a particle VO for this emitter
+     * 
+     * @param vo
+     * @return the values, in the order of the SLOT_ constants
+     * @see NovaFactory#getParticleValues(NovaParticleVO)
+     */
+    static NovaValues compileValues(final NovaParticleVO vo) {
+        final NovaValues values = new NovaValues();
+        values.addFloats(vo.x);
+        values.addFloats(vo.y);
+        values.addFloats(vo.scale_x);
+        values.addFloats(vo.scale_y);
+        values.addFloats(vo.rotation);
+        values.addFloats(vo.alpha);
+        values.addColors(vo.color);
+        values.addFloats(vo.start_frame);
+
+        return values;
+    }
+
+    protected void setCapacity(final int capacity) {
+        mAges = grow(mAges, capacity);
+        mLifetimes = grow(mLifetimes, capacity);
+        mStartX = grow(mStartX, capacity);
+        mStartY = grow(mStartY, capacity);
+        mStartRotations = grow(mStartRotations, capacity);
+        mStartScaleX = grow(mStartScaleX, capacity);
+        mStartScaleY = grow(mStartScaleY, capacity);
+        mStartAlphas = grow(mStartAlphas, capacity);
+        mStartColors = grow(mStartColors, capacity * 4);
+        mX = grow(mX, capacity);
+        mY = grow(mY, capacity);
+        mRotations = grow(mRotations, capacity);
+        mScaleX = grow(mScaleX, capacity);
+        mScaleY = grow(mScaleY, capacity);
+        mAlphas = grow(mAlphas, capacity);
+        mColors = grow(mColors, capacity * 4);
+        mOriginX = grow(mOriginX, capacity);
+        mOriginY = grow(mOriginY, capacity);
+        mWidths = grow(mWidths, capacity);
+        mHeights = grow(mHeights, capacity);
+        mFrameTimes = grow(mFrameTimes, capacity);
+        mFrameDurations = grow(mFrameDurations, capacity);
+        mStartFrames = grow(mStartFrames, capacity);
+        mFrameLoops = grow(mFrameLoops, capacity);
+        mFrames = grow(mFrames, capacity);
+        mKeys = new int[capacity];
+
+        final AtlasFrameSet[] frameSets = new AtlasFrameSet[capacity];
+        final Texture[] textures = new Texture[capacity];
+        final BlendFunc[] blendFuncs = new BlendFunc[capacity];
+        final NovaTracks[] tracks = new NovaTracks[capacity];
+        if (mNumParticles > 0) {
+            System.arraycopy(mFrameSets, 0, frameSets, 0, mNumParticles);
+            System.arraycopy(mTextures, 0, textures, 0, mNumParticles);
+            System.arraycopy(mBlendFuncs, 0, blendFuncs, 0, mNumParticles);
+            System.arraycopy(mTracks, 0, tracks, 0, mNumParticles);
+        }
+        mFrameSets = frameSets;
+        mTextures = textures;
+        mBlendFuncs = blendFuncs;
+        mTracks = tracks;
+
+        final float[] trackData = new float[capacity * mTrackStride];
+        if (mTrackData != null) {
+            System.arraycopy(mTrackData, 0, trackData, 0, mNumParticles * mTrackStride);
+        }
+        mTrackData = trackData;
+
+        mCapacity = capacity;
+    }
+
+    /**
+     * Re-layout the track data with a bigger stride
+     * 
+     * @param stride
+     */
+    protected void setTrackStride(final int stride) {
+        final float[] trackData = new float[mCapacity * stride];
+        for (int i = 0; i < mNumParticles; i++) {
+            System.arraycopy(mTrackData, i * mTrackStride, trackData, i * stride, mTrackStride);
+        }
+
+        mTrackData = trackData;
+        mTrackStride = stride;
+    }
+
+    private void setBufferCapacity(final int numQuads) {
+        if (mMeshBuffer == null) {
+            mMeshBuffer = new QuadMeshBuffer(numQuads);
+            mTextureCoordBuffer = new QuadMeshTextureCoordBuffer(numQuads);
+            mColorBuffer = new QuadMeshColorBuffer(numQuads);
+        } else {
+            mMeshBuffer.setNumCells(numQuads);
+            mTextureCoordBuffer.setNumCells(numQuads);
+            mColorBuffer.setNumCells(numQuads);
+        }
+
+        mVertices = new float[numQuads * NUM_VERTEX_VALUES];
+        mTextureCoords = new float[numQuads * NUM_COORD_VALUES];
+        mColorValues = new float[numQuads * NUM_COLOR_VALUES];
+        mBufferCapacity = numQuads;
+    }
+
+    private static float[] grow(final float[] values, final int size) {
+        final float[] result = new float[size];
+        if (values != null) {
+            System.arraycopy(values, 0, result, 0, Math.min(values.length, size));
+        }
+
+        return result;
+    }
+
+    private static int[] grow(final int[] values, final int size) {
+        final int[] result = new int[size];
+        if (values != null) {
+            System.arraycopy(values, 0, result, 0, Math.min(values.length, size));
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove all the batched particles
+     */
+    public void clearParticles() {
+        for (int i = 0; i < mNumParticles; i++) {
+            mTracks[i] = null;
+            mFrameSets[i] = null;
+            mTextures[i] = null;
+            mBlendFuncs[i] = null;
+        }
+        mNumParticles = 0;
+    }
+
+    /**
+     * @return number of particles in the arrays, not including the NovaParticles
+     * @see #getNumParticles()
+     */
+    public int getNumBatchedParticles() {
+        return mNumParticles;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    @Override
+    public void onTimelineComplete(final Timeline timeline) {
+        // wait for the batched particles to finish
+        mTimelineCompleted = true;
+        if (mNumParticles == 0) {
+            super.onTimelineComplete(timeline);
+        }
+    }
+
+    @Override
+    public void onRemoved() {
+        clearParticles();
+
+        if (mMeshBuffer != null) {
+            mMeshBuffer.dispose();
+            mTextureCoordBuffer.dispose();
+            mColorBuffer.dispose();
+            mMeshBuffer = null;
+            mTextureCoordBuffer = null;
+            mColorBuffer = null;
+            mBufferCapacity = 0;
+        }
+
+        super.onRemoved();
+    }
+}
@@ -279,6 +279,19 @@ public class NovaEmitter extends RectangularEmitter implements Reusable, Timelin
         queueFinish();
     }
 
+    /**
+     * Emit a single particle into its layer. Called by the Timeline.
+     * 
+     * @param particleVO
+     * @param emitIndex
+     */
+    protected void emitParticle(final NovaParticleVO particleVO, final int emitIndex) {
+        // find the layer
+        final Container layer = particleVO.layer > 0 ? mLayers.get(particleVO.layer) : mParent;
+        // add to the layer
+        layer.addChild(mFactory.createParticle(this, particleVO, emitIndex));
+    }
+
     /**
      * Timeline Action for emitting paricles
      * 
@@ -303,12 +316,8 @@ public class NovaEmitter extends RectangularEmitter implements Reusable, Timelin
             // null check
             if (mParent != null) {
                 // emit the particles
-                Container layer;
                 for (int n = 0; n < mParticleVO.step_quantity; n++) {
-                    // find the layer
-                    layer = mParticleVO.layer > 0 ? mLayers.get(mParticleVO.layer) : mParent;
-                    // add to the layer
-                    layer.addChild(mFactory.createParticle(NovaEmitter.this, mParticleVO, mEmitIndex++));
+                    emitParticle(mParticleVO, mEmitIndex++);
                 }
             }
             // }
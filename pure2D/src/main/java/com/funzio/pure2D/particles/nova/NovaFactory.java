@@ -41,7 +41,7 @@ import com.funzio.pure2D.particles.nova.vo.MotionTrailVO;
 import com.funzio.pure2D.particles.nova.vo.NovaEmitterVO;
 import com.funzio.pure2D.particles.nova.vo.NovaParticleVO;
 import com.funzio.pure2D.particles.nova.vo.NovaVO;
-import com.funzio.pure2D.utils.ObjectPool;
+import com.funzio.pure2D.utils.StackPool;
 
 /**
  * @author long
@@ -53,9 +53,14 @@ public class NovaFactory {
     protected NovaDelegator mNovaDelegator;
     // pools
     private int mPoolSize = 0;
-    protected ObjectPool<NovaParticle> mParticlePool;
-    protected HashMap<String, ObjectPool<Animator>> mAnimatorPools;
-    protected HashMap<String, ObjectPool<MotionTrail>> mMotionTrailPools;
+    protected StackPool<NovaParticle> mParticlePool;
+    protected HashMap<String, StackPool<Animator>> mAnimatorPools;
+    protected HashMap<String, StackPool<MotionTrail>> mMotionTrailPools;
+    // batching
+    protected boolean mBatchingEnabled = false;
+    protected HashMap<AnimatorVO, NovaTracks> mTracks;
+    protected HashMap<NovaParticleVO, Boolean> mBatchableParticles;
+    protected HashMap<NovaParticleVO, NovaValues> mParticleValues;
 
     public NovaFactory(final NovaLoader loader, final NovaDelegator novaDelegator, final float scale) {
         mNovaDelegator = novaDelegator;
@@ -93,13 +98,20 @@ public class NovaFactory {
         Log.v(TAG, "NovaFactory(): " + novaVO);
 
         mNovaVO = novaVO;
+        mTracks = null;
+        mBatchableParticles = null;
+        mParticleValues = null;
 
         // pool is optional
         if (poolSize > 0) {
             mPoolSize = poolSize;
-            mParticlePool = new ObjectPool<NovaParticle>(poolSize);
-            mAnimatorPools = new HashMap<String, ObjectPool<Animator>>();
-            mMotionTrailPools = new HashMap<String, ObjectPool<MotionTrail>>();
+            mParticlePool = new StackPool<NovaParticle>(poolSize);
+            mAnimatorPools = new HashMap<String, StackPool<Animator>>();
+            mMotionTrailPools = new HashMap<String, StackPool<MotionTrail>>();
+        }
+
+        if (mBatchingEnabled) {
+            compile();
         }
     }
 
@@ -155,7 +167,126 @@ public class NovaFactory {
 
     protected NovaEmitter createEmitter(final NovaEmitterVO emitterVO, final PointF pos, final Object... params) {
         // TODO use pool
-        return new NovaEmitter(this, emitterVO, pos, params);
+        return mBatchingEnabled ? new NovaBatchEmitter(this, emitterVO, pos, params) : new NovaEmitter(this, emitterVO, pos, params);
+    }
+
+    public boolean isBatchingEnabled() {
+        return mBatchingEnabled;
+    }
+
+    /**
+     * Enable this to create {@link NovaBatchEmitter}s, which simulate and draw their particles in arrays instead of creating a NovaParticle for each of them. Only affects the
+     * emitters created afterward.
+     * 
+     * @param enabled
+     * @see NovaBatchEmitter
+     */
+    public void setBatchingEnabled(final boolean enabled) {
+        mBatchingEnabled = enabled;
+
+        if (enabled && mNovaVO != null) {
+            compile();
+        }
+    }
+
+    /**
+     * Compile all the animators and particle values of the NovaVO ahead of time, so nothing gets compiled while emitting. This is called automatically when batching is enabled.
+     * 
+     * @see NovaTracks
+     * @see NovaValues
+     */
+    public void compile() {
+        if (mNovaVO.animators != null) {
+            for (final AnimatorVO vo : mNovaVO.animators) {
+                getTracks(vo);
+            }
+        }
+
+        if (mNovaVO.emitters != null) {
+            for (final NovaEmitterVO emitterVO : mNovaVO.emitters) {
+                if (emitterVO.particles != null) {
+                    for (final NovaParticleVO vo : emitterVO.particles) {
+                        if (isBatchable(vo)) {
+                            getParticleValues(vo);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the compiled tracks of an animator, cached.
+     * 
+     * @param vo
+     * @return the tracks, or null if the animator is not supported
+     * @see NovaTracks#compile(AnimatorVO)
+     */
+    protected NovaTracks getTracks(final AnimatorVO vo) {
+        if (vo == null) {
+            return NovaTracks.NONE;
+        }
+
+        if (mTracks == null) {
+            mTracks = new HashMap<AnimatorVO, NovaTracks>();
+        } else if (mTracks.containsKey(vo)) {
+            return mTracks.get(vo);
+        }
+
+        final NovaTracks tracks = NovaTracks.compile(vo);
+        mTracks.put(vo, tracks);
+
+        return tracks;
+    }
+
+    /**
+     * Get the compiled values of a particle VO, cached.
+     * 
+     * @param vo
+     * @return the values
+     */
+    protected NovaValues getParticleValues(final NovaParticleVO vo) {
+        if (mParticleValues == null) {
+            mParticleValues = new HashMap<NovaParticleVO, NovaValues>();
+        }
+
+        NovaValues values = mParticleValues.get(vo);
+        if (values == null) {
+            values = NovaBatchEmitter.compileValues(vo);
+            mParticleValues.put(vo, values);
+        }
+
+        return values;
+    }
+
+    /**
+     * @param vo
+     * @return true if the particles of the given VO can be emitted by a {@link NovaBatchEmitter} without creating NovaParticles
+     */
+    public boolean isBatchable(final NovaParticleVO vo) {
+        if (mBatchableParticles == null) {
+            mBatchableParticles = new HashMap<NovaParticleVO, Boolean>();
+        } else {
+            final Boolean cached = mBatchableParticles.get(vo);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // no layers, trails, z and skew
+        boolean batchable = vo.layer <= 0 && (vo.motion_trail == null || vo.motion_trail.isEmpty()) && vo.z == null && vo.skew_x == null && vo.skew_y == null;
+        // and all the animators can be compiled
+        if (batchable && vo.animator != null) {
+            for (String name : vo.animator) {
+                if (getTracks(mNovaVO.getAnimatorVO(name)) == null) {
+                    batchable = false;
+                    break;
+                }
+            }
+        }
+        mBatchableParticles.put(vo, batchable);
+
+        return batchable;
     }
 
     protected NovaParticle createParticle(final NovaEmitter emitter, final NovaParticleVO particleVO, final int emitIndex) {
@@ -206,6 +337,13 @@ public class NovaFactory {
         return mPoolSize;
     }
 
+    /**
+     * @return the particle pool for stats, null if pooling is disabled
+     */
+    public StackPool<NovaParticle> getParticlePool() {
+        return mParticlePool;
+    }
+
     /**
      * Clear everything! Call when this object is no longer being used.
      */
@@ -226,6 +364,10 @@ public class NovaFactory {
             mMotionTrailPools.clear();
             mMotionTrailPools = null;
         }
+
+        mTracks = null;
+        mBatchableParticles = null;
+        mParticleValues = null;
     }
 
     /**
@@ -245,10 +387,10 @@ public class NovaFactory {
 
         // check the pools
         if (mAnimatorPools != null) {
-            ObjectPool<Animator> pool = mAnimatorPools.get(animationName);
+            StackPool<Animator> pool = mAnimatorPools.get(animationName);
             if (pool == null) {
                 // no pool created yet, create one
-                pool = new ObjectPool<Animator>(mPoolSize);
+                pool = new StackPool<Animator>(mPoolSize);
                 mAnimatorPools.put(animationName, pool); // use name as key, works better for GroupAnimators
             } else {
                 // there is a pool, try to acquire
@@ -273,7 +415,7 @@ public class NovaFactory {
     protected void releaseAnimator(final Animator animator) {
         if (mAnimatorPools != null && animator.getData() instanceof AnimatorVO) {
             final AnimatorVO vo = (AnimatorVO) animator.getData();
-            final ObjectPool<Animator> pool = mAnimatorPools.get(vo.name); // use name as key
+            final StackPool<Animator> pool = mAnimatorPools.get(vo.name); // use name as key
             if (pool != null) {
                 pool.release(animator);
             }
@@ -328,10 +470,10 @@ public class NovaFactory {
 
         // check the pools
         if (mMotionTrailPools != null) {
-            ObjectPool<MotionTrail> pool = mMotionTrailPools.get(type); // use type as key
+            StackPool<MotionTrail> pool = mMotionTrailPools.get(type); // use type as key
             if (pool == null) {
                 // no pool created yet, create one
-                pool = new ObjectPool<MotionTrail>(mPoolSize);
+                pool = new StackPool<MotionTrail>(mPoolSize);
                 mMotionTrailPools.put(type, pool);
             } else {
                 // there is a pool, try to acquire
@@ -356,7 +498,7 @@ public class NovaFactory {
     protected void releaseMotionTrail(final MotionTrail trail) {
         if (mMotionTrailPools != null && trail.getData() instanceof MotionTrailVO) {
             final MotionTrailVO vo = (MotionTrailVO) trail.getData();
-            final ObjectPool<MotionTrail> pool = mMotionTrailPools.get(vo.type); // use type as key
+            final StackPool<MotionTrail> pool = mMotionTrailPools.get(vo.type); // use type as key
             if (pool != null) {
                 pool.release(trail);
             }
@@ -30,6 +30,7 @@ import com.funzio.pure2D.effects.trails.MotionTrail;
 import com.funzio.pure2D.gl.gl10.BlendModes;
 import com.funzio.pure2D.particles.ClipParticle;
 import com.funzio.pure2D.particles.nova.vo.NovaParticleVO;
+import com.funzio.pure2D.utils.Reusable;
 
 /**
  * @author long
@@ -46,13 +47,53 @@ public class NovaParticle extends ClipParticle implements Animator.AnimatorListe
         reset(emitter, particleVO, emitIndex);
     }
 
+    /**
+     * A bare particle that is only used to ask the delegator for frames and texture
+     * 
+     * @see #delegate(NovaEmitter, NovaParticleVO)
+     */
+    NovaParticle() {
+        super();
+    }
+
+    /**
+     * Only let the delegator apply the frames or texture of the given particle VO, without any animator or trail. This is how {@link NovaBatchEmitter} finds the sprites of its
+     * particles.
+     * 
+     * @param emitter
+     * @param particleVO
+     */
+    void delegate(final NovaEmitter emitter, final NovaParticleVO particleVO) {
+        setEmitter(mNovaEmitter = emitter);
+        mParticleVO = particleVO;
+
+        // clear the previous sprite
+        setAtlasFrameSet(null);
+        mTexture = null;
+
+        if (emitter.mFactory.mNovaDelegator != null) {
+            emitter.mFactory.mNovaDelegator.delegateParticle(this, emitter.mParams);
+        }
+    }
+
     /*
      * (non-Javadoc)
      * @see com.funzio.pure2D.particles.ClipParticle#reset(java.lang.Object[])
      */
     @Override
     public void reset(final Object... params) {
-        super.reset(params);
+        reset((NovaEmitter) params[0], (NovaParticleVO) params[1], (Integer) params[2]);
+    }
+
+    /**
+     * Same as {@link #reset(Object...)} without the boxing
+     * 
+     * @param emitter
+     * @param particleVO
+     * @param emitIndex
+     */
+    public void reset(final NovaEmitter emitter, final NovaParticleVO particleVO, final int emitIndex) {
+        super.reset(Reusable.NO_PARAMS);
 
         // clean up animator
         // if (mAnimator != null) {
@@ -73,9 +114,8 @@ public class NovaParticle extends ClipParticle implements Animator.AnimatorListe
         // }
 
         // set properties
-        setEmitter(mNovaEmitter = (NovaEmitter) params[0]);
-        mParticleVO = (NovaParticleVO) params[1];
-        int emitIndex = (Integer) params[2];
+        setEmitter(mNovaEmitter = emitter);
+        mParticleVO = particleVO;
 
         // init the particle
         mPosition = mNovaEmitter.getNextPosition(mPosition);
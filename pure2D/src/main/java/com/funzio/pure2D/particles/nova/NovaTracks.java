@@ -0,0 +1,555 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.particles.nova;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.view.animation.Interpolator;
+
+import com.funzio.pure2D.LoopModes;
+import com.funzio.pure2D.particles.nova.vo.AlphaAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.AnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.ColorAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.DelayAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.GroupAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.MoveAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.ParallelAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.RotateAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.ScaleAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.SequenceAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.TweenAnimatorVO;
+import com.funzio.pure2D.utils.Pure2DUtils;
+
+/**
+ * NovaTracks is a particle animator compiled into a list of timed tween tracks. Instead of running Animator instances, each particle only keeps {@link #STRIDE} floats per track,
+ * sampled once from its seed when emitted, and the values are evaluated from the particle's age. This is what {@link NovaBatchEmitter} uses.
+ * <p>
+ * The value lists of the VOs are compiled into {@link NovaValues} and the Interpolators are pre-sampled into curves of {@link #CURVE_SIZE} segments, so nothing gets unboxed or
+ * dispatched to an Interpolator per particle.
+ * </p>
+ * <p>
+ * Only the sequence, parallel, delay, move, rotate, scale, alpha and color animators can be compiled. Looping groups, non-accumulating move and rotate, and rotating around a
+ * pivot are not supported.
+ * </p>
+ * 
+ * @author long
+ */
+public class NovaTracks {
+    public static final int TYPE_MOVE = 0;
+    public static final int TYPE_ROTATE = 1;
+    public static final int TYPE_SCALE = 2;
+    public static final int TYPE_ALPHA = 3;
+    public static final int TYPE_COLOR = 4;
+
+    // the sampled values of a track, in ms since emitted
+    public static final int START = 0;
+    public static final int DURATION = 1;
+    public static final int END = 2;
+    public static final int END_VALUE = 3;
+    public static final int PARAMS = 4;
+    public static final int STRIDE = PARAMS + 8;
+
+    public static final float FOREVER = Float.POSITIVE_INFINITY;
+    public static final int CURVE_SIZE = 256;
+
+    // the value slots of a node
+    private static final int SLOT_START_DELAY = 0;
+    private static final int SLOT_LIFESPAN = 1;
+    private static final int SLOT_DURATION = 2;
+    private static final int SLOT_LOOP_COUNT = 3;
+    private static final int SLOT_PARAMS = 4;
+    // mixed into the particle's seed, so the slots here don't repeat the randoms of the particle values
+    private static final int SEED_SALT = 0x5BD1E995;
+
+    // the pre-sampled interpolators, shared
+    private static final HashMap<Interpolator, float[]> CURVES = new HashMap<Interpolator, float[]>();
+
+    // no animator, the particle lives forever
+    public static final NovaTracks NONE = new NovaTracks(null);
+
+    protected final AnimatorVO mAnimatorVO;
+
+    // the animator tree, in depth-first order
+    protected int mNumNodes = 0;
+    protected AnimatorVO[] mNodes;
+    protected int[] mFirstChildren;
+    protected int[] mNextSiblings;
+    protected int[] mNodeTracks;
+    protected int[] mFirstTracks;
+    protected int[] mLastTracks;
+    protected int[] mNodeSlots;
+    protected final NovaValues mValues = new NovaValues();
+
+    // the tracks
+    protected int mNumTracks = 0;
+    protected int[] mTypes;
+    protected float[][] mCurves;
+    protected int[] mLoopModes;
+    protected boolean[] mReversed;
+
+    protected NovaTracks(final AnimatorVO vo) {
+        mAnimatorVO = vo;
+
+        final ArrayList<AnimatorVO> nodes = new ArrayList<AnimatorVO>();
+        if (vo != null) {
+            collectNodes(vo, nodes);
+        }
+
+        mNumNodes = nodes.size();
+        mNodes = nodes.toArray(new AnimatorVO[mNumNodes]);
+        mFirstChildren = new int[mNumNodes];
+        mNextSiblings = new int[mNumNodes];
+        mNodeTracks = new int[mNumNodes];
+        mFirstTracks = new int[mNumNodes];
+        mLastTracks = new int[mNumNodes];
+        mNodeSlots = new int[mNumNodes];
+
+        // count the tracks
+        for (int i = 0; i < mNumNodes; i++) {
+            mNodeTracks[i] = (mNodes[i] instanceof TweenAnimatorVO) ? mNumTracks++ : -1;
+        }
+        mTypes = new int[mNumTracks];
+        mCurves = new float[mNumTracks][];
+        mLoopModes = new int[mNumTracks];
+        mReversed = new boolean[mNumTracks];
+
+        if (mNumNodes > 0) {
+            linkNode(0);
+        }
+
+        // the value lists
+        for (int i = 0; i < mNumNodes; i++) {
+            compileValues(i);
+        }
+    }
+
+    private void compileValues(final int node) {
+        final AnimatorVO vo = mNodes[node];
+        mNodeSlots[node] = mValues.addFloats(vo.start_delay);
+        mValues.addFloats(vo.lifespan);
+
+        if (vo instanceof TweenAnimatorVO) {
+            mValues.addFloats(((TweenAnimatorVO) vo).duration);
+            mValues.addFloats(vo.loop_count);
+        } else if (vo instanceof DelayAnimatorVO) {
+            mValues.addFloats(((DelayAnimatorVO) vo).duration);
+            mValues.addFloats(null);
+        } else {
+            mValues.addFloats(null);
+            mValues.addFloats(null);
+        }
+
+        // the params, same order as sampleParams()
+        if (vo instanceof MoveAnimatorVO) {
+            final MoveAnimatorVO move = (MoveAnimatorVO) vo;
+            mValues.addFloats(move.dx);
+            mValues.addFloats(move.dy);
+            mValues.addFloats(move.distance);
+            mValues.addFloats(move.degree);
+        } else if (vo instanceof RotateAnimatorVO) {
+            final RotateAnimatorVO rotate = (RotateAnimatorVO) vo;
+            mValues.addFloats(rotate.delta);
+            mValues.addFloats(rotate.from);
+            mValues.addFloats(rotate.to);
+        } else if (vo instanceof ScaleAnimatorVO) {
+            final ScaleAnimatorVO scale = (ScaleAnimatorVO) vo;
+            mValues.addFloats(scale.x_from);
+            mValues.addFloats(scale.y_from);
+            mValues.addFloats(scale.x_to);
+            mValues.addFloats(scale.y_to);
+        } else if (vo instanceof AlphaAnimatorVO) {
+            final AlphaAnimatorVO alpha = (AlphaAnimatorVO) vo;
+            mValues.addFloats(alpha.from);
+            mValues.addFloats(alpha.to);
+        } else if (vo instanceof ColorAnimatorVO) {
+            final ColorAnimatorVO color = (ColorAnimatorVO) vo;
+            mValues.addColors(color.from);
+            mValues.addColors(color.to);
+        }
+    }
+
+    private void collectNodes(final AnimatorVO vo, final ArrayList<AnimatorVO> nodes) {
+        nodes.add(vo);
+
+        if (vo instanceof GroupAnimatorVO && ((GroupAnimatorVO) vo).animators != null) {
+            for (AnimatorVO child : ((GroupAnimatorVO) vo).animators) {
+                collectNodes(child, nodes);
+            }
+        }
+    }
+
+    /**
+     * Find the children and the track range of a node
+     * 
+     * @param node
+     * @return the node after the sub-tree
+     */
+    private int linkNode(final int node) {
+        final AnimatorVO vo = mNodes[node];
+        final int track = mNodeTracks[node];
+        mFirstChildren[node] = -1;
+        mNextSiblings[node] = -1;
+        mFirstTracks[node] = track >= 0 ? track : firstTrackFrom(node);
+
+        if (track >= 0) {
+            final TweenAnimatorVO tween = (TweenAnimatorVO) vo;
+            mTypes[track] = getType(tween);
+            mCurves[track] = getCurve(NovaConfig.getInterpolator(tween.interpolation));
+            mLoopModes[track] = NovaConfig.getLoopMode(tween.loop_mode);
+            mReversed[track] = tween.reversed;
+        }
+
+        int next = node + 1;
+        if (vo instanceof GroupAnimatorVO && ((GroupAnimatorVO) vo).animators != null) {
+            final int size = ((GroupAnimatorVO) vo).animators.size();
+            int previous = -1;
+            for (int i = 0; i < size; i++) {
+                if (previous < 0) {
+                    mFirstChildren[node] = next;
+                } else {
+                    mNextSiblings[previous] = next;
+                }
+                previous = next;
+                next = linkNode(next);
+            }
+        }
+
+        mLastTracks[node] = firstTrackFrom(next);
+
+        return next;
+    }
+
+    private int firstTrackFrom(final int node) {
+        for (int i = node; i < mNumNodes; i++) {
+            if (mNodeTracks[i] >= 0) {
+                return mNodeTracks[i];
+            }
+        }
+
+        return mNumTracks;
+    }
+
+    /**
+     * Sample the values of all the tracks for a new particle. The result only depends on the seed and emit index.
+     * 
+     * @param seed the particle's random seed
+     * @param emitIndex
+     * @param dst the destination, {@link #getNumTracks()} x {@link #STRIDE} floats
+     * @param offset
+     * @return the lifetime of the particle in ms, or {@link #FOREVER}
+     */
+    public float sample(final int seed, final int emitIndex, final float[] dst, final int offset) {
+        return mNumNodes == 0 ? FOREVER : sampleNode(0, seed ^ SEED_SALT, emitIndex, 0, dst, offset);
+    }
+
+    private float sampleNode(final int node, final int seed, final int emitIndex, final float start, final float[] dst, final int offset) {
+        final AnimatorVO vo = mNodes[node];
+        final NovaValues values = mValues;
+        final int slot = mNodeSlots[node];
+        final float begin = start + values.getInt(slot + SLOT_START_DELAY, seed, emitIndex, 0);
+        final int lifespan = values.getInt(slot + SLOT_LIFESPAN, seed, emitIndex, 0);
+        final int track = mNodeTracks[node];
+
+        if (track >= 0) {
+            final int base = offset + track * STRIDE;
+            final int duration = values.getInt(slot + SLOT_DURATION, seed, emitIndex, 0);
+            final int loopCount = values.getInt(slot + SLOT_LOOP_COUNT, seed, emitIndex, -1);
+            final int loopMode = mLoopModes[track];
+
+            float length;
+            if (duration <= 0) {
+                // a tween without duration never updates nor ends
+                length = FOREVER;
+            } else if (loopMode == LoopModes.LOOP_NONE) {
+                length = duration;
+            } else {
+                length = loopCount >= 0 ? (loopCount + 1) * duration : FOREVER;
+            }
+            if (duration > 0 && lifespan > 0 && lifespan < length) {
+                length = lifespan;
+            }
+
+            dst[base + START] = duration > 0 ? begin : FOREVER;
+            dst[base + DURATION] = duration;
+            dst[base + END] = begin + length;
+            // the value forced by TweenAnimator.end()
+            final float value = (loopMode == LoopModes.LOOP_REVERSE && loopCount > 0) ? (loopCount % 2 == 0 ? 1 : 0) : 1;
+            dst[base + END_VALUE] = mReversed[track] ? 1 - value : value;
+            sampleParams(mTypes[track], slot + SLOT_PARAMS, seed, emitIndex, dst, base + PARAMS);
+
+            return begin + length;
+        } else if (vo instanceof DelayAnimatorVO) {
+            final int duration = values.getInt(slot + SLOT_DURATION, seed, emitIndex, 0);
+
+            return duration > 0 ? begin + duration : FOREVER;
+        }
+
+        // group
+        if (mFirstChildren[node] < 0) {
+            // empty group never ends
+            return FOREVER;
+        }
+
+        final boolean parallel = vo instanceof ParallelAnimatorVO;
+        float end = begin;
+        for (int child = mFirstChildren[node]; child >= 0; child = mNextSiblings[child]) {
+            final float childEnd = sampleNode(child, seed, emitIndex, parallel ? begin : end, dst, offset);
+            end = parallel ? Math.max(end, childEnd) : childEnd;
+        }
+
+        // the lifespan stops the children where they are
+        if (lifespan > 0 && begin + lifespan < end) {
+            end = begin + lifespan;
+            cut(mFirstTracks[node], mLastTracks[node], end, dst, offset);
+        }
+
+        return end;
+    }
+
+    private void cut(final int firstTrack, final int lastTrack, final float time, final float[] dst, final int offset) {
+        for (int track = firstTrack; track < lastTrack; track++) {
+            final int base = offset + track * STRIDE;
+            if (dst[base + START] >= time) {
+                // never started
+                dst[base + START] = FOREVER;
+            } else if (dst[base + END] > time) {
+                dst[base + END_VALUE] = getTweenValue(track, dst, base, time - dst[base + START]);
+                dst[base + END] = time;
+            }
+        }
+    }
+
+    private void sampleParams(final int type, final int slot, final int seed, final int emitIndex, final float[] dst, final int offset) {
+        final NovaValues values = mValues;
+
+        switch (type) {
+            case TYPE_MOVE:
+                // dx, dy or distance, degree
+                if (values.hasValues(slot + 2)) {
+                    final int distance = values.getInt(slot + 2, seed, emitIndex, 0);
+                    final float radian = values.getInt(slot + 3, seed, emitIndex, 0) * Pure2DUtils.DEGREE_TO_RADIAN;
+                    dst[offset] = distance * (float) Math.cos(radian);
+                    dst[offset + 1] = distance * (float) Math.sin(radian);
+                } else {
+                    dst[offset] = values.getInt(slot, seed, emitIndex, 0);
+                    dst[offset + 1] = values.getInt(slot + 1, seed, emitIndex, 0);
+                }
+                break;
+
+            case TYPE_ROTATE:
+                // delta or from, to
+                if (values.hasValues(slot)) {
+                    dst[offset] = values.getFloat(slot, seed, emitIndex, 0);
+                } else {
+                    dst[offset] = values.getFloat(slot + 2, seed, emitIndex, 0) - values.getFloat(slot + 1, seed, emitIndex, 0);
+                }
+                break;
+
+            case TYPE_SCALE:
+                // x_from, y_from, x_to, y_to
+                dst[offset] = values.getFloat(slot, seed, emitIndex, 1);
+                dst[offset + 1] = values.getFloat(slot + 1, seed, emitIndex, 1);
+                dst[offset + 2] = values.getFloat(slot + 2, seed, emitIndex, 1) - dst[offset];
+                dst[offset + 3] = values.getFloat(slot + 3, seed, emitIndex, 1) - dst[offset + 1];
+                break;
+
+            case TYPE_ALPHA:
+                // from, to
+                dst[offset] = values.getFloat(slot, seed, emitIndex, 1);
+                dst[offset + 1] = values.getFloat(slot + 1, seed, emitIndex, 0) - dst[offset];
+                break;
+
+            case TYPE_COLOR:
+                // from, to, white by default
+                final float[] colors = values.getValues();
+                final int from = values.getColorOffset(slot, seed, emitIndex);
+                final int to = values.getColorOffset(slot + 1, seed, emitIndex);
+                for (int i = 0; i < 4; i++) {
+                    dst[offset + i] = from < 0 ? 1 : colors[from + i];
+                    dst[offset + 4 + i] = (to < 0 ? 1 : colors[to + i]) - dst[offset + i];
+                }
+                break;
+        }
+    }
+
+    /**
+     * Same as TweenAnimator.update() for a given elapsed time
+     */
+    private float getTweenValue(final int track, final float[] data, final int base, final float elapsed) {
+        float timeline = elapsed / data[base + DURATION];
+        final int trips = (int) timeline;
+        final int loopMode = mLoopModes[track];
+        if (loopMode == LoopModes.LOOP_REPEAT) {
+            timeline -= trips;
+        } else if (loopMode == LoopModes.LOOP_REVERSE) {
+            timeline -= trips;
+            if (trips % 2 == 1) {
+                // reverse
+                timeline = 1 - timeline;
+            }
+        }
+
+        final float[] curve = mCurves[track];
+        final float value;
+        if (curve == null) {
+            // linear
+            value = timeline;
+        } else {
+            final float position = (timeline < 0 ? 0 : timeline > 1 ? 1 : timeline) * CURVE_SIZE;
+            final int index = position >= CURVE_SIZE ? CURVE_SIZE - 1 : (int) position;
+            value = curve[index] + (position - index) * (curve[index + 1] - curve[index]);
+        }
+
+        return mReversed[track] ? 1 - value : value;
+    }
+
+    /**
+     * Get the value of a track, between 0 and 1 for most interpolators. Only call this when the track has started.
+     * 
+     * @param track
+     * @param data the sampled values
+     * @param base the offset of the track in data
+     * @param age the time since the particle was emitted
+     * @return the value
+     * @see #hasStarted(float[], int, float)
+     */
+    public float getValue(final int track, final float[] data, final int base, final float age) {
+        return age >= data[base + END] ? data[base + END_VALUE] : getTweenValue(track, data, base, age - data[base + START]);
+    }
+
+    public static boolean hasStarted(final float[] data, final int base, final float age) {
+        return age >= data[base + START];
+    }
+
+    /**
+     * @param track
+     * @return the value before the track starts, which accumulating tracks are relative to
+     */
+    public float getStartValue(final int track) {
+        return mReversed[track] ? 1 : 0;
+    }
+
+    public int getType(final int track) {
+        return mTypes[track];
+    }
+
+    public int getNumTracks() {
+        return mNumTracks;
+    }
+
+    public AnimatorVO getAnimatorVO() {
+        return mAnimatorVO;
+    }
+
+    /**
+     * Pre-sample an Interpolator, cached
+     * 
+     * @param interpolator
+     * @return the curve of {@link #CURVE_SIZE} + 1 values, or null for linear
+     */
+    public static float[] getCurve(final Interpolator interpolator) {
+        if (interpolator == null) {
+            return null;
+        }
+
+        synchronized (CURVES) {
+            float[] curve = CURVES.get(interpolator);
+            if (curve == null) {
+                curve = new float[CURVE_SIZE + 1];
+                for (int i = 0; i <= CURVE_SIZE; i++) {
+                    curve[i] = interpolator.getInterpolation((float) i / CURVE_SIZE);
+                }
+                CURVES.put(interpolator, curve);
+            }
+
+            return curve;
+        }
+    }
+
+    private static int getType(final TweenAnimatorVO vo) {
+        if (vo instanceof MoveAnimatorVO) {
+            return TYPE_MOVE;
+        } else if (vo instanceof RotateAnimatorVO) {
+            return TYPE_ROTATE;
+        } else if (vo instanceof ScaleAnimatorVO) {
+            return TYPE_SCALE;
+        } else if (vo instanceof AlphaAnimatorVO) {
+            return TYPE_ALPHA;
+        } else {
+            return TYPE_COLOR;
+        }
+    }
+
+    /**
+     * @param vo
+     * @return true if the animator can be flattened into tracks
+     */
+    public static boolean isSupported(final AnimatorVO vo) {
+        if (vo instanceof SequenceAnimatorVO || vo instanceof ParallelAnimatorVO) {
+            // looping groups are not supported
+            if (vo.loop_count != null) {
+                for (Integer count : vo.loop_count) {
+                    if (count != 0) {
+                        return false;
+                    }
+                }
+            }
+
+            final ArrayList<AnimatorVO> children = ((GroupAnimatorVO) vo).animators;
+            if (children != null) {
+                for (AnimatorVO child : children) {
+                    if (!isSupported(child)) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        } else if (vo instanceof MoveAnimatorVO) {
+            return vo.accumulating;
+        } else if (vo instanceof RotateAnimatorVO) {
+            final RotateAnimatorVO rotate = (RotateAnimatorVO) vo;
+            return vo.accumulating && (rotate.pivot_x == null || rotate.pivot_y == null);
+        }
+
+        return vo instanceof ScaleAnimatorVO || vo instanceof AlphaAnimatorVO || vo instanceof ColorAnimatorVO || vo instanceof DelayAnimatorVO;
+    }
+
+    /**
+     * Compile an animator into tracks
+     * 
+     * @param vo the animator, can be null
+     * @return the tracks, {@link #NONE} when vo is null, or null when vo is not supported
+     * @see #isSupported(AnimatorVO)
+     */
+    public static NovaTracks compile(final AnimatorVO vo) {
+        if (vo == null) {
+            return NONE;
+        }
+
+        return isSupported(vo) ? new NovaTracks(vo) : null;
+    }
+}
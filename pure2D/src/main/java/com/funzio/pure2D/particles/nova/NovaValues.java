@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.particles.nova;
+
+import java.util.ArrayList;
+
+import com.funzio.pure2D.gl.GLColor;
+
+/**
+ * NovaValues is a compiled table of the value lists of Nova VOs, in primitive arrays. Sampling follows the same rules as {@link NovaConfig#getFloat(ArrayList, int, float)}: 1
+ * value is fixed, 2 values are a random range, more values are picked by index. The randomness comes from a seed instead of a shared Random, so a sampled value is a pure function
+ * of (seed, slot, index).
+ * 
+ * @author long
+ */
+public class NovaValues {
+    private static final int COLOR_SIZE = 4;
+
+    private float[] mValues = new float[16];
+    private int mNumValues = 0;
+
+    // the lists
+    private int[] mOffsets = new int[8];
+    private int[] mSizes = new int[8];
+    private int mNumSlots = 0;
+
+    /**
+     * Add a list of numbers. A null list still takes a slot so the slots of a VO can be found by order.
+     * 
+     * @param values
+     * @return the slot
+     */
+    public int addFloats(final ArrayList<? extends Number> values) {
+        final int size = values == null ? 0 : values.size();
+        final int slot = addSlot(size, size);
+        final int offset = mOffsets[slot];
+        for (int i = 0; i < size; i++) {
+            mValues[offset + i] = values.get(i).floatValue();
+        }
+
+        return slot;
+    }
+
+    /**
+     * Add a list of colors
+     * 
+     * @param colors
+     * @return the slot
+     */
+    public int addColors(final ArrayList<GLColor> colors) {
+        final int size = colors == null ? 0 : colors.size();
+        final int slot = addSlot(size, size * COLOR_SIZE);
+        int offset = mOffsets[slot];
+        for (int i = 0; i < size; i++) {
+            final GLColor color = colors.get(i);
+            mValues[offset++] = color.r;
+            mValues[offset++] = color.g;
+            mValues[offset++] = color.b;
+            mValues[offset++] = color.a;
+        }
+
+        return slot;
+    }
+
+    private int addSlot(final int size, final int numValues) {
+        if (mNumSlots == mOffsets.length) {
+            mOffsets = grow(mOffsets, mNumSlots * 2);
+            mSizes = grow(mSizes, mNumSlots * 2);
+        }
+        if (mNumValues + numValues > mValues.length) {
+            final float[] values = new float[Math.max(mValues.length * 2, mNumValues + numValues)];
+            System.arraycopy(mValues, 0, values, 0, mNumValues);
+            mValues = values;
+        }
+
+        mOffsets[mNumSlots] = mNumValues;
+        mSizes[mNumSlots] = size;
+        mNumValues += numValues;
+
+        return mNumSlots++;
+    }
+
+    public float getFloat(final int slot, final int seed, final int index, final float defaultValue) {
+        final int size = mSizes[slot];
+        if (size == 0) {
+            return defaultValue;
+        }
+
+        final int offset = mOffsets[slot];
+        if (size == 1) {
+            // fixed value
+            return mValues[offset];
+        } else if (size == 2) {
+            // random value within a range
+            return mValues[offset] + random(seed, slot) * (mValues[offset + 1] - mValues[offset]);
+        } else {
+            // pick one of the given values
+            return mValues[offset + pick(slot, seed, index, size)];
+        }
+    }
+
+    public int getInt(final int slot, final int seed, final int index, final int defaultValue) {
+        final int size = mSizes[slot];
+        if (size == 0) {
+            return defaultValue;
+        }
+
+        final int offset = mOffsets[slot];
+        if (size == 1) {
+            // fixed value
+            return (int) mValues[offset];
+        } else if (size == 2) {
+            // random value within a range
+            final int from = (int) mValues[offset];
+            return from + (int) (random(seed, slot) * ((int) mValues[offset + 1] - from));
+        } else {
+            // pick one of the given values
+            return (int) mValues[offset + pick(slot, seed, index, size)];
+        }
+    }
+
+    /**
+     * Same as {@link NovaConfig#getColor(ArrayList, int, GLColor)}, colors are not interpolated.
+     * 
+     * @param slot
+     * @param seed
+     * @param index
+     * @return the offset of the r, g, b, a values in {@link #getValues()}, or -1 if there is no color
+     */
+    public int getColorOffset(final int slot, final int seed, final int index) {
+        final int size = mSizes[slot];
+        if (size == 0) {
+            return -1;
+        }
+
+        return mOffsets[slot] + (size == 1 ? 0 : pick(slot, seed, index, size)) * COLOR_SIZE;
+    }
+
+    public boolean hasValues(final int slot) {
+        return mSizes[slot] > 0;
+    }
+
+    public float[] getValues() {
+        return mValues;
+    }
+
+    public int getNumSlots() {
+        return mNumSlots;
+    }
+
+    private static int pick(final int slot, final int seed, final int index, final int size) {
+        return index < 0 ? (int) (random(seed, slot) * size) : index % size;
+    }
+
+    /**
+     * A hash based random number, the same seed and slot always give the same value.
+     * 
+     * @param seed
+     * @param slot
+     * @return a number in [0, 1)
+     */
+    public static float random(final int seed, final int slot) {
+        int h = seed * 0x9E3779B9 + slot * 0x85EBCA6B;
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        h ^= h >>> 15;
+        h *= 0x846CA68B;
+        h ^= h >>> 16;
+
+        return (h >>> 8) * (1f / (1 << 24));
+    }
+
+    private static int[] grow(final int[] values, final int size) {
+        final int[] result = new int[size];
+        System.arraycopy(values, 0, result, 0, values.length);
+
+        return result;
+    }
+}
@@ -33,6 +33,7 @@ import com.funzio.pure2D.Manipulatable;
 import com.funzio.pure2D.animators.Animator;
 import com.funzio.pure2D.gl.gl10.textures.TextureOptions;
 import com.funzio.pure2D.particles.nova.NovaConfig;
+import com.funzio.pure2D.utils.Reusable;
 
 /**
  * @author long
@@ -120,7 +121,7 @@ public abstract class AnimatorVO extends NovaEntryVO {
      */
     public void resetAnimator(final int emitIndex, final Manipulatable target, final Animator animator) {
         // if (animator != null) {
-        animator.reset();
+        animator.reset(Reusable.NO_PARAMS);
         animator.setStartDelay(NovaConfig.getInt(start_delay, emitIndex, 0));
         animator.setLifespan(NovaConfig.getInt(lifespan, emitIndex, 0));
         // }
@@ -30,6 +30,7 @@ import org.json.JSONObject;
 import com.funzio.pure2D.DisplayObject;
 import com.funzio.pure2D.effects.trails.MotionTrail;
 import com.funzio.pure2D.gl.gl10.textures.TextureOptions;
+import com.funzio.pure2D.utils.Reusable;
 
 /**
  * @author long
@@ -74,7 +75,7 @@ public abstract class MotionTrailVO {
      * @see NovaEmitter#onAnimationUpdate(com.funzio.pure2D.animators.Animator, float), NovaParticle#onAnimationUpdate(com.funzio.pure2D.animators.Animator, float)
      */
     public void resetTrail(final int emitIndex, final DisplayObject target, final MotionTrail trail) {
-        trail.reset();
+        trail.reset(Reusable.NO_PARAMS);
         trail.setNumPoints(num_points);
         trail.setTarget(null); // maybe wait until animation start to set the real target
     }
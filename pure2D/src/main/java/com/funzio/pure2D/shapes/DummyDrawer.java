@@ -38,6 +38,9 @@ public class DummyDrawer extends Sprite {
      * This only draws the children without applying any transformations, colors, for drawing cache purpose
      */
     public boolean draw(final GLState glState) {
+        // draw the pending quads first
+        glState.flushQuadBatch();
+
         // texture coordinates changed?
         if ((mInvalidateFlags & InvalidateFlags.TEXTURE_COORDS) != 0) {
             validateTextureCoordBuffer();
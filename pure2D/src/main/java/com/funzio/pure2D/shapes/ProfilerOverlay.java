@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.shapes;
+
+import com.funzio.pure2D.FrameProfiler;
+import com.funzio.pure2D.Scene;
+import com.funzio.pure2D.gl.gl10.ColorBuffer;
+import com.funzio.pure2D.gl.gl10.QuadMeshBuffer;
+
+/**
+ * @author long
+ * @category ProfilerOverlay draws the last frames of a {@link FrameProfiler} as a bar graph, oldest to newest from left to right, one stacked bar per frame with a color per phase.
+ *           The line marks the frame time of {@link Scene#DEFAULT_FPS}. Add it on top of the scene, it updates itself.
+ * @see com.funzio.pure2D.BaseScene#setProfilingEnabled(boolean)
+ */
+public class ProfilerOverlay extends Shape {
+    public static final float DEFAULT_MAX_TIME = 2000f / Scene.DEFAULT_FPS; // ms, 2 frames
+    public static final float[][] PHASE_COLORS = {
+            {
+                    0.6f, 0.6f, 1f, 0.8f
+            }, // camera
+            {
+                    0.2f, 0.8f, 0.2f, 0.8f
+            }, // children
+            {
+                    1f, 0.8f, 0.2f, 0.8f
+            }, // textures
+            {
+                    0.2f, 0.6f, 1f, 0.8f
+            }, // draw
+            {
+                    1f, 0.3f, 0.3f, 0.8f
+            }, // submit
+    };
+    private static final float[] LINE_COLOR = {
+            1f, 1f, 1f, 0.8f
+    };
+
+    private FrameProfiler mProfiler;
+    private float mMaxTime = DEFAULT_MAX_TIME;
+    private int mNumBars;
+
+    public ProfilerOverlay(final FrameProfiler profiler) {
+        this(profiler, profiler.getNumFrames() - 1);
+    }
+
+    /**
+     * @param profiler
+     * @param numBars the number of frames to show, less than the profiler's size
+     */
+    public ProfilerOverlay(final FrameProfiler profiler, final int numBars) {
+        super();
+
+        mProfiler = profiler;
+        mNumBars = Math.min(numBars, profiler.getNumFrames() - 1);
+
+        // one cell per bar and phase, plus the line
+        final int numCells = mNumBars * FrameProfiler.NUM_PHASES + 1;
+        mVertexBuffer = new QuadMeshBuffer(numCells);
+
+        // the colors never change, only the rects do
+        final float[] colors = new float[numCells * QuadMeshBuffer.NUM_VERTICES_PER_CELL * 4];
+        int index = 0;
+        for (int cell = 0; cell < numCells; cell++) {
+            final float[] color = cell < numCells - 1 ? PHASE_COLORS[cell % FrameProfiler.NUM_PHASES] : LINE_COLOR;
+            for (int v = 0; v < QuadMeshBuffer.NUM_VERTICES_PER_CELL; v++) {
+                for (int c = 0; c < 4; c++) {
+                    colors[index++] = color[c];
+                }
+            }
+        }
+        mColorBuffer = new ColorBuffer(colors);
+
+        setSize(mNumBars * 2, 100);
+    }
+
+    @Override
+    public boolean update(final int deltaTime) {
+        final QuadMeshBuffer mesh = (QuadMeshBuffer) mVertexBuffer;
+        final float barWidth = mSize.x / mNumBars;
+        final float scale = mSize.y / (mMaxTime * 1000000f); // pixels per ns
+
+        // the last complete frames, oldest first
+        final int numFrames = Math.min(mNumBars, mProfiler.getNumCompleteFrames());
+        int cell = 0;
+        for (int i = 0; i < mNumBars; i++) {
+            final int framesAgo = mNumBars - i;
+            float y = 0;
+            for (int phase = 0; phase < FrameProfiler.NUM_PHASES; phase++) {
+                final float height = framesAgo <= numFrames ? Math.min(mProfiler.getTime(phase, framesAgo) * scale, mSize.y - y) : 0;
+                mesh.setRectAt(cell++, i * barWidth, y, barWidth, height);
+                y += height;
+            }
+        }
+
+        // the frame time line
+        mesh.setRectAt(cell, 0, mSize.y * (1000f / Scene.DEFAULT_FPS) / mMaxTime, mSize.x, 1);
+
+        invalidate(VISUAL);
+
+        return super.update(deltaTime);
+    }
+
+    public FrameProfiler getProfiler() {
+        return mProfiler;
+    }
+
+    public float getMaxTime() {
+        return mMaxTime;
+    }
+
+    /**
+     * @param ms the frame time at the top of the graph
+     */
+    public void setMaxTime(final float ms) {
+        mMaxTime = ms;
+    }
+}
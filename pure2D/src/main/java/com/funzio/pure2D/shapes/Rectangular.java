@@ -32,6 +32,7 @@ import org.xmlpull.v1.XmlPullParser;
 
 import com.funzio.pure2D.Pure2D;
 import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.QuadBatch;
 import com.funzio.pure2D.gl.gl10.QuadBuffer;
 import com.funzio.pure2D.gl.gl10.textures.TextureCoordBuffer;
 import com.funzio.pure2D.ui.TouchListener;
@@ -75,6 +76,47 @@ public class Rectangular extends Shape implements UIObject {
         setSize(rect.width(), rect.height());
     }
 
+    /**
+     * Only the simple cases are batched: a 2D transformation with up-to-date bounds, no color buffer, no mask, no perspective and no debug flags.
+     * 
+     * @see com.funzio.pure2D.BaseDisplayObject#drawBatch(com.funzio.pure2D.gl.gl10.GLState, com.funzio.pure2D.gl.gl10.QuadBatch)
+     */
+    @Override
+    protected boolean drawBatch(final GLState glState, final QuadBatch batch) {
+        // the matrix needs to be updated by updateBounds()
+        if (mMatrix == null || !(mAutoUpdateBounds || Pure2D.AUTO_UPDATE_BOUNDS) || (mInvalidateFlags & BOUNDS) != 0) {
+            return false;
+        }
+
+        // things the matrix doesn't cover
+        if (mZ != 0 || mPivot.x != mPivot.y || (mRotation != 0 && (mRotationVectorX != 0 || mRotationVectorY != 0 || mRotationVectorZ != 1))) {
+            return false;
+        }
+
+        // things the batch doesn't support
+        if (!(mVertexBuffer instanceof QuadBuffer) || mColorBuffer != null || mMask != null || mPerspectiveEnabled || mAlphaTestEnabled || (Pure2D.DEBUG_FLAGS | mDebugFlags) != 0) {
+            return false;
+        }
+
+        if (mTexture != null) {
+            // not ready
+            if (!mTexture.isLoaded()) {
+                return false;
+            }
+
+            // texture coordinates changed?
+            if ((mInvalidateFlags & TEXTURE_COORDS) != 0) {
+                validateTextureCoordBuffer();
+            }
+
+            if (mTextureCoordBufferScaled == null) {
+                return false;
+            }
+        }
+
+        return batch.add(mTexture, getInheritedBlendFunc(), getInheritedColor(), ((QuadBuffer) mVertexBuffer).getValues(), mMatrix, mTexture != null ? mTextureCoordBufferScaled.getValues() : null);
+    }
+
     @Override
     protected void drawWireframe(final GLState glState) {
         // null check
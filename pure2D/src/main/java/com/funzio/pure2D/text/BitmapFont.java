@@ -39,7 +39,7 @@ import com.funzio.pure2D.atlas.AtlasFrame;
 import com.funzio.pure2D.gl.gl10.GLState;
 import com.funzio.pure2D.gl.gl10.textures.Texture;
 import com.funzio.pure2D.gl.gl10.textures.TextureManager;
-import com.funzio.pure2D.utils.RectBinPacker;
+import com.funzio.pure2D.utils.MaxRectsPacker;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -62,7 +62,7 @@ public class BitmapFont {
     private String mNewCharacters = "";
 
     private HashMap<Character, AtlasFrame> mCharFrames = new HashMap<Character, AtlasFrame>();
-    private RectBinPacker mRectPacker;
+    private MaxRectsPacker mRectPacker;
     private float[] mCharPositions;
     private BitmapFontMetrics mFontMetrics;
 
@@ -98,8 +98,10 @@ public class BitmapFont {
         if (textureMaxSize <= 0) {
             textureMaxSize = Pure2D.GL_MAX_TEXTURE_SIZE;
         }
-        mRectPacker = new RectBinPacker(Math.min(textureMaxSize, Pure2D.GL_MAX_TEXTURE_SIZE), mTextOptions.inPo2);
+        mRectPacker = new MaxRectsPacker(Math.min(textureMaxSize, Pure2D.GL_MAX_TEXTURE_SIZE), mTextOptions.inPo2);
         mRectPacker.setRotationEnabled(false);
+        // all the chars are drawn into one texture
+        mRectPacker.setMaxPages(1);
     }
 
     /**
@@ -166,29 +168,48 @@ public class BitmapFont {
         // float totalOffsetX = (mTextOptions.inOffsetX) * mTextOptions.inScaleX;
         // float totalOffsetY = (mTextOptions.inOffsetY) * mTextOptions.inScaleY;
         final int length = chars.length();
-        final Rect charBounds = new Rect();
+        final Rect[] charBounds = new Rect[length];
+        final int[] sizes = new int[length * 2];
+        for (int i = 0; i < length; i++) {
+            // find text bounds
+            final Rect bounds = charBounds[i] = new Rect();
+            mTextOptions.inTextPaint.getTextBounds(String.valueOf(chars.charAt(i)), 0, 1, bounds);
+            // inflate by padding
+            bounds.inset(-Math.round(mFontMetrics.letterPaddingX), -Math.round(mFontMetrics.letterPaddingY));
+
+            sizes[i * 2] = Math.round((bounds.right - bounds.left + 1) * mTextOptions.inScaleX);
+            sizes[i * 2 + 1] = Math.round((bounds.bottom - bounds.top + 1) * mTextOptions.inScaleY);
+        }
+
+        // occupy, the biggest first
+        final int rectIndex = mRectPacker.getNumRects();
+        if (!mRectPacker.occupyAll(sizes)) {
+            Log.e(TAG, "Error: Not enough room for all the chars: " + chars);
+        }
+
         Rect charRect;
         AtlasFrame frame;
         int startIndex = frameIndex * 2;
         for (int i = 0; i < length; i++) {
             final char ch = chars.charAt(i);
-
-            // find text bounds
-            mTextOptions.inTextPaint.getTextBounds(String.valueOf(ch), 0, 1, charBounds);
-            // inflate by padding
-            charBounds.inset(-Math.round(mFontMetrics.letterPaddingX), -Math.round(mFontMetrics.letterPaddingY));
-
-            // occupy
-            charRect = mRectPacker.occupy(Math.round((charBounds.right - charBounds.left + 1) * mTextOptions.inScaleX), Math.round((charBounds.bottom - charBounds.top + 1) * mTextOptions.inScaleY));
+            final Rect bounds = charBounds[i];
+            charRect = mRectPacker.getRect(rectIndex + i);
 
             // find positions
-            mCharPositions[startIndex++] = charRect.left / mTextOptions.inScaleX - charBounds.left;
-            mCharPositions[startIndex++] = charRect.top / mTextOptions.inScaleY - charBounds.top;
+            if (charRect != null) {
+                mCharPositions[startIndex++] = charRect.left / mTextOptions.inScaleX - bounds.left;
+                mCharPositions[startIndex++] = charRect.top / mTextOptions.inScaleY - bounds.top;
+            } else {
+                // no room, draw it outside of the bitmap
+                mCharPositions[startIndex++] = -bounds.right - 1;
+                mCharPositions[startIndex++] = -bounds.bottom - 1;
+                charRect = new Rect();
+            }
 
             // create frame
             frame = new AtlasFrame(mTexture, frameIndex + i, String.valueOf(ch), new RectF(charRect));
             // save offset
-            frame.mOffset = new PointF(charBounds.left * mTextOptions.inScaleX, -charBounds.top * mTextOptions.inScaleY);
+            frame.mOffset = new PointF(bounds.left * mTextOptions.inScaleX, -bounds.top * mTextOptions.inScaleY);
             mCharFrames.put(ch, frame);
 
             //Log.e("long", ch + " " + charRect + " -> " + mCharPositions[indexOffset + i * 2] + " " + mCharPositions[indexOffset + i * 2 + 1]);
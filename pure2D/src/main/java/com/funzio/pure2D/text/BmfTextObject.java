@@ -261,6 +261,9 @@ public class BmfTextObject extends BaseDisplayObject implements Cacheable {
             return false;
         }
 
+        // draw the pending quads first
+        glState.flushQuadBatch();
+
         // scale text
         final float sx = mScale.x;
         final float sy = mScale.y;
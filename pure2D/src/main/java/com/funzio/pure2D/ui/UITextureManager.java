@@ -34,6 +34,7 @@ import com.funzio.pure2D.Scene;
 import com.funzio.pure2D.atlas.AtlasFrameSet;
 import com.funzio.pure2D.atlas.JsonAtlas;
 import com.funzio.pure2D.atlas.SingleFrameSet;
+import com.funzio.pure2D.gl.gl10.textures.ETC1Texture;
 import com.funzio.pure2D.gl.gl10.textures.Texture;
 import com.funzio.pure2D.gl.gl10.textures.TextureManager;
 import com.funzio.pure2D.gl.gl10.textures.TextureOptions;
@@ -60,7 +61,6 @@ public class UITextureManager extends TextureManager {
     protected static final String TAG = UITextureManager.class.getSimpleName();
 
     protected HashMap<String, BitmapFont> mBitmapFonts = new HashMap<String, BitmapFont>();
-    protected final HashMap<String, Texture> mGeneralTextures;
     protected final HashMap<String, AtlasFrameSet> mAtlasFrames;
     protected final HashMap<String, NovaFactory> mNovaFactories;
 
@@ -76,7 +76,6 @@ public class UITextureManager extends TextureManager {
     public UITextureManager(final Scene scene, final Resources res) {
         super(scene, res);
 
-        mGeneralTextures = new HashMap<String, Texture>();
         mAtlasFrames = new HashMap<String, AtlasFrameSet>();
         mNovaFactories = new HashMap<String, NovaFactory>();
     }
@@ -144,7 +143,8 @@ public class UITextureManager extends TextureManager {
     }
 
     /**
-     * Create and cache a texture from a specified URI. If this texture is already in cache, it simply returns the cache version.
+     * Create and cache a texture from a specified URI. If this texture is already in cache, it simply returns the cache version. Each call adds a reference to the shared texture which can
+     * be released by {@link #releaseTexture(Texture)}.
      *
      * @param textureUri
      * @param async
@@ -168,47 +168,44 @@ public class UITextureManager extends TextureManager {
         }
         final String actualPath = Pure2DURI.getPathFromUri(textureUri);
 
-        if (mGeneralTextures.containsKey(actualPath)) {
-            // use cache
-            return mGeneralTextures.get(actualPath);
-        } else {
-            Texture texture = null;
-            final TextureOptions textureOptions = (options == null) ? mUIManager.getTextureOptions() : options;
-            // create
-            if (textureUri.startsWith(Pure2DURI.DRAWABLE)) {
-                // load from file / sdcard
-                final int drawable = mResources.getIdentifier(actualPath, UIConfig.TYPE_DRAWABLE, mUIManager.getPackageName());
-                if (drawable > 0) {
-                    texture = createDrawableTexture(drawable, textureOptions, async);
-                }
-            } else if (textureUri.startsWith(Pure2DURI.FILE)) {
-                // load from file / sdcard
-                texture = createFileTexture(actualPath, textureOptions, async);
-            } else if (textureUri.startsWith(Pure2DURI.ASSET)) {
-                // load from bundle assets
-                texture = createAssetTexture(actualPath, textureOptions, async);
-            } else if (textureUri.startsWith(Pure2DURI.HTTP) || textureUri.startsWith(Pure2DURI.HTTPS)) {
-                // load from bundle assets
-                texture = createURLTexture(actualPath, textureOptions, async);
-            } else if (textureUri.startsWith(Pure2DURI.CACHE)) {
-                // load from url or cache file
-                texture = createURLCacheTexture(mUIConfigVO.texture_manager.cdn_url + actualPath, mUIConfigVO.texture_manager.cache_dir + actualPath, textureOptions, async);
+        Texture texture = null;
+        final TextureOptions textureOptions = (options == null) ? mUIManager.getTextureOptions() : options;
+        // create or share
+        if (textureUri.startsWith(Pure2DURI.DRAWABLE)) {
+            // load from file / sdcard
+            final int drawable = mResources.getIdentifier(actualPath, UIConfig.TYPE_DRAWABLE, mUIManager.getPackageName());
+            if (drawable > 0) {
+                texture = acquireDrawableTexture(drawable, textureOptions, async);
             }
+        } else if (actualPath.endsWith(ETC1Texture.FILE_PKM) && (textureUri.startsWith(Pure2DURI.FILE) || textureUri.startsWith(Pure2DURI.ASSET))) {
+            // compressed, always synchronous
+            texture = acquireETC1Texture(actualPath, textureOptions, textureUri.startsWith(Pure2DURI.ASSET));
+        } else if (textureUri.startsWith(Pure2DURI.FILE)) {
+            // load from file / sdcard
+            texture = acquireFileTexture(actualPath, textureOptions, async);
+        } else if (textureUri.startsWith(Pure2DURI.ASSET)) {
+            // load from bundle assets
+            texture = acquireAssetTexture(actualPath, textureOptions, async);
+        } else if (textureUri.startsWith(Pure2DURI.HTTP) || textureUri.startsWith(Pure2DURI.HTTPS)) {
+            // load from bundle assets
+            texture = acquireURLTexture(actualPath, textureOptions, async);
+        } else if (textureUri.startsWith(Pure2DURI.CACHE)) {
+            // load from url or cache file
+            texture = acquireURLCacheTexture(mUIConfigVO.texture_manager.cdn_url + actualPath, mUIConfigVO.texture_manager.cache_dir + actualPath, textureOptions, async);
+        }
 
-            // and cache it if created
-            if (texture != null) {
-                // texture expiration
-                texture.setExpirationTime(mUIConfigVO.texture_manager.texture_expiration_time);
-                // set filter
-                final int filter = mUIConfigVO.texture_manager.texture_options.filter;
-                if (filter > 0) {
-                    texture.setFilters(filter, filter);
-                }
-                mGeneralTextures.put(actualPath, texture);
+        // set up if just created
+        if (texture != null && texture.getRefCount() == 1) {
+            // texture expiration
+            texture.setExpirationTime(mUIConfigVO.texture_manager.texture_expiration_time);
+            // set filter
+            final int filter = mUIConfigVO.texture_manager.texture_options.filter;
+            if (filter > 0) {
+                texture.setFilters(filter, filter);
             }
-
-            return texture;
         }
+
+        return texture;
     }
 
     /**
@@ -207,6 +207,9 @@ abstract public class AbstractUniGroup extends BaseDisplayObject implements UniC
             return false;
         }
 
+        // draw the pending quads first
+        glState.flushQuadBatch();
+
         drawStart(glState);
 
         // no color buffer supported
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author long
+ * @category A lock-free pool for cross-thread use, such as objects acquired on a worker thread and released on the GL thread. This is a bounded ring buffer where each slot has a
+ *           sequence number, producers and consumers claim slots with CAS. No allocation after construction.
+ */
+public class ConcurrentPool<T> implements Pool<T> {
+    protected final AtomicReferenceArray<T> mSlots;
+    protected final AtomicLongArray mSequences;
+    protected final int mMask;
+
+    protected final AtomicLong mReleasePos = new AtomicLong();
+    protected final AtomicLong mAcquirePos = new AtomicLong();
+
+    // stats
+    protected final AtomicInteger mHighWaterMark = new AtomicInteger();
+    protected final AtomicInteger mNumHits = new AtomicInteger();
+    protected final AtomicInteger mNumMisses = new AtomicInteger();
+
+    /**
+     * @param maxSize rounded up to a power of 2
+     */
+    public ConcurrentPool(final int maxSize) {
+        int capacity = 1;
+        while (capacity < maxSize) {
+            capacity <<= 1;
+        }
+
+        mSlots = new AtomicReferenceArray<T>(capacity);
+        mSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            mSequences.set(i, i);
+        }
+        mMask = capacity - 1;
+    }
+
+    public T acquire() {
+        final T object = poll();
+        if (object != null) {
+            mNumHits.incrementAndGet();
+        } else {
+            mNumMisses.incrementAndGet();
+        }
+
+        return object;
+    }
+
+    protected T poll() {
+        long pos = mAcquirePos.get();
+        int index;
+        while (true) {
+            index = (int) pos & mMask;
+            final long diff = mSequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                // the slot is filled, claim it
+                if (mAcquirePos.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = mAcquirePos.get();
+            } else if (diff < 0) {
+                // empty
+                return null;
+            } else {
+                // another thread took it
+                pos = mAcquirePos.get();
+            }
+        }
+
+        final T object = mSlots.get(index);
+        mSlots.set(index, null);
+        // free the slot for the next round
+        mSequences.set(index, pos + mMask + 1);
+
+        return object;
+    }
+
+    public boolean release(final T object) {
+        long pos = mReleasePos.get();
+        int index;
+        while (true) {
+            index = (int) pos & mMask;
+            final long diff = mSequences.get(index) - pos;
+            if (diff == 0) {
+                // the slot is free, claim it
+                if (mReleasePos.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = mReleasePos.get();
+            } else if (diff < 0) {
+                // full
+                return false;
+            } else {
+                // another thread took it
+                pos = mReleasePos.get();
+            }
+        }
+
+        mSlots.set(index, object);
+        // publish the slot
+        mSequences.set(index, pos + 1);
+
+        // stats
+        final int size = size();
+        int mark;
+        while (size > (mark = mHighWaterMark.get()) && !mHighWaterMark.compareAndSet(mark, size)) {
+            // retry
+        }
+
+        return true;
+    }
+
+    public int prewarm(final int num, final Factory<T> factory) {
+        int i = 0;
+        while (i < num && release(factory.create())) {
+            i++;
+        }
+
+        return i;
+    }
+
+    public void clear() {
+        while (poll() != null) {
+            // drain
+        }
+    }
+
+    /**
+     * @return the approximate number of objects in the pool
+     */
+    public int size() {
+        final long size = mReleasePos.get() - mAcquirePos.get();
+        return size < 0 ? 0 : (int) Math.min(size, mMask + 1);
+    }
+
+    public int getMaxSize() {
+        return mMask + 1;
+    }
+
+    public int getHighWaterMark() {
+        return mHighWaterMark.get();
+    }
+
+    public int getNumHits() {
+        return mNumHits.get();
+    }
+
+    public int getNumMisses() {
+        return mNumMisses.get();
+    }
+
+    public void resetStats() {
+        mHighWaterMark.set(size());
+        mNumHits.set(0);
+        mNumMisses.set(0);
+    }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils;
+
+/**
+ * @author long
+ * @category A histogram of the last N frame times. The times are kept in fixed-size bins so adding a frame is O(1) and a percentile query is O(bins), with no allocation.
+ *           <p>
+ *           The frames are added on the GL thread and the percentiles can be read from any thread. Readers may see a frame half-added, which only skews the result by a sample.
+ *           </p>
+ */
+public class FrameHistogram {
+    public static final int DEFAULT_WINDOW = 256; // frames
+    public static final int DEFAULT_BIN_SIZE = 100000; // ns = 0.1 ms
+    public static final int DEFAULT_NUM_BINS = 1000; // up to 100 ms
+
+    private final int mBinSize;
+    private final int[] mCounts; // the last bin is the overflow
+    private final short[] mWindow; // bins of the last frames
+    private int mWindowIndex = 0;
+    private int mNumFrames = 0;
+    private long mMaxTime = 0; // ns, in the window when it was added
+
+    public FrameHistogram() {
+        this(DEFAULT_WINDOW, DEFAULT_BIN_SIZE, DEFAULT_NUM_BINS);
+    }
+
+    /**
+     * @param window the number of last frames to keep
+     * @param binSize the bin size in ns
+     * @param numBins the number of bins, the last one takes everything longer
+     */
+    public FrameHistogram(final int window, final int binSize, final int numBins) {
+        mBinSize = binSize;
+        mCounts = new int[Math.min(numBins, Short.MAX_VALUE)];
+        mWindow = new short[window];
+    }
+
+    /**
+     * Add a frame time, dropping the oldest one when the window is full
+     * 
+     * @param time in ns
+     */
+    public void add(final long time) {
+        final int bin = (int) Math.min(time / mBinSize, mCounts.length - 1);
+
+        if (mNumFrames == mWindow.length) {
+            // evict the oldest
+            mCounts[mWindow[mWindowIndex]]--;
+        } else {
+            mNumFrames++;
+        }
+        mCounts[bin]++;
+        mWindow[mWindowIndex] = (short) bin;
+        mWindowIndex = (mWindowIndex + 1) % mWindow.length;
+
+        if (time > mMaxTime) {
+            mMaxTime = time;
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] = 0;
+        }
+        mWindowIndex = 0;
+        mNumFrames = 0;
+        mMaxTime = 0;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the frame time in ns under which that percent of the frames are, rounded up to the bin
+     */
+    public long getPercentile(final float percentile) {
+        final int numFrames = mNumFrames;
+        if (numFrames == 0) {
+            return 0;
+        }
+
+        final int rank = (int) Math.ceil(numFrames * percentile / 100f);
+        int count = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            count += mCounts[i];
+            if (count >= rank) {
+                return (long) (i + 1) * mBinSize;
+            }
+        }
+
+        return (long) mCounts.length * mBinSize;
+    }
+
+    /**
+     * @return the median frame time in ns
+     */
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    /**
+     * @return the 95th percentile frame time in ns
+     */
+    public long getP95() {
+        return getPercentile(95);
+    }
+
+    /**
+     * @return the 99th percentile frame time in ns
+     */
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    /**
+     * @return the longest frame time in ns since {@link #clear()}
+     */
+    public long getMaxTime() {
+        return mMaxTime;
+    }
+
+    public int getNumFrames() {
+        return mNumFrames;
+    }
+
+    public int getBinSize() {
+        return mBinSize;
+    }
+
+    /**
+     * @return a copy of the bin counts, the last one is the overflow
+     */
+    public int[] getCounts() {
+        return mCounts.clone();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms", getP50() / 1000000f, getP95() / 1000000f, getP99() / 1000000f, mMaxTime / 1000000f);
+    }
+}
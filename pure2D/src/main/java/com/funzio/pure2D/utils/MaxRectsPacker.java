@@ -0,0 +1,577 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+/**
+ * @author long
+ * @category MaxRectsPacker keeps the maximal free rectangles of each page and puts every new rect into the one that fits best, see "A Thousand Ways to Pack the Bin" by Jukka
+ *           Jylanki. Pages start small and grow by doubling up to the max size, then the rects spill to a new page.
+ *           <p>
+ *           Rotated rects are returned with their width and height swapped, see {@link #isRotated(int)}.
+ *           </p>
+ */
+public class MaxRectsPacker {
+    private static final String TAG = MaxRectsPacker.class.getSimpleName();
+
+    // heuristics
+    public static final int BEST_SHORT_SIDE_FIT = 0;
+    public static final int BEST_AREA_FIT = 1;
+
+    public static final int DEFAULT_MIN_SIZE = 64;
+
+    private final int mMaxWidth;
+    private final int mMaxHeight;
+    private final boolean mForcePO2;
+    private int mMinSize = DEFAULT_MIN_SIZE;
+    private int mHeuristic = BEST_SHORT_SIDE_FIT;
+    private boolean mRotationEnabled = false;
+    private int mMaxPages = Integer.MAX_VALUE;
+
+    private final ArrayList<Page> mPages = new ArrayList<Page>();
+    private final ArrayList<Rect> mRects = new ArrayList<Rect>();
+    private int[] mRectPages = new int[16];
+    private boolean[] mRectRotations = new boolean[16];
+
+    // the best position found by findPosition()
+    private int mBestX;
+    private int mBestY;
+    private int mBestScore1;
+    private int mBestScore2;
+    private boolean mBestRotated;
+    private int mBestPage;
+
+    // the pieces of the split free rects
+    private int[] mScratch = new int[64];
+
+    public MaxRectsPacker(final int maxWidth, final boolean forcePO2) {
+        this(maxWidth, maxWidth, forcePO2);
+    }
+
+    public MaxRectsPacker(final int maxWidth, final int maxHeight, final boolean forcePO2) {
+        mMaxWidth = maxWidth;
+        mMaxHeight = maxHeight;
+        mForcePO2 = forcePO2;
+    }
+
+    public int getHeuristic() {
+        return mHeuristic;
+    }
+
+    /**
+     * @param heuristic {@link #BEST_SHORT_SIDE_FIT} (default) or {@link #BEST_AREA_FIT}
+     */
+    public void setHeuristic(final int heuristic) {
+        mHeuristic = heuristic;
+    }
+
+    public boolean isRotationEnabled() {
+        return mRotationEnabled;
+    }
+
+    public void setRotationEnabled(final boolean rotationEnabled) {
+        mRotationEnabled = rotationEnabled;
+    }
+
+    public int getMaxPages() {
+        return mMaxPages;
+    }
+
+    /**
+     * @param maxPages 1 to disable spilling to new pages
+     */
+    public void setMaxPages(final int maxPages) {
+        mMaxPages = maxPages;
+    }
+
+    public int getMinSize() {
+        return mMinSize;
+    }
+
+    /**
+     * @param minSize the initial size of the pages
+     */
+    public void setMinSize(final int minSize) {
+        mMinSize = minSize;
+    }
+
+    /**
+     * Find a place for a rect
+     * 
+     * @param w
+     * @param h
+     * @return the rect, or null if there is no room
+     */
+    public Rect occupy(final int w, final int h) {
+        final Rect rect = place(w, h);
+        if (rect != null) {
+            add(mRects.size(), rect);
+        }
+
+        return rect;
+    }
+
+    /**
+     * Find the places for many rects at once, the biggest first for a better occupancy. The rects are kept in the given order, see {@link #getRect(int)}.
+     * 
+     * @param sizes width and height pairs
+     * @return true if all the rects fit
+     */
+    public boolean occupyAll(final int[] sizes) {
+        final int num = sizes.length / 2;
+        final Integer[] order = new Integer[num];
+        for (int i = 0; i < num; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer left, final Integer right) {
+                final int lw = sizes[left * 2], lh = sizes[left * 2 + 1];
+                final int rw = sizes[right * 2], rh = sizes[right * 2 + 1];
+                final int longSide = Math.max(rw, rh) - Math.max(lw, lh);
+                return longSide != 0 ? longSide : rw * rh - lw * lh;
+            }
+        });
+
+        final int start = mRects.size();
+        for (int i = 0; i < num; i++) {
+            mRects.add(null);
+        }
+
+        boolean success = true;
+        for (int i = 0; i < num; i++) {
+            final int index = order[i];
+            final Rect rect = place(sizes[index * 2], sizes[index * 2 + 1]);
+            if (rect != null) {
+                add(start + index, rect);
+            } else {
+                success = false;
+            }
+        }
+
+        return success;
+    }
+
+    private void add(final int index, final Rect rect) {
+        if (index >= mRectPages.length) {
+            mRectPages = Arrays.copyOf(mRectPages, Math.max(index + 1, mRectPages.length * 2));
+            mRectRotations = Arrays.copyOf(mRectRotations, mRectPages.length);
+        }
+        if (index == mRects.size()) {
+            mRects.add(rect);
+        } else {
+            mRects.set(index, rect);
+        }
+        mRectPages[index] = mBestPage;
+        mRectRotations[index] = mBestRotated;
+    }
+
+    private Rect place(final int w, final int h) {
+        final boolean fits = w <= mMaxWidth && h <= mMaxHeight;
+        final boolean fitsRotated = mRotationEnabled && h <= mMaxWidth && w <= mMaxHeight;
+        if (!fits && !fitsRotated) {
+            Log.e(TAG, String.format("Error: (%d, %d) is bigger than (%d, %d)!", w, h, mMaxWidth, mMaxHeight));
+            return null;
+        }
+
+        // try the current pages first
+        final int numPages = mPages.size();
+        for (int i = 0; i < numPages; i++) {
+            final Page page = mPages.get(i);
+            if (placeInPage(page, w, h)) {
+                mBestPage = i;
+                return page.occupy(this, w, h);
+            }
+        }
+
+        // spill
+        if (numPages >= mMaxPages) {
+            Log.e(TAG, String.format("Error: ran out of space of %d page(s) for (%d, %d)!", numPages, w, h));
+            return null;
+        }
+
+        final Page page = new Page(Math.min(mMinSize, mMaxWidth), Math.min(mMinSize, mMaxHeight));
+        mPages.add(page);
+        if (placeInPage(page, w, h)) {
+            mBestPage = numPages;
+            return page.occupy(this, w, h);
+        }
+
+        // shouldn't happen
+        return null;
+    }
+
+    /**
+     * Find the best position in a page, growing it if needed
+     */
+    private boolean placeInPage(final Page page, final int w, final int h) {
+        while (!findPosition(page, w, h)) {
+            if (!page.grow(mMaxWidth, mMaxHeight)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean findPosition(final Page page, final int w, final int h) {
+        mBestScore1 = mBestScore2 = Integer.MAX_VALUE;
+        mBestRotated = false;
+
+        final int[] free = page.mFree;
+        final int numFree = page.mNumFree;
+        final boolean rotation = mRotationEnabled && w != h;
+        for (int i = 0; i < numFree; i++) {
+            final int offset = i * 4;
+            final int fw = free[offset + 2];
+            final int fh = free[offset + 3];
+
+            if (w <= fw && h <= fh) {
+                score(free[offset], free[offset + 1], fw, fh, w, h, false);
+            }
+            if (rotation && h <= fw && w <= fh) {
+                score(free[offset], free[offset + 1], fw, fh, h, w, true);
+            }
+        }
+
+        return mBestScore1 != Integer.MAX_VALUE;
+    }
+
+    private void score(final int x, final int y, final int fw, final int fh, final int w, final int h, final boolean rotated) {
+        final int leftoverH = fw - w;
+        final int leftoverV = fh - h;
+        final int score1, score2;
+        if (mHeuristic == BEST_AREA_FIT) {
+            score1 = fw * fh - w * h;
+            score2 = Math.min(leftoverH, leftoverV);
+        } else {
+            score1 = Math.min(leftoverH, leftoverV);
+            score2 = Math.max(leftoverH, leftoverV);
+        }
+
+        if (score1 < mBestScore1 || (score1 == mBestScore1 && score2 < mBestScore2)) {
+            mBestX = x;
+            mBestY = y;
+            mBestScore1 = score1;
+            mBestScore2 = score2;
+            mBestRotated = rotated;
+        }
+    }
+
+    public void reset() {
+        mPages.clear();
+        mRects.clear();
+    }
+
+    public Rect getRect(final int index) {
+        return mRects.get(index);
+    }
+
+    /**
+     * @param index
+     * @return the page of a rect, or -1 if it didn't fit
+     */
+    public int getPage(final int index) {
+        return mRects.get(index) != null ? mRectPages[index] : -1;
+    }
+
+    /**
+     * @param index
+     * @return true if the rect was rotated 90 degrees
+     */
+    public boolean isRotated(final int index) {
+        return mRects.get(index) != null && mRectRotations[index];
+    }
+
+    public int getNumRects() {
+        return mRects.size();
+    }
+
+    public int getNumPages() {
+        return mPages.size();
+    }
+
+    /**
+     * @param page
+     * @return the width of the used area, in power of 2 if forced
+     */
+    public int getPageWidth(final int page) {
+        final int width = mPages.get(page).mUsedWidth;
+        return mForcePO2 ? Pure2DUtils.getNextPO2(width) : width;
+    }
+
+    /**
+     * @param page
+     * @return the height of the used area, in power of 2 if forced
+     */
+    public int getPageHeight(final int page) {
+        final int height = mPages.get(page).mUsedHeight;
+        return mForcePO2 ? Pure2DUtils.getNextPO2(height) : height;
+    }
+
+    /**
+     * @return the width of the first page
+     */
+    public int getWidth() {
+        return mPages.isEmpty() ? 0 : getPageWidth(0);
+    }
+
+    /**
+     * @return the height of the first page
+     */
+    public int getHeight() {
+        return mPages.isEmpty() ? 0 : getPageHeight(0);
+    }
+
+    /**
+     * @return the area of the rects over the area of the pages, from 0 to 1
+     */
+    public float getOccupancy() {
+        long used = 0;
+        long total = 0;
+        final int numPages = mPages.size();
+        for (int i = 0; i < numPages; i++) {
+            used += mPages.get(i).mUsedArea;
+            total += (long) getPageWidth(i) * getPageHeight(i);
+        }
+
+        return total > 0 ? (float) used / total : 0;
+    }
+
+    /**
+     * A bin with its free rects
+     */
+    private static class Page {
+        private int mWidth;
+        private int mHeight;
+        private int mUsedWidth = 0;
+        private int mUsedHeight = 0;
+        private long mUsedArea = 0;
+
+        // x, y, w, h
+        private int[] mFree = new int[64];
+        private int mNumFree = 0;
+
+        public Page(final int width, final int height) {
+            mWidth = width;
+            mHeight = height;
+            addFree(0, 0, width, height);
+        }
+
+        private void addFree(final int x, final int y, final int w, final int h) {
+            if (mNumFree * 4 + 4 > mFree.length) {
+                mFree = Arrays.copyOf(mFree, mFree.length * 2);
+            }
+            final int offset = mNumFree * 4;
+            mFree[offset] = x;
+            mFree[offset + 1] = y;
+            mFree[offset + 2] = w;
+            mFree[offset + 3] = h;
+            mNumFree++;
+        }
+
+        /**
+         * Take the best position found by the packer
+         */
+        public Rect occupy(final MaxRectsPacker packer, final int w, final int h) {
+            final int rw = packer.mBestRotated ? h : w;
+            final int rh = packer.mBestRotated ? w : h;
+            final Rect rect = new Rect(packer.mBestX, packer.mBestY, packer.mBestX + rw, packer.mBestY + rh);
+
+            split(packer, rect.left, rect.top, rw, rh);
+
+            mUsedWidth = Math.max(mUsedWidth, rect.right);
+            mUsedHeight = Math.max(mUsedHeight, rect.bottom);
+            mUsedArea += rw * rh;
+
+            return rect;
+        }
+
+        /**
+         * Cut the used rect out of the free rects
+         */
+        private void split(final MaxRectsPacker packer, final int ux, final int uy, final int uw, final int uh) {
+            if (uw == 0 || uh == 0) {
+                return;
+            }
+
+            // keep the free rects that don't intersect in place, and collect the pieces of the ones that do
+            int numPieces = 0;
+            int numKept = 0;
+            final int numFree = mNumFree;
+            for (int i = 0; i < numFree; i++) {
+                final int offset = i * 4;
+                final int fx = mFree[offset];
+                final int fy = mFree[offset + 1];
+                final int fw = mFree[offset + 2];
+                final int fh = mFree[offset + 3];
+
+                // no intersection, keep it
+                if (ux >= fx + fw || ux + uw <= fx || uy >= fy + fh || uy + uh <= fy) {
+                    if (numKept != i) {
+                        System.arraycopy(mFree, offset, mFree, numKept * 4, 4);
+                    }
+                    numKept++;
+                    continue;
+                }
+
+                if (packer.mScratch.length < numPieces * 4 + 16) {
+                    packer.mScratch = Arrays.copyOf(packer.mScratch, packer.mScratch.length * 2);
+                }
+                final int[] pieces = packer.mScratch;
+                // top
+                if (uy > fy) {
+                    numPieces = setPiece(pieces, numPieces, fx, fy, fw, uy - fy);
+                }
+                // bottom
+                if (uy + uh < fy + fh) {
+                    numPieces = setPiece(pieces, numPieces, fx, uy + uh, fw, fy + fh - uy - uh);
+                }
+                // left
+                if (ux > fx) {
+                    numPieces = setPiece(pieces, numPieces, fx, fy, ux - fx, fh);
+                }
+                // right
+                if (ux + uw < fx + fw) {
+                    numPieces = setPiece(pieces, numPieces, ux + uw, fy, fx + fw - ux - uw, fh);
+                }
+            }
+            mNumFree = numKept;
+
+            // the kept ones are still maximal and can't be inside the pieces, so only the pieces need pruning
+            final int[] pieces = packer.mScratch;
+            for (int i = 0; i < numPieces; i++) {
+                final int piece = i * 4;
+                boolean contained = false;
+                for (int j = 0; j < mNumFree; j++) {
+                    if (contains(mFree, j * 4, pieces, piece)) {
+                        contained = true;
+                        break;
+                    }
+                }
+                if (contained) {
+                    continue;
+                }
+
+                // remove the pieces added before that are inside this one
+                for (int j = mNumFree - 1; j >= numKept; j--) {
+                    if (contains(pieces, piece, mFree, j * 4)) {
+                        removeFree(j);
+                    }
+                }
+                addFree(pieces[piece], pieces[piece + 1], pieces[piece + 2], pieces[piece + 3]);
+            }
+        }
+
+        private static int setPiece(final int[] pieces, final int numPieces, final int x, final int y, final int w, final int h) {
+            final int offset = numPieces * 4;
+            pieces[offset] = x;
+            pieces[offset + 1] = y;
+            pieces[offset + 2] = w;
+            pieces[offset + 3] = h;
+            return numPieces + 1;
+        }
+
+        /**
+         * Remove the free rects that are inside others
+         */
+        private void prune() {
+            final int[] free = mFree;
+            for (int i = 0; i < mNumFree; i++) {
+                for (int j = i + 1; j < mNumFree; j++) {
+                    final int a = i * 4;
+                    final int b = j * 4;
+                    if (contains(free, b, free, a)) {
+                        // i is inside j
+                        removeFree(i);
+                        i--;
+                        break;
+                    } else if (contains(free, a, free, b)) {
+                        // j is inside i
+                        removeFree(j);
+                        j--;
+                    }
+                }
+            }
+        }
+
+        private static boolean contains(final int[] outers, final int outer, final int[] inners, final int inner) {
+            return inners[inner] >= outers[outer] && inners[inner + 1] >= outers[outer + 1] && inners[inner] + inners[inner + 2] <= outers[outer] + outers[outer + 2]
+                    && inners[inner + 1] + inners[inner + 3] <= outers[outer + 1] + outers[outer + 3];
+        }
+
+        private void removeFree(final int index) {
+            // keep the order, so the placement is stable
+            System.arraycopy(mFree, (index + 1) * 4, mFree, index * 4, (mNumFree - index - 1) * 4);
+            mNumFree--;
+        }
+
+        /**
+         * Double the smaller side, up to the max size
+         * 
+         * @return false if it's already at the max size
+         */
+        public boolean grow(final int maxWidth, final int maxHeight) {
+            final int width, height;
+            if ((mWidth <= mHeight || mHeight >= maxHeight) && mWidth < maxWidth) {
+                width = Math.min(mWidth * 2, maxWidth);
+                height = mHeight;
+            } else if (mHeight < maxHeight) {
+                width = mWidth;
+                height = Math.min(mHeight * 2, maxHeight);
+            } else {
+                return false;
+            }
+
+            // the free rects on the edges extend into the new space
+            for (int i = 0; i < mNumFree; i++) {
+                final int offset = i * 4;
+                if (mFree[offset] + mFree[offset + 2] == mWidth) {
+                    mFree[offset + 2] = width - mFree[offset];
+                }
+                if (mFree[offset + 1] + mFree[offset + 3] == mHeight) {
+                    mFree[offset + 3] = height - mFree[offset + 1];
+                }
+            }
+            if (width > mWidth) {
+                addFree(mWidth, 0, width - mWidth, height);
+            }
+            if (height > mHeight) {
+                addFree(0, mHeight, width, height - mHeight);
+            }
+            mWidth = width;
+            mHeight = height;
+            prune();
+
+            return true;
+        }
+    }
+}
@@ -24,49 +24,48 @@
  */
 package com.funzio.pure2D.utils;
 
-import java.util.Vector;
-
 /**
  * @author long
+ * @category A synchronized pool, kept for compatibility. Use {@link StackPool} on a single thread or {@link ConcurrentPool} across threads instead.
  */
-public class ObjectPool<T extends Reusable> {
-    private Vector<T> mReusables = new Vector<T>();
-    private int mMaxSize;
+public class ObjectPool<T extends Reusable> extends StackPool<T> {
 
     public ObjectPool(final int maxSize) {
-        mMaxSize = maxSize;
+        super(maxSize);
     }
 
-    public int getMaxSize() {
-        return mMaxSize;
+    @Override
+    public synchronized int getMaxSize() {
+        return super.getMaxSize();
     }
 
-    public void setMaxSize(final int maxSize) {
-        mMaxSize = maxSize;
+    @Override
+    public synchronized void setMaxSize(final int maxSize) {
+        super.setMaxSize(maxSize);
     }
 
-    public T acquire() {
-        if (mReusables.size() > 0) {
-            return mReusables.remove(0);
-        }
-
-        return null;
+    @Override
+    public synchronized T acquire() {
+        return super.acquire();
     }
 
-    public boolean release(final T reusable) {
-        if (mReusables.size() < mMaxSize) {
-            mReusables.add(reusable);
-            return true;
-        }
+    @Override
+    public synchronized boolean release(final T reusable) {
+        return super.release(reusable);
+    }
 
-        return false;
+    @Override
+    public synchronized int prewarm(final int num, final Factory<T> factory) {
+        return super.prewarm(num, factory);
     }
 
-    public void clear() {
-        mReusables.clear();
+    @Override
+    public synchronized void clear() {
+        super.clear();
     }
 
-    public int size() {
-        return mReusables.size();
+    @Override
+    public synchronized int size() {
+        return super.size();
     }
 }
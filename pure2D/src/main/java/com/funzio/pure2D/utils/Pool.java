@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils;
+
+/**
+ * @author long
+ * @see StackPool, ConcurrentPool
+ */
+public interface Pool<T> {
+    /**
+     * @return an object from the pool, null if the pool is empty
+     */
+    public T acquire();
+
+    /**
+     * @param object
+     * @return true if the object is put back to the pool, false if the pool is full
+     */
+    public boolean release(final T object);
+
+    /**
+     * Fill the pool with new objects
+     * 
+     * @param num number of objects to create
+     * @param factory
+     * @return number of objects added
+     */
+    public int prewarm(final int num, final Factory<T> factory);
+
+    public void clear();
+
+    public int size();
+
+    public int getMaxSize();
+
+    /**
+     * @return the max number of objects the pool has held at once
+     */
+    public int getHighWaterMark();
+
+    /**
+     * @return number of acquire() calls that returned an object
+     */
+    public int getNumHits();
+
+    /**
+     * @return number of acquire() calls that returned null
+     */
+    public int getNumMisses();
+
+    public void resetStats();
+
+    public static interface Factory<T> {
+        public T create();
+    }
+}
@@ -28,5 +28,8 @@ package com.funzio.pure2D.utils;
  * @author long
  */
 public interface Reusable {
+    // for the resets without params, to avoid allocating an empty array on every call
+    public static final Object[] NO_PARAMS = new Object[0];
+
     public void reset(final Object... params);
 }
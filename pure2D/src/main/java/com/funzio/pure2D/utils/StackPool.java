@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils;
+
+import java.util.Arrays;
+
+/**
+ * @author long
+ * @category An unsynchronized array-based stack pool, for single-thread use such as the GL thread. Acquire and release are O(1) and allocation-free.
+ */
+public class StackPool<T> implements Pool<T> {
+    private static final int MIN_CAPACITY = 16;
+
+    protected Object[] mObjects;
+    protected int mSize = 0;
+    protected int mMaxSize;
+
+    // stats
+    protected int mHighWaterMark = 0;
+    protected int mNumHits = 0;
+    protected int mNumMisses = 0;
+
+    public StackPool(final int maxSize) {
+        mMaxSize = maxSize;
+        mObjects = new Object[Math.max(0, Math.min(maxSize, MIN_CAPACITY))];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if (mSize > 0) {
+            final T object = (T) mObjects[--mSize];
+            mObjects[mSize] = null;
+            mNumHits++;
+            return object;
+        }
+
+        mNumMisses++;
+        return null;
+    }
+
+    public boolean release(final T object) {
+        if (mSize >= mMaxSize) {
+            return false;
+        }
+
+        // grow on demand, up to the max size
+        if (mSize == mObjects.length) {
+            mObjects = Arrays.copyOf(mObjects, Math.min(Math.max(mSize * 2, MIN_CAPACITY), mMaxSize));
+        }
+
+        mObjects[mSize++] = object;
+        if (mSize > mHighWaterMark) {
+            mHighWaterMark = mSize;
+        }
+
+        return true;
+    }
+
+    public int prewarm(final int num, final Factory<T> factory) {
+        int i = 0;
+        while (i < num && release(factory.create())) {
+            i++;
+        }
+
+        return i;
+    }
+
+    public void clear() {
+        Arrays.fill(mObjects, 0, mSize, null);
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public void setMaxSize(final int maxSize) {
+        mMaxSize = maxSize;
+
+        // drop the extra objects
+        if (mSize > maxSize) {
+            Arrays.fill(mObjects, Math.max(0, maxSize), mSize, null);
+            mSize = Math.max(0, maxSize);
+        }
+    }
+
+    public int getHighWaterMark() {
+        return mHighWaterMark;
+    }
+
+    public int getNumHits() {
+        return mNumHits;
+    }
+
+    public int getNumMisses() {
+        return mNumMisses;
+    }
+
+    public void resetStats() {
+        mHighWaterMark = mSize;
+        mNumHits = 0;
+        mNumMisses = 0;
+    }
+}
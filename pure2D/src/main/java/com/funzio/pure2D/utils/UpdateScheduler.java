@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+/**
+ * 
+ */
+package com.funzio.pure2D.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.util.Log;
+
+import com.funzio.pure2D.DisplayObject;
+
+/**
+ * @author long
+ * @category A fork-join scheduler that updates independent children in parallel. The children are split into one range per thread, each thread updates its own range in chunks and
+ *           steals half of another thread's remaining range when done. The calling thread takes part and returns when all the children are updated.
+ *           <p>
+ *           While the children are being updated, the listener callbacks and the structural changes (adding/removing children, direct events) are deferred with
+ *           {@link #defer(Runnable)} and run on the calling thread right after the join, in the order of the threads. The children should not touch each other's state otherwise.
+ *           </p>
+ * @see com.funzio.pure2D.containers.DisplayGroup#setChildrenIndependent(boolean)
+ */
+public class UpdateScheduler {
+    private static final String TAG = UpdateScheduler.class.getSimpleName();
+
+    // below this, it's not worth it
+    public static final int DEFAULT_MIN_CHILDREN = 8;
+    // number of chunks per thread, for balancing
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static UpdateScheduler sInstance;
+
+    // one parallel update at a time, across the schedulers
+    private static final Object PHASE_LOCK = new Object();
+    private static volatile Thread sCaller;
+    private static final ArrayList<Runnable> CALLER_DEFERRED = new ArrayList<Runnable>();
+
+    private final int mNumThreads;
+    private final Worker[] mWorkers;
+    private int mMinChildren = DEFAULT_MIN_CHILDREN;
+
+    // the current job
+    private List<? extends DisplayObject> mChildren;
+    private int mDeltaTime;
+    private int mChunkSize;
+    private final AtomicLongArray mRanges; // [end:32][next:32] per thread
+    private volatile Throwable mError;
+
+    // fork-join
+    private final Object mLock = new Object();
+    private int mGeneration = 0;
+    private int mNumBusy = 0;
+    private volatile boolean mRunning = true;
+
+    /**
+     * @return the shared scheduler, using all the cores
+     */
+    public static synchronized UpdateScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new UpdateScheduler(Runtime.getRuntime().availableProcessors());
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * @param numThreads the number of threads, including the calling thread
+     */
+    public UpdateScheduler(final int numThreads) {
+        mNumThreads = Math.max(1, numThreads);
+        mRanges = new AtomicLongArray(mNumThreads);
+
+        mWorkers = new Worker[mNumThreads - 1];
+        for (int i = 0; i < mWorkers.length; i++) {
+            mWorkers[i] = new Worker(i + 1);
+            mWorkers[i].start();
+        }
+    }
+
+    /**
+     * Update the alive children, in parallel when possible. Blocks until all of them are updated and the deferred callbacks are done.
+     * 
+     * @param children
+     * @param numChildren
+     * @param deltaTime
+     */
+    public void update(final List<? extends DisplayObject> children, final int numChildren, final int deltaTime) {
+        if (!isParallel(numChildren)) {
+            // sequential
+            for (int i = 0; i < numChildren; i++) {
+                final DisplayObject child = children.get(i);
+                if (child.isAlive()) {
+                    child.update(deltaTime);
+                }
+            }
+            return;
+        }
+
+        synchronized (PHASE_LOCK) {
+            // fork
+            mChildren = children;
+            mDeltaTime = deltaTime;
+            mChunkSize = Math.max(1, numChildren / (mNumThreads * CHUNKS_PER_THREAD));
+            final int rangeSize = (numChildren + mNumThreads - 1) / mNumThreads;
+            for (int i = 0; i < mNumThreads; i++) {
+                final int start = Math.min(i * rangeSize, numChildren);
+                mRanges.set(i, pack(start, Math.min(start + rangeSize, numChildren)));
+            }
+            sCaller = Thread.currentThread();
+
+            synchronized (mLock) {
+                mNumBusy = mWorkers.length;
+                mGeneration++;
+                mLock.notifyAll();
+            }
+
+            // the calling thread is thread 0
+            try {
+                work(0);
+            } catch (Throwable e) {
+                mError = e;
+            }
+
+            // join
+            synchronized (mLock) {
+                while (mNumBusy > 0) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        Log.w(TAG, "update()", e);
+                    }
+                }
+            }
+            sCaller = null;
+            mChildren = null;
+
+            // now the deferred callbacks, on this thread
+            runDeferred(CALLER_DEFERRED);
+            for (int i = 0; i < mWorkers.length; i++) {
+                runDeferred(mWorkers[i].mDeferred);
+            }
+
+            if (mError != null) {
+                final Throwable error = mError;
+                mError = null;
+                throw new RuntimeException("Parallel update failed", error);
+            }
+        }
+    }
+
+    /**
+     * @param numChildren
+     * @return true if that many children would be updated in parallel from the current thread
+     */
+    public boolean isParallel(final int numChildren) {
+        // no nesting
+        final Thread thread = Thread.currentThread();
+        return mRunning && mWorkers.length > 0 && numChildren >= mMinChildren && !(thread instanceof Worker) && thread != sCaller;
+    }
+
+    private void work(final int thread) {
+        // my own range first
+        updateRange(thread);
+
+        // then steal from the others
+        for (int i = 1; i < mNumThreads; i++) {
+            final int victim = (thread + i) % mNumThreads;
+            while (steal(thread, victim)) {
+                updateRange(thread);
+            }
+        }
+    }
+
+    private void updateRange(final int thread) {
+        final List<? extends DisplayObject> children = mChildren;
+        final int deltaTime = mDeltaTime;
+
+        while (true) {
+            final long range = mRanges.get(thread);
+            final int next = (int) range;
+            final int end = (int) (range >>> 32);
+            if (next >= end) {
+                return;
+            }
+
+            // take a chunk from the front
+            final int last = Math.min(next + mChunkSize, end);
+            if (!mRanges.compareAndSet(thread, range, pack(last, end))) {
+                continue;
+            }
+
+            for (int i = next; i < last; i++) {
+                final DisplayObject child = children.get(i);
+                if (child.isAlive()) {
+                    child.update(deltaTime);
+                }
+            }
+        }
+    }
+
+    private boolean steal(final int thread, final int victim) {
+        while (true) {
+            final long range = mRanges.get(victim);
+            final int next = (int) range;
+            final int end = (int) (range >>> 32);
+            if (next >= end) {
+                return false;
+            }
+
+            // take the back half
+            final int middle = end - (end - next + 1) / 2;
+            if (mRanges.compareAndSet(victim, range, pack(next, middle))) {
+                // my range is empty, nobody else touches it
+                mRanges.set(thread, pack(middle, end));
+                return true;
+            }
+        }
+    }
+
+    private static long pack(final int next, final int end) {
+        return ((long) end << 32) | next;
+    }
+
+    private static void runDeferred(final ArrayList<Runnable> deferred) {
+        final int size = deferred.size();
+        for (int i = 0; i < size; i++) {
+            deferred.get(i).run();
+        }
+        deferred.clear();
+    }
+
+    /**
+     * Defer a callback or a structural change if the current thread is updating children in parallel
+     * 
+     * @param r
+     * @return true if deferred, false if the caller should run it now
+     */
+    public static boolean defer(final Runnable r) {
+        final Thread thread = Thread.currentThread();
+        if (thread instanceof Worker) {
+            ((Worker) thread).mDeferred.add(r);
+            return true;
+        } else if (thread == sCaller) {
+            CALLER_DEFERRED.add(r);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if the current thread is updating children in parallel
+     */
+    public static boolean isDeferring() {
+        final Thread thread = Thread.currentThread();
+        return thread instanceof Worker || thread == sCaller;
+    }
+
+    public int getNumThreads() {
+        return mNumThreads;
+    }
+
+    public int getMinChildren() {
+        return mMinChildren;
+    }
+
+    /**
+     * @param minChildren the minimum number of children to update in parallel
+     */
+    public void setMinChildren(final int minChildren) {
+        mMinChildren = minChildren;
+    }
+
+    /**
+     * Stop the worker threads. The scheduler updates sequentially afterward.
+     */
+    public void dispose() {
+        synchronized (mLock) {
+            mRunning = false;
+            mLock.notifyAll();
+        }
+
+        synchronized (UpdateScheduler.class) {
+            if (sInstance == this) {
+                sInstance = null;
+            }
+        }
+    }
+
+    private class Worker extends Thread {
+        private final int mIndex;
+        private final ArrayList<Runnable> mDeferred = new ArrayList<Runnable>();
+
+        public Worker(final int index) {
+            super(TAG + "-" + index);
+
+            mIndex = index;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int generation = 0;
+
+            while (true) {
+                // wait for a job
+                synchronized (mLock) {
+                    while (mRunning && mGeneration == generation) {
+                        try {
+                            mLock.wait();
+                        } catch (InterruptedException e) {
+                            // check again
+                        }
+                    }
+
+                    if (!mRunning) {
+                        return;
+                    }
+                    generation = mGeneration;
+                }
+
+                try {
+                    work(mIndex);
+                } catch (Throwable e) {
+                    mError = e;
+                }
+
+                // done
+                synchronized (mLock) {
+                    if (--mNumBusy == 0) {
+                        mLock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -34,11 +34,13 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.widget.ScrollView;
 import android.widget.TextView;
+import android.widget.ToggleButton;
 
 import com.funzio.pure2D.Scene;
 import com.funzio.pure2D.atlas.AtlasFrameSet;
 import com.funzio.pure2D.atlas.JsonAtlas;
 import com.funzio.pure2D.atlas.SingleFrameSet;
+import com.funzio.pure2D.benchmark.NovaBenchmark;
 import com.funzio.pure2D.demo.activities.MenuActivity;
 import com.funzio.pure2D.demo.activities.StageActivity;
 import com.funzio.pure2D.gl.gl10.GLState;
@@ -49,6 +51,7 @@ import com.funzio.pure2D.particles.nova.NovaEmitter;
 import com.funzio.pure2D.particles.nova.NovaFactory;
 import com.funzio.pure2D.particles.nova.NovaLoader;
 import com.funzio.pure2D.particles.nova.NovaParticle;
+import com.funzio.pure2D.particles.nova.vo.NovaEmitterVO;
 import com.funzio.pure2D.particles.nova.vo.NovaVO;
 import com.longo.pure2D.demo.R;
 
@@ -245,6 +248,49 @@ public class NovaActivity extends StageActivity {
         mScrollView.setVisibility(visibility == View.VISIBLE ? View.GONE : View.VISIBLE);
     }
 
+    public void onClickBatch(final View view) {
+        final boolean batching = ((ToggleButton) view).isChecked();
+
+        mScene.queueEvent(new Runnable() {
+
+            @Override
+            public void run() {
+                if (mNovaFactory != null) {
+                    mNovaFactory.setBatchingEnabled(batching);
+                }
+            }
+        });
+    }
+
+    public void onClickBench(final View view) {
+        mScene.queueEvent(new Runnable() {
+
+            @Override
+            public void run() {
+                // null check
+                if (mNovaFactory == null || mNovaFactory.getNovaVO().emitters == null) {
+                    return;
+                }
+
+                // compare the NovaParticles and the batched particles of each emitter
+                final NovaBenchmark benchmark = new NovaBenchmark(mNovaFactory);
+                final StringBuilder report = new StringBuilder();
+                for (NovaEmitterVO vo : mNovaFactory.getNovaVO().emitters) {
+                    report.append(benchmark.run(vo.name)).append("\n\n");
+                }
+                Log.d(TAG, report.toString());
+
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mTextView.setText(report.toString());
+                        mScrollView.setVisibility(View.VISIBLE);
+                    }
+                });
+            }
+        });
+    }
+
     public void onClickRadio(final View view) {
 
         mScene.queueEvent(new Runnable() {
@@ -0,0 +1,421 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * @author long
+ * @category Converts PNG images, such as texture atlases, to ETC1 PKM files for ETC1Texture. The alpha channel, if any, goes to a separate "*_alpha.pkm" file which is loaded with
+ *           TextureOptions.inETC1Alpha. This runs on a desktop JVM:
+ * 
+ *           <pre>
+ * javac PkmConverter.java
+ * java PkmConverter [-po2] [-premultiply] [-alpha] image.png [more.png ...]
+ * </pre>
+ * 
+ *           -po2 pads the image to power-of-2 dimensions, -premultiply multiplies the colors by alpha, -alpha writes the alpha file even if the image is opaque.
+ */
+public class PkmConverter {
+    private static final int[][] MODIFIERS = {
+            {
+                    2, 8, -2, -8
+            }, {
+                    5, 17, -5, -17
+            }, {
+                    9, 29, -9, -29
+            }, {
+                    13, 42, -13, -42
+            }, {
+                    18, 60, -18, -60
+            }, {
+                    24, 80, -24, -80
+            }, {
+                    33, 106, -33, -106
+            }, {
+                    47, 183, -47, -183
+            }
+    };
+
+    public static void main(final String[] args) throws IOException {
+        boolean po2 = false;
+        boolean premultiply = false;
+        boolean forceAlpha = false;
+        int numFiles = 0;
+        for (final String arg : args) {
+            if (arg.equals("-po2")) {
+                po2 = true;
+            } else if (arg.equals("-premultiply")) {
+                premultiply = true;
+            } else if (arg.equals("-alpha")) {
+                forceAlpha = true;
+            } else {
+                convert(new File(arg), po2, premultiply, forceAlpha);
+                numFiles++;
+            }
+        }
+
+        if (numFiles == 0) {
+            System.out.println("Usage: java PkmConverter [-po2] [-premultiply] [-alpha] image.png [more.png ...]");
+        }
+    }
+
+    /**
+     * Convert an image to "name.pkm" and "name_alpha.pkm" next to it
+     */
+    public static void convert(final File file, final boolean po2, final boolean premultiply, final boolean forceAlpha) throws IOException {
+        final BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            System.err.println("Unable to read: " + file);
+            return;
+        }
+
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int encodedWidth = po2 ? nextPO2(width) : (width + 3) & ~3;
+        final int encodedHeight = po2 ? nextPO2(height) : (height + 3) & ~3;
+
+        // padded with transparent black
+        final int[] color = new int[encodedWidth * encodedHeight];
+        final int[] alpha = new int[encodedWidth * encodedHeight];
+        boolean hasAlpha = forceAlpha;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int argb = image.getRGB(x, y);
+                final int a = argb >>> 24;
+                int r = (argb >> 16) & 0xFF;
+                int g = (argb >> 8) & 0xFF;
+                int b = argb & 0xFF;
+                if (premultiply) {
+                    r = r * a / 255;
+                    g = g * a / 255;
+                    b = b * a / 255;
+                }
+                color[y * encodedWidth + x] = (r << 16) | (g << 8) | b;
+                alpha[y * encodedWidth + x] = (a << 16) | (a << 8) | a;
+                hasAlpha |= a != 0xFF;
+            }
+        }
+
+        final String name = file.getPath().replaceFirst("\\.[^.\\\\/]*$", "");
+        final File colorFile = new File(name + ".pkm");
+        write(colorFile, encodeImage(color, encodedWidth, encodedHeight), encodedWidth, encodedHeight, width, height);
+        System.out.println(String.format("%s: %d x %d -> %s, PSNR %.2f dB", file, width, height, colorFile, getPSNR(color, encodedWidth, encodedHeight)));
+
+        if (hasAlpha) {
+            final File alphaFile = new File(name + "_alpha.pkm");
+            write(alphaFile, encodeImage(alpha, encodedWidth, encodedHeight), encodedWidth, encodedHeight, width, height);
+            System.out.println(String.format("%s: alpha -> %s, PSNR %.2f dB", file, alphaFile, getPSNR(alpha, encodedWidth, encodedHeight)));
+        }
+    }
+
+    /**
+     * Encode the RGB pixels (0xRRGGBB), width and height must be multiples of 4
+     */
+    public static byte[] encodeImage(final int[] pixels, final int width, final int height) {
+        final byte[] data = new byte[(width / 4) * (height / 4) * 8];
+        final int[] block = new int[16];
+        int offset = 0;
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                for (int y = 0; y < 4; y++) {
+                    for (int x = 0; x < 4; x++) {
+                        block[y * 4 + x] = pixels[(by + y) * width + bx + x];
+                    }
+                }
+                encodeBlock(block, data, offset);
+                offset += 8;
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * Decode the image back to RGB pixels (0xRRGGBB)
+     */
+    public static int[] decodeImage(final byte[] data, final int width, final int height) {
+        final int[] pixels = new int[width * height];
+        final int[] block = new int[16];
+        int offset = 0;
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                decodeBlock(data, offset, block);
+                offset += 8;
+                for (int y = 0; y < 4; y++) {
+                    for (int x = 0; x < 4; x++) {
+                        pixels[(by + y) * width + bx + x] = block[y * 4 + x];
+                    }
+                }
+            }
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Encode a 4x4 block, trying both flips and both base color modes
+     * 
+     * @param block 16 pixels, row by row
+     */
+    private static void encodeBlock(final int[] block, final byte[] data, final int offset) {
+        long bestError = Long.MAX_VALUE;
+        int bestHigh = 0;
+        int bestLow = 0;
+
+        final int[] avg1 = new int[3];
+        final int[] avg2 = new int[3];
+        final int[] base1 = new int[3];
+        final int[] base2 = new int[3];
+        final int[] indices = new int[16];
+        final int[] result = new int[2];
+
+        for (int flip = 0; flip < 2; flip++) {
+            average(block, flip, 0, avg1);
+            average(block, flip, 1, avg2);
+
+            for (int diff = 0; diff < 2; diff++) {
+                int high;
+                if (diff == 0) {
+                    // individual: 4 bits each
+                    final int[] q1 = new int[3];
+                    final int[] q2 = new int[3];
+                    for (int c = 0; c < 3; c++) {
+                        q1[c] = (avg1[c] * 15 + 127) / 255;
+                        q2[c] = (avg2[c] * 15 + 127) / 255;
+                        base1[c] = q1[c] * 17;
+                        base2[c] = q2[c] * 17;
+                    }
+                    high = (q1[0] << 28) | (q2[0] << 24) | (q1[1] << 20) | (q2[1] << 16) | (q1[2] << 12) | (q2[2] << 8);
+                } else {
+                    // differential: 5 bits + 3-bit signed delta
+                    high = 0;
+                    for (int c = 0; c < 3; c++) {
+                        final int q1 = (avg1[c] * 31 + 127) / 255;
+                        final int delta = Math.max(-4, Math.min(3, (avg2[c] * 31 + 127) / 255 - q1));
+                        final int q2 = Math.max(0, Math.min(31, q1 + delta));
+                        base1[c] = (q1 << 3) | (q1 >> 2);
+                        base2[c] = (q2 << 3) | (q2 >> 2);
+                        final int shift = 27 - c * 8;
+                        high |= (q1 << shift) | (((q2 - q1) & 7) << (shift - 3));
+                    }
+                }
+
+                long error = fitSubblock(block, flip, 0, base1, indices, result);
+                final int table1 = result[0];
+                error += fitSubblock(block, flip, 1, base2, indices, result);
+                final int table2 = result[0];
+
+                if (error < bestError) {
+                    bestError = error;
+                    bestHigh = high | (table1 << 5) | (table2 << 2) | (diff << 1) | flip;
+                    bestLow = 0;
+                    for (int y = 0; y < 4; y++) {
+                        for (int x = 0; x < 4; x++) {
+                            final int index = indices[y * 4 + x];
+                            final int bit = x * 4 + y;
+                            bestLow |= ((index & 1) << bit) | ((index >> 1) << (bit + 16));
+                        }
+                    }
+                }
+            }
+        }
+
+        writeInt(data, offset, bestHigh);
+        writeInt(data, offset + 4, bestLow);
+    }
+
+    private static boolean isInSubblock(final int x, final int y, final int flip, final int subblock) {
+        return ((flip == 0 ? x : y) < 2) == (subblock == 0);
+    }
+
+    private static void average(final int[] block, final int flip, final int subblock, final int[] avg) {
+        int r = 0, g = 0, b = 0;
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                if (isInSubblock(x, y, flip, subblock)) {
+                    final int pixel = block[y * 4 + x];
+                    r += (pixel >> 16) & 0xFF;
+                    g += (pixel >> 8) & 0xFF;
+                    b += pixel & 0xFF;
+                }
+            }
+        }
+        avg[0] = (r + 4) / 8;
+        avg[1] = (g + 4) / 8;
+        avg[2] = (b + 4) / 8;
+    }
+
+    /**
+     * Find the best modifier table and pixel indices of a subblock
+     * 
+     * @return the squared error, result[0] is the table
+     */
+    private static long fitSubblock(final int[] block, final int flip, final int subblock, final int[] base, final int[] indices, final int[] result) {
+        long bestError = Long.MAX_VALUE;
+        final int[] bestIndices = new int[16];
+        final int[] tableIndices = new int[16];
+        for (int table = 0; table < 8; table++) {
+            long error = 0;
+            for (int y = 0; y < 4; y++) {
+                for (int x = 0; x < 4; x++) {
+                    if (!isInSubblock(x, y, flip, subblock)) {
+                        continue;
+                    }
+
+                    final int pixel = block[y * 4 + x];
+                    int best = 0;
+                    int bestPixelError = Integer.MAX_VALUE;
+                    for (int i = 0; i < 4; i++) {
+                        final int modifier = MODIFIERS[table][i];
+                        final int dr = clamp(base[0] + modifier) - ((pixel >> 16) & 0xFF);
+                        final int dg = clamp(base[1] + modifier) - ((pixel >> 8) & 0xFF);
+                        final int db = clamp(base[2] + modifier) - (pixel & 0xFF);
+                        final int pixelError = dr * dr + dg * dg + db * db;
+                        if (pixelError < bestPixelError) {
+                            bestPixelError = pixelError;
+                            best = i;
+                        }
+                    }
+                    tableIndices[y * 4 + x] = best;
+                    error += bestPixelError;
+                }
+            }
+
+            if (error < bestError) {
+                bestError = error;
+                result[0] = table;
+                System.arraycopy(tableIndices, 0, bestIndices, 0, 16);
+            }
+        }
+
+        // keep this subblock's indices
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                if (isInSubblock(x, y, flip, subblock)) {
+                    indices[y * 4 + x] = bestIndices[y * 4 + x];
+                }
+            }
+        }
+
+        return bestError;
+    }
+
+    private static void decodeBlock(final byte[] data, final int offset, final int[] block) {
+        final int high = readInt(data, offset);
+        final int low = readInt(data, offset + 4);
+        final boolean diff = (high & 2) != 0;
+        final int flip = high & 1;
+        final int table1 = (high >>> 5) & 7;
+        final int table2 = (high >>> 2) & 7;
+
+        final int[] base1 = new int[3];
+        final int[] base2 = new int[3];
+        for (int c = 0; c < 3; c++) {
+            if (diff) {
+                final int shift = 27 - c * 8;
+                final int q1 = (high >>> shift) & 31;
+                final int delta = ((high >>> (shift - 3)) & 7) << 29 >> 29; // sign extend
+                final int q2 = q1 + delta;
+                base1[c] = (q1 << 3) | (q1 >> 2);
+                base2[c] = (q2 << 3) | (q2 >> 2);
+            } else {
+                final int shift = 28 - c * 8;
+                base1[c] = ((high >>> shift) & 15) * 17;
+                base2[c] = ((high >>> (shift - 4)) & 15) * 17;
+            }
+        }
+
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                final int bit = x * 4 + y;
+                final int index = ((low >>> bit) & 1) | (((low >>> (bit + 16)) & 1) << 1);
+                final boolean first = isInSubblock(x, y, flip, 0);
+                final int[] base = first ? base1 : base2;
+                final int modifier = MODIFIERS[first ? table1 : table2][index];
+                block[y * 4 + x] = (clamp(base[0] + modifier) << 16) | (clamp(base[1] + modifier) << 8) | clamp(base[2] + modifier);
+            }
+        }
+    }
+
+    /**
+     * @return the peak signal-to-noise ratio of the encoding
+     */
+    private static double getPSNR(final int[] pixels, final int width, final int height) {
+        final int[] decoded = decodeImage(encodeImage(pixels, width, height), width, height);
+        double error = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                final int d = ((pixels[i] >> shift) & 0xFF) - ((decoded[i] >> shift) & 0xFF);
+                error += d * d;
+            }
+        }
+        final double mse = error / (pixels.length * 3);
+        return mse == 0 ? 99 : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static void write(final File file, final byte[] data, final int encodedWidth, final int encodedHeight, final int width, final int height) throws IOException {
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            // PKM header, big endian
+            out.write(new byte[] {
+                    'P', 'K', 'M', ' ', '1', '0', 0, 0, // ETC1_RGB_NO_MIPMAPS
+                    (byte) (encodedWidth >> 8), (byte) encodedWidth, (byte) (encodedHeight >> 8), (byte) encodedHeight, //
+                    (byte) (width >> 8), (byte) width, (byte) (height >> 8), (byte) height
+            });
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static int clamp(final int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static int nextPO2(final int value) {
+        int po2 = 1;
+        while (po2 < value) {
+            po2 <<= 1;
+        }
+        return Math.max(4, po2);
+    }
+
+    private static int readInt(final byte[] data, final int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static void writeInt(final byte[] data, final int offset, final int value) {
+        data[offset] = (byte) (value >> 24);
+        data[offset + 1] = (byte) (value >> 16);
+        data[offset + 2] = (byte) (value >> 8);
+        data[offset + 3] = (byte) value;
+    }
+}